@@ -47,6 +47,7 @@ import android.content.Intent;
 import android.graphics.Color;
 import android.graphics.drawable.GradientDrawable;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.Fragment;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.widget.Toolbar;
@@ -77,7 +78,6 @@ import java.text.DecimalFormat;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 
 import no.nordicsemi.android.nrfthingy.common.ScannerFragmentListener;
 import no.nordicsemi.android.nrfthingy.common.Utils;
@@ -88,6 +88,8 @@ import no.nordicsemi.android.nrfthingy.thingy.ThingyService;
 import no.nordicsemi.android.thingylib.ThingyListener;
 import no.nordicsemi.android.thingylib.ThingyListenerHelper;
 import no.nordicsemi.android.thingylib.ThingySdkManager;
+import no.nordicsemi.android.thingylib.history.SensorHistory;
+import no.nordicsemi.android.thingylib.history.TimeSeriesSnapshot;
 import no.nordicsemi.android.thingylib.utils.ThingyUtils;
 
 public class EnvironmentServiceFragment extends Fragment implements ScannerFragmentListener, EnvironmentServiceSettingsFragment.EnvironmentServiceSettingsFragmentListener {
@@ -122,13 +124,15 @@ public class EnvironmentServiceFragment extends Fragment implements ScannerFragm
     private LinkedHashMap<String, Entry> mPressureData = new LinkedHashMap<>();
     private LinkedHashMap<String, Entry> mHumidityData = new LinkedHashMap<>();
 
+    //Reused for every query, the last sequence number of each snapshot is the cursor for the next one
+    private final TimeSeriesSnapshot mTemperatureSamples = new TimeSeriesSnapshot();
+    private final TimeSeriesSnapshot mPressureSamples = new TimeSeriesSnapshot();
+    private final TimeSeriesSnapshot mHumiditySamples = new TimeSeriesSnapshot();
+
     private ThingyListener mThingyListener = new ThingyListener() {
 
         String mTemperature;
-        String mTemperatureTimeStamp;
         String mPressure;
-        String mPressureTimeStamp;
-        String mHumidityTimeStamp;
         String mHumidity;
         int mECO2;
         int mTVOC;
@@ -151,33 +155,27 @@ public class EnvironmentServiceFragment extends Fragment implements ScannerFragm
         @Override
         public void onTemperatureValueChangedEvent(BluetoothDevice bluetoothDevice, String temperature) {
             mTemperature = temperature;
-            mTemperatureTimeStamp = ThingyUtils.TIME_FORMAT.format(System.currentTimeMillis());
             if (mIsFragmentAttached) {
                 mTemperatureView.setText(String.format(Locale.US, getString(R.string.celcius), temperature));
-                handleTemperatureGraphUpdates(mLineChartTemperature);
-                addTemperatureEntry(mTemperatureTimeStamp, Float.valueOf(mTemperature));
+                plotNewTemperatureData();
             }
         }
 
         @Override
         public void onPressureValueChangedEvent(BluetoothDevice bluetoothDevice, final String pressure) {
             mPressure = pressure;
-            mPressureTimeStamp = ThingyUtils.TIME_FORMAT.format(System.currentTimeMillis());
             if (mIsFragmentAttached) {
                 mPressureView.setText(getString(R.string.hecto_pascal, mPressure));
-                handleTemperatureGraphUpdates(mLineChartPressure);
-                addPressureEntry(mPressureTimeStamp, Float.valueOf(mPressure));
+                plotNewPressureData();
             }
         }
 
         @Override
         public void onHumidityValueChangedEvent(BluetoothDevice bluetoothDevice, final String humidity) {
             mHumidity = humidity;
-            mHumidityTimeStamp = ThingyUtils.TIME_FORMAT.format(System.currentTimeMillis());
             if (mIsFragmentAttached) {
                 mHumidityView.setText(mHumidity + "%");
-                handleTemperatureGraphUpdates(mLineChartHumidity);
-                addHumidityEntry(mHumidityTimeStamp, Float.parseFloat(mHumidity));
+                plotNewHumidityData();
             }
         }
 
@@ -275,11 +273,7 @@ public class EnvironmentServiceFragment extends Fragment implements ScannerFragm
     };
 
     public interface EnvironmentServiceListener {
-        LinkedHashMap<String, String> getSavedTemperatureData(final BluetoothDevice device);
-
-        LinkedHashMap<String, String> getSavedPressureData(final BluetoothDevice device);
-
-        LinkedHashMap<String, Integer> getSavedHumidityData(final BluetoothDevice device);
+        TimeSeriesSnapshot getSensorDataSince(final BluetoothDevice device, final int stream, final long sequence, final TimeSeriesSnapshot snapshot);
 
         Toolbar getToolbar();
     }
@@ -452,9 +446,13 @@ public class EnvironmentServiceFragment extends Fragment implements ScannerFragm
 
         updateEnvironmentCardView();
 
-        plotSavedTemperatureData();
-        plotSavedPressureData();
-        plotSavedHumidityData();
+        //The graphs are new, so the whole saved history is plotted
+        mTemperatureSamples.clear();
+        mPressureSamples.clear();
+        mHumiditySamples.clear();
+        plotNewTemperatureData();
+        plotNewPressureData();
+        plotNewHumidityData();
         ThingyListenerHelper.registerThingyListener(getContext(), mThingyListener, mDevice);
         loadFeatureDiscoverySequence(mListener.getToolbar(), toolbarEnvironment);
         return rootView;
@@ -675,22 +673,18 @@ public class EnvironmentServiceFragment extends Fragment implements ScannerFragm
         return lineDataSet;
     }
 
-    private void plotSavedTemperatureData() {
-        LinkedHashMap<String, String> temperatureData = mListener.getSavedTemperatureData(mDevice);
+    /**
+     * Plots the temperature samples received since the last call
+     */
+    private void plotNewTemperatureData() {
+        final TimeSeriesSnapshot temperatureData = mListener.getSensorDataSince(mDevice, SensorHistory.STREAM_TEMPERATURE, mTemperatureSamples.getLastSequence(), mTemperatureSamples);
         if (temperatureData.size() > 0) {
-            final Set<String> timeStamps = temperatureData.keySet();
-            String temperature;
-            for (String timeStamp : timeStamps) {
-                temperature = temperatureData.get(timeStamp);
-                addTemperatureEntry(timeStamp, Float.valueOf(temperature));
-
-                final LineData data = mLineChartTemperature.getData();
-                if (data != null) {
-                    mLineChartTemperature.moveViewToX(data.getXValCount() - 11);
-                }
+            final long wallClockOffset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+            for (int i = 0; i < temperatureData.size(); i++) {
+                final String timeStamp = ThingyUtils.TIME_FORMAT.format(wallClockOffset + temperatureData.getTimestamp(i));
+                handleTemperatureGraphUpdates(mLineChartTemperature);
+                addTemperatureEntry(timeStamp, temperatureData.getValue(i));
             }
-            timeStamps.clear();
-            temperatureData.clear();
             mTemperatureData.clear();
         }
     }
@@ -811,17 +805,18 @@ public class EnvironmentServiceFragment extends Fragment implements ScannerFragm
         return lineDataSet;
     }
 
-    private void plotSavedPressureData() {
-        LinkedHashMap<String, String> pressureData = mListener.getSavedPressureData(mDevice);/*mPressureData;*/
+    /**
+     * Plots the pressure samples received since the last call
+     */
+    private void plotNewPressureData() {
+        final TimeSeriesSnapshot pressureData = mListener.getSensorDataSince(mDevice, SensorHistory.STREAM_PRESSURE, mPressureSamples.getLastSequence(), mPressureSamples);
         if (pressureData.size() > 0) {
-            Set<String> timeStamps = pressureData.keySet();
-            String pressure;
-            for (String timeStamp : timeStamps) {
-                pressure = pressureData.get(timeStamp);
-                addPressureEntry(timeStamp, Float.parseFloat(pressure));
+            final long wallClockOffset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+            for (int i = 0; i < pressureData.size(); i++) {
+                final String timeStamp = ThingyUtils.TIME_FORMAT.format(wallClockOffset + pressureData.getTimestamp(i));
+                handleTemperatureGraphUpdates(mLineChartPressure);
+                addPressureEntry(timeStamp, pressureData.getValue(i));
             }
-            timeStamps.clear();
-            pressureData.clear();
             mPressureData.clear();
         }
     }
@@ -919,17 +914,18 @@ public class EnvironmentServiceFragment extends Fragment implements ScannerFragm
         return lineDataSet;
     }
 
-    private void plotSavedHumidityData() {
-        LinkedHashMap<String, Integer> humidityData = mListener.getSavedHumidityData(mDevice);
+    /**
+     * Plots the humidity samples received since the last call
+     */
+    private void plotNewHumidityData() {
+        final TimeSeriesSnapshot humidityData = mListener.getSensorDataSince(mDevice, SensorHistory.STREAM_HUMIDITY, mHumiditySamples.getLastSequence(), mHumiditySamples);
         if (humidityData.size() > 0) {
-            Set<String> timeStamps = humidityData.keySet();
-            Integer pressure;
-            for (String timeStamp : timeStamps) {
-                pressure = humidityData.get(timeStamp);
-                addHumidityEntry(timeStamp, pressure);
+            final long wallClockOffset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+            for (int i = 0; i < humidityData.size(); i++) {
+                final String timeStamp = ThingyUtils.TIME_FORMAT.format(wallClockOffset + humidityData.getTimestamp(i));
+                handleTemperatureGraphUpdates(mLineChartHumidity);
+                addHumidityEntry(timeStamp, humidityData.getValue(i));
             }
-            timeStamps.clear();
-            humidityData.clear();
             mHumidityData.clear();
         }
     }
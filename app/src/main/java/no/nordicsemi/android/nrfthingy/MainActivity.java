@@ -85,7 +85,6 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 
 import no.nordicsemi.android.nrfthingy.common.AboutActivity;
@@ -107,9 +106,11 @@ import no.nordicsemi.android.support.v18.scanner.ScanCallback;
 import no.nordicsemi.android.support.v18.scanner.ScanFilter;
 import no.nordicsemi.android.support.v18.scanner.ScanResult;
 import no.nordicsemi.android.support.v18.scanner.ScanSettings;
+import no.nordicsemi.android.thingylib.ThingyEventBus;
 import no.nordicsemi.android.thingylib.ThingyListener;
 import no.nordicsemi.android.thingylib.ThingyListenerHelper;
 import no.nordicsemi.android.thingylib.ThingySdkManager;
+import no.nordicsemi.android.thingylib.history.TimeSeriesSnapshot;
 import no.nordicsemi.android.thingylib.utils.ThingyUtils;
 
 import static no.nordicsemi.android.nrfthingy.common.Utils.NOTIFICATION_ID;
@@ -353,6 +354,8 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         setSupportActionBar(mActivityToolbar);
 
         mThingySdkManager = ThingySdkManager.getInstance();
+        //Motion notifications are rendered at most once per frame
+        ThingyEventBus.getInstance().setMotionDeliveryMode(ThingyEventBus.DELIVERY_PER_FRAME, 0);
 
         mDatabaseHelper = new DatabaseHelper(this);
         mLocationServicesContainer = findViewById(R.id.location_services_container);
@@ -1395,27 +1398,8 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
     }
 
     @Override
-    public LinkedHashMap<String, String> getSavedTemperatureData(BluetoothDevice device) {
-        if (mThingySdkManager != null) {
-            return mThingySdkManager.getSavedTemperatureData(device);
-        }
-        return null;
-    }
-
-    @Override
-    public LinkedHashMap<String, String> getSavedPressureData(BluetoothDevice device) {
-        if (mThingySdkManager != null) {
-            return mThingySdkManager.getSavedPressureData(device);
-        }
-        return null;
-    }
-
-    @Override
-    public LinkedHashMap<String, Integer> getSavedHumidityData(BluetoothDevice device) {
-        if (mThingySdkManager != null) {
-            return mThingySdkManager.getSavedHumidityData(device);
-        }
-        return null;
+    public TimeSeriesSnapshot getSensorDataSince(BluetoothDevice device, int stream, long sequence, TimeSeriesSnapshot snapshot) {
+        return mThingySdkManager.getSensorDataSince(device, stream, sequence, snapshot);
     }
 
     @Override
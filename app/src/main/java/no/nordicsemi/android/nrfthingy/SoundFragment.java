@@ -47,7 +47,6 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.design.widget.TabLayout;
@@ -81,6 +80,7 @@ import no.nordicsemi.android.nrfthingy.widgets.VoiceVisualizer;
 import no.nordicsemi.android.thingylib.ThingyListener;
 import no.nordicsemi.android.thingylib.ThingyListenerHelper;
 import no.nordicsemi.android.thingylib.ThingySdkManager;
+import no.nordicsemi.android.thingylib.core.dsp.SpectrumAnalyzer;
 import no.nordicsemi.android.thingylib.utils.ThingyUtils;
 
 public class SoundFragment extends Fragment implements PermissionRationaleDialogFragment.PermissionDialogListener {
@@ -103,7 +103,6 @@ public class SoundFragment extends Fragment implements PermissionRationaleDialog
     private boolean mStartPlayingAudio = false;
 
     private ThingyListener mThingyListener = new ThingyListener() {
-        private Handler mHandler = new Handler();
 
         @Override
         public void onDeviceConnected(BluetoothDevice device, int connectionState) {
@@ -212,17 +211,21 @@ public class SoundFragment extends Fragment implements PermissionRationaleDialog
         public void onMicrophoneValueChangedEvent(BluetoothDevice bluetoothDevice, final byte[] data) {
             if (data != null) {
                 if (data.length != 0) {
-                    mHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            mVoiceVisualizer.draw(data);
-                        }
-                    });
+                    //The buffer is reused after this call, the visualizer copies the samples synchronously
+                    mVoiceVisualizer.draw(data);
                 }
             }
         }
     };
 
+    private final SpectrumAnalyzer.Listener mSpectrumListener = new SpectrumAnalyzer.Listener() {
+        @Override
+        public void onSpectrum(final SpectrumAnalyzer analyzer, final float[] spectrum, final float[] bands) {
+            //Called on the bluetooth thread, the visualizer copies the levels
+            mVoiceVisualizer.drawSpectrum(spectrum, spectrum.length);
+        }
+    };
+
     private BroadcastReceiver mAudioRecordBroadcastReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -312,6 +315,22 @@ public class SoundFragment extends Fragment implements PermissionRationaleDialog
         mThingy = rootView.findViewById(R.id.thingy);
         mThingyOverlay = rootView.findViewById(R.id.thingyOverlay);
         mVoiceVisualizer = rootView.findViewById(R.id.voice_visualizer);
+        mVoiceVisualizer.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                // Cycles through the waveform, the scrolling history and the spectrogram of the microphone
+                final int mode = mVoiceVisualizer.getMode();
+                if (mode == VoiceVisualizer.MODE_WAVEFORM) {
+                    mVoiceVisualizer.setMode(VoiceVisualizer.MODE_HISTORY);
+                } else if (mode == VoiceVisualizer.MODE_HISTORY) {
+                    mVoiceVisualizer.setMode(VoiceVisualizer.MODE_SPECTROGRAM);
+                    mThingySdkManager.setMicrophoneSpectrumListener(mDevice, mSpectrumListener);
+                } else {
+                    mVoiceVisualizer.setMode(VoiceVisualizer.MODE_WAVEFORM);
+                    mThingySdkManager.setMicrophoneSpectrumListener(mDevice, null);
+                }
+            }
+        });
 
         // Prepare the sliding tab layout and the view pager
         final TabLayout mTabLayout = rootView.findViewById(R.id.sliding_tabs);
@@ -423,6 +442,9 @@ public class SoundFragment extends Fragment implements PermissionRationaleDialog
         super.onResume();
         ThingyListenerHelper.registerThingyListener(getContext(), mThingyListener, mDevice);
         LocalBroadcastManager.getInstance(getActivity()).registerReceiver(mAudioRecordBroadcastReceiver, createAudioRecordIntentFilter(mDevice.getAddress()));
+        if (mVoiceVisualizer.getMode() == VoiceVisualizer.MODE_SPECTROGRAM) {
+            mThingySdkManager.setMicrophoneSpectrumListener(mDevice, mSpectrumListener);
+        }
     }
 
     @Override
@@ -430,6 +452,7 @@ public class SoundFragment extends Fragment implements PermissionRationaleDialog
         super.onPause();
         ThingyListenerHelper.unregisterThingyListener(getContext(), mThingyListener);
         LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(mAudioRecordBroadcastReceiver);
+        mThingySdkManager.setMicrophoneSpectrumListener(mDevice, null);
         mVoiceVisualizer.stopDrawing();
     }
 
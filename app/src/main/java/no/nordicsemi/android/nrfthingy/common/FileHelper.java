@@ -49,10 +49,27 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import no.nordicsemi.android.thingylib.core.cache.AudioFileIndex;
+
 public class FileHelper {
     private static final String TAG = "FileHelper";
 
     public static final String NORDIC_FOLDER = "Nordic Semiconductor";
+    private static final String AUDIO_INDEX_FILE = "audio_index";
+
+    private static AudioFileIndex mAudioFileIndex;
+
+    /**
+     * Returns the index of the audio files of the application, loaded from the cache directory when first used.
+     * The index is updated with {@link AudioFileIndex#scan(File, String, AudioFileIndex.Listener)} on a background thread.
+     */
+    public static synchronized AudioFileIndex getAudioFileIndex(final Context context) {
+        if (mAudioFileIndex == null) {
+            final File indexFile = new File(context.getApplicationContext().getCacheDir(), AUDIO_INDEX_FILE);
+            mAudioFileIndex = new AudioFileIndex(indexFile, AudioFileIndex.DEFAULT_ENVELOPE_LENGTH);
+        }
+        return mAudioFileIndex;
+    }
 
     public static void copyAudioFiles(final Context context) {
 
@@ -38,6 +38,7 @@
 
 package no.nordicsemi.android.nrfthingy.sound;
 
+import android.app.Activity;
 import android.bluetooth.BluetoothDevice;
 import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
@@ -85,6 +86,9 @@ import no.nordicsemi.android.nrfthingy.database.DatabaseHelper;
 import no.nordicsemi.android.nrfthingy.thingy.ThingyService;
 import no.nordicsemi.android.nrfthingy.widgets.AudioFileRecyclerAdapter;
 import no.nordicsemi.android.thingylib.ThingySdkManager;
+import no.nordicsemi.android.thingylib.core.cache.AudioFileIndex;
+import no.nordicsemi.android.thingylib.core.cache.AudioFileInfo;
+import no.nordicsemi.android.thingylib.core.cache.SpeakerClipCache;
 import no.nordicsemi.android.thingylib.utils.ThingyUtils;
 
 public class PcmModeFragment extends Fragment implements PermissionRationaleDialogFragment.PermissionDialogListener,
@@ -108,6 +112,26 @@ public class PcmModeFragment extends Fragment implements PermissionRationaleDial
 
     private AudioFileRecyclerAdapter mAudioFileAdapter;
     private ThingySdkManager mThingySdkManager;
+    private SpeakerClipCache mClipCache;
+    private AudioFileIndex mAudioFileIndex;
+
+    private final AudioFileIndex.Listener mAudioFileIndexListener = new AudioFileIndex.Listener() {
+        @Override
+        public void onFileIndexed(final AudioFileInfo info) {
+            final Activity activity = getActivity();
+            if (activity != null) {
+                final File file = new File(info.getPath());
+                activity.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mAudioFileAdapter != null) {
+                            mAudioFileAdapter.notifyFileChanged(file);
+                        }
+                    }
+                });
+            }
+        }
+    };
 
     private BroadcastReceiver mConnectionBroadcastReceiver = new BroadcastReceiver() {
         @Override
@@ -166,6 +190,9 @@ public class PcmModeFragment extends Fragment implements PermissionRationaleDial
         mFabImport = rootView.findViewById(R.id.fab_import);
         mAudioRecyclerView = rootView.findViewById(R.id.audio_recycler_view);
         mAudioFileAdapter = new AudioFileRecyclerAdapter(getActivity());
+        mClipCache = mThingySdkManager.getSpeakerClipCache(getActivity());
+        mAudioFileIndex = FileHelper.getAudioFileIndex(getActivity());
+        mAudioFileAdapter.setAudioFileIndex(mAudioFileIndex);
         mAudioRecyclerView.setAdapter(mAudioFileAdapter);
         final LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity(), LinearLayoutManager.VERTICAL, false);
         mAudioRecyclerView.setLayoutManager(layoutManager);
@@ -350,6 +377,8 @@ public class PcmModeFragment extends Fragment implements PermissionRationaleDial
                 file = new File(mFilePath);
                 if (FileHelper.copyAudioFilesToLocalAppStorage(getContext(), file.getPath(), fileName)) {
                     mAudioFileAdapter.addFiles(file);
+                    mClipCache.prefetch(file, null);
+                    indexFiles();
                     mAudioFileAdapter.notifyDataSetChanged();
                 } else {
                     Utils.showToast(getActivity(), getString(R.string.audio_file_already_exists));
@@ -366,6 +395,8 @@ public class PcmModeFragment extends Fragment implements PermissionRationaleDial
                     if (FileHelper.copyAudioFilesToLocalAppStorage(getContext(), mFileStreamUri, fileName)) {
                         file = new File(String.valueOf(getContext().getFilesDir()), fileName);
                         mAudioFileAdapter.addFiles(file);
+                        mClipCache.prefetch(file, null);
+                        indexFiles();
                         mAudioFileAdapter.notifyDataSetChanged();
                         mAudioRecyclerView.scrollToPosition(mAudioFileAdapter.getItemCount() - 1);
                         mAudioRecyclerView.performClick();
@@ -397,10 +428,32 @@ public class PcmModeFragment extends Fragment implements PermissionRationaleDial
         for (File f : files) {
             if (f.getName().endsWith(".wav")) {
                 mAudioFileAdapter.addFiles(f);
+                //Transcodes the files not cached yet in the background, the bundled clips only once
+                mClipCache.prefetch(f, null);
             }
         }
 
         mAudioFileAdapter.notifyDataSetChanged();
+        indexFiles();
+    }
+
+    /**
+     * Indexes the audio files added or changed since the last scan in the background. The list is bound from the index
+     * and each item is refreshed as its file is indexed.
+     */
+    private void indexFiles() {
+        final File root = getActivity().getFilesDir();
+        final AudioFileIndex index = mAudioFileIndex;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    index.scan(root, ".wav", mAudioFileIndexListener);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "AudioFileIndexer").start();
     }
 
     private void parseFile(final File file) {
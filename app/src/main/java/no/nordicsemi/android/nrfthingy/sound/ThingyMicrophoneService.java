@@ -38,7 +38,7 @@
 
 package no.nordicsemi.android.nrfthingy.sound;
 
-import android.app.IntentService;
+import android.app.Service;
 import android.bluetooth.BluetoothDevice;
 import android.content.BroadcastReceiver;
 import android.content.Context;
@@ -47,21 +47,32 @@ import android.content.IntentFilter;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder;
+import android.os.IBinder;
+import android.os.Process;
 import android.support.annotation.Nullable;
 import android.support.v4.content.LocalBroadcastManager;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
 import no.nordicsemi.android.nrfthingy.common.Utils;
-import no.nordicsemi.android.thingylib.ThingyConnection;
 import no.nordicsemi.android.thingylib.ThingySdkManager;
+import no.nordicsemi.android.thingylib.core.dsp.VoiceActivityDetector;
+import no.nordicsemi.android.thingylib.core.stream.VoiceUplink;
+import no.nordicsemi.android.thingylib.core.stream.WavPacketSource;
 import no.nordicsemi.android.thingylib.utils.ThingyUtils;
 
-public class ThingyMicrophoneService extends IntentService {
+/**
+ * Streams the phone microphone to the Thingy speaker. The audio is captured on a dedicated thread into reused buffers and written
+ * to the {@link VoiceUplink} of the connection, which sends it as fast as the speaker accepts it and drops the oldest samples
+ * when the link can't keep up. Silent buffers are discarded by a voice activity detector and never sent.
+ */
+public class ThingyMicrophoneService extends Service {
     private static final int AUDIO_BUFFER = 512;
+    /** The buffers sent to the visualizer are reused in turn, as the broadcasts are delivered asynchronously */
+    private static final int VISUALIZER_BUFFERS = 4;
 
-    private boolean mStartRecordingAudio = false;
+    /** The thread capturing the current recording session, null when stopped. A stopped thread may still be releasing its recorder. */
+    private volatile Thread mCaptureThread;
+    /** The thread of the last stopped session, joined by the next session before it opens the microphone */
+    private Thread mStoppedThread;
     private BluetoothDevice mDevice;
     private ThingySdkManager mThingySdkManager;
 
@@ -76,31 +87,6 @@ public class ThingyMicrophoneService extends IntentService {
         }
     };
 
-    public ThingyMicrophoneService() {
-        super("ThingyMicrophoneService");
-    }
-
-    /**
-     * Creates an IntentService.  Invoked by your subclass's constructor.
-     *
-     * @param name Used to name the worker thread, important only for debugging.
-     */
-    public ThingyMicrophoneService(String name) {
-        super(name);
-    }
-
-    @Override
-    protected void onHandleIntent(@Nullable Intent intent) {
-        final String action = intent.getAction();
-        switch (action) {
-            case Utils.START_RECORDING:
-                mDevice = intent.getParcelableExtra(Utils.EXTRA_DEVICE);
-                startRecordingAudio(mDevice);
-                break;
-        }
-
-    }
-
     @Override
     public void onCreate() {
         super.onCreate();
@@ -112,62 +98,122 @@ public class ThingyMicrophoneService extends IntentService {
 
     @Override
     public int onStartCommand(@Nullable Intent intent, int flags, int startId) {
-        return super.onStartCommand(intent, flags, startId);
+        if (intent != null && Utils.START_RECORDING.equals(intent.getAction())) {
+            mDevice = intent.getParcelableExtra(Utils.EXTRA_DEVICE);
+            startRecordingAudio(mDevice);
+        }
+        return START_NOT_STICKY;
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        stopRecordingAudio();
         LocalBroadcastManager.getInstance(this).unregisterReceiver(mAudioBroadcastReceiver);
     }
 
-    public void startRecordingAudio(final BluetoothDevice device) {
-
-        if (mStartRecordingAudio) {
+    public synchronized void startRecordingAudio(final BluetoothDevice device) {
+        if (mCaptureThread != null) {
             return;
         }
-        mStartRecordingAudio = true;
-
-        final ThingyConnection thingyConnection = mThingySdkManager.getThingyConnection(device);
-        final AudioRecord audioRecorder = new AudioRecord(MediaRecorder.AudioSource.MIC, 8000, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, AUDIO_BUFFER);
-        if(audioRecorder != null && audioRecorder.getState() != AudioRecord.STATE_UNINITIALIZED) {
-            byte audioData[] = new byte[AUDIO_BUFFER];
-            audioRecorder.startRecording();
-            while (mStartRecordingAudio) {
-                int status = audioRecorder.read(audioData, 0, AUDIO_BUFFER);
-                if (status == AudioRecord.ERROR_INVALID_OPERATION ||
-                        status == AudioRecord.ERROR_BAD_VALUE) {
-                    break;
+
+        final Thread previous = mStoppedThread;
+        mStoppedThread = null;
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                if (awaitStoppedSession(previous)) {
+                    recordAudio(device);
                 }
-                try {
-                    thingyConnection.playVoiceInput(downSample(audioData));
-                    sendAudioRecordBroadcast(device, audioData, status);
-                } catch (Exception e) {
-                    break;
+                synchronized (ThingyMicrophoneService.this) {
+                    //A session started after this one was stopped keeps running
+                    if (mCaptureThread == Thread.currentThread()) {
+                        mCaptureThread = null;
+                    }
                 }
             }
+        }, "ThingyMicrophoneService");
+        mCaptureThread = thread;
+        thread.start();
+    }
 
-            audioRecorder.stop();
-            audioRecorder.release();
-        } else {
-            sendAudioRecordErrorBroadcast(mDevice, audioRecorder.getState());
+    public synchronized boolean stopRecordingAudio() {
+        if (mCaptureThread != null) {
+            mStoppedThread = mCaptureThread;
+            mCaptureThread = null;
         }
+        return true;
     }
 
-    public boolean stopRecordingAudio() {
-        mStartRecordingAudio = false;
-        return true;
+    /**
+     * Waits until the stopped session has released the microphone and its uplink
+     *
+     * @return false if interrupted while waiting
+     */
+    private static boolean awaitStoppedSession(final Thread previous) {
+        if (previous == null) {
+            return true;
+        }
+        try {
+            previous.join();
+            return true;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
-    private byte[] downSample(final byte[] data) {
-        final byte[] output = new byte[data.length / 2];
-        int length = data.length;
-        ByteBuffer bb = ByteBuffer.wrap(data);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        for (int i = 0; i < length; i += 2) {
-            output[i / 2] = (byte) (((bb.getShort() * 128.0) / 32768.0) + 128.0);
+    private void recordAudio(final BluetoothDevice device) {
+        final int sampleRate = WavPacketSource.SPEAKER_SAMPLE_RATE;
+        final int bufferSize = Math.max(AUDIO_BUFFER, AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT));
+        final AudioRecord audioRecorder = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferSize);
+        if (audioRecorder.getState() == AudioRecord.STATE_UNINITIALIZED) {
+            sendAudioRecordErrorBroadcast(device, audioRecorder.getState());
+            audioRecorder.release();
+            return;
+        }
+
+        final VoiceUplink uplink = mThingySdkManager.startVoiceUplink(device);
+        if (uplink == null) {
+            audioRecorder.release();
+            return;
         }
-        return output;
+        //Only the buffers containing voice are sent to the speaker
+        uplink.setVoiceActivityDetector(new VoiceActivityDetector(sampleRate));
+
+        final byte[] audioData = new byte[AUDIO_BUFFER];
+        final byte[][] visualizerBuffers = new byte[VISUALIZER_BUFFERS][AUDIO_BUFFER];
+        int visualizerIndex = 0;
+        audioRecorder.startRecording();
+        //A newer session replaces this one if the recording was stopped and started again before this thread noticed
+        while (mCaptureThread == Thread.currentThread()) {
+            final int status = audioRecorder.read(audioData, 0, AUDIO_BUFFER);
+            if (status < 0) {
+                //ERROR, ERROR_BAD_VALUE, ERROR_INVALID_OPERATION or ERROR_DEAD_OBJECT, the recorder can't be read anymore
+                break;
+            }
+            //The read returns once the last sample of the buffer has been captured
+            if (!uplink.write(audioData, 0, status, System.nanoTime())) {
+                //The stream was stopped by the connection
+                break;
+            }
+
+            final byte[] visualizerData = visualizerBuffers[visualizerIndex];
+            visualizerIndex = (visualizerIndex + 1) % VISUALIZER_BUFFERS;
+            System.arraycopy(audioData, 0, visualizerData, 0, status);
+            sendAudioRecordBroadcast(device, visualizerData, status);
+        }
+
+        uplink.close();
+        audioRecorder.stop();
+        audioRecorder.release();
     }
 
     private void sendAudioRecordBroadcast(final BluetoothDevice device, final byte[] data, final int status) {
@@ -178,8 +224,6 @@ public class ThingyMicrophoneService extends IntentService {
         LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(intent);
     }
 
-
-
     private void sendAudioRecordErrorBroadcast(final BluetoothDevice device, final int error) {
         final Intent intent = new Intent(Utils.ERROR_AUDIO_RECORD + device.getAddress());
         intent.putExtra(ThingyUtils.EXTRA_DEVICE, device);
@@ -49,8 +49,11 @@ import android.widget.TextView;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Locale;
 
 import no.nordicsemi.android.nrfthingy.R;
+import no.nordicsemi.android.thingylib.core.cache.AudioFileIndex;
+import no.nordicsemi.android.thingylib.core.cache.AudioFileInfo;
 
 public class AudioFileRecyclerAdapter extends RecyclerView.Adapter<AudioFileRecyclerAdapter.CustomViewHolder> {
 
@@ -62,6 +65,7 @@ public class AudioFileRecyclerAdapter extends RecyclerView.Adapter<AudioFileRecy
     private int mSelectedItemPosition = -1;
     private int selectedItemPosition;
     private boolean mOnClickEnabled = true;
+    private AudioFileIndex mAudioFileIndex;
 
     public AudioFileRecyclerAdapter(Context context) {
         this.inflater = LayoutInflater.from(context);
@@ -83,6 +87,11 @@ public class AudioFileRecyclerAdapter extends RecyclerView.Adapter<AudioFileRecy
     public void onBindViewHolder(final CustomViewHolder customViewHolder, final int position) {
         final File file = mAudioFileList.get(position);
         customViewHolder.audioFileNameView.setText(file.getName());
+        //The metadata is bound from the index in memory, the file is not opened
+        final AudioFileInfo info = mAudioFileIndex != null ? mAudioFileIndex.get(file) : null;
+        final boolean indexed = info != null && info.isValid();
+        customViewHolder.audioFileDurationView.setText(indexed ? formatDuration(info.getDurationMillis()) : "");
+        customViewHolder.audioFileWaveformView.setAudioFileInfo(indexed ? info : null);
         customViewHolder.relativeLayout.setTag(position);
 
         if (mSelectedItemPosition == (int) customViewHolder.relativeLayout.getTag()) {
@@ -135,6 +144,28 @@ public class AudioFileRecyclerAdapter extends RecyclerView.Adapter<AudioFileRecy
         return false;
     }
 
+    /**
+     * Sets the index providing the duration and the waveform of the files
+     */
+    public void setAudioFileIndex(final AudioFileIndex index) {
+        mAudioFileIndex = index;
+    }
+
+    /**
+     * Rebinds the item of the file, i.e. when it has been indexed
+     */
+    public void notifyFileChanged(final File audioFile) {
+        final int position = mAudioFileList.indexOf(audioFile);
+        if (position > -1) {
+            notifyItemChanged(position);
+        }
+    }
+
+    private static String formatDuration(final long millis) {
+        final long seconds = (millis + 500) / 1000;
+        return String.format(Locale.US, "%d:%02d", seconds / 60, seconds % 60);
+    }
+
     private void setSelection(CustomViewHolder viewHolder, int position) {
 
     }
@@ -163,6 +194,8 @@ public class AudioFileRecyclerAdapter extends RecyclerView.Adapter<AudioFileRecy
     class CustomViewHolder extends RecyclerView.ViewHolder {
         protected LinearLayout relativeLayout;
         protected TextView audioFileNameView;
+        protected TextView audioFileDurationView;
+        protected WaveformThumbnailView audioFileWaveformView;
         protected RadioButton audioRadioButton;
 
         public CustomViewHolder(View view) {
@@ -170,6 +203,8 @@ public class AudioFileRecyclerAdapter extends RecyclerView.Adapter<AudioFileRecy
             view.setSelected(false);
             relativeLayout = view.findViewById(R.id.audio_list_item_container);
             audioFileNameView = view.findViewById(R.id.audio_file_name);
+            audioFileDurationView = view.findViewById(R.id.audio_file_duration);
+            audioFileWaveformView = view.findViewById(R.id.audio_file_waveform);
             audioRadioButton = view.findViewById(R.id.rb_audio);
         }
     }
@@ -39,38 +39,116 @@
 package no.nordicsemi.android.nrfthingy.widgets;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.support.v4.content.ContextCompat;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
-import no.nordicsemi.android.nrfthingy.R;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+import no.nordicsemi.android.nrfthingy.R;
 
+/**
+ * Draws the microphone audio as a waveform, a scrolling history of the waveform or a spectrogram.
+ * <br>
+ * The audio may be published from any thread. Each published buffer is decimated to the minimum and maximum of each column of the
+ * view and handed over to the render thread without locks. The render thread draws only when new data was published, at most once
+ * per display frame as paced by the {@link Choreographer}, so nothing is drawn while the microphone is silent or closed.
+ */
 public class VoiceVisualizer extends SurfaceView implements SurfaceHolder.Callback {
-    private final int PRECISSION = 4;
-    private final float[] mPointsBuffer = new float[2 * 512 / PRECISSION]; // 512 samples, each has X and Y value, each point (but fist and last) must be doubled: A->B, B->C, C->D etc.
-    private final float[] mPointsBuffer2 = new float[2 * 512 / PRECISSION];
-    private float[] mCurrentBuffer;
-    private float[] mPoints;
-    private Object mLock = new Object();
-    private boolean isDrawing = false;
+    /** The last published PCM buffer is drawn across the view */
+    public static final int MODE_WAVEFORM = 0;
+    /** The spectra are drawn as a scrolling spectrogram, with the time on the X axis and the frequency on the Y axis */
+    public static final int MODE_SPECTROGRAM = 1;
+    /** The waveform scrolls from right to left, each column showing the minimum and maximum of a fixed number of samples */
+    public static final int MODE_HISTORY = 2;
 
-    private int mWidth, mHeight;
+    private static final int SPECTROGRAM_COLUMNS = 256; // about 4 seconds of spectra with 16 ms hops
+    private static final float SPECTROGRAM_MIN_LEVEL = -100.0f; // dB
+    private static final int HISTORY_SAMPLES_PER_COLUMN = 64; // 4 ms at 16 kHz
+
+    /**
+     * The minimum and maximum of each column, normalized to [-1, 1]. Three traces are exchanged between the publishing thread,
+     * the pending slot and the render thread.
+     */
+    private static final class Trace {
+        float[] mMin = new float[0];
+        float[] mMax = new float[0];
+        int mColumns;
+        boolean mFresh;
 
-    private Paint mLinePaint;
+        void ensureCapacity(final int columns) {
+            if (mMin.length < columns) {
+                mMin = new float[columns];
+                mMax = new float[columns];
+            }
+            mColumns = columns;
+        }
+    }
+
+    /**
+     * A ring of spectrogram columns written by the publishing thread and read by the render thread.
+     * The pixels of a column are contiguous, so a column is copied to the bitmap at once.
+     */
+    private static final class SpectrogramRing {
+        final int mRows;
+        final int[] mPixels;
+        volatile long mWritten;
+
+        SpectrogramRing(final int rows) {
+            mRows = rows;
+            mPixels = new int[SPECTROGRAM_COLUMNS * rows];
+        }
+    }
+
+    // Written by the publishing thread
+    private Trace mBack = new Trace();
+    private float[] mHistoryMin = new float[0];
+    private float[] mHistoryMax = new float[0];
+    private int mHistoryColumn;
+    private int mHistorySamples;
+    private float mHistoryRunningMin = Float.MAX_VALUE;
+    private float mHistoryRunningMax = -Float.MAX_VALUE;
+    private final int[] mPalette = createPalette();
+
+    // Handed over between the threads
+    private final AtomicReference<Trace> mPending = new AtomicReference<>(new Trace());
+    private volatile SpectrogramRing mSpectrogramRing;
+    private final AtomicBoolean mFrameRequested = new AtomicBoolean();
+    private volatile int mMode = MODE_WAVEFORM;
+    private volatile int mColumns;
+    private volatile Handler mRenderHandler;
+
+    // Used by the render thread only
+    private HandlerThread mRenderThread;
+    private Choreographer mChoreographer;
     private SurfaceHolder mHolder;
-    private Canvas mCanvas;
+    private Trace mFront = new Trace();
+    private float[] mLines = new float[0];
+    private Bitmap mSpectrogram;
+    private SpectrogramRing mDrawnRing;
+    private long mDrawnColumns;
+    private final Rect mSource = new Rect();
+    private final Rect mDestination = new Rect();
+    private final Paint mLinePaint;
+    private final int mColumnWidth;
 
     public VoiceVisualizer(final Context context, final AttributeSet attrs) {
         super(context, attrs);
+        // One column per density independent pixel
+        mColumnWidth = Math.max(1, Math.round(getResources().getDisplayMetrics().density));
         mLinePaint = new Paint();
         mLinePaint.setColor(ContextCompat.getColor(getContext(), R.color.colorPrimary));
-        mLinePaint.setAntiAlias(true);
-        mLinePaint.setStrokeWidth(5);
+        mLinePaint.setStrokeWidth(mColumnWidth);
         mLinePaint.setStyle(Paint.Style.STROKE);
 
         getHolder().addCallback(this);
@@ -78,102 +156,338 @@ public class VoiceVisualizer extends SurfaceView implements SurfaceHolder.Callba
 
     @Override
     public void surfaceCreated(final SurfaceHolder holder) {
+        final HandlerThread thread = new HandlerThread("VoiceVisualizer");
+        thread.start();
+        final Handler handler = new Handler(thread.getLooper());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                // The choreographer of the render thread delivers the vsync callbacks on that thread
+                mChoreographer = Choreographer.getInstance();
+                mHolder = holder;
+            }
+        });
+        mRenderThread = thread;
+        mRenderHandler = handler;
     }
 
     @Override
     public void surfaceChanged(final SurfaceHolder holder, final int format, final int width, final int height) {
-        mHolder = holder;
-        Canvas canvas = mCanvas = holder.lockCanvas();
-        canvas.drawColor(Color.WHITE);
-        holder.unlockCanvasAndPost(canvas);
-        // Adapt the old points to new surface size after orientation change
-        final float[] points = mPoints;
-        if (points != null) {
-            final float factorX = width / (1.0f * mWidth);
-            for (int i = 0; i < points.length; i += 2)
-                points[i] = points[i] * factorX;
-
-            final float factorY = height / (2.0f * mHeight);
-            for (int i = 1; i < points.length; i += 2)
-                points[i] = points[i] * factorY;
-        }
-
-        mCurrentBuffer = mPointsBuffer;
-        mWidth = width;
-        mHeight = height / 2;
+        mColumns = Math.max(1, width / mColumnWidth);
+        requestFrame();
     }
 
     @Override
     public void surfaceDestroyed(final SurfaceHolder holder) {
-        isDrawing = false;
+        // The surface must not be drawn after this method returns
+        final HandlerThread thread = mRenderThread;
+        mRenderHandler = null;
+        mRenderThread = null;
+        if (thread != null) {
+            thread.quit();
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        mFrameRequested.set(false);
     }
 
+    /**
+     * Cancels the frame requested, if any. Nothing is drawn until new data is published.
+     */
     public void stopDrawing() {
-        isDrawing = false;
+        final Handler handler = mRenderHandler;
+        if (handler != null) {
+            handler.post(mCancelFrame);
+        }
     }
 
     /**
-     * Copies the byte array to a float buffer where each odd cell is a X point value and even cell is Y value. X range is from 0 to view width and Y from 0 to height. The PCM value 0 is located on
-     * height/2. After the buffer is ready it swaps the buffer for drawing thread.
+     * Sets what is drawn
+     *
+     * @param mode {@link #MODE_WAVEFORM}, {@link #MODE_HISTORY} or {@link #MODE_SPECTROGRAM}
+     */
+    public void setMode(final int mode) {
+        mMode = mode;
+        requestFrame();
+    }
+
+    /**
+     * Returns what is drawn, {@link #MODE_WAVEFORM}, {@link #MODE_HISTORY} or {@link #MODE_SPECTROGRAM}
+     */
+    public int getMode() {
+        return mMode;
+    }
+
+    /**
+     * Publishes the decoded PCM buffer. The samples are decimated to the columns of the view before this method returns,
+     * so the buffer may be reused after this call. Called by one thread at a time.
      *
      * @param pcm the decoded PCM byte array where each sample is defined by 2 bytes
      */
     public void draw(final byte[] pcm) {
-        if (mCurrentBuffer == null) // Surface not created yet or destroyed (orientation changes)
+        final int columns = mColumns;
+        if (columns == 0) // Surface not created yet
             return;
 
-        final float[] buffer = mCurrentBuffer;
-        final int length = pcm.length / PRECISSION;
-        final float stepHoriz = (float) mWidth / length;
-        final float stepVert = (float) mHeight / Short.MAX_VALUE;
+        final int mode = mMode;
+        if (mode == MODE_WAVEFORM) {
+            final Trace trace = mBack;
+            trace.ensureCapacity(columns);
+            decimate(pcm, pcm.length / 2, trace.mMin, trace.mMax, columns);
+            publish(trace);
+        } else if (mode == MODE_HISTORY) {
+            appendHistory(pcm, pcm.length / 2, columns);
+            final Trace trace = mBack;
+            trace.ensureCapacity(columns);
+            // Unrolls the ring, the oldest column first
+            final int first = columns - mHistoryColumn;
+            System.arraycopy(mHistoryMin, mHistoryColumn, trace.mMin, 0, first);
+            System.arraycopy(mHistoryMax, mHistoryColumn, trace.mMax, 0, first);
+            System.arraycopy(mHistoryMin, 0, trace.mMin, first, mHistoryColumn);
+            System.arraycopy(mHistoryMax, 0, trace.mMax, first, mHistoryColumn);
+            publish(trace);
+        }
+    }
+
+    /**
+     * Adds the spectrum as the newest column of the spectrogram. The levels are copied, so the array may be reused after this call.
+     * Called by one thread at a time.
+     *
+     * @param spectrum the level of each frequency bin in dB, from the lowest frequency
+     * @param length   the number of bins
+     */
+    public void drawSpectrum(final float[] spectrum, final int length) {
+        SpectrogramRing ring = mSpectrogramRing;
+        if (ring == null || ring.mRows != length) {
+            ring = new SpectrogramRing(length);
+            mSpectrogramRing = ring;
+        }
+        final int[] pixels = ring.mPixels;
+        final int[] palette = mPalette;
+        final float scale = (palette.length - 1) / -SPECTROGRAM_MIN_LEVEL;
+        final int start = (int) (ring.mWritten % SPECTROGRAM_COLUMNS) * length;
+        for (int bin = 0; bin < length; bin++) {
+            final float level = Math.max(SPECTROGRAM_MIN_LEVEL, Math.min(0, spectrum[bin]));
+            // The lowest frequency is at the bottom
+            pixels[start + length - 1 - bin] = palette[(int) ((level - SPECTROGRAM_MIN_LEVEL) * scale)];
+        }
+        // Publishes the column to the render thread
+        ring.mWritten++;
 
-        int out = 0;
-        for (int i = 0; i < length; i += 2) {
-            buffer[out] = buffer[out + 2] = stepHoriz * i;
-            buffer[out + 1] = buffer[out + 3] = mHeight + stepVert * readShort(pcm, i * PRECISSION);
-            out += i > 0 ? 4 : 2;
+        if (mMode == MODE_SPECTROGRAM) {
+            requestFrame();
         }
+    }
 
-        buffer[out] = mWidth;
-        buffer[out + 1] = mHeight + stepVert * readShort(pcm, (length - 1) * PRECISSION);
+    /**
+     * Computes the minimum and maximum of the samples of each column. A column also includes the first sample of the next one,
+     * so the columns join up when there are fewer samples than columns.
+     */
+    private static void decimate(final byte[] pcm, final int samples, final float[] min, final float[] max, final int columns) {
+        if (samples == 0) {
+            for (int c = 0; c < columns; c++) {
+                min[c] = max[c] = 0;
+            }
+            return;
+        }
+        for (int c = 0; c < columns; c++) {
+            final int start = (int) ((long) c * samples / columns);
+            final int end = Math.min(samples - 1, (int) ((long) (c + 1) * samples / columns));
+            float low = Float.MAX_VALUE;
+            float high = -Float.MAX_VALUE;
+            for (int i = start; i <= end; i++) {
+                final float value = readShort(pcm, 2 * i) / 32768.0f;
+                if (value < low)
+                    low = value;
+                if (value > high)
+                    high = value;
+            }
+            min[c] = low;
+            max[c] = high;
+        }
+    }
 
-        synchronized (mLock) {
-            mPoints = buffer;
+    /**
+     * Adds the samples to the history ring, one column per {@link #HISTORY_SAMPLES_PER_COLUMN} samples
+     */
+    private void appendHistory(final byte[] pcm, final int samples, final int columns) {
+        if (mHistoryMin.length != columns) {
+            mHistoryMin = new float[columns];
+            mHistoryMax = new float[columns];
+            mHistoryColumn = 0;
         }
-        // Swap the buffer
-        mCurrentBuffer = mCurrentBuffer == mPointsBuffer ? mPointsBuffer2 : mPointsBuffer;
+        for (int i = 0; i < samples; i++) {
+            final float value = readShort(pcm, 2 * i) / 32768.0f;
+            if (value < mHistoryRunningMin)
+                mHistoryRunningMin = value;
+            if (value > mHistoryRunningMax)
+                mHistoryRunningMax = value;
+            if (++mHistorySamples == HISTORY_SAMPLES_PER_COLUMN) {
+                mHistoryMin[mHistoryColumn] = mHistoryRunningMin;
+                mHistoryMax[mHistoryColumn] = mHistoryRunningMax;
+                mHistoryColumn = (mHistoryColumn + 1) % columns;
+                mHistorySamples = 0;
+                mHistoryRunningMin = Float.MAX_VALUE;
+                mHistoryRunningMax = -Float.MAX_VALUE;
+            }
+        }
+    }
 
-        if (!isDrawing) {
-            isDrawing = true;
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    while (isDrawing) {
-                        mCanvas = mHolder.lockCanvas();
-                        if (mCanvas != null) {
-                            doDraw(mCanvas);
-                            mHolder.unlockCanvasAndPost(mCanvas);
-                        }
-                    }
-                }
-            }).start();
+    /**
+     * Hands the trace over to the render thread and takes the previously pending one, which the render thread did not take, as the next back buffer
+     */
+    private void publish(final Trace trace) {
+        trace.mFresh = true;
+        mBack = mPending.getAndSet(trace);
+        requestFrame();
+    }
+
+    private void requestFrame() {
+        if (mFrameRequested.compareAndSet(false, true)) {
+            final Handler handler = mRenderHandler;
+            if (handler == null || !handler.post(mScheduleFrame)) {
+                mFrameRequested.set(false);
+            }
         }
     }
 
+    private final Runnable mScheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            if (mChoreographer != null) {
+                mChoreographer.postFrameCallback(mFrameCallback);
+            } else {
+                mFrameRequested.set(false);
+            }
+        }
+    };
+
+    private final Runnable mCancelFrame = new Runnable() {
+        @Override
+        public void run() {
+            if (mChoreographer != null) {
+                mChoreographer.removeFrameCallback(mFrameCallback);
+            }
+            mFrameRequested.set(false);
+        }
+    };
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(final long frameTimeNanos) {
+            // Data published from now on requests the next frame
+            mFrameRequested.set(false);
+            final SurfaceHolder holder = mHolder;
+            final Canvas canvas = holder.lockCanvas();
+            if (canvas != null) {
+                doDraw(canvas);
+                holder.unlockCanvasAndPost(canvas);
+            }
+        }
+    };
+
     /**
-     * This method clears the view and draws the data points on the surface's canvas.
+     * This method clears the view and draws the latest published data on the surface's canvas. Called on the render thread.
      *
      * @param canvas the canvas to draw on
      */
     /* package */void doDraw(final Canvas canvas) {
+        if (mMode == MODE_SPECTROGRAM) {
+            drawSpectrogram(canvas);
+            return;
+        }
+
+        // Takes the pending trace if a newer one was published
+        if (mPending.get().mFresh) {
+            final Trace front = mFront;
+            front.mFresh = false;
+            mFront = mPending.getAndSet(front);
+        }
+
         // Draw white background
         canvas.drawColor(Color.WHITE);
 
-        // Draw the line
-        synchronized (mLock) {
-            if (mPoints != null)
-                canvas.drawLines(mPoints, mLinePaint);
+        // Draw a vertical line from the minimum to the maximum of each column
+        final Trace trace = mFront;
+        final int columns = trace.mColumns;
+        if (mLines.length < 4 * columns) {
+            mLines = new float[4 * columns];
+        }
+        final float[] lines = mLines;
+        final float half = canvas.getHeight() / 2.0f;
+        final float step = (float) canvas.getWidth() / Math.max(1, columns);
+        for (int c = 0; c < columns; c++) {
+            final float x = step * c + step / 2;
+            lines[4 * c] = lines[4 * c + 2] = x;
+            lines[4 * c + 1] = half + half * trace.mMin[c];
+            // A column of a single value is drawn one pixel high
+            lines[4 * c + 3] = Math.max(half + half * trace.mMax[c], lines[4 * c + 1] + 1);
+        }
+        canvas.drawLines(lines, 0, 4 * columns, mLinePaint);
+    }
+
+    /**
+     * Copies the new columns to the bitmap and draws it scaled to the view. The columns of the bitmap are a ring as well,
+     * the oldest column is the next one to be written.
+     */
+    private void drawSpectrogram(final Canvas canvas) {
+        canvas.drawColor(Color.BLACK);
+        final SpectrogramRing ring = mSpectrogramRing;
+        if (ring == null)
+            return;
+        final int rows = ring.mRows;
+        if (ring != mDrawnRing) {
+            if (mSpectrogram == null || mSpectrogram.getHeight() != rows) {
+                mSpectrogram = Bitmap.createBitmap(SPECTROGRAM_COLUMNS, rows, Bitmap.Config.ARGB_8888);
+            }
+            mSpectrogram.eraseColor(Color.BLACK);
+            mDrawnRing = ring;
+            mDrawnColumns = 0;
+        }
+
+        final Bitmap spectrogram = mSpectrogram;
+        final long written = ring.mWritten;
+        for (long column = Math.max(mDrawnColumns, written - SPECTROGRAM_COLUMNS); column < written; column++) {
+            final int x = (int) (column % SPECTROGRAM_COLUMNS);
+            spectrogram.setPixels(ring.mPixels, x * rows, 1, x, 0, 1, rows);
+        }
+        mDrawnColumns = written;
+
+        final int oldest = (int) (written % SPECTROGRAM_COLUMNS);
+        final int width = canvas.getWidth();
+        final int height = canvas.getHeight();
+        final int split = width * (SPECTROGRAM_COLUMNS - oldest) / SPECTROGRAM_COLUMNS;
+        mSource.set(oldest, 0, SPECTROGRAM_COLUMNS, rows);
+        mDestination.set(0, 0, split, height);
+        canvas.drawBitmap(spectrogram, mSource, mDestination, null);
+        if (oldest > 0) {
+            mSource.set(0, 0, oldest, rows);
+            mDestination.set(split, 0, width, height);
+            canvas.drawBitmap(spectrogram, mSource, mDestination, null);
+        }
+    }
+
+    /**
+     * Returns the colors of the levels from the lowest to the highest: black, blue, red, yellow and white
+     */
+    private static int[] createPalette() {
+        final int[] stops = {Color.BLACK, Color.rgb(0, 0, 160), Color.rgb(200, 0, 80), Color.rgb(255, 200, 0), Color.WHITE};
+        final int[] palette = new int[256];
+        final int segment = (palette.length - 1) / (stops.length - 1) + 1;
+        for (int i = 0; i < palette.length; i++) {
+            final int index = Math.min(i / segment, stops.length - 2);
+            final float fraction = Math.min(1.0f, (i - index * segment) / (float) segment);
+            final int from = stops[index];
+            final int to = stops[index + 1];
+            palette[i] = Color.rgb(
+                    (int) (Color.red(from) + (Color.red(to) - Color.red(from)) * fraction),
+                    (int) (Color.green(from) + (Color.green(to) - Color.green(from)) * fraction),
+                    (int) (Color.blue(from) + (Color.blue(to) - Color.blue(from)) * fraction));
         }
+        return palette;
     }
 
     private static short readShort(final byte[] data, final int start) {
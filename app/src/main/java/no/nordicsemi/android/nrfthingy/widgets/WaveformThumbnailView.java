@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.nrfthingy.widgets;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.View;
+
+import no.nordicsemi.android.nrfthingy.R;
+import no.nordicsemi.android.thingylib.core.cache.AudioFileInfo;
+
+/**
+ * Draws the peak envelope of an indexed audio file as vertical bars mirrored around the middle of the view.
+ * The bars are computed when the info is set, so drawing does not allocate, i.e. while a list scrolls.
+ */
+public class WaveformThumbnailView extends View {
+    private final Paint mPaint;
+    private float[] mLines = new float[0];
+    private int mLineCount;
+    private AudioFileInfo mInfo;
+
+    public WaveformThumbnailView(final Context context, final AttributeSet attrs) {
+        super(context, attrs);
+        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+    }
+
+    /**
+     * Sets the file whose envelope is drawn
+     *
+     * @param info the info of the file, or null to draw nothing
+     */
+    public void setAudioFileInfo(final AudioFileInfo info) {
+        if (info != mInfo) {
+            mInfo = info;
+            updateLines();
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateLines();
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        if (mLineCount > 0) {
+            canvas.drawLines(mLines, 0, 4 * mLineCount, mPaint);
+        }
+    }
+
+    private void updateLines() {
+        final AudioFileInfo info = mInfo;
+        final int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        final int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        if (info == null || !info.isValid() || width <= 0 || height <= 0) {
+            mLineCount = 0;
+            return;
+        }
+
+        final int count = info.getEnvelopeLength();
+        if (mLines.length < 4 * count) {
+            mLines = new float[4 * count];
+        }
+        final float step = (float) width / count;
+        // Half of each step is a bar, the other half the gap
+        mPaint.setStrokeWidth(Math.max(1, step / 2));
+        final float middle = getPaddingTop() + height / 2.0f;
+        for (int i = 0; i < count; i++) {
+            final float x = getPaddingLeft() + step * i + step / 2;
+            // Silent parts are drawn as a dot
+            final float half = Math.max(0.5f, info.getPeak(i) * height / 2);
+            mLines[4 * i] = mLines[4 * i + 2] = x;
+            mLines[4 * i + 1] = middle - half;
+            mLines[4 * i + 3] = middle + half;
+        }
+        mLineCount = count;
+    }
+}
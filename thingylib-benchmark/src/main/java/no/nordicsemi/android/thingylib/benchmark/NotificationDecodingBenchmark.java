@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import no.nordicsemi.android.thingylib.core.protocol.ThingyNotifications;
+
+/**
+ * Decoding of the characteristic values notified by the Thingy, one benchmark per characteristic.
+ * The output arrays are reused in the same way the ThingyConnection fills the pooled ThingyEvent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NotificationDecodingBenchmark {
+    private byte[] mValue;
+    private final int[] mIntValues = new int[4];
+    private final float[] mFloatValues = new float[9];
+
+    @Setup
+    public void setup() {
+        // Long enough for the largest notification (raw motion data, 18 bytes)
+        mValue = new byte[20];
+        new Random(42).nextBytes(mValue);
+    }
+
+    @Benchmark
+    public void temperature(final Blackhole blackhole) {
+        blackhole.consume(ThingyNotifications.formatTemperature(mValue));
+        blackhole.consume(ThingyNotifications.parseTemperature(mValue));
+    }
+
+    @Benchmark
+    public void pressure(final Blackhole blackhole) {
+        blackhole.consume(ThingyNotifications.formatPressure(mValue));
+        blackhole.consume(ThingyNotifications.parsePressure(mValue));
+    }
+
+    @Benchmark
+    public int humidity() {
+        return ThingyNotifications.parseHumidity(mValue);
+    }
+
+    @Benchmark
+    public int[] airQuality() {
+        ThingyNotifications.parseAirQuality(mValue, mIntValues);
+        return mIntValues;
+    }
+
+    @Benchmark
+    public float[] color() {
+        ThingyNotifications.parseColor(mValue, mFloatValues);
+        return mFloatValues;
+    }
+
+    @Benchmark
+    public int[] tap() {
+        ThingyNotifications.parseTap(mValue, mIntValues);
+        return mIntValues;
+    }
+
+    @Benchmark
+    public float[] quaternion() {
+        ThingyNotifications.parseQuaternion(mValue, mFloatValues);
+        return mFloatValues;
+    }
+
+    @Benchmark
+    public void pedometer(final Blackhole blackhole) {
+        blackhole.consume(ThingyNotifications.parseStepCount(mValue));
+        blackhole.consume(ThingyNotifications.parsePedometerDuration(mValue));
+    }
+
+    @Benchmark
+    public float[] rawData() {
+        ThingyNotifications.parseRawData(mValue, mFloatValues);
+        return mFloatValues;
+    }
+
+    @Benchmark
+    public float[] euler() {
+        ThingyNotifications.parseEuler(mValue, mFloatValues);
+        return mFloatValues;
+    }
+
+    @Benchmark
+    public float heading() {
+        return ThingyNotifications.parseHeading(mValue);
+    }
+
+    @Benchmark
+    public float[] gravityVector() {
+        ThingyNotifications.parseGravityVector(mValue, mFloatValues);
+        return mFloatValues;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import no.nordicsemi.android.thingylib.core.codec.PcmQuantizer;
+
+/**
+ * Conversion of 16-bit PCM into the 8-bit samples played by the Thingy speaker.
+ * <br>
+ * {@link #quantize()} rounds into a preallocated output with the PcmQuantizer used by the packet sources, {@link #quantizeDithered()}
+ * adds the TPDF dither applied to 16-bit wav files, and {@link #byteBufferReference()} is the original floating point conversion.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PcmConversionBenchmark {
+    /** Number of bytes of 16-bit PCM converted per operation */
+    @Param({"512", "1024", "32000"})
+    public int size;
+
+    private byte[] mPcm;
+    private byte[] mOutput;
+    private PcmQuantizer mQuantizer;
+    private PcmQuantizer mDitheringQuantizer;
+
+    @Setup
+    public void setup() {
+        mPcm = new byte[size];
+        new Random(42).nextBytes(mPcm);
+        mOutput = new byte[size / 2];
+        mQuantizer = new PcmQuantizer(false);
+        mDitheringQuantizer = new PcmQuantizer(true);
+    }
+
+    @Benchmark
+    public byte[] quantize() {
+        mQuantizer.quantize(mPcm, 0, mPcm.length, mOutput, 0);
+        return mOutput;
+    }
+
+    @Benchmark
+    public byte[] quantizeDithered() {
+        mDitheringQuantizer.quantize(mPcm, 0, mPcm.length, mOutput, 0);
+        return mOutput;
+    }
+
+    /**
+     * The ByteBuffer based conversion used before the conversion was moved to thingylib-core, kept as a reference.
+     */
+    @Benchmark
+    public byte[] byteBufferReference() {
+        final ByteBuffer bb = ByteBuffer.wrap(mPcm);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < mPcm.length; i += 2) {
+            mOutput[i / 2] = (byte) (((bb.getShort() * 128.0) / 32768.0) + 128.0);
+        }
+        return mOutput;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import no.nordicsemi.android.thingylib.core.codec.PcmQuantizer;
+import no.nordicsemi.android.thingylib.core.codec.PolyphaseResampler;
+import no.nordicsemi.android.thingylib.core.stream.WavPacketSource;
+
+/**
+ * Conversion of a 16-bit mono block of a wav file into speaker samples, as done by WavPacketSource.
+ * <br>
+ * {@link #resample()} converts one block to 8 kHz, {@link #resampleAndQuantize()} also quantizes it to 8 bits with dither.
+ * Both are expected to report no allocations with <code>-prof gc</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResamplerBenchmark {
+    /** Sample rate of the input in Hz */
+    @Param({"16000", "44100", "48000"})
+    public int inputRate;
+
+    /** Number of input samples per block */
+    @Param({"256"})
+    public int blockSize;
+
+    private PolyphaseResampler mResampler;
+    private PcmQuantizer mQuantizer;
+    private short[] mInput;
+    private short[] mResampled;
+    private byte[] mOutput;
+
+    @Setup
+    public void setup() {
+        mResampler = new PolyphaseResampler(inputRate, WavPacketSource.SPEAKER_SAMPLE_RATE);
+        mQuantizer = new PcmQuantizer(true);
+        mInput = new short[blockSize];
+        final Random random = new Random(42);
+        for (int i = 0; i < blockSize; i++) {
+            mInput[i] = (short) random.nextInt();
+        }
+        mResampled = new short[mResampler.getMaxOutputLength(blockSize)];
+        mOutput = new byte[mResampled.length];
+    }
+
+    @Benchmark
+    public short[] resample() {
+        mResampler.process(mInput, 0, blockSize, mResampled, 0);
+        return mResampled;
+    }
+
+    @Benchmark
+    public byte[] resampleAndQuantize() {
+        final int samples = mResampler.process(mInput, 0, blockSize, mResampled, 0);
+        mQuantizer.quantize(mResampled, 0, samples, mOutput, 0);
+        return mOutput;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import no.nordicsemi.android.thingylib.core.codec.AdpcmCodec;
+import no.nordicsemi.android.thingylib.core.dsp.SpectrumAnalyzer;
+
+/**
+ * One second of microphone audio, 16 kHz in decoded 512 byte frames, through the spectrum analyzer with 50% overlapping frames.
+ * The time per operation is the share of one core the analysis takes: it has to stay under 50 ms, i.e. 5%, without allocations
+ * (check with -prof gc).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpectrumAnalyzerBenchmark {
+    private static final int SAMPLE_RATE = 16000;
+
+    /** Number of samples of an FFT frame */
+    @Param({"256", "512", "1024"})
+    public int fftSize;
+
+    private SpectrumAnalyzer mAnalyzer;
+    private byte[][] mFrames;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        mAnalyzer = new SpectrumAnalyzer(SAMPLE_RATE, fftSize, fftSize / 2, 16);
+        mAnalyzer.setListener(new SpectrumAnalyzer.Listener() {
+            @Override
+            public void onSpectrum(final SpectrumAnalyzer analyzer, final float[] spectrum, final float[] bands) {
+                blackhole.consume(bands);
+            }
+        });
+
+        final Random random = new Random(42);
+        mFrames = new byte[SAMPLE_RATE * 2 / AdpcmCodec.PCM_FRAME_SIZE][AdpcmCodec.PCM_FRAME_SIZE];
+        for (final byte[] frame : mFrames) {
+            random.nextBytes(frame);
+        }
+    }
+
+    @Benchmark
+    public float analyzeOneSecond() {
+        for (final byte[] frame : mFrames) {
+            mAnalyzer.write(frame, 0, frame.length);
+        }
+        return mAnalyzer.getPeakFrequency();
+    }
+}
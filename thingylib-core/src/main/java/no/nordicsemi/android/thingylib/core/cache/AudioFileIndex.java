@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import no.nordicsemi.android.thingylib.core.codec.WavReader;
+import no.nordicsemi.android.thingylib.core.stream.ByteBufferInputStream;
+
+/**
+ * An index of the wav files of a directory, with the header metadata and a peak envelope of each file.
+ * <br>
+ * {@link #scan(File, String, Listener)} indexes the files added or changed since the last scan, as told by their length and
+ * modification time, on several threads at once, and drops the files that have been deleted. The index is kept in memory
+ * and stored in a small file, so a list of files is bound with {@link #get(File)} without opening any of them,
+ * also right after the application starts.
+ */
+public class AudioFileIndex {
+    /**
+     * Notified as the files are indexed, on the thread calling {@link #scan(File, String, Listener)}
+     */
+    public interface Listener {
+        void onFileIndexed(final AudioFileInfo info);
+    }
+
+    /** The default number of points of the peak envelope */
+    public static final int DEFAULT_ENVELOPE_LENGTH = 32;
+
+    private static final int INDEX_VERSION = 1;
+    private static final int BUFFER_SIZE = 4096;
+
+    private final File mIndexFile;
+    private final int mEnvelopeLength;
+    private final Map<String, AudioFileInfo> mEntries = new HashMap<>();
+    private ExecutorService mExecutor;
+
+    /**
+     * Creates the index and loads it from the file, if it exists
+     *
+     * @param indexFile      the file the index is stored in
+     * @param envelopeLength the number of points of the peak envelope of each file
+     */
+    public AudioFileIndex(final File indexFile, final int envelopeLength) {
+        if (envelopeLength <= 0) {
+            throw new IllegalArgumentException("Envelope length must be greater than 0");
+        }
+        mIndexFile = indexFile;
+        mEnvelopeLength = envelopeLength;
+        load();
+    }
+
+    /**
+     * Returns the info of the file as of the last scan, or null if the file has not been indexed. The file is not accessed.
+     *
+     * @param file the audio file
+     */
+    public synchronized AudioFileInfo get(final File file) {
+        return mEntries.get(file.getAbsolutePath());
+    }
+
+    /**
+     * Returns the number of files indexed
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Indexes the files of the directory added or changed since the last scan and drops the deleted ones, then stores the index.
+     * The files are read on a pool of threads, this method returns when all of them are indexed and should not be called
+     * on the UI thread.
+     *
+     * @param directory the directory to scan, not recursively
+     * @param suffix    the suffix of the names of the files to index, i.e. ".wav"
+     * @param listener  the listener notified of each file indexed, may be null
+     * @return the number of files indexed by this scan
+     */
+    public int scan(final File directory, final String suffix, final Listener listener) throws InterruptedException {
+        final File[] files = directory.listFiles();
+        final String prefix = directory.getAbsolutePath() + File.separator;
+        final Set<String> present = new HashSet<>();
+        final List<File> changed = new ArrayList<>();
+        synchronized (this) {
+            if (files != null) {
+                for (final File file : files) {
+                    if (!file.isFile() || !file.getName().endsWith(suffix)) {
+                        continue;
+                    }
+                    final String path = file.getAbsolutePath();
+                    present.add(path);
+                    final AudioFileInfo info = mEntries.get(path);
+                    if (info == null || info.mFileLength != file.length() || info.mModified != file.lastModified()) {
+                        changed.add(file);
+                    }
+                }
+            }
+            boolean removed = false;
+            final Iterator<String> iterator = mEntries.keySet().iterator();
+            while (iterator.hasNext()) {
+                final String path = iterator.next();
+                if (path.startsWith(prefix) && !present.contains(path)) {
+                    iterator.remove();
+                    removed = true;
+                }
+            }
+            if (changed.isEmpty()) {
+                if (removed) {
+                    save();
+                }
+                return 0;
+            }
+        }
+
+        final CompletionService<AudioFileInfo> completion = new ExecutorCompletionService<>(getExecutor());
+        for (final File file : changed) {
+            completion.submit(new Callable<AudioFileInfo>() {
+                @Override
+                public AudioFileInfo call() {
+                    return index(file, mEnvelopeLength);
+                }
+            });
+        }
+        for (int i = 0; i < changed.size(); i++) {
+            final AudioFileInfo info;
+            try {
+                info = completion.take().get();
+            } catch (final ExecutionException e) {
+                // index() reports unreadable files as invalid, it does not throw
+                continue;
+            }
+            synchronized (this) {
+                mEntries.put(info.mPath, info);
+            }
+            if (listener != null) {
+                listener.onFileIndexed(info);
+            }
+        }
+        synchronized (this) {
+            save();
+        }
+        return changed.size();
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            final int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            mExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int mCount;
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "AudioFileIndexer " + ++mCount);
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return mExecutor;
+    }
+
+    /**
+     * Reads the header and computes the peak envelope of the file. The file is memory mapped and read once.
+     *
+     * @return the info, invalid if the file is not a supported wav file
+     */
+    /*package access*/ static AudioFileInfo index(final File file, final int envelopeLength) {
+        final AudioFileInfo info = new AudioFileInfo(file.getAbsolutePath(), file.length(), file.lastModified());
+        WavReader reader = null;
+        try {
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = randomAccessFile.getChannel();
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                reader = new WavReader(new ByteBufferInputStream(buffer));
+            } finally {
+                randomAccessFile.close();
+            }
+
+            final int frameSize = reader.getFrameSize();
+            if (frameSize <= 0) {
+                throw new IOException("Invalid frame size");
+            }
+            final boolean is16Bit = reader.getBitsPerSample() == 16;
+            // A truncated file declares more data than it holds
+            final long frames = Math.min(reader.getDataLength(), info.mFileLength) / frameSize;
+            final int[] peaks = new int[envelopeLength];
+            final byte[] data = new byte[BUFFER_SIZE - BUFFER_SIZE % frameSize];
+            long frame = 0;
+            int read;
+            while ((read = reader.read(data, 0, data.length)) > 0) {
+                for (int index = 0; index + frameSize <= read; frame++) {
+                    int peak = 0;
+                    for (int end = index + frameSize; index < end; ) {
+                        final int value;
+                        if (is16Bit) {
+                            value = Math.abs((short) ((data[index] & 0xFF) | (data[index + 1] << 8)));
+                            index += 2;
+                        } else {
+                            value = Math.abs((data[index] & 0xFF) - 128) << 8;
+                            index++;
+                        }
+                        peak = Math.max(peak, value);
+                    }
+                    final int point = (int) Math.min(envelopeLength - 1, frame * envelopeLength / Math.max(1, frames));
+                    peaks[point] = Math.max(peaks[point], peak);
+                }
+            }
+
+            info.mSampleRate = reader.getSampleRate();
+            info.mChannels = reader.getChannels();
+            info.mBitsPerSample = reader.getBitsPerSample();
+            info.mFrames = frame;
+            info.mEnvelope = new byte[envelopeLength];
+            for (int i = 0; i < envelopeLength; i++) {
+                info.mEnvelope[i] = (byte) Math.min(255, peaks[i] * 255 / 32767);
+            }
+        } catch (final IOException e) {
+            // Not a supported wav file, kept as invalid so it is not read again until it changes
+            info.mSampleRate = 0;
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+        return info;
+    }
+
+    private void load() {
+        if (!mIndexFile.isFile()) {
+            return;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mIndexFile)));
+            try {
+                if (in.readInt() != INDEX_VERSION || in.readInt() != mEnvelopeLength) {
+                    // Indexed with another envelope length, all the files are indexed again
+                    return;
+                }
+                final int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    final AudioFileInfo info = new AudioFileInfo(in.readUTF(), in.readLong(), in.readLong());
+                    info.mSampleRate = in.readInt();
+                    info.mChannels = in.readByte();
+                    info.mBitsPerSample = in.readByte();
+                    info.mFrames = in.readLong();
+                    if (info.mSampleRate > 0) {
+                        info.mEnvelope = new byte[mEnvelopeLength];
+                        in.readFully(info.mEnvelope);
+                    }
+                    mEntries.put(info.mPath, info);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            // A damaged index is rebuilt by the next scan
+            mEntries.clear();
+        }
+    }
+
+    /**
+     * Writes the index into a temporary file, which then replaces the index, so a crash never leaves a partial index
+     */
+    private void save() {
+        final File temp = new File(mIndexFile.getPath() + ".tmp");
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(mEnvelopeLength);
+                out.writeInt(mEntries.size());
+                for (final AudioFileInfo info : mEntries.values()) {
+                    out.writeUTF(info.mPath);
+                    out.writeLong(info.mFileLength);
+                    out.writeLong(info.mModified);
+                    out.writeInt(info.mSampleRate);
+                    out.writeByte(info.mChannels);
+                    out.writeByte(info.mBitsPerSample);
+                    out.writeLong(info.mFrames);
+                    if (info.mSampleRate > 0) {
+                        out.write(info.mEnvelope);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(mIndexFile)) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        } catch (final IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.cache;
+
+/**
+ * The metadata of an audio file kept by the {@link AudioFileIndex}: the format read from the wav header, the duration
+ * and a peak envelope, i.e. to draw a thumbnail of the waveform.
+ * <br>
+ * An info is not modified once indexed; a changed file gets a new one.
+ */
+public final class AudioFileInfo {
+    /*package access*/ final String mPath;
+    /*package access*/ final long mFileLength;
+    /*package access*/ final long mModified;
+    /*package access*/ int mSampleRate;
+    /*package access*/ int mChannels;
+    /*package access*/ int mBitsPerSample;
+    /*package access*/ long mFrames;
+    /*package access*/ byte[] mEnvelope = new byte[0];
+
+    /*package access*/ AudioFileInfo(final String path, final long fileLength, final long modified) {
+        mPath = path;
+        mFileLength = fileLength;
+        mModified = modified;
+    }
+
+    /**
+     * Returns the absolute path of the file
+     */
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * Returns true if the file is a supported wav file. The other getters return 0 for an unsupported file.
+     */
+    public boolean isValid() {
+        return mSampleRate > 0;
+    }
+
+    /**
+     * Returns the sample rate in Hz
+     */
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * Returns the number of channels
+     */
+    public int getChannels() {
+        return mChannels;
+    }
+
+    /**
+     * Returns the number of bits per sample, 8 or 16
+     */
+    public int getBitsPerSample() {
+        return mBitsPerSample;
+    }
+
+    /**
+     * Returns the duration of the audio in milliseconds
+     */
+    public long getDurationMillis() {
+        return mSampleRate > 0 ? mFrames * 1000 / mSampleRate : 0;
+    }
+
+    /**
+     * Returns the number of points of the peak envelope
+     */
+    public int getEnvelopeLength() {
+        return mEnvelope.length;
+    }
+
+    /**
+     * Returns the peak of the absolute amplitude over the given part of the audio, from 0 to 1
+     *
+     * @param index the index of the point, from 0 to {@link #getEnvelopeLength()} - 1
+     */
+    public float getPeak(final int index) {
+        return (mEnvelope[index] & 0xFF) / 255.0f;
+    }
+}
@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import no.nordicsemi.android.thingylib.core.stream.ByteBufferPacketSource;
+import no.nordicsemi.android.thingylib.core.stream.PacketSource;
+import no.nordicsemi.android.thingylib.core.stream.WavPacketSource;
+
+/**
+ * A disk cache of audio clips transcoded into the 8-bit 8 kHz format played by the Thingy speaker.
+ * <br>
+ * A wav file is converted once and stored under the SHA-1 hash of its content, so a clip imported twice under different names
+ * is stored once. The clips are memory mapped when played, so the playback starts without reading or converting the file.
+ * The path, length and modification time of each source file are remembered with the hash, so a file that has not changed
+ * is found without being hashed again, and its duration is known without opening it.
+ * <br>
+ * When the clips take more than the maximum size, the least recently played ones are deleted. The index is stored in the
+ * cache directory and loaded when the cache is created.
+ */
+public class SpeakerClipCache {
+    /**
+     * Notified when a clip has been transcoded, or found in the cache, by {@link #prefetch(File, Listener)}.
+     * Called on the thread of the cache.
+     */
+    public interface Listener {
+        /**
+         * @param source         the wav file
+         * @param durationMillis the duration of the clip in milliseconds, or -1 if the file could not be transcoded
+         */
+        void onClipCached(final File source, final long durationMillis);
+    }
+
+    private static final String INDEX_FILE = "index";
+    private static final String CLIP_EXTENSION = ".u8";
+    private static final int INDEX_VERSION = 1;
+    private static final int BUFFER_SIZE = 4096;
+
+    /** A transcoded clip, in the order of the last use when iterated */
+    private static final class Entry {
+        final String mKey;
+        final long mLength;
+
+        Entry(final String key, final long length) {
+            mKey = key;
+            mLength = length;
+        }
+    }
+
+    /** A source file and the clip it was transcoded into */
+    private static final class Source {
+        final long mFileLength;
+        final long mModified;
+        final String mKey;
+        final long mSamples;
+
+        Source(final long fileLength, final long modified, final String key, final long samples) {
+            mFileLength = fileLength;
+            mModified = modified;
+            mKey = key;
+            mSamples = samples;
+        }
+    }
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Source> mSources = new HashMap<>();
+    private long mSize;
+    private ExecutorService mExecutor;
+
+    /**
+     * Creates the cache and loads its index. Clips missing from the index are deleted.
+     *
+     * @param directory the directory of the cache, created if needed
+     * @param maxSize   the maximum size of the clips in bytes
+     */
+    public SpeakerClipCache(final File directory, final long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        loadIndex();
+
+        // Clips written but not indexed, i.e. when the process was killed while transcoding
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final String name = file.getName();
+                if (!name.equals(INDEX_FILE) && !mEntries.containsKey(keyOf(name))) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the total size of the cached clips in bytes
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the maximum size of the cached clips in bytes
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the duration of the clip transcoded from the file, if the file has been transcoded and has not changed since.
+     * The file is not opened.
+     *
+     * @param source the wav file
+     * @return the duration in milliseconds or -1 if not known
+     */
+    public synchronized long getDurationMillis(final File source) {
+        final Source known = findSource(source);
+        return known != null ? known.mSamples * 1000 / WavPacketSource.SPEAKER_SAMPLE_RATE : -1;
+    }
+
+    /**
+     * Opens the cached clip of the file if the file has been transcoded and has not changed since. The file is not opened.
+     *
+     * @param source the wav file
+     * @return the memory mapped clip or null if the file is not in the cache
+     * @throws IOException if the cached clip could not be mapped
+     */
+    public synchronized PacketSource open(final File source) throws IOException {
+        final Source known = findSource(source);
+        if (known == null) {
+            return null;
+        }
+        final Entry entry = mEntries.get(known.mKey);
+        return entry != null ? map(entry) : null;
+    }
+
+    /**
+     * Opens the cached clip of the file, transcoding the file first if it is not in the cache.
+     * This may take a while for a long file and should not be called on the UI thread.
+     *
+     * @param source the wav file
+     * @return the memory mapped clip
+     * @throws IOException if the file could not be read or is not a supported wav file, or the clip could not be written
+     */
+    public PacketSource openOrTranscode(final File source) throws IOException {
+        final PacketSource cached = open(source);
+        if (cached != null) {
+            return cached;
+        }
+
+        // The length and time are read before hashing, so a file modified meanwhile is hashed again next time
+        final long fileLength = source.length();
+        final long modified = source.lastModified();
+        final String key = hash(source);
+        synchronized (this) {
+            final Entry entry = mEntries.get(key);
+            if (entry != null) {
+                // The same content was cached from another file
+                mSources.put(source.getAbsolutePath(), new Source(fileLength, modified, key, entry.mLength));
+                saveIndex();
+                return map(entry);
+            }
+        }
+
+        final File temp = File.createTempFile(key, ".tmp", mDirectory);
+        final long samples;
+        try {
+            samples = transcode(source, temp);
+        } catch (final IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw e;
+        }
+
+        synchronized (this) {
+            final File clip = new File(mDirectory, key + CLIP_EXTENSION);
+            if (!temp.renameTo(clip)) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                throw new IOException("Unable to store the clip " + clip);
+            }
+            Entry entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, samples);
+                mEntries.put(key, entry);
+                mSize += samples;
+            }
+            mSources.put(source.getAbsolutePath(), new Source(fileLength, modified, key, samples));
+            evict(key);
+            saveIndex();
+            return map(entry);
+        }
+    }
+
+    /**
+     * Transcodes the file on the thread of the cache, unless it is in the cache already.
+     *
+     * @param source   the wav file
+     * @param listener the listener notified when the clip is ready, may be null
+     */
+    public void prefetch(final File source, final Listener listener) {
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                long duration;
+                try {
+                    openOrTranscode(source).close();
+                    duration = getDurationMillis(source);
+                } catch (final IOException e) {
+                    duration = -1;
+                }
+                if (listener != null) {
+                    listener.onClipCached(source, duration);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes all the clips
+     */
+    public synchronized void clear() {
+        for (final Entry entry : mEntries.values()) {
+            //noinspection ResultOfMethodCallIgnored
+            clipFile(entry).delete();
+        }
+        mEntries.clear();
+        mSources.clear();
+        mSize = 0;
+        saveIndex();
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "ThingyClipCache");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return mExecutor;
+    }
+
+    /**
+     * Returns the source if it has not changed since it was transcoded. Its clip may have been evicted since.
+     */
+    private Source findSource(final File source) {
+        final Source known = mSources.get(source.getAbsolutePath());
+        if (known == null || known.mFileLength != source.length() || known.mModified != source.lastModified()) {
+            return null;
+        }
+        return known;
+    }
+
+    /**
+     * Maps the clip and marks it as the most recently used. The order is saved with the next change of the index.
+     */
+    private PacketSource map(final Entry entry) throws IOException {
+        mEntries.get(entry.mKey);
+        final RandomAccessFile file = new RandomAccessFile(clipFile(entry), "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            // The mapping stays valid after the channel is closed, and after the clip is evicted
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ByteBufferPacketSource(buffer);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Deletes the least recently used clips until the cache fits, keeping the given one
+     */
+    private void evict(final String keep) {
+        final Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.mKey.equals(keep)) {
+                continue;
+            }
+            //noinspection ResultOfMethodCallIgnored
+            clipFile(entry).delete();
+            iterator.remove();
+            mSize -= entry.mLength;
+        }
+    }
+
+    private File clipFile(final Entry entry) {
+        return new File(mDirectory, entry.mKey + CLIP_EXTENSION);
+    }
+
+    private static String keyOf(final String fileName) {
+        return fileName.endsWith(CLIP_EXTENSION) ? fileName.substring(0, fileName.length() - CLIP_EXTENSION.length()) : fileName;
+    }
+
+    private static long transcode(final File source, final File clip) throws IOException {
+        final WavPacketSource wav = WavPacketSource.open(source);
+        try {
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(clip), BUFFER_SIZE);
+            try {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                long samples = 0;
+                int read;
+                while ((read = wav.read(buffer, 0, buffer.length)) > 0) {
+                    out.write(buffer, 0, read);
+                    samples += read;
+                }
+                return samples;
+            } finally {
+                out.close();
+            }
+        } finally {
+            wav.close();
+        }
+    }
+
+    private static String hash(final File source) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 not available", e);
+        }
+        final FileInputStream in = new FileInputStream(source);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        final byte[] hash = digest.digest();
+        final StringBuilder builder = new StringBuilder(2 * hash.length);
+        for (final byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Loads the index, the entries from the least to the most recently used. Entries whose clip is missing
+     * and sources that have been deleted are dropped.
+     */
+    private void loadIndex() {
+        final File index = new File(mDirectory, INDEX_FILE);
+        if (!index.isFile()) {
+            return;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+            try {
+                if (in.readInt() != INDEX_VERSION) {
+                    return;
+                }
+                final int entries = in.readInt();
+                for (int i = 0; i < entries; i++) {
+                    final Entry entry = new Entry(in.readUTF(), in.readLong());
+                    if (clipFile(entry).length() == entry.mLength) {
+                        mEntries.put(entry.mKey, entry);
+                        mSize += entry.mLength;
+                    }
+                }
+                final int sources = in.readInt();
+                for (int i = 0; i < sources; i++) {
+                    final String path = in.readUTF();
+                    final Source source = new Source(in.readLong(), in.readLong(), in.readUTF(), in.readLong());
+                    if (new File(path).exists()) {
+                        mSources.put(path, source);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            // A damaged index is rebuilt as the files are transcoded again
+            mEntries.clear();
+            mSources.clear();
+            mSize = 0;
+        }
+    }
+
+    /**
+     * Writes the index into a temporary file, which then replaces the index, so a crash never leaves a partial index
+     */
+    private void saveIndex() {
+        final File temp = new File(mDirectory, INDEX_FILE + ".tmp");
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(mEntries.size());
+                for (final Entry entry : mEntries.values()) {
+                    out.writeUTF(entry.mKey);
+                    out.writeLong(entry.mLength);
+                }
+                // Sources of evicted clips are kept, their duration is still valid
+                out.writeInt(mSources.size());
+                for (final Map.Entry<String, Source> source : mSources.entrySet()) {
+                    final Source value = source.getValue();
+                    out.writeUTF(source.getKey());
+                    out.writeLong(value.mFileLength);
+                    out.writeLong(value.mModified);
+                    out.writeUTF(value.mKey);
+                    out.writeLong(value.mSamples);
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(new File(mDirectory, INDEX_FILE))) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        } catch (final IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.codec;
+
+/**
+ * Decodes the IMA ADPCM frames sent by the Thingy microphone.
+ * <br>
+ * Each frame starts with the predicted value (16-bit, big-endian) and the step index (8-bit), followed by the 4-bit samples.
+ * A frame of {@link #FRAME_SIZE} bytes decodes into {@link #PCM_FRAME_SIZE} bytes of 16-bit little-endian PCM at 16 kHz.
+ */
+public final class AdpcmCodec {
+    /** The size of the ADPCM frame sent by the Thingy in bytes */
+    public static final int FRAME_SIZE = 131;
+    /** The size of the decoded frame in bytes */
+    public static final int PCM_FRAME_SIZE = 512;
+    /** The sample rate of the Thingy microphone */
+    public static final int SAMPLE_RATE = 16000;
+    /** The Thingy sends a frame of 256 samples every 16 ms */
+    public static final float FRAMES_PER_SECOND = SAMPLE_RATE / (float) (PCM_FRAME_SIZE / 2);
+
+    private static final int HEADER_SIZE = 3;
+
+    /** Intel ADPCM step variation table */
+    private static final int[] INDEX_TABLE = { -1, -1, -1, -1, 2, 4, 6, 8, -1, -1, -1, -1, 2, 4, 6, 8, };
+
+    /** ADPCM step size table */
+    private static final int[] STEP_SIZE_TABLE = { 7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45, 50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209,
+            230, 253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+            5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767 };
+
+    private AdpcmCodec() {
+    }
+
+    /**
+     * Returns the number of PCM bytes the ADPCM frame of the given length decodes into.
+     */
+    public static int getDecodedSize(final int frameLength) {
+        return Math.max(0, frameLength - HEADER_SIZE) * 4;
+    }
+
+    /**
+     * Returns the number of frames the Thingy sends in the given time, i.e. to find the frames lost on the link
+     * by comparing it with the number of frames received since the start of the stream.
+     *
+     * @param elapsedMillis the time since the start of the stream in milliseconds
+     */
+    public static int getExpectedFrameCount(final long elapsedMillis) {
+        return elapsedMillis > 0 ? (int) (elapsedMillis * FRAMES_PER_SECOND / 1000.0f) : 0;
+    }
+
+    /**
+     * Returns true if the frame starts with a valid header, i.e. its step index is within the step size table.
+     * A frame gathered from packets of different frames, after a packet was lost, usually fails this check.
+     */
+    public static boolean isValidFrame(final byte[] adpcm, final int offset) {
+        final int index = adpcm[offset + 2];
+        return index >= 0 && index < STEP_SIZE_TABLE.length;
+    }
+
+    /**
+     * Decodes the ADPCM frame into 16-bit little-endian PCM.
+     *
+     * @param adpcm     the array containing the ADPCM frame
+     * @param offset    the offset of the frame in the array
+     * @param length    the length of the frame, including the 3 bytes header
+     * @param pcm       the output array, at least {@link #getDecodedSize(int)} bytes from pcmOffset
+     * @param pcmOffset the offset in the output array
+     * @return the number of PCM bytes written
+     */
+    public static int decode(final byte[] adpcm, final int offset, final int length, final byte[] pcm, final int pcmOffset) {
+        // The first 2 bytes of ADPCM frame are the predicted value
+        int valuePredicted = (short) ((adpcm[offset] & 0xFF) << 8 | (adpcm[offset + 1] & 0xFF));
+        // The 3rd byte is the index value
+        int index = adpcm[offset + 2];
+        if (index < 0)
+            index = 0;
+        if (index > 88)
+            index = 88;
+
+        int diff; /* Current change to valuePredicted */
+        boolean bufferStep = false;
+        int inputBuffer = 0;
+        int delta;
+        int sign;
+        int step = STEP_SIZE_TABLE[index];
+
+        final int end = offset + length;
+        int out = pcmOffset;
+        for (int in = offset + HEADER_SIZE; in < end; out += 2) {
+            /* Step 1 - get the delta value */
+            if (bufferStep) {
+                delta = inputBuffer & 0x0F;
+                in++;
+            } else {
+                inputBuffer = adpcm[in];
+                delta = (inputBuffer >> 4) & 0x0F;
+            }
+            bufferStep = !bufferStep;
+
+            /* Step 2 - Find new index value (for later) */
+            index += INDEX_TABLE[delta];
+            if (index < 0)
+                index = 0;
+            if (index > 88)
+                index = 88;
+
+            /* Step 3 - Separate sign and magnitude */
+            sign = delta & 8;
+            delta = delta & 7;
+
+            /* Step 4 - Compute difference and new predicted value */
+            diff = step >> 3;
+            if ((delta & 4) > 0)
+                diff += step;
+            if ((delta & 2) > 0)
+                diff += step >> 1;
+            if ((delta & 1) > 0)
+                diff += step >> 2;
+
+            if (sign > 0)
+                valuePredicted -= diff;
+            else
+                valuePredicted += diff;
+
+            /* Step 5 - clamp output value */
+            if (valuePredicted > 32767)
+                valuePredicted = 32767;
+            else if (valuePredicted < -32768)
+                valuePredicted = -32768;
+
+            /* Step 6 - Update step value */
+            step = STEP_SIZE_TABLE[index];
+
+            /* Step 7 - Output value */
+            pcm[out] = (byte) (valuePredicted & 0xFF);
+            pcm[out + 1] = (byte) ((valuePredicted >>> 8) & 0xFF);
+        }
+        return out - pcmOffset;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Encodes and decodes the Eddystone URL, using the Eddystone scheme prefixes and expansion codes.
+ */
+public final class EddystoneUriCodec {
+    private static final String URN_UUID = "urn:uuid:";
+
+    /**
+     * URI Scheme maps a byte code into the scheme and an optional scheme specific prefix.
+     */
+    private static final String[] URI_SCHEMES = {
+            "http://www.",
+            "https://www.",
+            "http://",
+            "https://",
+            URN_UUID // RFC 2141 and RFC 4122
+    };
+
+    /**
+     * Expansion strings for "http" and "https" schemes. These contain strings appearing anywhere in a
+     * URL. Restricted to Generic TLDs.
+     * <p/>
+     * Note: this is a scheme specific encoding.
+     */
+    private static final String[] URL_CODES = {
+            ".com/",
+            ".org/",
+            ".edu/",
+            ".net/",
+            ".info/",
+            ".biz/",
+            ".gov/",
+            ".com",
+            ".org",
+            ".edu",
+            ".net",
+            ".info",
+            ".biz",
+            ".gov"
+    };
+
+    private EddystoneUriCodec() {
+    }
+
+    /**
+     * Decodes the Uri with embedded expansion codes.
+     *
+     * @param serviceData the array containing the encoded Uri
+     * @param start       the offset of the encoded Uri
+     * @param length      the length of the encoded Uri
+     * @return the Uri, or null if the data are invalid or the scheme is unknown
+     */
+    public static String decodeUri(final byte[] serviceData, final int start, final int length) {
+        if (start < 0 || serviceData.length < start + length)
+            return null;
+
+        final StringBuilder uriBuilder = new StringBuilder();
+        int offset = 0;
+        if (offset < length) {
+            byte b = serviceData[start + offset++];
+            String scheme = get(URI_SCHEMES, b);
+            if (scheme != null) {
+                uriBuilder.append(scheme);
+                if (isNetworkUrl(scheme)) {
+                    return decodeUrl(serviceData, start + offset, length - 1, uriBuilder);
+                } else if (URN_UUID.equals(scheme)) {
+                    return decodeUrnUuid(serviceData, start + offset, uriBuilder);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String decodeUrl(final byte[] serviceData, final int start, final int length, final StringBuilder urlBuilder) {
+        int offset = 0;
+        while (offset < length) {
+            byte b = serviceData[start + offset++];
+            String code = get(URL_CODES, b);
+            if (code != null) {
+                urlBuilder.append(code);
+            } else {
+                urlBuilder.append((char) b);
+            }
+        }
+        return urlBuilder.toString();
+    }
+
+    private static String decodeUrnUuid(final byte[] serviceData, final int offset, final StringBuilder urnBuilder) {
+        ByteBuffer bb = ByteBuffer.wrap(serviceData);
+        // UUIDs are ordered as byte array, which means most significant first
+        bb.order(ByteOrder.BIG_ENDIAN);
+        long mostSignificantBytes, leastSignificantBytes;
+        try {
+            bb.position(offset);
+            mostSignificantBytes = bb.getLong();
+            leastSignificantBytes = bb.getLong();
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        UUID uuid = new UUID(mostSignificantBytes, leastSignificantBytes);
+        urnBuilder.append(uuid.toString());
+        return urnBuilder.toString();
+    }
+
+    /**
+     * Creates the Uri string with embedded expansion codes.
+     *
+     * @param uri to be encoded
+     * @return the Uri string with expansion codes, or null if the scheme is not supported or the urn:uuid is invalid
+     */
+    public static byte[] encodeUri(final String uri) {
+        if (uri.length() == 0) {
+            return new byte[0];
+        }
+        ByteBuffer bb = ByteBuffer.allocate(uri.length());
+        // UUIDs are ordered as byte array, which means most significant first
+        bb.order(ByteOrder.BIG_ENDIAN);
+        int position = 0;
+
+        // Add the byte code for the scheme or return null if none
+        final int schemeCode = encodeUriScheme(uri);
+        if (schemeCode < 0) {
+            return null;
+        }
+        String scheme = URI_SCHEMES[schemeCode];
+        bb.put((byte) schemeCode);
+        position += scheme.length();
+
+        if (isNetworkUrl(scheme)) {
+            return encodeUrl(uri, position, bb);
+        } else if (URN_UUID.equals(scheme)) {
+            return encodeUrnUuid(uri, position, bb);
+        }
+        return null;
+    }
+
+    private static int encodeUriScheme(final String uri) {
+        String lowerCaseUri = uri.toLowerCase(Locale.ENGLISH);
+        for (int i = 0; i < URI_SCHEMES.length; i++) {
+            if (lowerCaseUri.startsWith(URI_SCHEMES[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] encodeUrl(final String url, int position, final ByteBuffer bb) {
+        while (position < url.length()) {
+            byte expansion = findLongestExpansion(url, position);
+            if (expansion >= 0) {
+                bb.put(expansion);
+                position += URL_CODES[expansion].length();
+            } else {
+                bb.put((byte) url.charAt(position++));
+            }
+        }
+        return byteBufferToArray(bb);
+    }
+
+    /**
+     * Finds the longest expansion from the uri at the current position.
+     *
+     * @param uriString the Uri
+     * @param pos       start position
+     * @return an index in URL_CODES or -1 if none.
+     */
+    private static byte findLongestExpansion(final String uriString, final int pos) {
+        byte expansion = -1;
+        int expansionLength = 0;
+        for (int i = 0; i < URL_CODES.length; i++) {
+            String value = URL_CODES[i];
+            if (value.length() > expansionLength && uriString.startsWith(value, pos)) {
+                expansion = (byte) i;
+                expansionLength = value.length();
+            }
+        }
+        return expansion;
+    }
+
+    private static byte[] encodeUrnUuid(final String urn, final int position, final ByteBuffer bb) {
+        String uuidString = urn.substring(position, urn.length());
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(uuidString);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // UUIDs are ordered as byte array, which means most significant first
+        bb.order(ByteOrder.BIG_ENDIAN);
+        bb.putLong(uuid.getMostSignificantBits());
+        bb.putLong(uuid.getLeastSignificantBits());
+        return byteBufferToArray(bb);
+    }
+
+    private static byte[] byteBufferToArray(final ByteBuffer bb) {
+        byte[] bytes = new byte[bb.position()];
+        bb.rewind();
+        bb.get(bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static String get(final String[] table, final byte code) {
+        return code >= 0 && code < table.length ? table[code] : null;
+    }
+
+    /**
+     * Equivalent of android.webkit.URLUtil.isNetworkUrl() for the scheme prefixes.
+     */
+    private static boolean isNetworkUrl(final String scheme) {
+        return scheme.startsWith("http://") || scheme.startsWith("https://");
+    }
+}
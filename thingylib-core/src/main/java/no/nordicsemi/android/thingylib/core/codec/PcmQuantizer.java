@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.codec;
+
+/**
+ * Converts signed 16-bit samples into the unsigned 8-bit samples played by the Thingy speaker using integer arithmetic.
+ * <br>
+ * Samples are rounded to the nearest 8-bit value. With dither enabled, triangular (TPDF) noise of one 8-bit step is added
+ * before rounding, which turns the quantization distortion of quiet passages into a low, constant noise floor.
+ * An instance keeps the state of its noise generator and must not be shared between threads.
+ */
+public class PcmQuantizer {
+    private final boolean mDither;
+    private int mSeed = 0x2545F491;
+
+    /**
+     * Creates the quantizer
+     *
+     * @param dither true to add TPDF dither before rounding
+     */
+    public PcmQuantizer(final boolean dither) {
+        mDither = dither;
+    }
+
+    /**
+     * Returns true if dither is added before rounding
+     */
+    public boolean isDither() {
+        return mDither;
+    }
+
+    /**
+     * Rounds a signed 16-bit sample to an unsigned 8-bit sample, without dither.
+     *
+     * @param sample the 16-bit sample
+     * @return the unsigned 8-bit sample, 0-255
+     */
+    public static int quantize(final int sample) {
+        final int value = (sample + 128) >> 8;
+        return (value > 127 ? 127 : value < -128 ? -128 : value) + 128;
+    }
+
+    /**
+     * Converts the 16-bit samples into unsigned 8-bit samples.
+     *
+     * @param samples   the 16-bit samples
+     * @param offset    the offset of the first sample
+     * @param length    the number of samples
+     * @param out       the output array, at least length bytes from outOffset
+     * @param outOffset the offset in the output array
+     * @return the number of samples written
+     */
+    public int quantize(final short[] samples, final int offset, final int length, final byte[] out, final int outOffset) {
+        if (!mDither) {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = (byte) quantize(samples[offset + i]);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = (byte) quantize(samples[offset + i] + nextDither());
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Converts the 16-bit little-endian samples into unsigned 8-bit samples.
+     *
+     * @param pcm       the array containing the 16-bit samples
+     * @param offset    the offset of the first sample in the array
+     * @param length    the number of bytes to convert, a trailing odd byte is ignored
+     * @param out       the output array, at least length / 2 bytes from outOffset
+     * @param outOffset the offset in the output array
+     * @return the number of samples written
+     */
+    public int quantize(final byte[] pcm, final int offset, final int length, final byte[] out, final int outOffset) {
+        final int samples = length / 2;
+        for (int i = 0; i < samples; i++) {
+            final int index = offset + 2 * i;
+            int sample = (short) ((pcm[index] & 0xFF) | (pcm[index + 1] << 8));
+            if (mDither) {
+                sample += nextDither();
+            }
+            out[outOffset + i] = (byte) quantize(sample);
+        }
+        return samples;
+    }
+
+    /**
+     * Returns triangular noise in the range of one 8-bit step, (-256, 256) in 16-bit units
+     */
+    private int nextDither() {
+        // xorshift32, two 8-bit uniform values per call
+        int seed = mSeed;
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        mSeed = seed;
+        return (seed & 0xFF) - ((seed >>> 8) & 0xFF);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.codec;
+
+/**
+ * Converts the sample rate of a mono 16-bit stream by a rational factor with a polyphase windowed-sinc filter,
+ * i.e. the 44.1 kHz or 16 kHz audio of a wav file to the 8 kHz played by the Thingy speaker.
+ * <br>
+ * The stream is processed block by block into caller provided buffers. The filter history is kept between blocks,
+ * and the working buffer is only allocated when a block larger than the previous ones is processed.
+ * An instance keeps the state of one stream and must not be shared between threads.
+ */
+public class PolyphaseResampler {
+    private static final int MIN_TAPS_PER_PHASE = 16;
+    private static final int MAX_TAPS_PER_PHASE = 128;
+    /** The pass band ends at this fraction of the lowest Nyquist frequency, leaving room for the filter transition */
+    private static final double PASS_BAND = 0.9;
+
+    private final int mInputRate;
+    private final int mOutputRate;
+    private final int mUp;
+    private final int mDown;
+    private final int mTaps;
+    /** Filter coefficients reordered per phase: mCoefficients[phase * mTaps + k] */
+    private final float[] mCoefficients;
+
+    private float[] mBuffer;
+    private int mPhase;
+    private int mNextInput;
+
+    /**
+     * Creates the resampler
+     *
+     * @param inputRate  sample rate of the input in Hz
+     * @param outputRate sample rate of the output in Hz
+     */
+    public PolyphaseResampler(final int inputRate, final int outputRate) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("Invalid sample rate");
+        }
+        mInputRate = inputRate;
+        mOutputRate = outputRate;
+        final int gcd = gcd(inputRate, outputRate);
+        mUp = outputRate / gcd;
+        mDown = inputRate / gcd;
+
+        final int ratio = (mDown + mUp - 1) / mUp;
+        mTaps = Math.min(MAX_TAPS_PER_PHASE, MIN_TAPS_PER_PHASE * Math.max(1, ratio));
+        mCoefficients = mUp == mDown ? null : createCoefficients(mUp, mDown, mTaps);
+        mBuffer = new float[mTaps - 1];
+    }
+
+    /**
+     * Returns the sample rate of the input in Hz
+     */
+    public int getInputRate() {
+        return mInputRate;
+    }
+
+    /**
+     * Returns the sample rate of the output in Hz
+     */
+    public int getOutputRate() {
+        return mOutputRate;
+    }
+
+    /**
+     * Returns the maximum number of samples {@link #process(short[], int, int, short[], int)} writes for the given input length
+     */
+    public int getMaxOutputLength(final int inputLength) {
+        return (int) (((long) inputLength * mUp + mDown - 1) / mDown) + 1;
+    }
+
+    /**
+     * Resamples the next block of the stream.
+     *
+     * @param input        the input samples
+     * @param inputOffset  the offset of the first input sample
+     * @param inputLength  the number of input samples
+     * @param output       the output array, at least {@link #getMaxOutputLength(int)} samples from outputOffset
+     * @param outputOffset the offset in the output array
+     * @return the number of samples written
+     */
+    public int process(final short[] input, final int inputOffset, final int inputLength, final short[] output, final int outputOffset) {
+        if (mCoefficients == null) {
+            System.arraycopy(input, inputOffset, output, outputOffset, inputLength);
+            return inputLength;
+        }
+
+        final int history = mTaps - 1;
+        if (mBuffer.length < history + inputLength) {
+            final float[] buffer = new float[history + inputLength];
+            System.arraycopy(mBuffer, 0, buffer, 0, history);
+            mBuffer = buffer;
+        }
+        final float[] buffer = mBuffer;
+        for (int i = 0; i < inputLength; i++) {
+            buffer[history + i] = input[inputOffset + i];
+        }
+
+        final float[] coefficients = mCoefficients;
+        final int taps = mTaps;
+        int phase = mPhase;
+        int next = mNextInput;
+        int count = 0;
+        while (next < inputLength) {
+            // The newest input sample used is at history + next, older ones before it
+            final int newest = history + next;
+            final int base = phase * taps;
+            float sum = 0;
+            for (int k = 0; k < taps; k++) {
+                sum += coefficients[base + k] * buffer[newest - k];
+            }
+            final int value = Math.round(sum);
+            output[outputOffset + count++] = (short) (value > Short.MAX_VALUE ? Short.MAX_VALUE : value < Short.MIN_VALUE ? Short.MIN_VALUE : value);
+
+            phase += mDown;
+            next += phase / mUp;
+            phase %= mUp;
+        }
+        mPhase = phase;
+        mNextInput = next - inputLength;
+
+        // Keep the last samples as the history of the next block
+        System.arraycopy(buffer, inputLength, buffer, 0, history);
+        return count;
+    }
+
+    /**
+     * Clears the filter history, i.e. before a new stream.
+     */
+    public void reset() {
+        mPhase = 0;
+        mNextInput = 0;
+        for (int i = 0; i < mBuffer.length; i++) {
+            mBuffer[i] = 0;
+        }
+    }
+
+    /**
+     * Designs the low pass prototype filter at the up-sampled rate with a Blackman window
+     * and splits it into the polyphase components.
+     */
+    private static float[] createCoefficients(final int up, final int down, final int taps) {
+        final int length = up * taps;
+        // Cut-off in cycles per sample of the up-sampled stream
+        final double cutoff = PASS_BAND * 0.5 / Math.max(up, down);
+        final double center = (length - 1) / 2.0;
+        final float[] coefficients = new float[length];
+        for (int j = 0; j < length; j++) {
+            final double x = j - center;
+            final double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            final double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * j / (length - 1)) + 0.08 * Math.cos(4 * Math.PI * j / (length - 1));
+            // The gain of up compensates the zeros inserted by the up-sampling
+            final int phase = j % up;
+            final int k = j / up;
+            coefficients[phase * taps + k] = (float) (sinc * window * up);
+        }
+        return coefficients;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            final int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.codec;
+
+/**
+ * Writes the canonical 44 bytes header of a RIFF/WAVE file containing uncompressed PCM.
+ * <br>
+ * The header is written with the data length known so far and may be written again over the first bytes of the file
+ * as the data grows, so the file stays readable if the recording is interrupted.
+ */
+public final class WavHeader {
+    /** The size of the header in bytes */
+    public static final int SIZE = 44;
+
+    private WavHeader() {
+    }
+
+    /**
+     * Writes the header into the array.
+     *
+     * @param out           the output array, at least {@link #SIZE} bytes from the offset
+     * @param offset        the offset in the output array
+     * @param sampleRate    the sample rate in Hz
+     * @param channels      the number of channels
+     * @param bitsPerSample the number of bits per sample
+     * @param dataLength    the length of the data chunk in bytes
+     */
+    public static void write(final byte[] out, final int offset, final int sampleRate, final int channels, final int bitsPerSample, final long dataLength) {
+        final int blockAlign = channels * bitsPerSample / 8;
+        final int length = (int) Math.min(dataLength, 0xFFFFFFFFL - (SIZE - 8));
+        int index = offset;
+        index = writeAscii(out, index, "RIFF");
+        index = writeInt(out, index, length + SIZE - 8);
+        index = writeAscii(out, index, "WAVE");
+        index = writeAscii(out, index, "fmt ");
+        index = writeInt(out, index, 16);
+        index = writeShort(out, index, 1); // PCM
+        index = writeShort(out, index, channels);
+        index = writeInt(out, index, sampleRate);
+        index = writeInt(out, index, sampleRate * blockAlign);
+        index = writeShort(out, index, blockAlign);
+        index = writeShort(out, index, bitsPerSample);
+        index = writeAscii(out, index, "data");
+        writeInt(out, index, length);
+    }
+
+    private static int writeAscii(final byte[] out, final int offset, final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            out[offset + i] = (byte) text.charAt(i);
+        }
+        return offset + text.length();
+    }
+
+    private static int writeShort(final byte[] out, final int offset, final int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >> 8);
+        return offset + 2;
+    }
+
+    private static int writeInt(final byte[] out, final int offset, final int value) {
+        writeShort(out, offset, value);
+        return writeShort(out, offset + 2, value >> 16);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Incremental reader of RIFF/WAVE files.
+ * <br>
+ * The chunk headers are parsed instead of assuming a 44 bytes header: the fmt chunk gives the format of the samples,
+ * LIST and other chunks are skipped and the reader stops at the beginning of the data chunk. The samples are then read
+ * block by block with {@link #read(byte[], int, int)}, so the file is never held in memory.
+ * Only uncompressed PCM is supported, including WAVE_FORMAT_EXTENSIBLE files with a PCM sub format.
+ */
+public class WavReader {
+    private static final int RIFF = 0x46464952; // 'RIFF'
+    private static final int WAVE = 0x45564157; // 'WAVE'
+    private static final int FMT = 0x20746D66; // 'fmt '
+    private static final int DATA = 0x61746164; // 'data'
+
+    private static final int WAVE_FORMAT_PCM = 0x0001;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final InputStream mInputStream;
+    private final byte[] mHeader = new byte[40];
+    private int mChannels;
+    private int mSampleRate;
+    private int mBitsPerSample;
+    private long mDataLength;
+    private long mDataRemaining;
+
+    /**
+     * Creates the reader and parses the headers up to the beginning of the data chunk.
+     *
+     * @param inputStream the wav file stream, closed with {@link #close()}
+     * @throws IOException if the stream is not a supported wav file
+     */
+    public WavReader(final InputStream inputStream) throws IOException {
+        mInputStream = inputStream;
+        readHeaders();
+    }
+
+    /**
+     * Returns the number of channels
+     */
+    public int getChannels() {
+        return mChannels;
+    }
+
+    /**
+     * Returns the sample rate in Hz
+     */
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * Returns the number of bits per sample, 8 or 16
+     */
+    public int getBitsPerSample() {
+        return mBitsPerSample;
+    }
+
+    /**
+     * Returns the size of a frame, one sample of each channel, in bytes
+     */
+    public int getFrameSize() {
+        return mChannels * mBitsPerSample / 8;
+    }
+
+    /**
+     * Returns the length of the data chunk in bytes as declared in the header
+     */
+    public long getDataLength() {
+        return mDataLength;
+    }
+
+    /**
+     * Reads the next bytes of the data chunk. The buffer is filled completely unless the end of the data is reached.
+     *
+     * @return the number of bytes read, or -1 at the end of the data
+     */
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (mDataRemaining <= 0) {
+            return -1;
+        }
+        final int toRead = (int) Math.min(length, mDataRemaining);
+        int read = 0;
+        int count;
+        while (read < toRead && (count = mInputStream.read(buffer, offset + read, toRead - read)) > 0) {
+            read += count;
+        }
+        if (read < toRead) {
+            // Truncated file, the declared length was larger than the data
+            mDataRemaining = 0;
+        } else {
+            mDataRemaining -= read;
+        }
+        return read > 0 ? read : -1;
+    }
+
+    /**
+     * Closes the stream
+     */
+    public void close() {
+        try {
+            mInputStream.close();
+        } catch (final IOException e) {
+            // ignore
+        }
+    }
+
+    private void readHeaders() throws IOException {
+        readFully(mHeader, 12);
+        if (readInt(mHeader, 0) != RIFF || readInt(mHeader, 8) != WAVE) {
+            throw new IOException("Not a RIFF/WAVE file");
+        }
+
+        boolean formatRead = false;
+        while (true) {
+            readFully(mHeader, 8);
+            final int id = readInt(mHeader, 0);
+            final long size = readInt(mHeader, 4) & 0xFFFFFFFFL;
+            if (id == FMT) {
+                readFormat(size);
+                formatRead = true;
+            } else if (id == DATA) {
+                if (!formatRead) {
+                    throw new IOException("Data chunk found before the fmt chunk");
+                }
+                // Streamed files may declare 0 or 0xFFFFFFFF, the data then lasts until the end of the stream
+                mDataLength = size;
+                mDataRemaining = size == 0 || size == 0xFFFFFFFFL ? Long.MAX_VALUE : size;
+                return;
+            } else {
+                // LIST, fact, cue... chunks are padded to an even size
+                skipFully(size + (size & 1));
+            }
+        }
+    }
+
+    private void readFormat(final long size) throws IOException {
+        if (size < 16) {
+            throw new IOException("Invalid fmt chunk");
+        }
+        final int headerSize = (int) Math.min(size, mHeader.length);
+        readFully(mHeader, headerSize);
+        skipFully(size - headerSize + (size & 1));
+
+        int format = readShort(mHeader, 0);
+        mChannels = readShort(mHeader, 2);
+        mSampleRate = readInt(mHeader, 4);
+        mBitsPerSample = readShort(mHeader, 14);
+        if (format == WAVE_FORMAT_EXTENSIBLE && headerSize >= 26) {
+            // The sub format GUID starts with the format code
+            format = readShort(mHeader, 24);
+        }
+        if (format != WAVE_FORMAT_PCM) {
+            throw new IOException("Unsupported wav format: " + format);
+        }
+        if (mBitsPerSample != 8 && mBitsPerSample != 16) {
+            throw new IOException("Unsupported number of bits per sample: " + mBitsPerSample);
+        }
+        if (mChannels < 1 || mSampleRate <= 0) {
+            throw new IOException("Invalid wav format");
+        }
+    }
+
+    private void readFully(final byte[] buffer, final int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int count = mInputStream.read(buffer, read, length - read);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of wav file");
+            }
+            read += count;
+        }
+    }
+
+    private void skipFully(long length) throws IOException {
+        while (length > 0) {
+            final long skipped = mInputStream.skip(length);
+            if (skipped <= 0) {
+                // skip() may return 0 before the end of the stream, read a byte to tell the difference
+                if (mInputStream.read() < 0) {
+                    throw new EOFException("Unexpected end of wav file");
+                }
+                length--;
+            } else {
+                length -= skipped;
+            }
+        }
+    }
+
+    private static int readShort(final byte[] data, final int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(final byte[] data, final int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.dsp;
+
+/**
+ * A radix-2 FFT of real samples.
+ * <br>
+ * The N real samples are packed into N/2 complex values, transformed with an iterative in-place complex FFT and split into the
+ * N/2 + 1 bins of the real spectrum, which takes about half the work of a complex FFT of size N. The twiddle factors and the
+ * bit-reversal permutation are computed once when the instance is created, a transform only works in its own buffers.
+ * An instance must not be shared between threads.
+ */
+public class RealFft {
+    private final int mSize;
+    private final int mHalfSize;
+    private final float[] mCos;
+    private final float[] mSin;
+    private final float[] mSplitCos;
+    private final float[] mSplitSin;
+    private final int[] mBitReversed;
+    private final float[] mRe;
+    private final float[] mIm;
+
+    /**
+     * Creates the transform
+     *
+     * @param size the number of samples, a power of two of at least 4
+     */
+    public RealFft(final int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Size must be a power of two of at least 4");
+        }
+        mSize = size;
+        final int half = mHalfSize = size / 2;
+
+        // Twiddles of the complex FFT of size N/2
+        mCos = new float[half / 2];
+        mSin = new float[half / 2];
+        for (int i = 0; i < half / 2; i++) {
+            final double angle = -2 * Math.PI * i / half;
+            mCos[i] = (float) Math.cos(angle);
+            mSin[i] = (float) Math.sin(angle);
+        }
+
+        // Twiddles of the split into the real spectrum
+        mSplitCos = new float[half + 1];
+        mSplitSin = new float[half + 1];
+        for (int k = 0; k <= half; k++) {
+            final double angle = -2 * Math.PI * k / size;
+            mSplitCos[k] = (float) Math.cos(angle);
+            mSplitSin[k] = (float) Math.sin(angle);
+        }
+
+        final int bits = Integer.numberOfTrailingZeros(half);
+        mBitReversed = new int[half];
+        for (int i = 0; i < half; i++) {
+            mBitReversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        mRe = new float[half];
+        mIm = new float[half];
+    }
+
+    /**
+     * Returns the number of samples transformed
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of bins of the spectrum, N/2 + 1 from DC to the Nyquist frequency
+     */
+    public int getBinCount() {
+        return mHalfSize + 1;
+    }
+
+    /**
+     * Transforms the real samples.
+     *
+     * @param samples the samples, at least the size of the transform from the offset
+     * @param offset  the offset of the first sample
+     * @param re      the real parts of the spectrum, at least {@link #getBinCount()} values
+     * @param im      the imaginary parts of the spectrum, at least {@link #getBinCount()} values
+     */
+    public void forward(final float[] samples, final int offset, final float[] re, final float[] im) {
+        final int half = mHalfSize;
+        final float[] zr = mRe;
+        final float[] zi = mIm;
+        final int[] bitReversed = mBitReversed;
+
+        // Even samples are the real parts, odd samples the imaginary parts, stored in bit-reversed order
+        for (int i = 0; i < half; i++) {
+            final int j = bitReversed[i];
+            zr[j] = samples[offset + 2 * i];
+            zi[j] = samples[offset + 2 * i + 1];
+        }
+
+        final float[] cos = mCos;
+        final float[] sin = mSin;
+        for (int length = 2; length <= half; length <<= 1) {
+            final int halfLength = length >> 1;
+            final int step = half / length;
+            for (int start = 0; start < half; start += length) {
+                for (int k = 0; k < halfLength; k++) {
+                    final float wr = cos[k * step];
+                    final float wi = sin[k * step];
+                    final int a = start + k;
+                    final int b = a + halfLength;
+                    final float tr = zr[b] * wr - zi[b] * wi;
+                    final float ti = zr[b] * wi + zi[b] * wr;
+                    zr[b] = zr[a] - tr;
+                    zi[b] = zi[a] - ti;
+                    zr[a] += tr;
+                    zi[a] += ti;
+                }
+            }
+        }
+
+        // X[k] = E[k] + W^k O[k], with E and O the spectra of the even and odd samples derived from Z[k] and Z[N/2 - k]
+        final float[] splitCos = mSplitCos;
+        final float[] splitSin = mSplitSin;
+        for (int k = 0; k <= half; k++) {
+            final int a = k == half ? 0 : k;
+            final int b = k == 0 ? 0 : half - k;
+            final float er = (zr[a] + zr[b]) * 0.5f;
+            final float ei = (zi[a] - zi[b]) * 0.5f;
+            final float or = (zi[a] + zi[b]) * 0.5f;
+            final float oi = (zr[b] - zr[a]) * 0.5f;
+            final float wr = splitCos[k];
+            final float wi = splitSin[k];
+            re[k] = er + or * wr - oi * wi;
+            im[k] = ei + or * wi + oi * wr;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.dsp;
+
+/**
+ * Computes the spectrum of a stream of 16-bit PCM audio over overlapping frames.
+ * <br>
+ * The samples written are kept in a ring of one FFT frame. Every hop a frame is taken from the ring, multiplied by a Hann window
+ * and transformed with a {@link RealFft}. The listener then receives the level of each bin and of a number of logarithmically
+ * spaced bands, in dB relative to a full scale sine wave, and the analyzer reports the peak of the spectrum. The window, the band
+ * edges and all buffers are allocated when the analyzer is created, so writing never allocates.
+ * An instance must be written by one thread at a time; the listener is called on that thread.
+ */
+public class SpectrumAnalyzer {
+    /** The level reported for a bin or band without energy */
+    public static final float MIN_LEVEL = -120.0f;
+    /** The lowest band starts at this frequency, or at the first bin above DC */
+    private static final float MIN_BAND_FREQUENCY = 50.0f;
+
+    /**
+     * Receives each computed spectrum
+     */
+    public interface Listener {
+        /**
+         * Called when a spectrum has been computed. The arrays are reused for the next spectrum and must be copied to be kept.
+         *
+         * @param analyzer the analyzer, i.e. to get the peak or the frequencies of the bins
+         * @param spectrum the level of each bin in dB, {@link #getBinCount()} values from DC to the Nyquist frequency
+         * @param bands    the level of each band in dB, {@link #getBandCount()} values
+         */
+        void onSpectrum(final SpectrumAnalyzer analyzer, final float[] spectrum, final float[] bands);
+    }
+
+    private final int mSampleRate;
+    private final int mFftSize;
+    private final int mHop;
+    private final RealFft mFft;
+    private final float[] mWindow;
+    private final float mScale;
+    private final int[] mBandEdges;
+
+    private final float[] mRing;
+    private final float[] mFrame;
+    private final float[] mRe;
+    private final float[] mIm;
+    private final float[] mPower;
+    private final float[] mSpectrum;
+    private final float[] mBands;
+    private int mRingPosition;
+    private int mSamplesSinceFrame;
+    private long mFrames;
+    private float mPeakFrequency;
+    private float mPeakLevel = MIN_LEVEL;
+
+    private volatile Listener mListener;
+
+    /**
+     * Creates the analyzer
+     *
+     * @param sampleRate the sample rate of the audio
+     * @param fftSize    the number of samples of a frame, a power of two
+     * @param hop        the number of samples between the starts of two frames, i.e. half the frame size for 50% overlap
+     * @param bandCount  the number of bands
+     */
+    public SpectrumAnalyzer(final int sampleRate, final int fftSize, final int hop, final int bandCount) {
+        if (hop <= 0 || hop > fftSize) {
+            throw new IllegalArgumentException("Hop must be between 1 and the FFT size");
+        }
+        if (bandCount <= 0 || bandCount > fftSize / 2) {
+            throw new IllegalArgumentException("Band count must be between 1 and half the FFT size");
+        }
+        mSampleRate = sampleRate;
+        mFftSize = fftSize;
+        mHop = hop;
+        mFft = new RealFft(fftSize);
+
+        mWindow = new float[fftSize];
+        float windowSum = 0;
+        for (int i = 0; i < fftSize; i++) {
+            mWindow[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / fftSize));
+            windowSum += mWindow[i];
+        }
+        // A full scale sine wave peaks at 0 dB: its bin has the magnitude windowSum / 2 for an amplitude of 1
+        mScale = 2.0f / (windowSum * 32768.0f);
+
+        final int binCount = mFft.getBinCount();
+        mBandEdges = createBandEdges(sampleRate, fftSize, binCount, bandCount);
+
+        mRing = new float[fftSize];
+        mFrame = new float[fftSize];
+        mRe = new float[binCount];
+        mIm = new float[binCount];
+        mPower = new float[binCount];
+        mSpectrum = new float[binCount];
+        mBands = new float[bandCount];
+        mSamplesSinceFrame = -(fftSize - hop);
+    }
+
+    /**
+     * Returns the first bin of each band and the end of the last one. The edges are spaced logarithmically, each band has at least one bin.
+     */
+    private static int[] createBandEdges(final int sampleRate, final int fftSize, final int binCount, final int bandCount) {
+        final int[] edges = new int[bandCount + 1];
+        final double first = Math.min(Math.max(1.0, MIN_BAND_FREQUENCY * fftSize / sampleRate), binCount - bandCount);
+        for (int i = 0; i < bandCount; i++) {
+            edges[i] = (int) Math.round(first * Math.pow(binCount / first, (double) i / bandCount));
+        }
+        edges[bandCount] = binCount;
+        // The low bands are narrower than a bin, they are pushed up and the bands above down so that each keeps a bin
+        for (int i = 1; i < bandCount; i++) {
+            edges[i] = Math.max(edges[i], edges[i - 1] + 1);
+        }
+        for (int i = bandCount - 1; i > 0; i--) {
+            edges[i] = Math.min(edges[i], edges[i + 1] - 1);
+        }
+        return edges;
+    }
+
+    /**
+     * Sets the listener receiving the spectra
+     *
+     * @param listener the listener, or null
+     */
+    public void setListener(final Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Returns the sample rate of the audio
+     */
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * Returns the number of samples of a frame
+     */
+    public int getFftSize() {
+        return mFftSize;
+    }
+
+    /**
+     * Returns the number of samples between two spectra
+     */
+    public int getHop() {
+        return mHop;
+    }
+
+    /**
+     * Returns the number of bins of a spectrum
+     */
+    public int getBinCount() {
+        return mSpectrum.length;
+    }
+
+    /**
+     * Returns the number of bands
+     */
+    public int getBandCount() {
+        return mBands.length;
+    }
+
+    /**
+     * Returns the center frequency of the bin in Hz
+     */
+    public float getBinFrequency(final int bin) {
+        return (float) bin * mSampleRate / mFftSize;
+    }
+
+    /**
+     * Returns the lowest frequency of the band in Hz. The upper edge of the band is the lower edge of the next one.
+     *
+     * @param band the band, or the band count to get the upper edge of the last band
+     */
+    public float getBandFrequency(final int band) {
+        return getBinFrequency(mBandEdges[band]) - getBinFrequency(1) / 2;
+    }
+
+    /**
+     * Returns the frequency of the loudest component of the last spectrum in Hz, interpolated between the bins
+     */
+    public float getPeakFrequency() {
+        return mPeakFrequency;
+    }
+
+    /**
+     * Returns the level of the loudest bin of the last spectrum in dB
+     */
+    public float getPeakLevel() {
+        return mPeakLevel;
+    }
+
+    /**
+     * Returns the number of spectra computed
+     */
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * Removes the buffered samples, the next spectrum is computed once a whole frame has been written
+     */
+    public void reset() {
+        for (int i = 0; i < mFftSize; i++) {
+            mRing[i] = 0;
+        }
+        mRingPosition = 0;
+        mSamplesSinceFrame = -(mFftSize - mHop);
+    }
+
+    /**
+     * Adds the samples, computing a spectrum every hop.
+     *
+     * @param pcm    the 16-bit little-endian samples
+     * @param offset the offset of the first sample in the array
+     * @param length the number of bytes, a trailing odd byte is ignored
+     */
+    public void write(final byte[] pcm, final int offset, final int length) {
+        final float[] ring = mRing;
+        final int size = mFftSize;
+        final int end = offset + (length & ~1);
+        int position = mRingPosition;
+        for (int i = offset; i < end; i += 2) {
+            ring[position] = (short) ((pcm[i] & 0xFF) | (pcm[i + 1] << 8));
+            if (++position == size) {
+                position = 0;
+            }
+            if (++mSamplesSinceFrame == mHop) {
+                mSamplesSinceFrame = 0;
+                mRingPosition = position;
+                computeSpectrum();
+            }
+        }
+        mRingPosition = position;
+    }
+
+    private void computeSpectrum() {
+        final float[] ring = mRing;
+        final float[] frame = mFrame;
+        final float[] window = mWindow;
+        final int size = mFftSize;
+
+        // The oldest sample is at the write position of the ring
+        final int first = size - mRingPosition;
+        for (int i = 0; i < first; i++) {
+            frame[i] = ring[mRingPosition + i] * window[i];
+        }
+        for (int i = first; i < size; i++) {
+            frame[i] = ring[i - first] * window[i];
+        }
+        mFft.forward(frame, 0, mRe, mIm);
+
+        final float[] re = mRe;
+        final float[] im = mIm;
+        final float[] power = mPower;
+        final float[] spectrum = mSpectrum;
+        final float scale = mScale * mScale;
+        int peak = 1;
+        for (int k = 0; k < spectrum.length; k++) {
+            final float p = (re[k] * re[k] + im[k] * im[k]) * scale;
+            power[k] = p;
+            spectrum[k] = toDecibels(p);
+            if (k > 0 && p > power[peak]) {
+                peak = k;
+            }
+        }
+
+        final int[] edges = mBandEdges;
+        final float[] bands = mBands;
+        for (int b = 0; b < bands.length; b++) {
+            float sum = 0;
+            for (int k = edges[b]; k < edges[b + 1]; k++) {
+                sum += power[k];
+            }
+            bands[b] = toDecibels(sum);
+        }
+
+        // Parabolic interpolation of the peak between its neighbours, in dB
+        float offset = 0;
+        if (peak > 0 && peak < spectrum.length - 1) {
+            final float left = spectrum[peak - 1];
+            final float center = spectrum[peak];
+            final float right = spectrum[peak + 1];
+            final float denominator = left - 2 * center + right;
+            if (denominator < 0) {
+                offset = 0.5f * (left - right) / denominator;
+            }
+        }
+        mPeakFrequency = getBinFrequency(peak) + offset * mSampleRate / size;
+        mPeakLevel = spectrum[peak];
+        mFrames++;
+
+        final Listener listener = mListener;
+        if (listener != null) {
+            listener.onSpectrum(this, spectrum, bands);
+        }
+    }
+
+    private static float toDecibels(final float power) {
+        if (power <= 0) {
+            return MIN_LEVEL;
+        }
+        return Math.max(MIN_LEVEL, (float) (10 * Math.log10(power)));
+    }
+}
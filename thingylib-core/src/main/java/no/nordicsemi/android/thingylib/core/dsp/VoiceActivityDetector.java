@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.dsp;
+
+/**
+ * A voice activity detector based on the short-term energy and the zero-crossing rate of 16-bit PCM audio.
+ * <br>
+ * Each block passed to {@link #process(byte[], int, int)} is classified as a whole, so the blocks should be 10 to 40 ms long,
+ * which the microphone buffers are. A block is voiced when its energy is above the energy threshold, or when it is above
+ * the lower fricative threshold and crosses zero often, as unvoiced consonants like 's' or 'f' are quiet but noisy.
+ * Once the voice stops the detector stays active for the hangover time, so word endings and short pauses are not cut.
+ * <br>
+ * The detector is not thread safe, it is used by the thread capturing the audio.
+ */
+public class VoiceActivityDetector {
+    /** The default energy threshold in dB relative to the full scale */
+    public static final float DEFAULT_ENERGY_THRESHOLD = -45.0f;
+    /** The default distance of the fricative threshold below the energy threshold in dB */
+    public static final float DEFAULT_FRICATIVE_MARGIN = 10.0f;
+    /** The default rate of zero crossings per sample above which a quiet block is taken as a fricative */
+    public static final float DEFAULT_ZERO_CROSSING_THRESHOLD = 0.25f;
+    /** The default hangover time in milliseconds */
+    public static final int DEFAULT_HANGOVER_MILLIS = 300;
+
+    private final int mSampleRate;
+    private float mEnergyThreshold = DEFAULT_ENERGY_THRESHOLD;
+    private float mFricativeMargin = DEFAULT_FRICATIVE_MARGIN;
+    private float mZeroCrossingThreshold = DEFAULT_ZERO_CROSSING_THRESHOLD;
+    private int mHangoverSamples;
+
+    private int mRemainingHangover;
+    private boolean mActive;
+    private float mLastEnergy = Float.NEGATIVE_INFINITY;
+    private float mLastZeroCrossingRate;
+
+    /**
+     * Creates the detector with the default thresholds
+     *
+     * @param sampleRate the sample rate of the audio
+     */
+    public VoiceActivityDetector(final int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be greater than 0");
+        }
+        mSampleRate = sampleRate;
+        setHangoverMillis(DEFAULT_HANGOVER_MILLIS);
+    }
+
+    /**
+     * Sets the energy above which a block is voiced
+     *
+     * @param threshold the threshold in dB relative to the full scale, e.g. -45
+     */
+    public void setEnergyThreshold(final float threshold) {
+        mEnergyThreshold = threshold;
+    }
+
+    /**
+     * Returns the energy threshold in dB relative to the full scale
+     */
+    public float getEnergyThreshold() {
+        return mEnergyThreshold;
+    }
+
+    /**
+     * Sets the zero-crossing rate above which a quiet block is voiced, and how far below the energy threshold such a block may be
+     *
+     * @param threshold the rate of zero crossings per sample, from 0 to 1
+     * @param margin    the distance of the fricative threshold below the energy threshold in dB
+     */
+    public void setZeroCrossingThreshold(final float threshold, final float margin) {
+        if (margin < 0) {
+            throw new IllegalArgumentException("Margin must not be negative");
+        }
+        mZeroCrossingThreshold = threshold;
+        mFricativeMargin = margin;
+    }
+
+    /**
+     * Returns the zero-crossing rate threshold, in crossings per sample
+     */
+    public float getZeroCrossingThreshold() {
+        return mZeroCrossingThreshold;
+    }
+
+    /**
+     * Sets for how long the detector stays active after the last voiced block
+     *
+     * @param millis the hangover time in milliseconds
+     */
+    public void setHangoverMillis(final int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Hangover must not be negative");
+        }
+        mHangoverSamples = (int) ((long) millis * mSampleRate / 1000);
+    }
+
+    /**
+     * Returns true if the last block was voiced or within the hangover time after a voiced block
+     */
+    public boolean isActive() {
+        return mActive;
+    }
+
+    /**
+     * Returns the energy of the last block in dB relative to the full scale
+     */
+    public float getLastEnergy() {
+        return mLastEnergy;
+    }
+
+    /**
+     * Returns the zero-crossing rate of the last block, in crossings per sample
+     */
+    public float getLastZeroCrossingRate() {
+        return mLastZeroCrossingRate;
+    }
+
+    /**
+     * Classifies the block of samples
+     *
+     * @param pcm    the 16-bit little-endian samples
+     * @param offset the offset of the first sample in the array
+     * @param length the number of bytes, a trailing odd byte is ignored
+     * @return true if the block should be sent, i.e. it is voiced or within the hangover time
+     */
+    public boolean process(final byte[] pcm, final int offset, final int length) {
+        final int samples = length / 2;
+        if (samples == 0) {
+            return mActive;
+        }
+
+        long sumOfSquares = 0;
+        int crossings = 0;
+        boolean negative = false;
+        for (int i = 0; i < samples; i++) {
+            final int index = offset + 2 * i;
+            final int sample = (short) ((pcm[index] & 0xFF) | (pcm[index + 1] << 8));
+            sumOfSquares += sample * sample;
+            final boolean sign = sample < 0;
+            if (i > 0 && sign != negative) {
+                crossings++;
+            }
+            negative = sign;
+        }
+        final double meanSquare = (double) sumOfSquares / samples / (32768.0 * 32768.0);
+        final float energy = meanSquare > 0 ? (float) (10 * Math.log10(meanSquare)) : Float.NEGATIVE_INFINITY;
+        final float zeroCrossingRate = samples > 1 ? (float) crossings / (samples - 1) : 0;
+        mLastEnergy = energy;
+        mLastZeroCrossingRate = zeroCrossingRate;
+
+        final boolean voiced = energy >= mEnergyThreshold
+                || (energy >= mEnergyThreshold - mFricativeMargin && zeroCrossingRate >= mZeroCrossingThreshold);
+        if (voiced) {
+            mRemainingHangover = mHangoverSamples;
+            mActive = true;
+        } else if (mActive) {
+            // The hangover covers this block entirely, or the voice has ended
+            mActive = mRemainingHangover > 0;
+            mRemainingHangover = Math.max(0, mRemainingHangover - samples);
+        }
+        return mActive;
+    }
+
+    /**
+     * Returns the detector to the silent state
+     */
+    public void reset() {
+        mActive = false;
+        mRemainingHangover = 0;
+        mLastEnergy = Float.NEGATIVE_INFINITY;
+        mLastZeroCrossingRate = 0;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.gatt;
+
+/**
+ * Credit based flow control of a packet stream, i.e. audio written to the Thingy speaker.
+ * <br>
+ * Each packet handed to the request queue takes a credit which is returned when the write completes, so at most
+ * {@link #getMaxPacketsInFlight()} packets are queued at a time and the next one is produced as soon as a write completes
+ * instead of polling. The first packet of a stream is sent alone, as some phones split it until the data length extension is agreed.
+ * <br>
+ * The controller also measures the sustained throughput of the stream from the completed writes.
+ */
+public class CreditFlowController {
+    /** The default number of packets queued at a time */
+    public static final int DEFAULT_PACKETS_IN_FLIGHT = 2;
+
+    private int mMaxPacketsInFlight = DEFAULT_PACKETS_IN_FLIGHT;
+    private int mPacketsInFlight;
+    private long mFirstCompletion;
+    private long mLastCompletion;
+    private long mBytesCompleted;
+    private int mPacketsCompleted;
+
+    /**
+     * Sets the number of packets queued at a time.
+     *
+     * @param packets number of packets, at least 1
+     */
+    public synchronized void setMaxPacketsInFlight(final int packets) {
+        if (packets < 1) {
+            throw new IllegalArgumentException("At least one packet must be allowed in flight");
+        }
+        mMaxPacketsInFlight = packets;
+    }
+
+    /**
+     * Returns the number of packets queued at a time
+     */
+    public synchronized int getMaxPacketsInFlight() {
+        return mMaxPacketsInFlight;
+    }
+
+    /**
+     * Returns the number of packets queued whose write has not completed yet
+     */
+    public synchronized int getPacketsInFlight() {
+        return mPacketsInFlight;
+    }
+
+    /**
+     * Starts a new stream, resetting the credits and the throughput measurement.
+     */
+    public synchronized void start() {
+        mPacketsInFlight = 0;
+        mPacketsCompleted = 0;
+        mBytesCompleted = 0;
+        mFirstCompletion = 0;
+        mLastCompletion = 0;
+    }
+
+    /**
+     * Takes a credit to send the next packet.
+     *
+     * @return true if the packet may be sent, false if the packets in flight have to complete first
+     */
+    public synchronized boolean tryAcquire() {
+        final int window = mPacketsCompleted == 0 ? 1 : mMaxPacketsInFlight;
+        if (mPacketsInFlight >= window) {
+            return false;
+        }
+        mPacketsInFlight++;
+        return true;
+    }
+
+    /**
+     * Returns a credit taken with {@link #tryAcquire()} which was not used, i.e. because the source had no more data.
+     */
+    public synchronized void release() {
+        if (mPacketsInFlight > 0) {
+            mPacketsInFlight--;
+        }
+    }
+
+    /**
+     * Returns the credit of a completed packet.
+     *
+     * @param bytes size of the packet
+     * @param now   the current time in {@link System#nanoTime()} units
+     */
+    public synchronized void onPacketCompleted(final int bytes, final long now) {
+        if (mPacketsInFlight > 0) {
+            mPacketsInFlight--;
+        }
+        if (mPacketsCompleted++ == 0) {
+            // The throughput is measured from the first completion so the connection setup is not counted
+            mFirstCompletion = now;
+        } else {
+            mBytesCompleted += bytes;
+        }
+        mLastCompletion = now;
+    }
+
+    /**
+     * Drops the packets in flight, i.e. when the stream is cancelled and its packets are removed from the queue.
+     */
+    public synchronized void cancel() {
+        mPacketsInFlight = 0;
+    }
+
+    /**
+     * Returns the sustained throughput of the current, or last, stream in bytes per second, or 0 until enough packets have completed.
+     */
+    public synchronized float getThroughput() {
+        final long duration = mLastCompletion - mFirstCompletion;
+        if (mPacketsCompleted < 2 || duration <= 0) {
+            return 0;
+        }
+        return mBytesCompleted * 1000000000f / duration;
+    }
+}
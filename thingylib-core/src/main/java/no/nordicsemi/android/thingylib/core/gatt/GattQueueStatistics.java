@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.gatt;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of a {@link GattRequestQueue} per priority lane: the number of waiting requests, the number of started requests,
+ * the time requests waited in the lane before being started and the number of requests which timed out or were rejected.
+ * <br>
+ * An instance may be passed back to {@link GattRequestQueue#getStatistics(GattQueueStatistics)} to be refilled without allocating.
+ */
+public final class GattQueueStatistics {
+    /*package access*/ final int[] mDepth = new int[GattRequestQueue.PRIORITY_COUNT];
+    /*package access*/ final int[] mMaxDepth = new int[GattRequestQueue.PRIORITY_COUNT];
+    /*package access*/ final long[] mStartedCount = new long[GattRequestQueue.PRIORITY_COUNT];
+    /*package access*/ final long[] mTotalWaitTime = new long[GattRequestQueue.PRIORITY_COUNT];
+    /*package access*/ final long[] mMaxWaitTime = new long[GattRequestQueue.PRIORITY_COUNT];
+    /*package access*/ final long[] mTimeoutCount = new long[GattRequestQueue.PRIORITY_COUNT];
+    /*package access*/ final long[] mSkippedCount = new long[GattRequestQueue.PRIORITY_COUNT];
+    /*package access*/ final long[] mRejectedCount = new long[GattRequestQueue.PRIORITY_COUNT];
+
+    /**
+     * Returns the number of requests waiting in the lane when the statistics were taken
+     *
+     * @param priority one of the GattRequestQueue.PRIORITY_* constants
+     */
+    public int getQueueDepth(final int priority) {
+        return mDepth[priority];
+    }
+
+    /**
+     * Returns the highest number of requests that waited in the lane at the same time
+     *
+     * @param priority one of the GattRequestQueue.PRIORITY_* constants
+     */
+    public int getMaxQueueDepth(final int priority) {
+        return mMaxDepth[priority];
+    }
+
+    /**
+     * Returns the number of requests started from the lane
+     *
+     * @param priority one of the GattRequestQueue.PRIORITY_* constants
+     */
+    public long getStartedCount(final int priority) {
+        return mStartedCount[priority];
+    }
+
+    /**
+     * Returns the average time in milliseconds the requests waited in the lane before being started
+     *
+     * @param priority one of the GattRequestQueue.PRIORITY_* constants
+     */
+    public float getAverageWaitTimeMillis(final int priority) {
+        if (mStartedCount[priority] == 0) {
+            return 0;
+        }
+        return (float) mTotalWaitTime[priority] / mStartedCount[priority] / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the longest time in milliseconds a request waited in the lane before being started
+     *
+     * @param priority one of the GattRequestQueue.PRIORITY_* constants
+     */
+    public float getMaxWaitTimeMillis(final int priority) {
+        return (float) mMaxWaitTime[priority] / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the number of times a request of the lane did not complete before its deadline, including the retried ones
+     *
+     * @param priority one of the GattRequestQueue.PRIORITY_* constants
+     */
+    public long getTimeoutCount(final int priority) {
+        return mTimeoutCount[priority];
+    }
+
+    /**
+     * Returns the number of requests of the lane which were skipped after running out of retries
+     *
+     * @param priority one of the GattRequestQueue.PRIORITY_* constants
+     */
+    public long getSkippedCount(final int priority) {
+        return mSkippedCount[priority];
+    }
+
+    /**
+     * Returns the number of times the operation of a request of the lane was rejected when started, including the retried ones
+     *
+     * @param priority one of the GattRequestQueue.PRIORITY_* constants
+     */
+    public long getRejectedCount(final int priority) {
+        return mRejectedCount[priority];
+    }
+
+    /*package access*/ void set(final GattQueueStatistics other) {
+        System.arraycopy(other.mDepth, 0, mDepth, 0, mDepth.length);
+        System.arraycopy(other.mMaxDepth, 0, mMaxDepth, 0, mMaxDepth.length);
+        System.arraycopy(other.mStartedCount, 0, mStartedCount, 0, mStartedCount.length);
+        System.arraycopy(other.mTotalWaitTime, 0, mTotalWaitTime, 0, mTotalWaitTime.length);
+        System.arraycopy(other.mMaxWaitTime, 0, mMaxWaitTime, 0, mMaxWaitTime.length);
+        System.arraycopy(other.mTimeoutCount, 0, mTimeoutCount, 0, mTimeoutCount.length);
+        System.arraycopy(other.mSkippedCount, 0, mSkippedCount, 0, mSkippedCount.length);
+        System.arraycopy(other.mRejectedCount, 0, mRejectedCount, 0, mRejectedCount.length);
+    }
+
+    /*package access*/ void reset() {
+        for (int i = 0; i < GattRequestQueue.PRIORITY_COUNT; i++) {
+            mMaxDepth[i] = 0;
+            mStartedCount[i] = 0;
+            mTotalWaitTime[i] = 0;
+            mMaxWaitTime[i] = 0;
+            mTimeoutCount[i] = 0;
+            mSkippedCount[i] = 0;
+            mRejectedCount[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.gatt;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Executes the GATT requests one at a time, as only one operation may be outstanding on a BluetoothGatt.
+ * <br>
+ * Requests are queued in priority lanes: control and configuration writes ({@link #PRIORITY_CONTROL}), reads ({@link #PRIORITY_READ})
+ * and bulk transfers such as audio streaming ({@link #PRIORITY_BULK}). Requests of a lane are executed in order, and each time a request completes
+ * the next one is taken from the highest priority lane that is not empty, so a control write queued behind a long audio stream is sent
+ * between two packets instead of after the whole stream.
+ * <br>
+ * The request being executed is kept until its completion is reported with {@link #complete(GattRequest)}.
+ * Requests are started through the executor given to the constructor, i.e. the GATT thread of the connection,
+ * so adding a request or resuming a lane from another thread never calls into the GATT stack on that thread.
+ * A request may be given a {@link GattTimeoutPolicy}, in which case the owner calls {@link #checkTimeout(long)} when the
+ * {@link #getDeadline()} passes, i.e. from a watchdog, to retry or skip a request whose completion never came.
+ * A request whose operation is rejected when started is retried or skipped the same way, but right away.
+ */
+public class GattRequestQueue {
+    /** Control and configuration writes, i.e. LED, notification or sound mode changes */
+    public static final int PRIORITY_CONTROL = 0;
+    /** Characteristic and descriptor reads */
+    public static final int PRIORITY_READ = 1;
+    /** Bulk transfers, i.e. audio packets streamed to the speaker */
+    public static final int PRIORITY_BULK = 2;
+    /** The number of priority lanes */
+    public static final int PRIORITY_COUNT = 3;
+
+    /** The request being executed has not timed out */
+    public static final int TIMEOUT_NONE = 0;
+    /** The request being executed has timed out and was started again */
+    public static final int TIMEOUT_RETRIED = 1;
+    /** The request being executed has timed out too many times and was skipped */
+    public static final int TIMEOUT_SKIPPED = 2;
+
+    private final ArrayDeque<Entry>[] mLanes;
+    private final ArrayDeque<Entry> mEntryPool = new ArrayDeque<>();
+    private final GattQueueStatistics mStatistics = new GattQueueStatistics();
+    private final boolean[] mPaused = new boolean[PRIORITY_COUNT];
+    private final Executor mExecutor;
+    private boolean mStartPosted;
+    private Entry mCurrent;
+
+    /**
+     * Creates a queue starting the requests synchronously on the thread that adds or completes them
+     */
+    public GattRequestQueue() {
+        this(null);
+    }
+
+    /**
+     * Creates a queue starting the requests on the given executor
+     *
+     * @param executor the executor starting the requests, i.e. posting to the GATT thread, or null to start them synchronously
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public GattRequestQueue(final Executor executor) {
+        mExecutor = executor;
+        mLanes = new ArrayDeque[PRIORITY_COUNT];
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            mLanes[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Adds the request to the control lane. The request is started right away if the queue is idle.
+     *
+     * @param request request to be executed
+     */
+    public void add(final GattRequest request) {
+        add(request, PRIORITY_CONTROL);
+    }
+
+    /**
+     * Adds the request to the given lane. The request is started right away if the queue is idle.
+     *
+     * @param request  request to be executed
+     * @param priority one of the PRIORITY_* constants
+     */
+    public void add(final GattRequest request, final int priority) {
+        add(request, priority, GattTimeoutPolicy.NONE);
+    }
+
+    /**
+     * Adds the request to the given lane. The request is started right away if the queue is idle.
+     *
+     * @param request  request to be executed
+     * @param priority one of the PRIORITY_* constants
+     * @param policy   the deadline of the request once started
+     */
+    public synchronized void add(final GattRequest request, final int priority, final GattTimeoutPolicy policy) {
+        checkPriority(priority);
+        Entry entry = mEntryPool.poll();
+        if (entry == null) {
+            entry = new Entry();
+        }
+        entry.request = request;
+        entry.priority = priority;
+        entry.policy = policy != null ? policy : GattTimeoutPolicy.NONE;
+        entry.enqueuedAt = System.nanoTime();
+
+        final ArrayDeque<Entry> lane = mLanes[priority];
+        lane.add(entry);
+        if (lane.size() > mStatistics.mMaxDepth[priority]) {
+            mStatistics.mMaxDepth[priority] = lane.size();
+        }
+        if (mCurrent == null) {
+            startNext();
+        }
+    }
+
+    /**
+     * Completes the request being executed and starts the next one, provided the request being executed is the expected one.
+     * A completion reported late, after its request has been skipped or cleared, therefore never completes the request started after it.
+     *
+     * @param expected the request whose operation has completed
+     * @return true if the request was completed, false if it is no longer executed
+     */
+    public synchronized boolean complete(final GattRequest expected) {
+        if (mCurrent == null || mCurrent.request != expected) {
+            return false;
+        }
+        recycle(mCurrent);
+        mCurrent = null;
+        startNext();
+        return true;
+    }
+
+    /**
+     * Completes the request being executed and starts the next one.
+     */
+    public synchronized void processNext() {
+        // The currently executing request is kept until this is called.
+        if (mCurrent == null) {
+            return;
+        }
+        recycle(mCurrent);
+        mCurrent = null;
+        startNext();
+    }
+
+    /**
+     * Pauses or resumes a lane. Requests of a paused lane stay queued while the other lanes are executed,
+     * i.e. audio packets while the Thingy speaker buffer is full.
+     *
+     * @param priority one of the PRIORITY_* constants
+     * @param paused   true to pause the lane, false to resume it
+     */
+    public synchronized void setPaused(final int priority, final boolean paused) {
+        checkPriority(priority);
+        mPaused[priority] = paused;
+        if (!paused && mCurrent == null) {
+            startNext();
+        }
+    }
+
+    /**
+     * Returns true if the lane is paused
+     *
+     * @param priority one of the PRIORITY_* constants
+     */
+    public synchronized boolean isPaused(final int priority) {
+        checkPriority(priority);
+        return mPaused[priority];
+    }
+
+    /**
+     * Returns the request being executed, or null if the queue is idle
+     */
+    public synchronized GattRequest getCurrent() {
+        return mCurrent != null ? mCurrent.request : null;
+    }
+
+    /**
+     * Returns the time, in {@link System#nanoTime()} units, at which the request being executed times out,
+     * or 0 if the queue is idle or the request has no deadline.
+     */
+    public synchronized long getDeadline() {
+        return mCurrent != null ? mCurrent.deadline : 0;
+    }
+
+    /**
+     * Removes the deadline of the request being executed if it is the expected one. This is used when the GATT operation has completed
+     * but its completion is only processed later on another thread, so the request must not be retried meanwhile.
+     *
+     * @param expected the request whose operation has completed
+     * @return true if the expected request is being executed
+     */
+    public synchronized boolean disarmTimeout(final GattRequest expected) {
+        if (mCurrent == null || mCurrent.request != expected) {
+            return false;
+        }
+        mCurrent.deadline = 0;
+        return true;
+    }
+
+    /**
+     * Checks whether the request being executed has passed its deadline. A timed out request is started again if it has retries left,
+     * otherwise it is dropped, see {@link GattRequest#onDropped(boolean)}, and the next request is started.
+     *
+     * @param now the current time in {@link System#nanoTime()} units
+     * @return one of the TIMEOUT_* constants
+     */
+    public synchronized int checkTimeout(final long now) {
+        final Entry current = mCurrent;
+        if (current == null || current.deadline == 0 || now - current.deadline < 0) {
+            return TIMEOUT_NONE;
+        }
+        mStatistics.mTimeoutCount[current.priority]++;
+        if (current.retries < current.policy.getMaxRetries()) {
+            current.retries++;
+            arm(current, now);
+            start(current);
+            return TIMEOUT_RETRIED;
+        }
+        mStatistics.mSkippedCount[current.priority]++;
+        mCurrent = null;
+        drop(current, true);
+        startNext();
+        return TIMEOUT_SKIPPED;
+    }
+
+    /**
+     * Removes all requests, including the one being executed. Each of them is notified with {@link GattRequest#onDropped(boolean)}.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            clearLane(i);
+        }
+        if (mCurrent != null) {
+            final Entry current = mCurrent;
+            mCurrent = null;
+            drop(current, false);
+        }
+    }
+
+    /**
+     * Removes all requests of the given lane. The request being executed is removed as well if it belongs to that lane,
+     * in which case the next request from the other lanes is started. Each removed request is notified with {@link GattRequest#onDropped(boolean)}.
+     *
+     * @param priority one of the PRIORITY_* constants
+     */
+    public synchronized void clear(final int priority) {
+        checkPriority(priority);
+        clearLane(priority);
+        if (mCurrent != null && mCurrent.priority == priority) {
+            final Entry current = mCurrent;
+            mCurrent = null;
+            drop(current, false);
+            startNext();
+        }
+    }
+
+    /**
+     * Returns the number of requests in the queue, including the one being executed.
+     */
+    public synchronized int size() {
+        int size = mCurrent != null ? 1 : 0;
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            size += mLanes[i].size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of requests waiting in the given lane, excluding the one being executed.
+     *
+     * @param priority one of the PRIORITY_* constants
+     */
+    public synchronized int size(final int priority) {
+        checkPriority(priority);
+        return mLanes[priority].size();
+    }
+
+    /**
+     * Returns true if there are no requests in the queue.
+     */
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Copies the queue statistics into the given object.
+     *
+     * @param statistics statistics to be filled, or null to allocate a new object
+     * @return the filled statistics
+     */
+    public synchronized GattQueueStatistics getStatistics(final GattQueueStatistics statistics) {
+        final GattQueueStatistics out = statistics != null ? statistics : new GattQueueStatistics();
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            mStatistics.mDepth[i] = mLanes[i].size();
+        }
+        out.set(mStatistics);
+        return out;
+    }
+
+    /**
+     * Resets the counters, wait times and maximum depths of the queue statistics.
+     */
+    public synchronized void resetStatistics() {
+        mStatistics.reset();
+    }
+
+    private void startNext() {
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            if (mPaused[i]) {
+                continue;
+            }
+            final Entry entry = mLanes[i].poll();
+            if (entry != null) {
+                final long waitTime = System.nanoTime() - entry.enqueuedAt;
+                mStatistics.mStartedCount[i]++;
+                mStatistics.mTotalWaitTime[i] += waitTime;
+                if (waitTime > mStatistics.mMaxWaitTime[i]) {
+                    mStatistics.mMaxWaitTime[i] = waitTime;
+                }
+                mCurrent = entry;
+                arm(entry, System.nanoTime());
+                dispatch(entry);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts the request being executed on the executor, unless it has been removed or started meanwhile.
+     * A single task is posted at a time, so starting requests does not allocate.
+     */
+    private final Runnable mStartTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (GattRequestQueue.this) {
+                mStartPosted = false;
+                final Entry current = mCurrent;
+                if (current != null && !current.started) {
+                    start(current);
+                }
+            }
+        }
+    };
+
+    /**
+     * Starts the request being executed on the executor, or right away if there is none
+     */
+    private void dispatch(final Entry entry) {
+        if (mExecutor == null) {
+            start(entry);
+        } else if (!mStartPosted) {
+            mStartPosted = true;
+            mExecutor.execute(mStartTask);
+        }
+    }
+
+    /**
+     * Starts the request being executed. A rejected operation is retried right away while the request has retries left,
+     * otherwise the request is skipped and the next one is started, without waiting for the deadline in both cases.
+     */
+    private void start(final Entry entry) {
+        entry.started = true;
+        if (entry.request.start()) {
+            return;
+        }
+        mStatistics.mRejectedCount[entry.priority]++;
+        if (entry.retries < entry.policy.getMaxRetries()) {
+            entry.retries++;
+            arm(entry, System.nanoTime());
+            entry.started = false;
+            dispatch(entry);
+            return;
+        }
+        mStatistics.mSkippedCount[entry.priority]++;
+        mCurrent = null;
+        drop(entry, true);
+        startNext();
+    }
+
+    private static void arm(final Entry entry, final long now) {
+        final long timeoutMillis = entry.policy.getTimeoutMillis();
+        // 0 means no deadline, nanoTime() values of exactly 0 are moved by 1ns
+        entry.deadline = timeoutMillis > 0 ? (now + timeoutMillis * 1000000L) | 1 : 0;
+    }
+
+    private void clearLane(final int priority) {
+        final ArrayDeque<Entry> lane = mLanes[priority];
+        Entry entry;
+        while ((entry = lane.poll()) != null) {
+            drop(entry, false);
+        }
+    }
+
+    private void drop(final Entry entry, final boolean skipped) {
+        final GattRequest request = entry.request;
+        recycle(entry);
+        request.onDropped(skipped);
+    }
+
+    private void recycle(final Entry entry) {
+        entry.request = null;
+        entry.policy = null;
+        entry.retries = 0;
+        entry.deadline = 0;
+        entry.started = false;
+        mEntryPool.add(entry);
+    }
+
+    private static void checkPriority(final int priority) {
+        if (priority < 0 || priority >= PRIORITY_COUNT) {
+            throw new IllegalArgumentException("Invalid priority: " + priority);
+        }
+    }
+
+    private static final class Entry {
+        GattRequest request;
+        int priority;
+        GattTimeoutPolicy policy;
+        int retries;
+        boolean started;
+        long enqueuedAt;
+        long deadline;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.gatt;
+
+/**
+ * Deadline of a GATT request and what to do when it passes. A request which does not complete within the timeout is started again
+ * up to the given number of retries, after which it is skipped so the requests queued behind it are not blocked.
+ */
+public final class GattTimeoutPolicy {
+    /** Requests without a deadline, they wait for their completion forever */
+    public static final GattTimeoutPolicy NONE = new GattTimeoutPolicy(0, 0);
+
+    private final long mTimeoutMillis;
+    private final int mMaxRetries;
+
+    /**
+     * Creates a timeout policy
+     *
+     * @param timeoutMillis time in milliseconds the request is given to complete, 0 for no deadline
+     * @param maxRetries    number of times the request is started again after a timeout before it is skipped
+     */
+    public GattTimeoutPolicy(final long timeoutMillis, final int maxRetries) {
+        if (timeoutMillis < 0 || maxRetries < 0) {
+            throw new IllegalArgumentException("Timeout and retries must not be negative");
+        }
+        mTimeoutMillis = timeoutMillis;
+        mMaxRetries = maxRetries;
+    }
+
+    /**
+     * Returns the time in milliseconds the request is given to complete, 0 if there is no deadline
+     */
+    public long getTimeoutMillis() {
+        return mTimeoutMillis;
+    }
+
+    /**
+     * Returns the number of times the request is started again after a timeout before it is skipped
+     */
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+}
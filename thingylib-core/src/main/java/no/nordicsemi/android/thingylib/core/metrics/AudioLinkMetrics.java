@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.metrics;
+
+/**
+ * Timing probes of the audio streamed to and from a Thingy.
+ * <br>
+ * On the speaker side it records how long each packet waited in the request queue before being written, how long the write took
+ * until the stack reported it completed, and how often and for how long the Thingy reported its buffer as full.
+ * On the microphone side it records the time from the notification completing a frame to the frame being handed to the audio track,
+ * and keeps the packet counters of the decoder. The latencies are recorded in {@link LatencyHistogram}s, the methods may be
+ * called from any thread.
+ */
+public class AudioLinkMetrics {
+    private final LatencyHistogram mSpeakerQueueLatency = new LatencyHistogram();
+    private final LatencyHistogram mSpeakerWriteLatency = new LatencyHistogram();
+    private final LatencyHistogram mMicrophonePlayoutLatency = new LatencyHistogram();
+
+    private long mSpeakerPackets;
+    private long mSpeakerBytes;
+    private long mBufferWarningCount;
+    private long mPacketsDisregarded;
+    private long mBufferFullNanos;
+    private long mBufferWarningSince;
+
+    private long mMicrophonePackets;
+    private long mMicrophoneInvalidPackets;
+    private long mMicrophoneFramesLost;
+
+    /**
+     * Returns the histogram of the time from the notification completing a microphone frame to its playout.
+     * It is recorded by the mixer, see {@link no.nordicsemi.android.thingylib.core.stream.AudioMixer.Source#setPlayoutHistogram(LatencyHistogram)}.
+     */
+    public LatencyHistogram getMicrophonePlayoutLatency() {
+        return mMicrophonePlayoutLatency;
+    }
+
+    /**
+     * Records the time a speaker packet waited in the request queue before being written
+     */
+    public void onSpeakerPacketStarted(final long queuedNanos) {
+        mSpeakerQueueLatency.recordNanos(queuedNanos);
+    }
+
+    /**
+     * Records a completed speaker packet
+     *
+     * @param length     the length of the packet in bytes
+     * @param writeNanos the time from the start of the write to its completion
+     */
+    public synchronized void onSpeakerPacketCompleted(final int length, final long writeNanos) {
+        mSpeakerWriteLatency.recordNanos(writeNanos);
+        mSpeakerPackets++;
+        mSpeakerBytes += length;
+    }
+
+    /**
+     * Records that the Thingy reported its speaker buffer as full
+     */
+    public synchronized void onBufferWarning(final long nowNanos) {
+        if (mBufferWarningSince == 0) {
+            mBufferWarningSince = nowNanos;
+            mBufferWarningCount++;
+        }
+    }
+
+    /**
+     * Records that the Thingy speaker buffer accepts packets again, or that the stream was stopped
+     */
+    public synchronized void onBufferReady(final long nowNanos) {
+        if (mBufferWarningSince != 0) {
+            mBufferFullNanos += nowNanos - mBufferWarningSince;
+            mBufferWarningSince = 0;
+        }
+    }
+
+    /**
+     * Records a packet the Thingy reported as disregarded
+     */
+    public synchronized void onPacketDisregarded() {
+        mPacketsDisregarded++;
+    }
+
+    /**
+     * Updates the counters of the microphone decoder
+     *
+     * @param packets        the number of packets received
+     * @param invalidPackets the number of packets discarded because their frame could not be decoded
+     * @param framesLost     the number of frames not received
+     */
+    public synchronized void setMicrophoneCounters(final long packets, final long invalidPackets, final long framesLost) {
+        mMicrophonePackets = packets;
+        mMicrophoneInvalidPackets = invalidPackets;
+        mMicrophoneFramesLost = framesLost;
+    }
+
+    /**
+     * Removes all recorded values
+     */
+    public synchronized void reset() {
+        mSpeakerQueueLatency.reset();
+        mSpeakerWriteLatency.reset();
+        mMicrophonePlayoutLatency.reset();
+        mSpeakerPackets = 0;
+        mSpeakerBytes = 0;
+        mBufferWarningCount = 0;
+        mPacketsDisregarded = 0;
+        mBufferFullNanos = 0;
+        mBufferWarningSince = 0;
+        mMicrophonePackets = 0;
+        mMicrophoneInvalidPackets = 0;
+        mMicrophoneFramesLost = 0;
+    }
+
+    /**
+     * Fills the statistics with the values recorded until now
+     *
+     * @param statistics the statistics to be refilled, or null to create new ones
+     * @param nowNanos   the current {@link System#nanoTime()}, to include a buffer warning still in progress
+     * @return the statistics
+     */
+    public synchronized AudioLinkStatistics getStatistics(final AudioLinkStatistics statistics, final long nowNanos) {
+        final AudioLinkStatistics result = statistics != null ? statistics : new AudioLinkStatistics();
+        mSpeakerQueueLatency.copyTo(result.mSpeakerQueueLatency);
+        mSpeakerWriteLatency.copyTo(result.mSpeakerWriteLatency);
+        mMicrophonePlayoutLatency.copyTo(result.mMicrophonePlayoutLatency);
+        result.mSpeakerPackets = mSpeakerPackets;
+        result.mSpeakerBytes = mSpeakerBytes;
+        result.mBufferWarningCount = mBufferWarningCount;
+        result.mPacketsDisregarded = mPacketsDisregarded;
+        result.mBufferFullNanos = mBufferFullNanos + (mBufferWarningSince != 0 ? nowNanos - mBufferWarningSince : 0);
+        result.mBufferFull = mBufferWarningSince != 0;
+        result.mMicrophonePackets = mMicrophonePackets;
+        result.mMicrophoneInvalidPackets = mMicrophoneInvalidPackets;
+        result.mMicrophoneFramesLost = mMicrophoneFramesLost;
+        return result;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.metrics;
+
+/**
+ * Statistics of the audio streamed to and from a Thingy, see {@link AudioLinkMetrics}.
+ * <br>
+ * An instance may be passed back to {@link AudioLinkMetrics#getStatistics(AudioLinkStatistics, long)} to be refilled without allocating.
+ */
+public final class AudioLinkStatistics {
+    /*package access*/ final LatencyHistogram mSpeakerQueueLatency = new LatencyHistogram();
+    /*package access*/ final LatencyHistogram mSpeakerWriteLatency = new LatencyHistogram();
+    /*package access*/ final LatencyHistogram mMicrophonePlayoutLatency = new LatencyHistogram();
+    /*package access*/ long mSpeakerPackets;
+    /*package access*/ long mSpeakerBytes;
+    /*package access*/ long mBufferWarningCount;
+    /*package access*/ long mPacketsDisregarded;
+    /*package access*/ long mBufferFullNanos;
+    /*package access*/ boolean mBufferFull;
+    /*package access*/ long mMicrophonePackets;
+    /*package access*/ long mMicrophoneInvalidPackets;
+    /*package access*/ long mMicrophoneFramesLost;
+
+    /**
+     * Returns the histogram of the time the speaker packets waited in the request queue before being written
+     */
+    public LatencyHistogram getSpeakerQueueLatency() {
+        return mSpeakerQueueLatency;
+    }
+
+    /**
+     * Returns the histogram of the time from the start of a speaker packet write to its completion
+     */
+    public LatencyHistogram getSpeakerWriteLatency() {
+        return mSpeakerWriteLatency;
+    }
+
+    /**
+     * Returns the histogram of the time from the notification completing a microphone frame to its playout
+     */
+    public LatencyHistogram getMicrophonePlayoutLatency() {
+        return mMicrophonePlayoutLatency;
+    }
+
+    /**
+     * Returns the number of packets written to the speaker
+     */
+    public long getSpeakerPackets() {
+        return mSpeakerPackets;
+    }
+
+    /**
+     * Returns the number of bytes written to the speaker
+     */
+    public long getSpeakerBytes() {
+        return mSpeakerBytes;
+    }
+
+    /**
+     * Returns the number of times the Thingy reported its speaker buffer as full
+     */
+    public long getBufferWarningCount() {
+        return mBufferWarningCount;
+    }
+
+    /**
+     * Returns the total time in milliseconds the speaker stream waited for the Thingy buffer to be ready again
+     */
+    public float getBufferFullMillis() {
+        return mBufferFullNanos / 1000000.0f;
+    }
+
+    /**
+     * Returns true if the Thingy speaker buffer was full when the statistics were taken
+     */
+    public boolean isBufferFull() {
+        return mBufferFull;
+    }
+
+    /**
+     * Returns the number of packets the Thingy reported as disregarded
+     */
+    public long getPacketsDisregarded() {
+        return mPacketsDisregarded;
+    }
+
+    /**
+     * Returns the number of microphone packets received
+     */
+    public long getMicrophonePackets() {
+        return mMicrophonePackets;
+    }
+
+    /**
+     * Returns the number of microphone packets discarded because their frame could not be decoded
+     */
+    public long getMicrophoneInvalidPackets() {
+        return mMicrophoneInvalidPackets;
+    }
+
+    /**
+     * Returns the estimated number of microphone frames lost on the link
+     */
+    public long getMicrophoneFramesLost() {
+        return mMicrophoneFramesLost;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with a fixed relative precision, in the manner of an HDR histogram.
+ * <br>
+ * Values are recorded in microseconds. Values below 64 microseconds have their own bucket, above that each power of two is split into
+ * 32 linear buckets, so any value is reported within about 3% and the histogram spans from 1 microsecond to about 9 hours in a fixed
+ * array of counters. Recording takes no lock and never allocates, so it may be called from any thread on the audio paths.
+ * <br>
+ * A histogram may be copied into another one with {@link #copyTo(LatencyHistogram)} to be queried while the recording continues.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** Values below this are counted exactly */
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKET_COUNT;
+    /** Values from 2^MAX_EXPONENT are counted in the last bucket */
+    private static final int MAX_EXPONENT = 35;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT + 1;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotalCount = new AtomicLong();
+    private final AtomicLong mTotalMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * Records a latency
+     *
+     * @param nanos the latency in nanoseconds, negative values are recorded as 0
+     */
+    public void recordNanos(final long nanos) {
+        final long micros = nanos > 0 ? nanos / 1000L : 0;
+        mCounts.incrementAndGet(getBucketIndex(micros));
+        mTotalCount.incrementAndGet();
+        mTotalMicros.addAndGet(micros);
+        long max;
+        while (micros > (max = mMaxMicros.get())) {
+            if (mMaxMicros.compareAndSet(max, micros)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Removes all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mTotalMicros.set(0);
+        mMaxMicros.set(0);
+    }
+
+    /**
+     * Copies the recorded values into the given histogram, replacing its values
+     *
+     * @param target the histogram to be refilled, or null to create a new one
+     * @return the target histogram
+     */
+    public LatencyHistogram copyTo(final LatencyHistogram target) {
+        final LatencyHistogram result = target != null ? target : new LatencyHistogram();
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            final long bucket = mCounts.get(i);
+            result.mCounts.set(i, bucket);
+            count += bucket;
+        }
+        // The total is taken from the buckets, so a value recorded while copying can't make the percentiles inconsistent
+        result.mTotalCount.set(count);
+        result.mTotalMicros.set(mTotalMicros.get());
+        result.mMaxMicros.set(mMaxMicros.get());
+        return result;
+    }
+
+    /**
+     * Returns the number of recorded values
+     */
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values in milliseconds
+     */
+    public float getMeanMillis() {
+        final long count = mTotalCount.get();
+        return count > 0 ? mTotalMicros.get() / 1000.0f / count : 0;
+    }
+
+    /**
+     * Returns the highest recorded value in milliseconds
+     */
+    public float getMaxMillis() {
+        return mMaxMicros.get() / 1000.0f;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values fall, in milliseconds.
+     * The value is the upper bound of its bucket, but never higher than the highest recorded value.
+     *
+     * @param percentile the percentile, between 0 and 100
+     */
+    public float getPercentileMillis(final double percentile) {
+        final long count = mTotalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        final double clamped = Math.min(100.0, Math.max(0.0, percentile));
+        final long rank = Math.max(1, (long) Math.ceil(clamped / 100.0 * count));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += mCounts.get(i);
+            if (cumulative >= rank) {
+                return Math.min(getHighestValue(i), mMaxMicros.get()) / 1000.0f;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /*package access*/ static int getBucketIndex(final long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        final int subBucket = (int) (micros >> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /*package access*/ static long getHighestValue(final int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        final int exponent = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS + 1;
+        final int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT;
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+}
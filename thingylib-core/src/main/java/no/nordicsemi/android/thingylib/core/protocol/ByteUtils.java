@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.protocol;
+
+/**
+ * Reads and writes the little-endian values used by the Thingy characteristics.
+ * <br>
+ * The format types have the same values as the ones defined in android.bluetooth.BluetoothGattCharacteristic,
+ * so they may be used interchangeably.
+ */
+public final class ByteUtils {
+    public static final int FORMAT_UINT8 = 0x11;
+    public static final int FORMAT_UINT16 = 0x12;
+    public static final int FORMAT_UINT24 = 0x13;
+    public static final int FORMAT_UINT32 = 0x14;
+    public static final int FORMAT_SINT8 = 0x21;
+    public static final int FORMAT_SINT16 = 0x22;
+    public static final int FORMAT_SINT24 = 0x23;
+    public static final int FORMAT_SINT32 = 0x24;
+    public static final int FORMAT_UINT16_BIG_INDIAN = 0x62;
+    public static final int FORMAT_UINT32_BIG_INDIAN = 0x64;
+
+    private ByteUtils() {
+    }
+
+    /**
+     * Reads an unsigned 8-bit value at the given offset.
+     */
+    public static int readUint8(final byte[] data, final int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    /**
+     * Reads a signed 8-bit value at the given offset.
+     */
+    public static int readSint8(final byte[] data, final int offset) {
+        return data[offset];
+    }
+
+    /**
+     * Reads a little-endian unsigned 16-bit value at the given offset.
+     */
+    public static int readUint16(final byte[] data, final int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+
+    /**
+     * Reads a little-endian signed 16-bit value at the given offset.
+     */
+    public static int readSint16(final byte[] data, final int offset) {
+        return (short) readUint16(data, offset);
+    }
+
+    /**
+     * Reads a little-endian signed 32-bit value at the given offset.
+     */
+    public static int readSint32(final byte[] data, final int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16) | (data[offset + 3] << 24);
+    }
+
+    /**
+     * Reads a little-endian unsigned 32-bit value at the given offset.
+     */
+    public static long readUint32(final byte[] data, final int offset) {
+        return readSint32(data, offset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Reads a little-endian IEEE 754 32-bit float at the given offset.
+     */
+    public static float readFloat32(final byte[] data, final int offset) {
+        return Float.intBitsToFloat(readSint32(data, offset));
+    }
+
+    /**
+     * Writes the value in the given format at the given offset.
+     *
+     * @param dest       destination array
+     * @param offset     offset in the destination array
+     * @param value      value to be written
+     * @param formatType one of the FORMAT_* constants
+     * @return the offset after the written value, or the given offset if the value does not fit or the format is unknown
+     */
+    public static int setValue(final byte[] dest, int offset, int value, int formatType) {
+        int len = offset + getTypeLen(formatType);
+        if (len > dest.length)
+            return offset;
+
+        switch (formatType) {
+            case FORMAT_SINT8:
+                value = intToSignedBits(value, 8);
+                // Fall-through intended
+            case FORMAT_UINT8:
+                dest[offset] = (byte) (value & 0xFF);
+                break;
+
+            case FORMAT_SINT16:
+                value = intToSignedBits(value, 16);
+                // Fall-through intended
+            case FORMAT_UINT16:
+                dest[offset++] = (byte) (value & 0xFF);
+                dest[offset] = (byte) ((value >> 8) & 0xFF);
+                break;
+
+            case FORMAT_SINT24:
+                value = intToSignedBits(value, 24);
+                // Fall-through intended
+            case FORMAT_UINT24:
+                dest[offset++] = (byte) (value & 0xFF);
+                dest[offset++] = (byte) ((value >> 8) & 0xFF);
+                dest[offset] = (byte) ((value >> 16) & 0xFF);
+                break;
+
+            case FORMAT_UINT16_BIG_INDIAN:
+                dest[offset++] = (byte) ((value >> 8) & 0xFF);
+                dest[offset] = (byte) (value & 0xFF);
+                break;
+
+            case FORMAT_SINT32:
+                value = intToSignedBits(value, 32);
+                // Fall-through intended
+            case FORMAT_UINT32:
+                dest[offset++] = (byte) (value & 0xFF);
+                dest[offset++] = (byte) ((value >> 8) & 0xFF);
+                dest[offset++] = (byte) ((value >> 16) & 0xFF);
+                dest[offset] = (byte) ((value >> 24) & 0xFF);
+                break;
+
+            case FORMAT_UINT32_BIG_INDIAN:
+                dest[offset++] = (byte) ((value >> 24) & 0xFF);
+                dest[offset++] = (byte) ((value >> 16) & 0xFF);
+                dest[offset++] = (byte) ((value >> 8) & 0xFF);
+                dest[offset] = (byte) (value & 0xFF);
+                break;
+
+            default:
+                return offset;
+        }
+        return len;
+    }
+
+    private static int getTypeLen(int formatType) {
+        return formatType & 0xF;
+    }
+
+    private static int intToSignedBits(int i, int size) {
+        if (i < 0) {
+            i = (1 << size - 1) + (i & ((1 << size - 1) - 1));
+        }
+        return i;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.protocol;
+
+import static no.nordicsemi.android.thingylib.core.protocol.ByteUtils.readFloat32;
+import static no.nordicsemi.android.thingylib.core.protocol.ByteUtils.readSint16;
+import static no.nordicsemi.android.thingylib.core.protocol.ByteUtils.readSint32;
+import static no.nordicsemi.android.thingylib.core.protocol.ByteUtils.readSint8;
+import static no.nordicsemi.android.thingylib.core.protocol.ByteUtils.readUint16;
+import static no.nordicsemi.android.thingylib.core.protocol.ByteUtils.readUint32;
+import static no.nordicsemi.android.thingylib.core.protocol.ByteUtils.readUint8;
+
+/**
+ * Parses the values of the Thingy:52 notifications.
+ * <br>
+ * Values made of several fields are written into caller provided arrays, so parsing a notification does not allocate.
+ */
+public final class ThingyNotifications {
+    private static final float QUATERNION_SCALE = 1 << 30;
+    private static final float FIXED_POINT_16_16_SCALE = 1 << 16;
+    private static final float RAW_DATA_SCALE = 2 << 14;
+
+    private ThingyNotifications() {
+    }
+
+    /**
+     * Parses the temperature, sent as a signed integer part and an unsigned decimal part in hundredths of degree Celsius.
+     */
+    public static float parseTemperature(final byte[] value) {
+        return parseFixedPoint(readSint8(value, 0), readUint8(value, 1));
+    }
+
+    /**
+     * Formats the temperature the way it is delivered to the listeners, i.e. "23.05".
+     */
+    public static String formatTemperature(final byte[] value) {
+        return formatFixedPoint(readSint8(value, 0), readUint8(value, 1));
+    }
+
+    /**
+     * Parses the pressure, sent as a signed 32-bit integer part and an unsigned decimal part in hundredths of hPa.
+     */
+    public static float parsePressure(final byte[] value) {
+        return parseFixedPoint(readSint32(value, 0), readUint8(value, 4));
+    }
+
+    /**
+     * Formats the pressure the way it is delivered to the listeners, i.e. "1013.25".
+     */
+    public static String formatPressure(final byte[] value) {
+        return formatFixedPoint(readSint32(value, 0), readUint8(value, 4));
+    }
+
+    /**
+     * Parses the relative humidity in percents.
+     */
+    public static int parseHumidity(final byte[] value) {
+        return readUint8(value, 0);
+    }
+
+    /**
+     * Parses the air quality.
+     *
+     * @param out eCO2 in ppm at index 0 and TVOC in ppb at index 1
+     */
+    public static void parseAirQuality(final byte[] value, final int[] out) {
+        out[0] = readUint16(value, 0);
+        out[1] = readUint16(value, 2);
+    }
+
+    /**
+     * Parses the color intensities.
+     *
+     * @param out red, green, blue and clear at indexes 0 to 3
+     */
+    public static void parseColor(final byte[] value, final float[] out) {
+        out[0] = readUint16(value, 0);
+        out[1] = readUint16(value, 2);
+        out[2] = readUint16(value, 4);
+        out[3] = readUint16(value, 6);
+    }
+
+    /**
+     * Parses the button state.
+     */
+    public static int parseButtonState(final byte[] value) {
+        return readUint8(value, 0);
+    }
+
+    /**
+     * Parses the tap event.
+     *
+     * @param out direction at index 0 and tap count at index 1
+     */
+    public static void parseTap(final byte[] value, final int[] out) {
+        out[0] = readUint8(value, 0);
+        out[1] = readUint8(value, 1);
+    }
+
+    /**
+     * Parses the orientation.
+     */
+    public static int parseOrientation(final byte[] value) {
+        return readUint8(value, 0);
+    }
+
+    /**
+     * Parses the quaternion, sent as signed 2.30 fixed point values.
+     *
+     * @param out w, x, y and z at indexes 0 to 3
+     */
+    public static void parseQuaternion(final byte[] value, final float[] out) {
+        out[0] = readSint32(value, 0) / QUATERNION_SCALE;
+        out[1] = readSint32(value, 4) / QUATERNION_SCALE;
+        out[2] = readSint32(value, 8) / QUATERNION_SCALE;
+        out[3] = readSint32(value, 12) / QUATERNION_SCALE;
+    }
+
+    /**
+     * Parses the pedometer step count.
+     */
+    public static int parseStepCount(final byte[] value) {
+        return readSint32(value, 0);
+    }
+
+    /**
+     * Parses the pedometer duration in milliseconds.
+     */
+    public static long parsePedometerDuration(final byte[] value) {
+        return readUint32(value, 4);
+    }
+
+    /**
+     * Parses the raw motion data. The compass values are sent in Z, X, Y order and are reordered.
+     *
+     * @param out accelerometer x, y, z at indexes 0 to 2, gyroscope x, y, z at indexes 3 to 5 and compass x, y, z at indexes 6 to 8
+     */
+    public static void parseRawData(final byte[] value, final float[] out) {
+        //Accelerometer
+        out[0] = readSint16(value, 0) / RAW_DATA_SCALE;
+        out[1] = readSint16(value, 2) / RAW_DATA_SCALE;
+        out[2] = readSint16(value, 4) / RAW_DATA_SCALE;
+        //Gyroscope
+        out[3] = readSint16(value, 6) / RAW_DATA_SCALE;
+        out[4] = readSint16(value, 8) / RAW_DATA_SCALE;
+        out[5] = readSint16(value, 10) / RAW_DATA_SCALE;
+        //Compass
+        out[8] = readSint16(value, 12) / RAW_DATA_SCALE;
+        out[6] = readSint16(value, 14) / RAW_DATA_SCALE;
+        out[7] = readSint16(value, 16) / RAW_DATA_SCALE;
+    }
+
+    /**
+     * Parses the euler angles, sent as signed 16.16 fixed point values.
+     *
+     * @param out roll, pitch and yaw at indexes 0 to 2
+     */
+    public static void parseEuler(final byte[] value, final float[] out) {
+        out[0] = readSint32(value, 0) / FIXED_POINT_16_16_SCALE;
+        out[1] = readSint32(value, 4) / FIXED_POINT_16_16_SCALE;
+        out[2] = readSint32(value, 8) / FIXED_POINT_16_16_SCALE;
+    }
+
+    /**
+     * Parses the heading, sent as a signed 16.16 fixed point value, rounded to 2 decimals.
+     */
+    public static float parseHeading(final byte[] value) {
+        final float heading = readSint32(value, 0) / FIXED_POINT_16_16_SCALE;
+        return Math.round(heading * 100.0f) / 100.0f;
+    }
+
+    /**
+     * Parses the gravity vector, sent as little-endian IEEE 754 floats.
+     *
+     * @param out x, y and z at indexes 0 to 2
+     */
+    public static void parseGravityVector(final byte[] value, final float[] out) {
+        out[0] = readFloat32(value, 0);
+        out[1] = readFloat32(value, 4);
+        out[2] = readFloat32(value, 8);
+    }
+
+    /**
+     * Parses the speaker status.
+     */
+    public static int parseSpeakerStatus(final byte[] value) {
+        return readUint8(value, 0);
+    }
+
+    /**
+     * The decimal part has the sign of the integer part, i.e. -5 and 5 hundredths is -5.05, the same value as {@link #formatFixedPoint(int, int)} shows.
+     */
+    private static float parseFixedPoint(final int integer, final int hundredths) {
+        return integer < 0 ? integer - hundredths / 100.0f : integer + hundredths / 100.0f;
+    }
+
+    private static String formatFixedPoint(final int integer, final int hundredths) {
+        return integer + (hundredths < 10 ? ".0" : ".") + hundredths;
+    }
+}
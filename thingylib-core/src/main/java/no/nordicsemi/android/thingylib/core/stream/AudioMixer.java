@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import no.nordicsemi.android.thingylib.core.metrics.LatencyHistogram;
+
+/**
+ * Mixes the 16-bit PCM frames received from several Thingy microphones into one output.
+ * <br>
+ * Each source has its own {@link JitterBuffer}, written by the thread receiving its frames. The mixing thread calls
+ * {@link #mix(byte[], int)} once per frame period, which takes exactly one frame from every source, so frames received at the same time
+ * are played together and each source's latency stays bounded by its buffer. A source may also, or only, deliver its aligned frames
+ * to a {@link FrameSink}, i.e. to record or analyse each device separately. The cost of a mix is linear in the number of sources.
+ * <br>
+ * Sources may be added and removed from any thread while mixing.
+ */
+public class AudioMixer {
+    private static final Source[] EMPTY_SOURCES = new Source[0];
+
+    /**
+     * Receives the aligned frames of a source on the mixing thread.
+     */
+    public interface FrameSink {
+        /**
+         * Called with the frame of the source for the current period. The frame is borrowed and must be copied to be kept.
+         *
+         * @param key    the key of the source
+         * @param frame  the array containing the 16-bit PCM frame
+         * @param offset the offset of the frame in the array
+         * @param length the length of the frame
+         * @param result {@link JitterBuffer#READ_FRAME}, {@link JitterBuffer#READ_CONCEALED} or {@link JitterBuffer#READ_SILENCE}
+         */
+        void onFrame(final Object key, final byte[] frame, final int offset, final int length, final int result);
+    }
+
+    /**
+     * A source of the mixer, one per microphone.
+     */
+    public static final class Source {
+        private final Object mKey;
+        private final JitterBuffer mJitterBuffer;
+        private final byte[] mFrame;
+        private volatile float mGain = 1.0f;
+        private volatile boolean mMixed = true;
+        private volatile FrameSink mSink;
+        private volatile LatencyHistogram mPlayoutHistogram;
+        private long mMixedTimestamp;
+
+        private Source(final Object key, final JitterBuffer jitterBuffer) {
+            mKey = key;
+            mJitterBuffer = jitterBuffer;
+            mFrame = new byte[jitterBuffer.getFrameSize()];
+        }
+
+        /**
+         * Returns the key the source was added with
+         */
+        public Object getKey() {
+            return mKey;
+        }
+
+        /**
+         * Returns the jitter buffer of the source, i.e. to change the target or get the statistics
+         */
+        public JitterBuffer getJitterBuffer() {
+            return mJitterBuffer;
+        }
+
+        /**
+         * Queues the next frame of the source. Called by the thread receiving the frames of the source only.
+         *
+         * @return false if the frame was dropped because the buffer was full
+         */
+        public boolean write(final byte[] frame, final int offset, final int length) {
+            return mJitterBuffer.write(frame, offset, length);
+        }
+
+        /**
+         * Queues the next frame of the source with the time it was received, used to measure its latency until the playout.
+         * Called by the thread receiving the frames of the source only.
+         *
+         * @return false if the frame was dropped because the buffer was full
+         */
+        public boolean write(final byte[] frame, final int offset, final int length, final long timestampNanos) {
+            return mJitterBuffer.write(frame, offset, length, timestampNanos);
+        }
+
+        /**
+         * Sets the histogram recording the time from the reception of each frame of the source to its playout,
+         * see {@link AudioMixer#recordPlayout(long)}
+         *
+         * @param histogram the histogram, or null
+         */
+        public void setPlayoutHistogram(final LatencyHistogram histogram) {
+            mPlayoutHistogram = histogram;
+        }
+
+        /**
+         * Sets the gain applied to the source in the mix
+         *
+         * @param gain linear gain, 1 by default
+         */
+        public void setGain(final float gain) {
+            mGain = gain;
+        }
+
+        /**
+         * Sets whether the source is added to the mixed output. A source which is not mixed is only delivered to its sink.
+         */
+        public void setMixed(final boolean mixed) {
+            mMixed = mixed;
+        }
+
+        /**
+         * Sets the sink receiving the aligned frames of the source
+         *
+         * @param sink the sink, or null
+         */
+        public void setSink(final FrameSink sink) {
+            mSink = sink;
+        }
+    }
+
+    private final int mFrameSize;
+    private final int mFrameDurationMicros;
+    private final int mCapacity;
+    private final int[] mAccumulator;
+    private volatile Source[] mSources = EMPTY_SOURCES;
+
+    /**
+     * Creates the mixer
+     *
+     * @param frameSize           the size of a frame in bytes
+     * @param frameDurationMicros the duration of a frame in microseconds
+     * @param capacity            the maximum number of frames buffered per source
+     */
+    public AudioMixer(final int frameSize, final int frameDurationMicros, final int capacity) {
+        mFrameSize = frameSize;
+        mFrameDurationMicros = frameDurationMicros;
+        mCapacity = capacity;
+        mAccumulator = new int[frameSize / 2];
+    }
+
+    /**
+     * Returns the size of a frame in bytes
+     */
+    public int getFrameSize() {
+        return mFrameSize;
+    }
+
+    /**
+     * Adds a source. Its frames are mixed once its jitter buffer has reached the target.
+     *
+     * @param key          the key of the source, i.e. the bluetooth device
+     * @param targetFrames the number of frames buffered before the source is played
+     * @return the source
+     */
+    public synchronized Source addSource(final Object key, final int targetFrames) {
+        final Source source = new Source(key, new JitterBuffer(mFrameSize, mFrameDurationMicros, mCapacity, targetFrames));
+        final Source[] sources = new Source[mSources.length + 1];
+        System.arraycopy(mSources, 0, sources, 0, mSources.length);
+        sources[mSources.length] = source;
+        mSources = sources;
+        return source;
+    }
+
+    /**
+     * Removes the source
+     *
+     * @return true if the source was removed
+     */
+    public synchronized boolean removeSource(final Source source) {
+        final Source[] current = mSources;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == source) {
+                final Source[] sources = new Source[current.length - 1];
+                System.arraycopy(current, 0, sources, 0, i);
+                System.arraycopy(current, i + 1, sources, i, current.length - i - 1);
+                mSources = sources;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of sources
+     */
+    public int getSourceCount() {
+        return mSources.length;
+    }
+
+    /**
+     * Takes the next frame of every source, delivers it to the source's sink and mixes the sources into the output
+     * with saturation. Called by the mixing thread only.
+     *
+     * @param out    the output array, at least the frame size from the offset
+     * @param offset the offset in the output array
+     * @return the number of sources which contributed a received or concealed frame to the output
+     */
+    public int mix(final byte[] out, final int offset) {
+        final Source[] sources = mSources;
+        final int[] accumulator = mAccumulator;
+        final int samples = accumulator.length;
+        for (int i = 0; i < samples; i++) {
+            accumulator[i] = 0;
+        }
+
+        int mixed = 0;
+        for (final Source source : sources) {
+            final byte[] frame = source.mFrame;
+            final int result = source.mJitterBuffer.read(frame, 0);
+            source.mMixedTimestamp = result == JitterBuffer.READ_FRAME && source.mMixed ? source.mJitterBuffer.getReadTimestamp() : 0;
+            final FrameSink sink = source.mSink;
+            if (sink != null) {
+                sink.onFrame(source.mKey, frame, 0, mFrameSize, result);
+            }
+            if (result == JitterBuffer.READ_SILENCE || !source.mMixed) {
+                continue;
+            }
+            mixed++;
+
+            final float gain = source.mGain;
+            if (gain == 1.0f) {
+                for (int i = 0; i < samples; i++) {
+                    accumulator[i] += (short) ((frame[2 * i] & 0xFF) | (frame[2 * i + 1] << 8));
+                }
+            } else {
+                for (int i = 0; i < samples; i++) {
+                    accumulator[i] += (int) (gain * (short) ((frame[2 * i] & 0xFF) | (frame[2 * i + 1] << 8)));
+                }
+            }
+        }
+
+        for (int i = 0; i < samples; i++) {
+            final int value = accumulator[i];
+            final int sample = value > Short.MAX_VALUE ? Short.MAX_VALUE : value < Short.MIN_VALUE ? Short.MIN_VALUE : value;
+            out[offset + 2 * i] = (byte) sample;
+            out[offset + 2 * i + 1] = (byte) (sample >> 8);
+        }
+        return mixed;
+    }
+
+    /**
+     * Records the latency of the received frames of the last mix in the playout histograms of their sources.
+     * Called by the mixing thread once the output of {@link #mix(byte[], int)} has been handed to the audio sink.
+     *
+     * @param nowNanos the current {@link System#nanoTime()}
+     */
+    public void recordPlayout(final long nowNanos) {
+        for (final Source source : mSources) {
+            final LatencyHistogram histogram = source.mPlayoutHistogram;
+            if (histogram != null && source.mMixedTimestamp != 0) {
+                histogram.recordNanos(nowNanos - source.mMixedTimestamp);
+                source.mMixedTimestamp = 0;
+            }
+        }
+    }
+}
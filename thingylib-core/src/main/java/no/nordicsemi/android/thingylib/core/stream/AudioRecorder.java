@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import no.nordicsemi.android.thingylib.core.codec.AdpcmCodec;
+import no.nordicsemi.android.thingylib.core.codec.WavHeader;
+
+/**
+ * Records the microphone audio of a Thingy to files without blocking the thread receiving it.
+ * <br>
+ * Frames are copied into large blocks, and full blocks are written by a background writer thread. The blocks are allocated once
+ * when the recorder is created; if the writer falls behind and all blocks are full, the frames are dropped and counted.
+ * <br>
+ * With {@link #FORMAT_PCM} the decoded 16-bit samples are stored in wav files whose header is rewritten and synced at every checkpoint,
+ * so an interrupted recording stays readable up to the last checkpoint. With {@link #FORMAT_ADPCM} the ADPCM frames sent by the Thingy
+ * are stored as received, which is 4 times smaller, and converted with {@link #exportAdpcm(File, File, int)} when needed.
+ * <br>
+ * Long recordings may be split in segments of a given duration. The first segment is named after the recording,
+ * the following ones get the suffix _2, _3 and so on.
+ */
+public class AudioRecorder {
+    /** 16-bit mono PCM in wav files */
+    public static final int FORMAT_PCM = 0;
+    /** ADPCM frames as sent by the Thingy, in .adpcm files */
+    public static final int FORMAT_ADPCM = 1;
+    /** The default interval between header checkpoints in milliseconds */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    private static final int BLOCK_COUNT = 8;
+    private static final int FRAMES_PER_BLOCK = 64;
+    private static final int SAMPLES_PER_FRAME = AdpcmCodec.PCM_FRAME_SIZE / 2;
+
+    private static final class Block {
+        final byte[] data;
+        int length;
+
+        Block(final int size) {
+            data = new byte[size];
+        }
+    }
+
+    /** Marks the end of the recording in the queue of full blocks */
+    private static final Block END = new Block(0);
+
+    private final File mDirectory;
+    private final String mName;
+    private final int mFormat;
+    private final int mSampleRate;
+    private final int mFrameSize;
+    private final ArrayBlockingQueue<Block> mFreeBlocks = new ArrayBlockingQueue<>(BLOCK_COUNT);
+    private final ArrayBlockingQueue<Block> mFullBlocks = new ArrayBlockingQueue<>(BLOCK_COUNT + 1);
+    private final List<File> mSegments = new ArrayList<>();
+    private final Object mLock = new Object();
+    private long mSegmentDuration;
+    private long mCheckpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private Block mCurrent;
+    private boolean mRecording;
+    private Thread mWriterThread;
+    private volatile IOException mError;
+    private volatile long mRecordedBytes;
+    private volatile long mDroppedBytes;
+
+    // Used by the writer thread only
+    private final byte[] mHeader = new byte[WavHeader.SIZE];
+    private RandomAccessFile mFile;
+    private long mSegmentLength;
+    private long mSegmentLimit;
+    private long mLastCheckpoint;
+
+    /**
+     * Creates the recorder
+     *
+     * @param directory  the directory of the recording
+     * @param name       the name of the recording, without extension
+     * @param format     {@link #FORMAT_PCM} or {@link #FORMAT_ADPCM}
+     * @param sampleRate the sample rate of the audio in Hz
+     */
+    public AudioRecorder(final File directory, final String name, final int format, final int sampleRate) {
+        if (format != FORMAT_PCM && format != FORMAT_ADPCM) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        mDirectory = directory;
+        mName = name;
+        mFormat = format;
+        mSampleRate = sampleRate;
+        mFrameSize = format == FORMAT_PCM ? AdpcmCodec.PCM_FRAME_SIZE : AdpcmCodec.FRAME_SIZE;
+        for (int i = 0; i < BLOCK_COUNT; i++) {
+            mFreeBlocks.add(new Block(mFrameSize * FRAMES_PER_BLOCK));
+        }
+    }
+
+    /**
+     * Returns the format of the recording, {@link #FORMAT_PCM} or {@link #FORMAT_ADPCM}
+     */
+    public int getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Sets the maximum duration of a segment. Must be called before {@link #start()}.
+     *
+     * @param durationMillis the duration in milliseconds, or 0 to record into a single file
+     */
+    public void setSegmentDuration(final long durationMillis) {
+        mSegmentDuration = durationMillis;
+    }
+
+    /**
+     * Sets the interval between header checkpoints. Must be called before {@link #start()}.
+     *
+     * @param intervalMillis the interval in milliseconds
+     */
+    public void setCheckpointInterval(final long intervalMillis) {
+        mCheckpointInterval = intervalMillis;
+    }
+
+    /**
+     * Creates the first segment and starts the writer thread.
+     *
+     * @throws IOException if the first segment could not be created
+     */
+    public void start() throws IOException {
+        synchronized (mLock) {
+            if (mWriterThread != null) {
+                throw new IllegalStateException("Recorder already started");
+            }
+            if (mSegmentDuration > 0) {
+                final long frames = mSegmentDuration * mSampleRate / SAMPLES_PER_FRAME / 1000;
+                mSegmentLimit = Math.max(1, frames) * mFrameSize;
+            } else {
+                mSegmentLimit = Long.MAX_VALUE;
+            }
+            openSegment();
+            mCurrent = mFreeBlocks.poll();
+            mRecording = true;
+            mWriterThread = new Thread(mWriter, "ThingyRecorder " + mName);
+            mWriterThread.start();
+        }
+    }
+
+    /**
+     * Adds the next frames to the recording. Frames are either kept whole or dropped, so the data should contain whole frames.
+     *
+     * @param data   the array containing the frames, 16-bit PCM or ADPCM depending on the format
+     * @param offset the offset of the frames in the array
+     * @param length the length of the frames
+     * @return false if the recorder is not recording or the frames were dropped because the writer fell behind
+     */
+    public boolean write(final byte[] data, final int offset, final int length) {
+        synchronized (mLock) {
+            if (!mRecording) {
+                return false;
+            }
+            int position = 0;
+            while (position < length) {
+                Block block = mCurrent;
+                if (block == null) {
+                    block = mCurrent = mFreeBlocks.poll();
+                    if (block == null) {
+                        mDroppedBytes += length - position;
+                        return false;
+                    }
+                }
+                final int toCopy = Math.min(length - position, block.data.length - block.length);
+                System.arraycopy(data, offset + position, block.data, block.length, toCopy);
+                block.length += toCopy;
+                position += toCopy;
+                if (block.length == block.data.length) {
+                    mFullBlocks.add(block);
+                    mCurrent = null;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stops the recording, waits until the buffered frames are written and closes the last segment.
+     *
+     * @return the segments of the recording
+     * @throws IOException if writing the recording failed
+     */
+    public List<File> stop() throws IOException {
+        final Thread writerThread;
+        synchronized (mLock) {
+            if (!mRecording) {
+                return new ArrayList<>(mSegments);
+            }
+            mRecording = false;
+            if (mCurrent != null && mCurrent.length > 0) {
+                mFullBlocks.add(mCurrent);
+            }
+            mCurrent = null;
+            mFullBlocks.add(END);
+            writerThread = mWriterThread;
+        }
+
+        boolean interrupted = false;
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (mError != null) {
+            throw mError;
+        }
+        return new ArrayList<>(mSegments);
+    }
+
+    /**
+     * Returns the number of bytes written to the segments
+     */
+    public long getRecordedBytes() {
+        return mRecordedBytes;
+    }
+
+    /**
+     * Returns the number of bytes dropped because the writer fell behind
+     */
+    public long getDroppedBytes() {
+        return mDroppedBytes;
+    }
+
+    private final Runnable mWriter = new Runnable() {
+        @Override
+        public void run() {
+            Block block;
+            do {
+                try {
+                    block = mFullBlocks.take();
+                } catch (final InterruptedException e) {
+                    // The recording ends with the END block only
+                    continue;
+                }
+                if (block == END) {
+                    break;
+                }
+                if (mError == null) {
+                    try {
+                        writeBlock(block);
+                    } catch (final IOException e) {
+                        mError = e;
+                    }
+                }
+                block.length = 0;
+                mFreeBlocks.add(block);
+            } while (true);
+
+            try {
+                closeSegment();
+            } catch (final IOException e) {
+                if (mError == null) {
+                    mError = e;
+                }
+            }
+        }
+    };
+
+    private void writeBlock(final Block block) throws IOException {
+        int position = 0;
+        while (position < block.length) {
+            if (mSegmentLength >= mSegmentLimit) {
+                closeSegment();
+                openSegment();
+            }
+            final int toWrite = (int) Math.min(block.length - position, mSegmentLimit - mSegmentLength);
+            mFile.write(block.data, position, toWrite);
+            mSegmentLength += toWrite;
+            mRecordedBytes += toWrite;
+            position += toWrite;
+        }
+
+        final long now = System.nanoTime();
+        if (now - mLastCheckpoint >= TimeUnit.MILLISECONDS.toNanos(mCheckpointInterval)) {
+            mLastCheckpoint = now;
+            writeHeader();
+            mFile.getFD().sync();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        final int index = mSegments.size();
+        final String extension = mFormat == FORMAT_PCM ? ".wav" : ".adpcm";
+        final File file = new File(mDirectory, mName + (index == 0 ? "" : "_" + (index + 1)) + extension);
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mSegments.add(file);
+        mSegmentLength = 0;
+        mLastCheckpoint = System.nanoTime();
+        writeHeader();
+    }
+
+    private void closeSegment() throws IOException {
+        if (mFile != null) {
+            try {
+                writeHeader();
+            } finally {
+                mFile.close();
+                mFile = null;
+            }
+        }
+    }
+
+    /**
+     * Writes the wav header with the current length of the segment
+     */
+    private void writeHeader() throws IOException {
+        if (mFormat == FORMAT_PCM) {
+            WavHeader.write(mHeader, 0, mSampleRate, 1, 16, mSegmentLength);
+            mFile.seek(0);
+            mFile.write(mHeader);
+            mFile.seek(WavHeader.SIZE + mSegmentLength);
+        }
+    }
+
+    /**
+     * Converts an ADPCM recording into a 16-bit wav file. The file is processed frame by frame.
+     *
+     * @param adpcm      the ADPCM recording
+     * @param wav        the wav file to be created
+     * @param sampleRate the sample rate of the recording in Hz
+     * @throws IOException if the recording could not be read or the wav file could not be written
+     */
+    public static void exportAdpcm(final File adpcm, final File wav, final int sampleRate) throws IOException {
+        final long frames = adpcm.length() / AdpcmCodec.FRAME_SIZE;
+        final InputStream inputStream = new BufferedInputStream(new FileInputStream(adpcm));
+        try {
+            final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(wav));
+            try {
+                final byte[] header = new byte[WavHeader.SIZE];
+                WavHeader.write(header, 0, sampleRate, 1, 16, frames * AdpcmCodec.PCM_FRAME_SIZE);
+                outputStream.write(header);
+
+                final byte[] frame = new byte[AdpcmCodec.FRAME_SIZE];
+                final byte[] pcm = new byte[AdpcmCodec.PCM_FRAME_SIZE];
+                for (long i = 0; i < frames; i++) {
+                    readFully(inputStream, frame);
+                    final int length = AdpcmCodec.decode(frame, 0, frame.length, pcm, 0);
+                    outputStream.write(pcm, 0, length);
+                }
+            } finally {
+                outputStream.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static void readFully(final InputStream inputStream, final byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            final int count = inputStream.read(buffer, read, buffer.length - read);
+            if (count < 0) {
+                throw new IOException("Unexpected end of the recording");
+            }
+            read += count;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+/**
+ * A single-producer single-consumer ring of fixed size 16-bit PCM frames between a thread receiving audio and a thread playing it.
+ * <br>
+ * The producer, i.e. the bluetooth callback thread, copies each frame with {@link #write(byte[], int, int)} and never blocks.
+ * The consumer, i.e. a playback thread paced by the audio sink, takes one frame per call to {@link #read(byte[], int)}.
+ * The playback starts once the target number of frames is buffered. When the buffer runs empty the previous frame is repeated
+ * with a decaying gain for a few frames to conceal the gap, followed by silence until the target is reached again.
+ * A frame arriving while the buffer is full is dropped. When more than twice the target is buffered, i.e. because the sender's clock
+ * runs slightly faster than the sink's, the oldest frame is skipped, which bounds the latency.
+ * <br>
+ * The only shared state are the write and read sequences, each updated by one thread, so neither side takes a lock.
+ */
+public class JitterBuffer {
+    /** A received frame was returned */
+    public static final int READ_FRAME = 0;
+    /** A concealment frame derived from the previous frame was returned */
+    public static final int READ_CONCEALED = 1;
+    /** Silence was returned */
+    public static final int READ_SILENCE = 2;
+
+    /** The number of concealment frames after which silence is played */
+    private static final int MAX_CONCEALED_FRAMES = 3;
+
+    private final byte[][] mSlots;
+    private final long[] mTimestamps;
+    private final int mFrameSize;
+    private final int mFrameDurationMicros;
+    private volatile int mTargetFrames;
+
+    // Written by the producer only
+    private volatile long mWriteSequence;
+    private volatile long mReceivedFrames;
+    private volatile long mOverrunCount;
+
+    // Written by the consumer only
+    private volatile long mReadSequence;
+    private volatile long mPlayedFrames;
+    private volatile long mConcealedFrames;
+    private volatile long mUnderrunCount;
+    private volatile long mSkippedFrames;
+    private final byte[] mLastFrame;
+    private boolean mHasLastFrame;
+    private boolean mBuffering = true;
+    private int mConcealedRun;
+    private long mReadTimestamp;
+
+    /**
+     * Creates the buffer
+     *
+     * @param frameSize           the size of a frame in bytes
+     * @param frameDurationMicros the duration of a frame in microseconds, used to report the latency
+     * @param capacity            the maximum number of buffered frames
+     * @param targetFrames        the number of frames buffered before the playback starts
+     */
+    public JitterBuffer(final int frameSize, final int frameDurationMicros, final int capacity, final int targetFrames) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        mSlots = new byte[capacity][frameSize];
+        mTimestamps = new long[capacity];
+        mFrameSize = frameSize;
+        mFrameDurationMicros = frameDurationMicros;
+        mLastFrame = new byte[frameSize];
+        setTargetFrames(targetFrames);
+    }
+
+    /**
+     * Returns the size of a frame in bytes
+     */
+    public int getFrameSize() {
+        return mFrameSize;
+    }
+
+    /**
+     * Returns the maximum number of buffered frames
+     */
+    public int getCapacity() {
+        return mSlots.length;
+    }
+
+    /**
+     * Sets the number of frames buffered before the playback starts, or resumes after an underrun.
+     * A higher target absorbs longer gaps between the notifications at the cost of latency.
+     *
+     * @param targetFrames number of frames, between 1 and the capacity
+     */
+    public void setTargetFrames(final int targetFrames) {
+        if (targetFrames < 1 || targetFrames > mSlots.length) {
+            throw new IllegalArgumentException("Target must be between 1 and " + mSlots.length);
+        }
+        mTargetFrames = targetFrames;
+    }
+
+    /**
+     * Returns the number of frames buffered before the playback starts
+     */
+    public int getTargetFrames() {
+        return mTargetFrames;
+    }
+
+    /**
+     * Returns the number of frames waiting to be played
+     */
+    public int getBufferedFrames() {
+        return (int) (mWriteSequence - mReadSequence);
+    }
+
+    /**
+     * Copies the frame into the buffer. Called by the producer thread only. A shorter frame is padded with silence.
+     *
+     * @param frame  the array containing the 16-bit PCM frame
+     * @param offset the offset of the frame in the array
+     * @param length the length of the frame, at most the frame size
+     * @return false if the buffer was full and the frame was dropped
+     */
+    public boolean write(final byte[] frame, final int offset, final int length) {
+        return write(frame, offset, length, 0);
+    }
+
+    /**
+     * Copies the frame into the buffer together with the time it was received. Called by the producer thread only.
+     *
+     * @param frame          the array containing the 16-bit PCM frame
+     * @param offset         the offset of the frame in the array
+     * @param length         the length of the frame, at most the frame size
+     * @param timestampNanos the {@link System#nanoTime()} at which the frame was received, returned by {@link #getReadTimestamp()}
+     * @return false if the buffer was full and the frame was dropped
+     */
+    public boolean write(final byte[] frame, final int offset, final int length, final long timestampNanos) {
+        mReceivedFrames++;
+        final long write = mWriteSequence;
+        if (write - mReadSequence >= mSlots.length) {
+            mOverrunCount++;
+            return false;
+        }
+        final byte[] slot = mSlots[(int) (write % mSlots.length)];
+        final int toCopy = Math.min(length, mFrameSize);
+        System.arraycopy(frame, offset, slot, 0, toCopy);
+        for (int i = toCopy; i < mFrameSize; i++) {
+            slot[i] = 0;
+        }
+        mTimestamps[(int) (write % mSlots.length)] = timestampNanos;
+        // Publishes the slot to the consumer
+        mWriteSequence = write + 1;
+        return true;
+    }
+
+    /**
+     * Returns the next frame to be played. Called by the consumer thread only, which plays exactly one frame per call.
+     *
+     * @param out    the output array, at least the frame size from the offset
+     * @param offset the offset in the output array
+     * @return {@link #READ_FRAME}, {@link #READ_CONCEALED} or {@link #READ_SILENCE}
+     */
+    public int read(final byte[] out, final int offset) {
+        long read = mReadSequence;
+        long available = mWriteSequence - read;
+        if (mBuffering && available >= mTargetFrames) {
+            mBuffering = false;
+        }
+        if (!mBuffering && available > 2 * mTargetFrames) {
+            // Drifted too far behind the sender, skip the oldest frame
+            mReadSequence = ++read;
+            available--;
+            mSkippedFrames++;
+        }
+
+        if (!mBuffering) {
+            if (available > 0) {
+                final byte[] slot = mSlots[(int) (read % mSlots.length)];
+                System.arraycopy(slot, 0, out, offset, mFrameSize);
+                System.arraycopy(slot, 0, mLastFrame, 0, mFrameSize);
+                mReadTimestamp = mTimestamps[(int) (read % mSlots.length)];
+                // Releases the slot to the producer
+                mReadSequence = read + 1;
+                mHasLastFrame = true;
+                mConcealedRun = 0;
+                mPlayedFrames++;
+                return READ_FRAME;
+            }
+            // Ran empty, wait for the target to be reached again
+            mBuffering = true;
+            mUnderrunCount++;
+        }
+
+        if (mHasLastFrame && mConcealedRun < MAX_CONCEALED_FRAMES) {
+            mConcealedRun++;
+            mConcealedFrames++;
+            mReadTimestamp = 0;
+            conceal(out, offset, mConcealedRun);
+            return READ_CONCEALED;
+        }
+        mHasLastFrame = false;
+        mReadTimestamp = 0;
+        for (int i = 0; i < mFrameSize; i++) {
+            out[offset + i] = 0;
+        }
+        return READ_SILENCE;
+    }
+
+    /**
+     * Returns the time the frame returned by the last read was received, or 0 if a concealment frame, silence, or a frame written
+     * without a timestamp was returned. Called by the consumer thread only.
+     */
+    public long getReadTimestamp() {
+        return mReadTimestamp;
+    }
+
+    /**
+     * Fills the statistics object with the current statistics of the buffer.
+     *
+     * @param statistics statistics to refill, or null to create new ones
+     * @return the statistics
+     */
+    public JitterBufferStatistics getStatistics(final JitterBufferStatistics statistics) {
+        final JitterBufferStatistics result = statistics != null ? statistics : new JitterBufferStatistics();
+        result.mBufferedFrames = getBufferedFrames();
+        result.mTargetFrames = mTargetFrames;
+        result.mFrameDurationMicros = mFrameDurationMicros;
+        result.mReceivedFrames = mReceivedFrames;
+        result.mPlayedFrames = mPlayedFrames;
+        result.mConcealedFrames = mConcealedFrames;
+        result.mUnderrunCount = mUnderrunCount;
+        result.mOverrunCount = mOverrunCount;
+        result.mSkippedFrames = mSkippedFrames;
+        return result;
+    }
+
+    /**
+     * Repeats the last played frame, halving the gain with each concealment frame and fading across the frame,
+     * so the gap neither clicks nor rings.
+     */
+    private void conceal(final byte[] out, final int offset, final int run) {
+        final byte[] last = mLastFrame;
+        final int samples = mFrameSize / 2;
+        final float startGain = 1.0f / (1 << (run - 1));
+        final float endGain = startGain / 2;
+        final float step = (endGain - startGain) / samples;
+        float gain = startGain;
+        for (int i = 0; i < samples; i++, gain += step) {
+            final int sample = (short) ((last[2 * i] & 0xFF) | (last[2 * i + 1] << 8));
+            final int value = (int) (sample * gain);
+            out[offset + 2 * i] = (byte) value;
+            out[offset + 2 * i + 1] = (byte) (value >> 8);
+        }
+    }
+}
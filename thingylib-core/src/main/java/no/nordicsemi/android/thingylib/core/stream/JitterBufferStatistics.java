@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+/**
+ * Statistics of a {@link JitterBuffer}: the frames received, played, concealed and skipped, the underruns and overruns and the current latency.
+ * <br>
+ * An instance may be passed back to {@link JitterBuffer#getStatistics(JitterBufferStatistics)} to be refilled without allocating.
+ */
+public final class JitterBufferStatistics {
+    /*package access*/ int mBufferedFrames;
+    /*package access*/ int mTargetFrames;
+    /*package access*/ int mFrameDurationMicros;
+    /*package access*/ long mReceivedFrames;
+    /*package access*/ long mPlayedFrames;
+    /*package access*/ long mConcealedFrames;
+    /*package access*/ long mUnderrunCount;
+    /*package access*/ long mOverrunCount;
+    /*package access*/ long mSkippedFrames;
+
+    /**
+     * Returns the number of frames waiting to be played when the statistics were taken
+     */
+    public int getBufferedFrames() {
+        return mBufferedFrames;
+    }
+
+    /**
+     * Returns the number of frames buffered before the playback starts, or resumes after an underrun
+     */
+    public int getTargetFrames() {
+        return mTargetFrames;
+    }
+
+    /**
+     * Returns the latency added by the buffer in milliseconds, which is the duration of the buffered frames
+     */
+    public float getLatencyMillis() {
+        return mBufferedFrames * mFrameDurationMicros / 1000.0f;
+    }
+
+    /**
+     * Returns the number of frames written to the buffer, including the dropped ones
+     */
+    public long getReceivedFrames() {
+        return mReceivedFrames;
+    }
+
+    /**
+     * Returns the number of received frames that were played
+     */
+    public long getPlayedFrames() {
+        return mPlayedFrames;
+    }
+
+    /**
+     * Returns the number of frames synthesized by the packet loss concealment while the buffer was empty
+     */
+    public long getConcealedFrames() {
+        return mConcealedFrames;
+    }
+
+    /**
+     * Returns the number of times the buffer ran empty during the playback
+     */
+    public long getUnderrunCount() {
+        return mUnderrunCount;
+    }
+
+    /**
+     * Returns the number of received frames dropped because the buffer was full
+     */
+    public long getOverrunCount() {
+        return mOverrunCount;
+    }
+
+    /**
+     * Returns the number of received frames skipped to keep the latency bounded when the sender runs faster than the playback
+     */
+    public long getSkippedFrames() {
+        return mSkippedFrames;
+    }
+}
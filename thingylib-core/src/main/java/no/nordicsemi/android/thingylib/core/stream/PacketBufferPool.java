@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of packet buffers of a fixed size, so streaming does not allocate a new array for every packet.
+ * <br>
+ * Buffers of other sizes, i.e. the last and shorter packet of a stream, are allocated and not kept by the pool.
+ */
+public class PacketBufferPool {
+    private final ArrayDeque<byte[]> mBuffers = new ArrayDeque<>();
+    private final int mCapacity;
+    private int mPacketSize;
+
+    /**
+     * Creates the pool
+     *
+     * @param capacity the maximum number of buffers kept by the pool
+     */
+    public PacketBufferPool(final int capacity) {
+        mCapacity = capacity;
+    }
+
+    /**
+     * Returns a buffer of exactly the given length, from the pool when possible.
+     * Changing the packet size, i.e. after an MTU change, drops the pooled buffers.
+     *
+     * @param length the size of the buffer
+     */
+    public synchronized byte[] acquire(final int length) {
+        if (length != mPacketSize) {
+            return new byte[length];
+        }
+        final byte[] buffer = mBuffers.poll();
+        return buffer != null ? buffer : new byte[length];
+    }
+
+    /**
+     * Returns a buffer to the pool once the packet has been written.
+     *
+     * @param buffer the buffer, may be null
+     */
+    public synchronized void release(final byte[] buffer) {
+        if (buffer != null && buffer.length == mPacketSize && mBuffers.size() < mCapacity) {
+            mBuffers.add(buffer);
+        }
+    }
+
+    /**
+     * Sets the size of the pooled buffers.
+     *
+     * @param packetSize size of a full packet
+     */
+    public synchronized void setPacketSize(final int packetSize) {
+        if (packetSize != mPacketSize) {
+            mPacketSize = packetSize;
+            mBuffers.clear();
+        }
+    }
+
+    /**
+     * Returns the number of buffers available in the pool
+     */
+    public synchronized int size() {
+        return mBuffers.size();
+    }
+}
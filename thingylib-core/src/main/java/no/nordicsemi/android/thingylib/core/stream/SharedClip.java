@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A clip of 8-bit samples in the speaker format, converted once and played on several Thingies at the same time.
+ * <br>
+ * Every Thingy reads the clip through its own {@link Cursor}, which copies the packets straight from the shared samples
+ * and keeps the position of that Thingy, so the clip is held in memory once however many Thingies play it.
+ * Each connection paces its cursor with its own flow control, and a slow link falls behind without holding back the others.
+ */
+public final class SharedClip {
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private final byte[] mSamples;
+    private final int mLength;
+
+    /**
+     * Creates the clip from samples already in the speaker format. The array is shared, not copied, and must not be modified.
+     *
+     * @param samples the 8-bit samples
+     */
+    public SharedClip(final byte[] samples) {
+        this(samples, samples.length);
+    }
+
+    private SharedClip(final byte[] samples, final int length) {
+        mSamples = samples;
+        mLength = length;
+    }
+
+    /**
+     * Reads the whole source into a new clip and closes the source.
+     *
+     * @param source the source of 8-bit samples, i.e. a {@link WavPacketSource}
+     * @throws IOException if the source could not be read
+     */
+    public static SharedClip fromSource(final PacketSource source) throws IOException {
+        try {
+            byte[] samples = new byte[INITIAL_CAPACITY];
+            int length = 0;
+            int read;
+            while (true) {
+                if (length == samples.length) {
+                    final byte[] larger = new byte[samples.length * 2];
+                    System.arraycopy(samples, 0, larger, 0, length);
+                    samples = larger;
+                }
+                read = source.read(samples, length, samples.length - length);
+                if (read <= 0) {
+                    break;
+                }
+                length += read;
+            }
+            return new SharedClip(samples, length);
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Converts a local wav file into a new clip.
+     *
+     * @param file the wav file
+     * @throws IOException if the file could not be opened or is not a supported wav file
+     */
+    public static SharedClip open(final File file) throws IOException {
+        return fromSource(WavPacketSource.open(file));
+    }
+
+    /**
+     * Returns the number of samples of the clip
+     */
+    public int getLength() {
+        return mLength;
+    }
+
+    /**
+     * Returns a new cursor reading the clip from the beginning
+     */
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Reads the clip for one Thingy and reports its progress.
+     */
+    public final class Cursor implements PacketSource {
+        private volatile int mPosition;
+        private volatile boolean mClosed;
+
+        private Cursor() {
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) {
+            final int position = mPosition;
+            if (mClosed || position >= mLength) {
+                return -1;
+            }
+            final int count = Math.min(length, mLength - position);
+            System.arraycopy(mSamples, position, buffer, offset, count);
+            mPosition = position + count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+        }
+
+        /**
+         * Returns the number of samples handed to the connection so far
+         */
+        public int getPosition() {
+            return mPosition;
+        }
+
+        /**
+         * Returns the progress of the playback, from 0 to 1
+         */
+        public float getProgress() {
+            return mLength == 0 ? 1.0f : (float) mPosition / mLength;
+        }
+
+        /**
+         * Returns true if the whole clip has been handed to the connection
+         */
+        public boolean isCompleted() {
+            return mPosition >= mLength;
+        }
+
+        /**
+         * Returns true if the playback was completed or stopped
+         */
+        public boolean isClosed() {
+            return mClosed;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import no.nordicsemi.android.thingylib.core.codec.PcmQuantizer;
+import no.nordicsemi.android.thingylib.core.dsp.VoiceActivityDetector;
+
+/**
+ * A live audio stream from the phone microphone to the Thingy speaker.
+ * <br>
+ * The capture thread writes 16-bit samples with {@link #write(byte[], int, int, long)}, which converts them into unsigned 8-bit
+ * samples in a fixed ring and never blocks. The connection reads the packets as the speaker accepts them, see {@link PacketSource}.
+ * A read returns 0 until a whole packet is buffered, so no partial packets are sent while the stream is live, and the listener is
+ * notified once the packet is complete. When the link can't keep up, i.e. while the Thingy reports its buffer as full,
+ * the ring fills up and the oldest samples are dropped, so the audio played stays close to real time instead of piling up.
+ * <br>
+ * The latency of each packet is measured from the capture of its last sample to the moment it is written to the Thingy,
+ * plus the audio still queued in the speaker buffer at that moment. The latter is estimated by draining the written audio
+ * at the sample rate, as the Thingy doesn't report how much it holds. The input latency of the phone microphone is not included.
+ * <br>
+ * With a {@link VoiceActivityDetector} set, the blocks written while nobody speaks are discarded before being converted, so no
+ * packets are sent during silence and the airtime of the connection is left to the other notifications.
+ */
+public class VoiceUplink implements PacketSource {
+    /**
+     * Notified when a packet can be read after a read returned 0, or when the stream is closed.
+     * Called on the thread that wrote the samples or closed the stream.
+     */
+    public interface Listener {
+        void onPacketAvailable(final VoiceUplink uplink);
+    }
+
+    /** The maximum number of packets read and not yet completed, larger than any flow control window */
+    private static final int MAX_PENDING_PACKETS = 32;
+
+    private final Object mLock = new Object();
+    private final byte[] mRing;
+    private final int mSampleRate;
+    private final PcmQuantizer mQuantizer;
+    private volatile Listener mListener;
+    private VoiceActivityDetector mDetector;
+
+    private long mWritePosition;
+    private long mReadPosition;
+    private long mCaptureNanos;
+    private boolean mClosed;
+    private int mWaitingLength;
+
+    private final long[] mPendingCaptureNanos = new long[MAX_PENDING_PACKETS];
+    private int mPendingHead;
+    private int mPendingCount;
+
+    private long mWrittenSamples;
+    private long mDroppedSamples;
+    private long mGatedSamples;
+    private long mSentPackets;
+    private long mSpeakerBufferNanos;
+    private long mLastCompletionNanos;
+    private long mLatencyNanos;
+    private long mMaxLatencyNanos;
+    private long mLatencySumNanos;
+
+    /**
+     * Creates the uplink
+     *
+     * @param sampleRate the sample rate of the written samples, which is the rate played by the speaker
+     * @param capacity   the maximum number of buffered samples, older samples are dropped to make room for new ones
+     * @param dither     true to dither the samples when converting them to 8 bits
+     */
+    public VoiceUplink(final int sampleRate, final int capacity, final boolean dither) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        mRing = new byte[capacity];
+        mSampleRate = sampleRate;
+        mQuantizer = new PcmQuantizer(dither);
+    }
+
+    /**
+     * Sets the listener notified when a packet becomes available
+     */
+    public void setListener(final Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Sets the voice activity detector used to discard the silence, or null to send all the samples written.
+     * The detector is used by the thread writing the samples.
+     */
+    public void setVoiceActivityDetector(final VoiceActivityDetector detector) {
+        synchronized (mLock) {
+            mDetector = detector;
+        }
+    }
+
+    /**
+     * Returns the sample rate of the stream
+     */
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * Returns the maximum number of buffered samples
+     */
+    public int getCapacity() {
+        return mRing.length;
+    }
+
+    /**
+     * Returns true if the stream has been closed
+     */
+    public boolean isClosed() {
+        synchronized (mLock) {
+            return mClosed;
+        }
+    }
+
+    /**
+     * Converts and buffers the captured samples. If the buffer is full the oldest samples are dropped.
+     * If a voice activity detector is set and the samples are silent, they are discarded.
+     *
+     * @param pcm          the 16-bit little-endian samples
+     * @param offset       the offset of the first sample in the array
+     * @param length       the number of bytes to write, a trailing odd byte is ignored
+     * @param captureNanos the {@link System#nanoTime()} at which the last sample was captured
+     * @return false if the stream has been closed and the samples were discarded
+     */
+    public boolean write(final byte[] pcm, final int offset, final int length, final long captureNanos) {
+        final Listener listener;
+        synchronized (mLock) {
+            if (mClosed) {
+                return false;
+            }
+            final byte[] ring = mRing;
+            final int capacity = ring.length;
+            int samples = length / 2;
+            int in = offset;
+            mWrittenSamples += samples;
+            if (mDetector != null && !mDetector.process(pcm, offset, length)) {
+                mGatedSamples += samples;
+                return true;
+            }
+            if (samples > capacity) {
+                // Only the most recent samples fit
+                mDroppedSamples += samples - capacity;
+                in += 2 * (samples - capacity);
+                samples = capacity;
+            }
+            final long overflow = mWritePosition - mReadPosition + samples - capacity;
+            if (overflow > 0) {
+                mReadPosition += overflow;
+                mDroppedSamples += overflow;
+            }
+
+            final int index = (int) (mWritePosition % capacity);
+            final int first = Math.min(samples, capacity - index);
+            mQuantizer.quantize(pcm, in, 2 * first, ring, index);
+            if (first < samples) {
+                mQuantizer.quantize(pcm, in + 2 * first, 2 * (samples - first), ring, 0);
+            }
+            mWritePosition += samples;
+            mCaptureNanos = captureNanos;
+
+            if (mWaitingLength > 0 && mWritePosition - mReadPosition >= mWaitingLength) {
+                mWaitingLength = 0;
+                listener = mListener;
+            } else {
+                listener = null;
+            }
+        }
+        if (listener != null) {
+            listener.onPacketAvailable(this);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next packet. Returns 0 if fewer than length samples are buffered while the stream is live,
+     * the remaining samples after it has been closed, and -1 once these have been read.
+     */
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) {
+        synchronized (mLock) {
+            final long available = mWritePosition - mReadPosition;
+            final int count;
+            if (available >= length) {
+                count = length;
+            } else if (mClosed) {
+                if (available == 0) {
+                    return -1;
+                }
+                count = (int) available;
+            } else {
+                mWaitingLength = length;
+                return 0;
+            }
+
+            final byte[] ring = mRing;
+            final int capacity = ring.length;
+            final int index = (int) (mReadPosition % capacity);
+            final int first = Math.min(count, capacity - index);
+            System.arraycopy(ring, index, buffer, offset, first);
+            if (first < count) {
+                System.arraycopy(ring, 0, buffer, offset + first, count - first);
+            }
+            mReadPosition += count;
+
+            // The capture time of the last sample read, derived from the time of the last write
+            final long age = (mWritePosition - mReadPosition) * 1000000000L / mSampleRate;
+            final int slot = (mPendingHead + mPendingCount) % MAX_PENDING_PACKETS;
+            mPendingCaptureNanos[slot] = mCaptureNanos - age;
+            if (mPendingCount < MAX_PENDING_PACKETS) {
+                mPendingCount++;
+            } else {
+                mPendingHead = (mPendingHead + 1) % MAX_PENDING_PACKETS;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Reports that the oldest packet read and not completed yet has been written to the Thingy, which updates the latency.
+     * Called by the connection for each completed packet of the stream.
+     *
+     * @param length          the length of the packet in bytes
+     * @param completionNanos the {@link System#nanoTime()} at which the packet was written
+     */
+    public void onPacketCompleted(final int length, final long completionNanos) {
+        synchronized (mLock) {
+            if (mPendingCount == 0) {
+                return;
+            }
+            final long captureNanos = mPendingCaptureNanos[mPendingHead];
+            mPendingHead = (mPendingHead + 1) % MAX_PENDING_PACKETS;
+            mPendingCount--;
+
+            // The speaker plays the buffered audio in real time; it runs empty if nothing was written for longer than that
+            if (mSentPackets > 0) {
+                mSpeakerBufferNanos = Math.max(0, mSpeakerBufferNanos - (completionNanos - mLastCompletionNanos));
+            }
+            mSpeakerBufferNanos += length * 1000000000L / mSampleRate;
+            mLastCompletionNanos = completionNanos;
+
+            final long latency = Math.max(0, completionNanos - captureNanos) + mSpeakerBufferNanos;
+            mLatencyNanos = latency;
+            mMaxLatencyNanos = Math.max(mMaxLatencyNanos, latency);
+            mLatencySumNanos += latency;
+            mSentPackets++;
+        }
+    }
+
+    /**
+     * Fills the statistics of the stream
+     *
+     * @param statistics the statistics to be refilled, or null to create new ones
+     * @return the statistics
+     */
+    public VoiceUplinkStatistics getStatistics(final VoiceUplinkStatistics statistics) {
+        final VoiceUplinkStatistics result = statistics != null ? statistics : new VoiceUplinkStatistics();
+        synchronized (mLock) {
+            result.mSampleRate = mSampleRate;
+            result.mBufferedSamples = (int) (mWritePosition - mReadPosition);
+            result.mWrittenSamples = mWrittenSamples;
+            result.mDroppedSamples = mDroppedSamples;
+            result.mGatedSamples = mGatedSamples;
+            result.mVoiceActive = mDetector == null || mDetector.isActive();
+            result.mSentPackets = mSentPackets;
+            result.mSpeakerBufferNanos = mSpeakerBufferNanos;
+            result.mLatencyNanos = mLatencyNanos;
+            result.mMaxLatencyNanos = mMaxLatencyNanos;
+            result.mAverageLatencyNanos = mSentPackets > 0 ? mLatencySumNanos / mSentPackets : 0;
+        }
+        return result;
+    }
+
+    /**
+     * Closes the stream. The samples already buffered are still read, further writes are discarded.
+     */
+    @Override
+    public void close() {
+        final Listener listener;
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            listener = mWaitingLength > 0 ? mListener : null;
+            mWaitingLength = 0;
+        }
+        if (listener != null) {
+            listener.onPacketAvailable(this);
+        }
+    }
+}
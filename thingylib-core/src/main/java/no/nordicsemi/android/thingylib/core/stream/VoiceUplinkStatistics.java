@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+/**
+ * Statistics of a {@link VoiceUplink}: the samples captured, dropped, discarded as silence and buffered, the packets sent
+ * and the end-to-end latency.
+ * <br>
+ * An instance may be passed back to {@link VoiceUplink#getStatistics(VoiceUplinkStatistics)} to be refilled without allocating.
+ */
+public final class VoiceUplinkStatistics {
+    /*package access*/ int mSampleRate;
+    /*package access*/ int mBufferedSamples;
+    /*package access*/ long mWrittenSamples;
+    /*package access*/ long mDroppedSamples;
+    /*package access*/ long mGatedSamples;
+    /*package access*/ boolean mVoiceActive;
+    /*package access*/ long mSentPackets;
+    /*package access*/ long mSpeakerBufferNanos;
+    /*package access*/ long mLatencyNanos;
+    /*package access*/ long mMaxLatencyNanos;
+    /*package access*/ long mAverageLatencyNanos;
+
+    /**
+     * Returns the number of samples waiting to be sent when the statistics were taken
+     */
+    public int getBufferedSamples() {
+        return mBufferedSamples;
+    }
+
+    /**
+     * Returns the duration of the samples waiting to be sent in milliseconds
+     */
+    public float getBufferedMillis() {
+        return mSampleRate > 0 ? mBufferedSamples * 1000.0f / mSampleRate : 0;
+    }
+
+    /**
+     * Returns the number of samples captured, including the dropped and the silent ones
+     */
+    public long getWrittenSamples() {
+        return mWrittenSamples;
+    }
+
+    /**
+     * Returns the number of oldest samples dropped because the link could not keep up
+     */
+    public long getDroppedSamples() {
+        return mDroppedSamples;
+    }
+
+    /**
+     * Returns the number of samples discarded as silence by the voice activity detector
+     */
+    public long getGatedSamples() {
+        return mGatedSamples;
+    }
+
+    /**
+     * Returns the number of bytes not sent to the Thingy because they were silent. Each sample is sent as a single byte.
+     */
+    public long getSavedBytes() {
+        return mGatedSamples;
+    }
+
+    /**
+     * Returns the fraction of the captured samples discarded as silence, from 0 to 1
+     */
+    public float getGatedRatio() {
+        return mWrittenSamples > 0 ? (float) mGatedSamples / mWrittenSamples : 0;
+    }
+
+    /**
+     * Returns true if the voice activity detector was active when the statistics were taken, or if no detector is used
+     */
+    public boolean isVoiceActive() {
+        return mVoiceActive;
+    }
+
+    /**
+     * Returns the number of packets written to the Thingy
+     */
+    public long getSentPackets() {
+        return mSentPackets;
+    }
+
+    /**
+     * Returns the estimated duration of the audio queued in the Thingy speaker buffer in milliseconds
+     */
+    public float getSpeakerBufferMillis() {
+        return mSpeakerBufferNanos / 1000000.0f;
+    }
+
+    /**
+     * Returns the capture-to-speaker latency of the last packet written in milliseconds
+     */
+    public float getLatencyMillis() {
+        return mLatencyNanos / 1000000.0f;
+    }
+
+    /**
+     * Returns the average capture-to-speaker latency of the packets written in milliseconds
+     */
+    public float getAverageLatencyMillis() {
+        return mAverageLatencyNanos / 1000000.0f;
+    }
+
+    /**
+     * Returns the highest capture-to-speaker latency of the packets written in milliseconds
+     */
+    public float getMaxLatencyMillis() {
+        return mMaxLatencyNanos / 1000000.0f;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import no.nordicsemi.android.thingylib.core.codec.PcmQuantizer;
+import no.nordicsemi.android.thingylib.core.codec.PolyphaseResampler;
+import no.nordicsemi.android.thingylib.core.codec.WavReader;
+
+/**
+ * A packet source reading a wav file incrementally and converting its 8 or 16-bit, mono or multi-channel samples
+ * into the mono unsigned 8-bit samples played by the Thingy speaker. Channels are mixed down by averaging,
+ * other sample rates are converted to the speaker rate with a {@link PolyphaseResampler}.
+ * <br>
+ * The file is processed in blocks of {@value #FRAMES_PER_BLOCK} frames through buffers allocated once per source.
+ */
+public class WavPacketSource implements PacketSource {
+    /** The sample rate of the Thingy speaker in Hz */
+    public static final int SPEAKER_SAMPLE_RATE = 8000;
+    /*package access*/ static final int FRAMES_PER_BLOCK = 256;
+
+    private final WavReader mReader;
+    private final int mFrameSize;
+    private final boolean m16Bit;
+    private final int mChannels;
+    private final PolyphaseResampler mResampler;
+    private final PcmQuantizer mQuantizer;
+    private final byte[] mInput;
+    private final short[] mMono;
+    private final short[] mPending;
+    private int mPendingStart;
+    private int mPendingEnd;
+
+    /**
+     * Creates the source from a stream. The headers are parsed immediately.
+     *
+     * @param inputStream the wav file stream, closed with the source
+     * @throws IOException if the stream is not a supported wav file
+     */
+    public WavPacketSource(final InputStream inputStream) throws IOException {
+        this(new WavReader(inputStream));
+    }
+
+    /**
+     * Creates the source from a wav reader whose headers have been parsed.
+     * The samples are converted to {@link #SPEAKER_SAMPLE_RATE}, 16-bit files are dithered.
+     *
+     * @param reader the wav reader, closed with the source
+     */
+    public WavPacketSource(final WavReader reader) {
+        this(reader, SPEAKER_SAMPLE_RATE, reader.getBitsPerSample() == 16);
+    }
+
+    /**
+     * Creates the source from a wav reader whose headers have been parsed.
+     *
+     * @param reader     the wav reader, closed with the source
+     * @param outputRate the sample rate of the packets in Hz
+     * @param dither     true to dither the samples when quantizing them to 8 bits
+     */
+    public WavPacketSource(final WavReader reader, final int outputRate, final boolean dither) {
+        mReader = reader;
+        mFrameSize = reader.getFrameSize();
+        m16Bit = reader.getBitsPerSample() == 16;
+        mChannels = reader.getChannels();
+        mResampler = reader.getSampleRate() != outputRate ? new PolyphaseResampler(reader.getSampleRate(), outputRate) : null;
+        mQuantizer = new PcmQuantizer(dither);
+        mInput = new byte[FRAMES_PER_BLOCK * mFrameSize];
+        mMono = new short[FRAMES_PER_BLOCK];
+        mPending = mResampler != null ? new short[mResampler.getMaxOutputLength(FRAMES_PER_BLOCK)] : mMono;
+    }
+
+    /**
+     * Opens a local wav file. The file is memory mapped, so reading it does not copy the data through a stream buffer.
+     *
+     * @param file the wav file
+     * @throws IOException if the file could not be opened or is not a supported wav file
+     */
+    public static WavPacketSource open(final File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            // The mapping stays valid after the channel is closed
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new WavPacketSource(new ByteBufferInputStream(buffer));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Returns the wav reader, i.e. to get the sample rate of the file
+     */
+    public WavReader getReader() {
+        return mReader;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            if (mPendingStart == mPendingEnd) {
+                if (!readBlock()) {
+                    break;
+                }
+                continue;
+            }
+            final int samples = Math.min(length - count, mPendingEnd - mPendingStart);
+            mQuantizer.quantize(mPending, mPendingStart, samples, buffer, offset + count);
+            mPendingStart += samples;
+            count += samples;
+        }
+        return count > 0 ? count : -1;
+    }
+
+    @Override
+    public void close() {
+        mReader.close();
+    }
+
+    /**
+     * Reads the next block of frames, mixes it down to 16-bit mono and resamples it into the pending samples.
+     *
+     * @return false at the end of the data
+     */
+    private boolean readBlock() throws IOException {
+        final int read = mReader.read(mInput, 0, mInput.length);
+        final int frames = read > 0 ? read / mFrameSize : 0;
+        if (frames == 0) {
+            return false;
+        }
+
+        final byte[] input = mInput;
+        final short[] mono = mMono;
+        final int channels = mChannels;
+        int index = 0;
+        for (int i = 0; i < frames; i++) {
+            int sum = 0;
+            if (m16Bit) {
+                for (int c = 0; c < channels; c++, index += 2) {
+                    sum += (short) ((input[index] & 0xFF) | (input[index + 1] << 8));
+                }
+                mono[i] = (short) (sum / channels);
+            } else {
+                for (int c = 0; c < channels; c++, index++) {
+                    sum += (input[index] & 0xFF) - 128;
+                }
+                mono[i] = (short) ((sum / channels) << 8);
+            }
+        }
+
+        mPendingStart = 0;
+        mPendingEnd = mResampler != null ? mResampler.process(mono, 0, frames, mPending, 0) : frames;
+        return true;
+    }
+}
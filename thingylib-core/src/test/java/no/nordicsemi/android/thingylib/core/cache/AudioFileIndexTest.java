@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.cache;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import no.nordicsemi.android.thingylib.core.codec.WavHeader;
+
+import static org.junit.Assert.*;
+
+public class AudioFileIndexTest {
+
+    @Test
+    public void indexesChangedFilesOnly() throws Exception {
+        final File directory = File.createTempFile("audio", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        final File indexFile = File.createTempFile("index", "");
+
+        // A loud first half and a silent second half
+        final byte[] samples = new byte[800];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (byte) (i < 400 ? 255 : 128);
+        }
+        final File clip = writeWav(new File(directory, "clip.wav"), samples);
+        final File song = writeWav(new File(directory, "song.wav"), new byte[8000]);
+        final File invalid = new File(directory, "invalid.wav");
+        final FileOutputStream out = new FileOutputStream(invalid);
+        out.write(new byte[100]);
+        out.close();
+        writeWav(new File(directory, "clip.txt"), samples);
+
+        final List<String> indexed = new ArrayList<>();
+        final AudioFileIndex.Listener listener = new AudioFileIndex.Listener() {
+            @Override
+            public void onFileIndexed(final AudioFileInfo info) {
+                indexed.add(new File(info.getPath()).getName());
+            }
+        };
+        final AudioFileIndex index = new AudioFileIndex(indexFile, 4);
+        assertEquals(3, index.scan(directory, ".wav", listener));
+        assertEquals(3, indexed.size());
+        assertFalse(indexed.contains("clip.txt"));
+
+        final AudioFileInfo info = index.get(clip);
+        assertTrue(info.isValid());
+        assertEquals(100, info.getDurationMillis());
+        assertEquals(8000, info.getSampleRate());
+        assertEquals(4, info.getEnvelopeLength());
+        assertEquals(1.0f, info.getPeak(0), 0.01f);
+        assertEquals(1.0f, info.getPeak(1), 0.01f);
+        assertEquals(0.0f, info.getPeak(2), 0.01f);
+        assertEquals(1000, index.get(song).getDurationMillis());
+        assertFalse(index.get(invalid).isValid());
+
+        // Only the changed file is read again, the deleted one is dropped
+        assertEquals(0, index.scan(directory, ".wav", null));
+        writeWav(song, new byte[4000]);
+        assertTrue(invalid.delete());
+        assertEquals(1, index.scan(directory, ".wav", null));
+        assertEquals(500, index.get(song).getDurationMillis());
+        assertNull(index.get(invalid));
+
+        // The index is persisted, unless the envelope length changes
+        final AudioFileIndex reloaded = new AudioFileIndex(indexFile, 4);
+        assertEquals(2, reloaded.size());
+        assertEquals(1.0f, reloaded.get(clip).getPeak(0), 0.01f);
+        assertEquals(0, new AudioFileIndex(indexFile, 8).size());
+
+        for (final File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+        indexFile.delete();
+    }
+
+    private static File writeWav(final File file, final byte[] samples) throws Exception {
+        final byte[] header = new byte[WavHeader.SIZE];
+        WavHeader.write(header, 0, 8000, 1, 8, samples.length);
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(header);
+            out.write(samples);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.cache;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import no.nordicsemi.android.thingylib.core.codec.WavHeader;
+
+import static org.junit.Assert.*;
+
+public class SpeakerClipCacheTest {
+
+    @Test
+    public void deduplicatesAndEvictsLeastRecentlyUsed() throws Exception {
+        final File directory = File.createTempFile("clips", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        final File cacheDirectory = new File(directory, "cache");
+
+        // 8-bit files at the speaker rate are stored as they are, 800 samples are 100 ms
+        final byte[] samples = new byte[800];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (byte) i;
+        }
+        final File first = writeWav(new File(directory, "first.wav"), samples);
+        final File copy = writeWav(new File(directory, "copy.wav"), samples);
+        samples[0] = 1;
+        final File other = writeWav(new File(directory, "other.wav"), samples);
+
+        final SpeakerClipCache cache = new SpeakerClipCache(cacheDirectory, 1500);
+        assertNull(cache.open(first));
+        assertEquals(-1, cache.getDurationMillis(first));
+        final byte[] packet = new byte[1000];
+        assertEquals(800, cache.openOrTranscode(first).read(packet, 0, packet.length));
+        assertEquals((byte) 255, packet[255]);
+        assertEquals(100, cache.getDurationMillis(first));
+        assertNotNull(cache.open(first));
+
+        // The same content is stored once
+        assertNotNull(cache.openOrTranscode(copy));
+        assertEquals(800, cache.getSize());
+
+        // The least recently used clip is evicted to make room, its duration is still known
+        assertEquals(800, cache.openOrTranscode(other).read(packet, 0, packet.length));
+        assertEquals(1, packet[0]);
+        assertEquals(800, cache.getSize());
+        assertNull(cache.open(first));
+        assertEquals(100, cache.getDurationMillis(first));
+
+        // The index is persisted
+        final SpeakerClipCache reloaded = new SpeakerClipCache(cacheDirectory, 1500);
+        assertEquals(800, reloaded.getSize());
+        assertNotNull(reloaded.open(other));
+        assertNull(reloaded.open(copy));
+
+        reloaded.clear();
+        for (final File file : cacheDirectory.listFiles()) {
+            file.delete();
+        }
+        cacheDirectory.delete();
+        for (final File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static File writeWav(final File file, final byte[] samples) throws Exception {
+        final byte[] header = new byte[WavHeader.SIZE];
+        WavHeader.write(header, 0, 8000, 1, 8, samples.length);
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(header);
+            out.write(samples);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
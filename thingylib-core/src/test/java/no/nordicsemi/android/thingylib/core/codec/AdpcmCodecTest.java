@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdpcmCodecTest {
+
+    @Test
+    public void decodesFullFrame() throws Exception {
+        final byte[] adpcm = new byte[AdpcmCodec.FRAME_SIZE];
+        final byte[] pcm = new byte[AdpcmCodec.getDecodedSize(adpcm.length)];
+        assertEquals(AdpcmCodec.PCM_FRAME_SIZE, pcm.length);
+        assertEquals(pcm.length, AdpcmCodec.decode(adpcm, 0, adpcm.length, pcm, 0));
+    }
+
+    @Test
+    public void countsFramesLostInGap() throws Exception {
+        // 256 samples per frame at 16 kHz
+        assertEquals(62.5f, AdpcmCodec.FRAMES_PER_SECOND, 0.0f);
+
+        // A frame arrives every 16 ms for about a second
+        int received = 0;
+        long now = 0;
+        for (int i = 0; i < 62; i++) {
+            now += 16;
+            received++;
+        }
+        assertEquals(0, AdpcmCodec.getExpectedFrameCount(now) - received);
+
+        // 20 frames are lost on the link, then the stream continues
+        now += 20 * 16;
+        now += 16;
+        received++;
+        assertEquals(20, AdpcmCodec.getExpectedFrameCount(now) - received);
+        assertEquals(0, AdpcmCodec.getExpectedFrameCount(-1));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PolyphaseResamplerTest {
+
+    @Test
+    public void halvesRateAcrossBlocks() throws Exception {
+        final PolyphaseResampler resampler = new PolyphaseResampler(16000, 8000);
+        final short[] input = new short[100];
+        final short[] output = new short[resampler.getMaxOutputLength(input.length)];
+        final short[] all = new short[800];
+        int count = 0;
+        for (int block = 0; block < 16; block++) {
+            for (int i = 0; i < input.length; i++) {
+                input[i] = (short) (10000 * Math.sin(2 * Math.PI * 1000 * (block * input.length + i) / 16000.0));
+            }
+            final int written = resampler.process(input, 0, input.length, output, 0);
+            System.arraycopy(output, 0, all, count, written);
+            count += written;
+        }
+        assertEquals(800, count);
+        // Past the filter delay the 1 kHz tone keeps its amplitude
+        int peak = 0;
+        for (int i = 200; i < count; i++) {
+            peak = Math.max(peak, Math.abs(all[i]));
+        }
+        assertTrue(peak > 9500 && peak < 10500);
+    }
+}
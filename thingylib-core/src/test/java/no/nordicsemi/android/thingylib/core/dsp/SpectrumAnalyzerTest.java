@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.dsp;
+
+import org.junit.Test;
+
+import no.nordicsemi.android.thingylib.core.codec.AdpcmCodec;
+
+import static org.junit.Assert.*;
+
+public class SpectrumAnalyzerTest {
+
+    @Test
+    public void findsSinePeakOverOverlappingFrames() throws Exception {
+        final int[] spectra = new int[1];
+        final SpectrumAnalyzer analyzer = new SpectrumAnalyzer(16000, 512, 256, 16);
+        analyzer.setListener(new SpectrumAnalyzer.Listener() {
+            @Override
+            public void onSpectrum(final SpectrumAnalyzer analyzer, final float[] spectrum, final float[] bands) {
+                spectra[0]++;
+                assertEquals(257, spectrum.length);
+                assertEquals(16, bands.length);
+            }
+        });
+
+        // 1 s of a full scale 1 kHz sine, in decoded microphone frames
+        final byte[] frame = new byte[AdpcmCodec.PCM_FRAME_SIZE];
+        int n = 0;
+        for (int f = 0; f < 16000 * 2 / frame.length; f++) {
+            for (int i = 0; i < frame.length; i += 2, n++) {
+                final int sample = (int) Math.round(32767 * Math.sin(2 * Math.PI * 1000 * n / 16000));
+                frame[i] = (byte) sample;
+                frame[i + 1] = (byte) (sample >> 8);
+            }
+            analyzer.write(frame, 0, frame.length);
+        }
+
+        // The first spectrum needs a whole frame, then one follows every hop
+        assertEquals((16000 - 512) / 256 + 1, spectra[0]);
+        assertEquals(1000.0f, analyzer.getPeakFrequency(), 2.0f);
+        assertEquals(0.0f, analyzer.getPeakLevel(), 0.5f);
+        for (int band = 0; band < analyzer.getBandCount(); band++) {
+            assertTrue(analyzer.getBandFrequency(band) < analyzer.getBandFrequency(band + 1));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.dsp;
+
+import org.junit.Test;
+
+import no.nordicsemi.android.thingylib.core.stream.VoiceUplink;
+import no.nordicsemi.android.thingylib.core.stream.VoiceUplinkStatistics;
+
+import static org.junit.Assert.*;
+
+public class VoiceActivityDetectorTest {
+
+    @Test
+    public void gatesSilenceWithHangover() throws Exception {
+        final VoiceActivityDetector detector = new VoiceActivityDetector(8000);
+        detector.setHangoverMillis(20);
+
+        // 10 ms blocks: a loud 500 Hz tone, a quiet one below the thresholds and a quiet hiss crossing zero at every sample
+        final byte[] loud = new byte[160];
+        final byte[] quiet = new byte[160];
+        final byte[] hiss = new byte[160];
+        final byte[] silence = new byte[160];
+        for (int i = 0; i < 80; i++) {
+            final double phase = 2 * Math.PI * 500 * i / 8000;
+            writeShort(loud, 2 * i, (int) (10000 * Math.sin(phase)));
+            writeShort(quiet, 2 * i, (int) (100 * Math.sin(phase)));
+            writeShort(hiss, 2 * i, i % 2 == 0 ? 100 : -100);
+        }
+        assertFalse(detector.process(quiet, 0, quiet.length));
+        assertTrue(detector.process(loud, 0, loud.length));
+        assertEquals(-13.3f, detector.getLastEnergy(), 0.1f);
+        detector.reset();
+        assertTrue(detector.process(hiss, 0, hiss.length));
+        assertEquals(1.0f, detector.getLastZeroCrossingRate(), 0.001f);
+        detector.reset();
+
+        final VoiceUplink uplink = new VoiceUplink(8000, 1000, false);
+        uplink.setVoiceActivityDetector(detector);
+        uplink.write(silence, 0, silence.length, 0);
+        uplink.write(loud, 0, loud.length, 0);
+        // The hangover of 160 samples keeps the next 2 blocks
+        uplink.write(silence, 0, silence.length, 0);
+        uplink.write(silence, 0, silence.length, 0);
+        uplink.write(silence, 0, silence.length, 0);
+
+        final VoiceUplinkStatistics statistics = uplink.getStatistics(null);
+        assertEquals(400, statistics.getWrittenSamples());
+        assertEquals(160, statistics.getGatedSamples());
+        assertEquals(160, statistics.getSavedBytes());
+        assertEquals(240, statistics.getBufferedSamples());
+        assertFalse(statistics.isVoiceActive());
+    }
+
+    private static void writeShort(final byte[] data, final int offset, final int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+    }
+}
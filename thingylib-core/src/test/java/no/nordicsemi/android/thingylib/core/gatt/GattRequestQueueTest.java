@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.gatt;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class GattRequestQueueTest {
+
+    @Test
+    public void startsRequestsInOrder() throws Exception {
+        final List<Integer> started = new ArrayList<>();
+        final GattRequestQueue queue = new GattRequestQueue();
+        for (int i = 0; i < 3; i++) {
+            final int id = i;
+            queue.add(new GattRequest() {
+                @Override
+                public boolean start() {
+                    started.add(id);
+                    return true;
+                }
+
+                @Override
+                public void onDropped(final boolean skipped) {
+                    fail("Completed request dropped");
+                }
+            });
+        }
+        assertEquals(1, started.size());
+        assertEquals(3, queue.size());
+
+        queue.processNext();
+        queue.processNext();
+        queue.processNext();
+        assertEquals(3, started.size());
+        assertEquals(Integer.valueOf(2), started.get(2));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void controlPreemptsBulk() throws Exception {
+        final List<String> started = new ArrayList<>();
+        final GattRequestQueue queue = new GattRequestQueue();
+        queue.add(new NamedRequest("audio 1", started), GattRequestQueue.PRIORITY_BULK);
+        queue.add(new NamedRequest("audio 2", started), GattRequestQueue.PRIORITY_BULK);
+        queue.add(new NamedRequest("read", started), GattRequestQueue.PRIORITY_READ);
+        queue.add(new NamedRequest("led", started), GattRequestQueue.PRIORITY_CONTROL);
+
+        queue.processNext();
+        queue.processNext();
+        queue.processNext();
+        assertEquals(Arrays.asList("audio 1", "led", "read", "audio 2"), started);
+
+        final GattQueueStatistics statistics = queue.getStatistics(null);
+        assertEquals(2, statistics.getStartedCount(GattRequestQueue.PRIORITY_BULK));
+        assertEquals(1, statistics.getMaxQueueDepth(GattRequestQueue.PRIORITY_BULK));
+        assertEquals(0, statistics.getQueueDepth(GattRequestQueue.PRIORITY_BULK));
+
+        queue.clear(GattRequestQueue.PRIORITY_BULK);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void retriesThenSkipsTimedOutRequest() throws Exception {
+        final List<String> started = new ArrayList<>();
+        final GattRequestQueue queue = new GattRequestQueue();
+        final NamedRequest lost = new NamedRequest("lost", started);
+        final NamedRequest next = new NamedRequest("next", started);
+        queue.add(lost, GattRequestQueue.PRIORITY_CONTROL, new GattTimeoutPolicy(100, 1));
+        queue.add(next, GattRequestQueue.PRIORITY_CONTROL);
+
+        final long deadline = queue.getDeadline();
+        assertTrue(deadline != 0);
+        assertEquals(GattRequestQueue.TIMEOUT_NONE, queue.checkTimeout(deadline - 1));
+        assertEquals(GattRequestQueue.TIMEOUT_RETRIED, queue.checkTimeout(deadline));
+        assertEquals(0, lost.mDropped);
+        assertEquals(GattRequestQueue.TIMEOUT_SKIPPED, queue.checkTimeout(queue.getDeadline()));
+        assertEquals(Arrays.asList("lost", "lost", "next"), started);
+        assertEquals(0, queue.getDeadline());
+        // The skipped request is told so, i.e. to return its flow control credit
+        assertEquals(1, lost.mDropped);
+        assertTrue(lost.mSkipped);
+
+        queue.clear();
+        assertEquals(1, next.mDropped);
+        assertFalse(next.mSkipped);
+
+        final GattQueueStatistics statistics = queue.getStatistics(null);
+        assertEquals(2, statistics.getTimeoutCount(GattRequestQueue.PRIORITY_CONTROL));
+        assertEquals(1, statistics.getSkippedCount(GattRequestQueue.PRIORITY_CONTROL));
+    }
+
+    @Test
+    public void retriesRejectedRequestRightAway() throws Exception {
+        final List<String> started = new ArrayList<>();
+        final GattRequestQueue queue = new GattRequestQueue();
+        final NamedRequest led = new NamedRequest("led", started);
+        final NamedRequest audio = new NamedRequest("audio", started);
+        led.mRejections = 1;
+        audio.mRejections = 1;
+        queue.add(led, GattRequestQueue.PRIORITY_CONTROL, new GattTimeoutPolicy(2000, 1));
+        // The rejected write is sent again without waiting for its deadline
+        assertEquals(Arrays.asList("led", "led"), started);
+        assertSame(led, queue.getCurrent());
+
+        queue.complete(led);
+        queue.add(audio, GattRequestQueue.PRIORITY_BULK, new GattTimeoutPolicy(2000, 0));
+        queue.add(new NamedRequest("next", started), GattRequestQueue.PRIORITY_BULK);
+        // With no retries left the request is skipped and the next one started
+        assertEquals(Arrays.asList("led", "led", "audio", "next"), started);
+        assertEquals(1, audio.mDropped);
+        assertTrue(audio.mSkipped);
+
+        final GattQueueStatistics statistics = queue.getStatistics(null);
+        assertEquals(1, statistics.getRejectedCount(GattRequestQueue.PRIORITY_CONTROL));
+        assertEquals(1, statistics.getRejectedCount(GattRequestQueue.PRIORITY_BULK));
+        assertEquals(1, statistics.getSkippedCount(GattRequestQueue.PRIORITY_BULK));
+        assertEquals(0, statistics.getTimeoutCount(GattRequestQueue.PRIORITY_CONTROL));
+    }
+
+    @Test
+    public void pausedLaneWaits() throws Exception {
+        final List<String> started = new ArrayList<>();
+        final GattRequestQueue queue = new GattRequestQueue();
+        queue.setPaused(GattRequestQueue.PRIORITY_BULK, true);
+        queue.add(new NamedRequest("audio", started), GattRequestQueue.PRIORITY_BULK);
+        queue.add(new NamedRequest("led", started), GattRequestQueue.PRIORITY_CONTROL);
+        queue.processNext();
+        assertEquals(Arrays.asList("led"), started);
+
+        queue.setPaused(GattRequestQueue.PRIORITY_BULK, false);
+        assertEquals(Arrays.asList("led", "audio"), started);
+    }
+
+    @Test
+    public void completesExpectedRequestOnly() throws Exception {
+        final List<String> started = new ArrayList<>();
+        final GattRequestQueue queue = new GattRequestQueue();
+        final NamedRequest first = new NamedRequest("audio 1", started);
+        final NamedRequest second = new NamedRequest("audio 2", started);
+        final NamedRequest third = new NamedRequest("audio 3", started);
+        queue.add(first, GattRequestQueue.PRIORITY_BULK);
+        queue.add(second, GattRequestQueue.PRIORITY_BULK);
+
+        assertTrue(queue.disarmTimeout(first));
+        assertTrue(queue.complete(first));
+        // A duplicate completion of the first request leaves the second one running
+        assertFalse(queue.disarmTimeout(first));
+        assertFalse(queue.complete(first));
+        assertSame(second, queue.getCurrent());
+
+        // A completion posted before the lane was cleared does not complete the request added after it
+        queue.clear(GattRequestQueue.PRIORITY_BULK);
+        queue.add(third, GattRequestQueue.PRIORITY_BULK);
+        assertFalse(queue.complete(second));
+        assertSame(third, queue.getCurrent());
+        assertTrue(queue.complete(third));
+        assertTrue(queue.isEmpty());
+        assertEquals(Arrays.asList("audio 1", "audio 2", "audio 3"), started);
+    }
+
+    @Test
+    public void startsRequestsOnExecutor() throws Exception {
+        final List<String> started = new ArrayList<>();
+        final List<Runnable> posted = new ArrayList<>();
+        final GattRequestQueue queue = new GattRequestQueue(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                posted.add(command);
+            }
+        });
+        queue.add(new NamedRequest("led", started));
+        queue.add(new NamedRequest("read", started), GattRequestQueue.PRIORITY_READ);
+        // Nothing is started on the thread adding the requests
+        assertTrue(started.isEmpty());
+        assertEquals(1, posted.size());
+        assertNotNull(queue.getCurrent());
+
+        posted.remove(0).run();
+        assertEquals(Arrays.asList("led"), started);
+        queue.processNext();
+        assertEquals(1, started.size());
+        posted.remove(0).run();
+        assertEquals(Arrays.asList("led", "read"), started);
+
+        // A start posted for a request cleared meanwhile does nothing
+        queue.processNext();
+        queue.add(new NamedRequest("audio", started), GattRequestQueue.PRIORITY_BULK);
+        queue.clear(GattRequestQueue.PRIORITY_BULK);
+        posted.remove(0).run();
+        assertEquals(2, started.size());
+        assertTrue(posted.isEmpty());
+    }
+
+    private static final class NamedRequest implements GattRequest {
+        private final String mName;
+        private final List<String> mStarted;
+        private int mRejections;
+        private int mDropped;
+        private boolean mSkipped;
+
+        NamedRequest(final String name, final List<String> started) {
+            mName = name;
+            mStarted = started;
+        }
+
+        @Override
+        public boolean start() {
+            mStarted.add(mName);
+            if (mRejections > 0) {
+                mRejections--;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void onDropped(final boolean skipped) {
+            mDropped++;
+            mSkipped = skipped;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.metrics;
+
+import org.junit.Test;
+
+import no.nordicsemi.android.thingylib.core.stream.AudioMixer;
+
+import static org.junit.Assert.*;
+
+public class AudioLinkMetricsTest {
+
+    @Test
+    public void recordsPlayoutAndBufferWarnings() throws Exception {
+        final AudioLinkMetrics metrics = new AudioLinkMetrics();
+        final AudioMixer mixer = new AudioMixer(4, 1000, 4);
+        final AudioMixer.Source source = mixer.addSource("a", 1);
+        source.setPlayoutHistogram(metrics.getMicrophonePlayoutLatency());
+
+        source.write(new byte[4], 0, 4, 1000000L);
+        mixer.mix(new byte[4], 0);
+        mixer.recordPlayout(6000000L);
+        // A concealed frame has no reception time
+        mixer.mix(new byte[4], 0);
+        mixer.recordPlayout(7000000L);
+
+        metrics.onBufferWarning(10000000L);
+        metrics.onBufferWarning(11000000L);
+        metrics.onBufferReady(30000000L);
+        metrics.onSpeakerPacketCompleted(160, 2000000L);
+
+        final AudioLinkStatistics statistics = metrics.getStatistics(null, 40000000L);
+        assertEquals(1, statistics.getMicrophonePlayoutLatency().getCount());
+        assertEquals(5.0f, statistics.getMicrophonePlayoutLatency().getMaxMillis(), 0.001f);
+        assertEquals(1, statistics.getBufferWarningCount());
+        assertEquals(20.0f, statistics.getBufferFullMillis(), 0.001f);
+        assertFalse(statistics.isBufferFull());
+        assertEquals(160, statistics.getSpeakerBytes());
+        assertEquals(2.0f, statistics.getSpeakerWriteLatency().getMaxMillis(), 0.001f);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import no.nordicsemi.android.thingylib.core.protocol.ByteUtils;
+
+import static org.junit.Assert.*;
+
+public class AudioMixerTest {
+
+    @Test
+    public void alignsAndSaturatesSources() throws Exception {
+        final AudioMixer mixer = new AudioMixer(4, 16000, 4);
+        final AudioMixer.Source first = mixer.addSource("first", 1);
+        final AudioMixer.Source second = mixer.addSource("second", 2);
+        final List<Object> sunk = new ArrayList<>();
+        second.setSink(new AudioMixer.FrameSink() {
+            @Override
+            public void onFrame(final Object key, final byte[] frame, final int offset, final int length, final int result) {
+                if (result == JitterBuffer.READ_FRAME) {
+                    sunk.add(key);
+                }
+            }
+        });
+
+        final byte[] loud = { (byte) 0xFF, 0x5F, 0x00, 0x10 }; // 24575, 4096
+        final byte[] out = new byte[4];
+        first.write(loud, 0, 4);
+        second.write(loud, 0, 4);
+        // The second source waits for its target
+        assertEquals(1, mixer.mix(out, 0));
+        assertEquals(24575, ByteUtils.readSint16(out, 0));
+
+        first.write(loud, 0, 4);
+        second.write(loud, 0, 4);
+        assertEquals(2, mixer.mix(out, 0));
+        assertEquals(Short.MAX_VALUE, ByteUtils.readSint16(out, 0));
+        assertEquals(8192, ByteUtils.readSint16(out, 2));
+        assertEquals(1, sunk.size());
+
+        mixer.removeSource(first);
+        assertEquals(1, mixer.getSourceCount());
+    }
+}
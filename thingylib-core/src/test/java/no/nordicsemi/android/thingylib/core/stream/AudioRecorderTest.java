@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.List;
+
+import no.nordicsemi.android.thingylib.core.codec.AdpcmCodec;
+import no.nordicsemi.android.thingylib.core.codec.WavReader;
+
+import static org.junit.Assert.*;
+
+public class AudioRecorderTest {
+
+    @Test
+    public void rollsOverSegmentsAndExportsAdpcm() throws Exception {
+        final File directory = File.createTempFile("recorder", "");
+        assertTrue(directory.delete() && directory.mkdir());
+
+        // 2 frames of 256 samples per segment
+        final AudioRecorder recorder = new AudioRecorder(directory, "pcm", AudioRecorder.FORMAT_PCM, 16000);
+        recorder.setSegmentDuration(32);
+        recorder.start();
+        final byte[] pcm = new byte[AdpcmCodec.PCM_FRAME_SIZE];
+        for (int i = 0; i < 5; i++) {
+            assertTrue(recorder.write(pcm, 0, pcm.length));
+        }
+        final List<File> segments = recorder.stop();
+        assertEquals(3, segments.size());
+        assertEquals("pcm_3.wav", segments.get(2).getName());
+        final WavReader reader = new WavReader(new FileInputStream(segments.get(0)));
+        assertEquals(2 * AdpcmCodec.PCM_FRAME_SIZE, reader.getDataLength());
+        reader.close();
+        assertEquals(44 + AdpcmCodec.PCM_FRAME_SIZE, segments.get(2).length());
+
+        final AudioRecorder adpcmRecorder = new AudioRecorder(directory, "voice", AudioRecorder.FORMAT_ADPCM, 16000);
+        adpcmRecorder.start();
+        final byte[] frame = new byte[AdpcmCodec.FRAME_SIZE];
+        adpcmRecorder.write(frame, 0, frame.length);
+        adpcmRecorder.write(frame, 0, frame.length);
+        final File adpcm = adpcmRecorder.stop().get(0);
+        assertEquals(2 * AdpcmCodec.FRAME_SIZE, adpcm.length());
+
+        final File wav = new File(directory, "voice.wav");
+        AudioRecorder.exportAdpcm(adpcm, wav, 16000);
+        assertEquals(44 + 2 * AdpcmCodec.PCM_FRAME_SIZE, wav.length());
+
+        for (final File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
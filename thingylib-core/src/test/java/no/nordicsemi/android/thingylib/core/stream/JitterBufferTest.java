@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import org.junit.Test;
+
+import no.nordicsemi.android.thingylib.core.protocol.ByteUtils;
+
+import static org.junit.Assert.*;
+
+public class JitterBufferTest {
+
+    @Test
+    public void prebuffersConcealsAndDropsOverruns() throws Exception {
+        final JitterBuffer buffer = new JitterBuffer(4, 16000, 3, 2);
+        final byte[] frame = { 0x00, 0x40, 0x00, 0x40 }; // two samples of 16384
+        final byte[] out = new byte[4];
+
+        assertTrue(buffer.write(frame, 0, 4));
+        assertEquals(JitterBuffer.READ_SILENCE, buffer.read(out, 0));
+        assertTrue(buffer.write(frame, 0, 4));
+        assertEquals(JitterBuffer.READ_FRAME, buffer.read(out, 0));
+        assertArrayEquals(frame, out);
+        assertEquals(JitterBuffer.READ_FRAME, buffer.read(out, 0));
+
+        // Underrun, the last frame is repeated with a lower gain
+        assertEquals(JitterBuffer.READ_CONCEALED, buffer.read(out, 0));
+        assertTrue(ByteUtils.readSint16(out, 0) <= 16384);
+        assertEquals(JitterBuffer.READ_CONCEALED, buffer.read(out, 0));
+        assertEquals(JitterBuffer.READ_CONCEALED, buffer.read(out, 0));
+        assertEquals(JitterBuffer.READ_SILENCE, buffer.read(out, 0));
+
+        for (int i = 0; i < 4; i++) {
+            buffer.write(frame, 0, 4);
+        }
+        final JitterBufferStatistics statistics = buffer.getStatistics(null);
+        assertEquals(6, statistics.getReceivedFrames());
+        assertEquals(2, statistics.getPlayedFrames());
+        assertEquals(3, statistics.getConcealedFrames());
+        assertEquals(1, statistics.getUnderrunCount());
+        assertEquals(1, statistics.getOverrunCount());
+        assertEquals(48.0f, statistics.getLatencyMillis(), 0.001f);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VoiceUplinkTest {
+
+    @Test
+    public void waitsForPacketsAndDropsOldest() throws Exception {
+        final int[] notifications = new int[1];
+        final VoiceUplink uplink = new VoiceUplink(8000, 8, false);
+        uplink.setListener(new VoiceUplink.Listener() {
+            @Override
+            public void onPacketAvailable(final VoiceUplink uplink) {
+                notifications[0]++;
+            }
+        });
+
+        // Samples quantized to 1, 2, 3... so the dropped ones can be told apart
+        final byte[] pcm = new byte[20];
+        for (int i = 0; i < 10; i++) {
+            final int sample = ((i + 1) << 8) - 32768;
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        final byte[] packet = new byte[4];
+        assertEquals(0, uplink.read(packet, 0, 4));
+        assertTrue(uplink.write(pcm, 0, 6, 0));
+        assertEquals(0, notifications[0]);
+        assertTrue(uplink.write(pcm, 6, 14, 1000000000L));
+        assertEquals(1, notifications[0]);
+
+        assertEquals(4, uplink.read(packet, 0, 4));
+        assertArrayEquals(new byte[]{3, 4, 5, 6}, packet);
+        // The last sample read was captured 4 samples, 0.5 ms, before the last write and takes 0.5 ms to play
+        uplink.onPacketCompleted(4, 1001000000L);
+
+        uplink.close();
+        assertFalse(uplink.write(pcm, 0, 2, 0));
+        assertEquals(4, uplink.read(packet, 0, 4));
+        assertArrayEquals(new byte[]{7, 8, 9, 10}, packet);
+        assertEquals(-1, uplink.read(packet, 0, 4));
+
+        final VoiceUplinkStatistics statistics = uplink.getStatistics(null);
+        assertEquals(10, statistics.getWrittenSamples());
+        assertEquals(2, statistics.getDroppedSamples());
+        assertEquals(1, statistics.getSentPackets());
+        assertEquals(2.0f, statistics.getLatencyMillis(), 0.001f);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.core.stream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import no.nordicsemi.android.thingylib.core.codec.WavHeader;
+import no.nordicsemi.android.thingylib.core.codec.WavReader;
+
+import static org.junit.Assert.*;
+
+public class WavPacketSourceTest {
+
+    @Test
+    public void skipsListChunkAndMixesStereo() throws Exception {
+        final ByteArrayOutputStream wav = new ByteArrayOutputStream();
+        writeAscii(wav, "RIFF");
+        writeInt(wav, 0);
+        writeAscii(wav, "WAVEfmt ");
+        writeInt(wav, 16);
+        writeShort(wav, 1); // PCM
+        writeShort(wav, 2); // stereo
+        writeInt(wav, 8000);
+        writeInt(wav, 32000);
+        writeShort(wav, 4);
+        writeShort(wav, 16);
+        writeAscii(wav, "LIST");
+        writeInt(wav, 3); // odd size, padded
+        wav.write(new byte[4], 0, 4);
+        writeAscii(wav, "data");
+        writeInt(wav, 8);
+        writeShort(wav, 0x7FFF);
+        writeShort(wav, 0x7FFF);
+        writeShort(wav, 0x8000);
+        writeShort(wav, 0x8000);
+
+        final WavReader reader = new WavReader(new ByteArrayInputStream(wav.toByteArray()));
+        final WavPacketSource source = new WavPacketSource(reader, WavPacketSource.SPEAKER_SAMPLE_RATE, false);
+        assertEquals(8000, source.getReader().getSampleRate());
+        final byte[] packet = new byte[4];
+        assertEquals(2, source.read(packet, 0, 4));
+        assertEquals((byte) 255, packet[0]);
+        assertEquals(0, packet[1]);
+        assertEquals(-1, source.read(packet, 0, 4));
+
+        // 16-bit mono silence is converted on demand to the 8-bit midpoint, the last packet is short
+        final byte[] mono = new byte[WavHeader.SIZE + 10]; // 5 samples of silence
+        WavHeader.write(mono, 0, 8000, 1, 16, 10);
+        final WavPacketSource silence = new WavPacketSource(new WavReader(new ByteArrayInputStream(mono)), WavPacketSource.SPEAKER_SAMPLE_RATE, false);
+        final byte[] small = new byte[3];
+        assertEquals(3, silence.read(small, 0, 3));
+        assertEquals((byte) 128, small[0]);
+        assertEquals(2, silence.read(small, 0, 3));
+        assertEquals(-1, silence.read(small, 0, 3));
+    }
+
+    private static void writeAscii(final ByteArrayOutputStream out, final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    private static void writeShort(final ByteArrayOutputStream out, final int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final int value) {
+        writeShort(out, value & 0xFFFF);
+        writeShort(out, (value >> 16) & 0xFFFF);
+    }
+}
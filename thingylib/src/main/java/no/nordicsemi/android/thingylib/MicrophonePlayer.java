@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib;
+
+import android.bluetooth.BluetoothDevice;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import no.nordicsemi.android.thingylib.core.codec.AdpcmCodec;
+import no.nordicsemi.android.thingylib.core.stream.AudioMixer;
+import no.nordicsemi.android.thingylib.core.stream.JitterBuffer;
+
+/**
+ * Plays the decoded microphone frames of all thingies on one audio thread.
+ * <br>
+ * Each connection adds a source to an {@link AudioMixer} and hands its frames over through the source's {@link JitterBuffer},
+ * so the bluetooth callback threads only copy a frame and never wait for the blocking {@link AudioTrack#write(byte[], int, int)}.
+ * The playback thread mixes one frame of every source at a time and is paced by the audio track. It is started with the first source
+ * and stops when the last source is removed.
+ */
+/*package access*/ final class MicrophonePlayer implements Runnable {
+    private static final String TAG = "MicrophonePlayer";
+    private static final int SAMPLE_RATE = 16000;
+    /** 256 samples at 16 kHz */
+    private static final int FRAME_DURATION_MICROS = AdpcmCodec.PCM_FRAME_SIZE / 2 * 1000000 / SAMPLE_RATE;
+    private static final int CAPACITY = 16;
+
+    private static MicrophonePlayer mInstance;
+
+    /*package access*/ interface Callback {
+        /**
+         * Called on the playback thread when the audio track reported an error and the playback stopped.
+         *
+         * @param status the error returned by the audio track
+         */
+        void onPlaybackError(final int status);
+    }
+
+    private final AudioMixer mMixer = new AudioMixer(AdpcmCodec.PCM_FRAME_SIZE, FRAME_DURATION_MICROS, CAPACITY);
+    private final Map<AudioMixer.Source, Callback> mCallbacks = new HashMap<>();
+    private volatile Thread mThread;
+
+    /**
+     * Returns the player shared by all thingy connections.
+     */
+    /*package access*/ static synchronized MicrophonePlayer getInstance() {
+        if (mInstance == null)
+            mInstance = new MicrophonePlayer();
+        return mInstance;
+    }
+
+    private MicrophonePlayer() {
+    }
+
+    /**
+     * Adds the microphone of a thingy to the mix, starting the playback thread if needed.
+     *
+     * @param device       bluetooth device
+     * @param targetFrames number of 16 ms frames buffered before the frames of the thingy are played
+     * @param callback     callback notified about playback errors
+     * @return the source the decoded frames are written to
+     */
+    /*package access*/ synchronized AudioMixer.Source addSource(final BluetoothDevice device, final int targetFrames, final Callback callback) {
+        final AudioMixer.Source source = mMixer.addSource(device, targetFrames);
+        mCallbacks.put(source, callback);
+        if (mThread == null) {
+            final Thread thread = new Thread(this, "ThingyAudio");
+            mThread = thread;
+            thread.start();
+        }
+        return source;
+    }
+
+    /**
+     * Removes the microphone of a thingy from the mix. The playback thread releases the audio track after the last source is removed.
+     */
+    /*package access*/ synchronized void removeSource(final AudioMixer.Source source) {
+        mMixer.removeSource(source);
+        mCallbacks.remove(source);
+        if (mMixer.getSourceCount() == 0) {
+            mThread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        final int bufferSize = AudioTrack.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        final AudioTrack audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, SAMPLE_RATE, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferSize, AudioTrack.MODE_STREAM);
+        try {
+            audioTrack.play();
+            final byte[] frame = new byte[mMixer.getFrameSize()];
+            //A newer thread replaces this one if the sources were removed and added again before it noticed
+            while (mThread == Thread.currentThread()) {
+                mMixer.mix(frame, 0);
+                final int status = audioTrack.write(frame, 0, frame.length);
+                if (status < 0) {
+                    Log.e(TAG, "Audio track error: " + status);
+                    onPlaybackError(status);
+                } else {
+                    //The write returns once the frame is in the track buffer
+                    mMixer.recordPlayout(System.nanoTime());
+                }
+            }
+            audioTrack.stop();
+        } catch (final IllegalStateException e) {
+            Log.e(TAG, "Unable to play microphone audio", e);
+            onPlaybackError(AudioTrack.ERROR_INVALID_OPERATION);
+        } finally {
+            audioTrack.release();
+        }
+    }
+
+    private void onPlaybackError(final int status) {
+        final Callback[] callbacks;
+        synchronized (this) {
+            if (mThread == Thread.currentThread()) {
+                mThread = null;
+            }
+            callbacks = mCallbacks.values().toArray(new Callback[mCallbacks.size()]);
+        }
+        for (final Callback callback : callbacks) {
+            callback.onPlaybackError(status);
+        }
+    }
+}
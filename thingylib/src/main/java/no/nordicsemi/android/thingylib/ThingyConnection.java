@@ -47,35 +47,57 @@ import android.bluetooth.BluetoothGattService;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Color;
-import android.media.AudioFormat;
-import android.media.AudioManager;
-import android.media.AudioTrack;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 import android.webkit.URLUtil;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.Locale;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import no.nordicsemi.android.thingylib.core.codec.AdpcmCodec;
+import no.nordicsemi.android.thingylib.core.codec.WavReader;
+import no.nordicsemi.android.thingylib.core.dsp.SpectrumAnalyzer;
+import no.nordicsemi.android.thingylib.core.gatt.CreditFlowController;
+import no.nordicsemi.android.thingylib.core.gatt.GattQueueStatistics;
+import no.nordicsemi.android.thingylib.core.gatt.GattRequest;
+import no.nordicsemi.android.thingylib.core.gatt.GattRequestQueue;
+import no.nordicsemi.android.thingylib.core.gatt.GattTimeoutPolicy;
+import no.nordicsemi.android.thingylib.core.metrics.AudioLinkMetrics;
+import no.nordicsemi.android.thingylib.core.metrics.AudioLinkStatistics;
+import no.nordicsemi.android.thingylib.core.protocol.ThingyNotifications;
+import no.nordicsemi.android.thingylib.core.stream.AudioMixer;
+import no.nordicsemi.android.thingylib.core.stream.AudioRecorder;
+import no.nordicsemi.android.thingylib.core.stream.ByteArrayPacketSource;
+import no.nordicsemi.android.thingylib.core.stream.JitterBufferStatistics;
+import no.nordicsemi.android.thingylib.core.stream.PacketBufferPool;
+import no.nordicsemi.android.thingylib.core.stream.PacketSource;
+import no.nordicsemi.android.thingylib.core.stream.VoiceUplink;
+import no.nordicsemi.android.thingylib.core.stream.VoiceUplinkStatistics;
+import no.nordicsemi.android.thingylib.core.stream.WavPacketSource;
 import no.nordicsemi.android.thingylib.decoder.ADPCMDecoder;
+import no.nordicsemi.android.thingylib.decoder.NotificationDecoder;
+import no.nordicsemi.android.thingylib.history.SensorHistory;
 import no.nordicsemi.android.thingylib.utils.ThingyUtils;
 
 
 public class ThingyConnection extends BluetoothGattCallback {
 
     private static final String TAG = "ThingyConnection";
+    /** Decoded microphone frames waiting for delivery on the main thread, at 62.5 frames per second */
+    private static final int MICROPHONE_POOL_CAPACITY = 8;
     private BluetoothGattCharacteristic mDeviceNameCharacteristic;
     private BluetoothGattCharacteristic mAdvertisingParamCharacteristic;
     private BluetoothGattCharacteristic mConnectionParamCharacteristic;
@@ -111,10 +133,20 @@ public class ThingyConnection extends BluetoothGattCallback {
 
     private BluetoothGattCharacteristic mDfuControlPointCharacteristic;
 
-    private final Queue<Request> mQueue;
+    private final GattRequestQueue mQueue;
     private final Context mContext;
     private final Handler mHandler;
+    private final HandlerThread mGattThread;
+    private final Handler mGattHandler;
     private final Handler mMtuHandler;
+    private final ThingyEventBus mEventBus;
+    private final Object mNotificationDecoderLock = new Object();
+    private final Object mTimeoutPolicyLock = new Object();
+    private volatile GattTimeoutPolicy[] mTimeoutPolicies = createDefaultTimeoutPolicies();
+    //Requests which left the queue while callbacks of their gatt operations may still come, see completeRequest()
+    private final Object mCompletionLock = new Object();
+    private final ArrayDeque<Request> mRetiredRequests = new ArrayDeque<>();
+    private volatile Map<UUID, NotificationDecoder> mNotificationDecoders;
     private final BluetoothDevice mBluetoothDevice;
     private BluetoothGatt mBluetoothGatt;
 
@@ -158,9 +190,7 @@ public class ThingyConnection extends BluetoothGattCallback {
 
     private ADPCMDecoder mAdpcmDecoder;
 
-    private LinkedHashMap<String, String> mTemperatureData;
-    private LinkedHashMap<String, String> mPressureData;
-    private LinkedHashMap<String, Integer> mHumidityData;
+    private final SensorHistory mSensorHistory;
 
     private BluetoothGattService mThingyConfigurationService;
     private BluetoothGattService mButtonLessDfuService;
@@ -171,17 +201,26 @@ public class ThingyConnection extends BluetoothGattCallback {
     private int mMtu;
     private boolean mPlayPcmRequested = false;
     private boolean mPlayVoiceInput = false;
-    private boolean mEnableThingyMicrophone = false;
-    private byte[] mPcmSample;
-    private boolean mWait = false;
+    private volatile boolean mEnableThingyMicrophone = false;
 
     private int mtu = ThingyUtils.MAX_MTU_SIZE_THINGY;
-    private int mNumOfAudioChunks = 0;
     private boolean mBufferWarningReceived = false;
 
-    private int mPacketCounter = 0;
-    private AudioTrack mAudioTrack;
-    private boolean mStartPlaying;
+    private final CreditFlowController mFlowController = new CreditFlowController();
+    private final AudioLinkMetrics mAudioMetrics = new AudioLinkMetrics();
+    private final Object mStreamLock = new Object();
+    private final ArrayDeque<PacketSource> mStreamSources = new ArrayDeque<>();
+    private final PacketBufferPool mMicrophonePool = new PacketBufferPool(MICROPHONE_POOL_CAPACITY);
+    private final PacketBufferPool mPacketPool = new PacketBufferPool(CreditFlowController.DEFAULT_PACKETS_IN_FLIGHT * 2);
+    private PacketSource mStreamSource;
+    private volatile AudioMixer.Source mMicrophoneSource;
+    private volatile float mMicrophoneGain = 1.0f;
+    private volatile boolean mMicrophoneMixed = true;
+    private volatile AudioMixer.FrameSink mMicrophoneSink;
+    private volatile AudioRecorder mMicrophoneRecorder;
+    private volatile VoiceUplink mVoiceUplink;
+    private volatile SpectrumAnalyzer mMicrophoneAnalyzer;
+    private volatile int mMicrophoneJitterTarget = ThingyUtils.DEFAULT_MICROPHONE_JITTER_FRAMES;
 
     public boolean getConnectionState() {
         return isConnected;
@@ -198,13 +237,23 @@ public class ThingyConnection extends BluetoothGattCallback {
     public ThingyConnection(final Context context, final BluetoothDevice bluetoothDevice) {
         this.mContext = context;
         this.mHandler = new Handler();
+        this.mGattThread = new HandlerThread("ThingyGatt " + bluetoothDevice.getAddress());
+        this.mGattThread.start();
+        this.mGattHandler = new Handler(mGattThread.getLooper());
         this.mMtuHandler = new Handler();
+        this.mEventBus = ThingyEventBus.getInstance();
+        this.mNotificationDecoders = createDefaultNotificationDecoders();
+        this.mSensorHistory = new SensorHistory(ThingyUtils.MAX_VISISBLE_GRAPH_ENTRIES);
         this.mBluetoothDevice = bluetoothDevice;
-        this.mQueue = new LinkedList<>();
+        this.mQueue = new GattRequestQueue(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                // Requests added from the main or binder threads are started on the gatt thread
+                mGattHandler.post(command);
+            }
+        });
+        this.mMicrophonePool.setPacketSize(AdpcmCodec.PCM_FRAME_SIZE);
         connect(bluetoothDevice);
-        this.mTemperatureData = new LinkedHashMap<>();
-        this.mPressureData = new LinkedHashMap<>();
-        this.mHumidityData = new LinkedHashMap<>();
         ThingyUtils.makeMqttManagerIntentFilter();
         this.mListener = (ThingyConnectionGattCallbacks) mContext;
     }
@@ -227,7 +276,12 @@ public class ThingyConnection extends BluetoothGattCallback {
             intent.putExtra(ThingyUtils.EXTRA_DATA, newState);
             intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
             LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+            postConnectionEvent(ThingyEvent.DEVICE_DISCONNECTED, newState);
             gatt.close();
+            mGattThread.quitSafely();
+            stopMicrophonePlayer();
+            //The recorder thread and its open files are released, the frames received so far are kept on disk
+            stopMicrophoneRecording();
 
             return;
         }
@@ -239,6 +293,7 @@ public class ThingyConnection extends BluetoothGattCallback {
             intent.putExtra(ThingyUtils.EXTRA_DATA, newState);
             intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
             LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+            postConnectionEvent(ThingyEvent.DEVICE_CONNECTED, newState);
 
             mListener.onDeviceConnected(mBluetoothDevice, newState);
             Log.v(TAG, "Starting service discovery");
@@ -259,10 +314,28 @@ public class ThingyConnection extends BluetoothGattCallback {
             intent.putExtra(ThingyUtils.EXTRA_DATA, newState);
             intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
             LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+            postConnectionEvent(ThingyEvent.DEVICE_DISCONNECTED, newState);
             gatt.close();
+            mGattThread.quitSafely();
+            stopMicrophonePlayer();
+            //The recorder thread and its open files are released, the frames received so far are kept on disk
+            stopMicrophoneRecording();
         }
     }
 
+    /**
+     * Posts a connection event to the listeners registered in the {@link ThingyEventBus}.
+     * The connection broadcasts are still sent as other components rely on them.
+     *
+     * @param type            event type
+     * @param connectionState connection state
+     */
+    private void postConnectionEvent(final int type, final int connectionState) {
+        final ThingyEvent event = ThingyEvent.obtain(type, mBluetoothDevice);
+        event.intValues[0] = connectionState;
+        mEventBus.post(event);
+    }
+
     @Override
     public final void onServicesDiscovered(BluetoothGatt gatt, int status) {
         if (status != BluetoothGatt.GATT_SUCCESS) {
@@ -334,243 +407,310 @@ public class ThingyConnection extends BluetoothGattCallback {
     @Override
     public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
         super.onCharacteristicChanged(gatt, characteristic);
-        if (characteristic.equals(mTemperatureCharacteristic)) {
-
-            final int mTemperatureInt = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT8, 0);
-            final int mTemperatureDec = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT8, 1);
-            final String mTemperatureTimestamp = ThingyUtils.TIME_FORMAT.format(System.currentTimeMillis());
-            mTemperatureData.put(mTemperatureTimestamp, String.valueOf(mTemperatureInt) + "." + String.valueOf(mTemperatureDec));
-
-            final Intent intent = new Intent(ThingyUtils.TEMPERATURE_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA, String.valueOf(mTemperatureInt) + "." + String.valueOf(mTemperatureDec));
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
-
-            ThingyUtils.removeOldDataForGraphs(mTemperatureData);
-
-        } else if (characteristic.equals(mPressureCharacteristic)) {
-            final int mPressureInt = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT32, 0);
-            final int mPressureDec = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT8, 4);
-
-            final String mPressureTimestamp = ThingyUtils.TIME_FORMAT.format(System.currentTimeMillis());
-            mPressureData.put(mPressureTimestamp, mPressureInt + "." + mPressureDec);
-
-            final Intent intent = new Intent(ThingyUtils.PRESSURE_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA, mPressureInt + "." + mPressureDec);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
-
-            ThingyUtils.removeOldDataForGraphs(mPressureData);
-        } else if (characteristic.equals(mHumidityCharacteristic)) {
-            final int mHumidity = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT8, 0);
-
-            final String mHumidityTimestamp = ThingyUtils.TIME_FORMAT.format(System.currentTimeMillis());
-            mHumidityData.put(mHumidityTimestamp, mHumidity);
-
-            final Intent intent = new Intent(ThingyUtils.HUMIDITY_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA, String.valueOf(mHumidity));
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
-
-            ThingyUtils.removeOldDataForGraphs(mHumidityData);
-        } else if (characteristic.equals(mAirQualityCharacteristic)) {
-            final int mECO2 = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT16, 0);
-            final int mTVOC = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT16, 2);
-
-            final Intent intent = new Intent(ThingyUtils.AIR_QUALITY_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_ECO2, mECO2);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_TVOC, mTVOC);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
-
-        } else if (characteristic.equals(mColorCharacteristic)) {
-            final float mRed = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT16, 0);
-            final float mGreen = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT16, 2);
-            final float mBlue = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT16, 4);
-            final float mClear = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT16, 6);
-
-            final Intent intent = new Intent(ThingyUtils.COLOR_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_RED, mRed);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_GREEN, mGreen);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_BLUE, mBlue);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_CLEAR, mClear);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
-
-        } else if (characteristic.equals(mButtonCharacteristic)) {
-            mButtonState = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT8, 0);
-
-            final Intent intent = new Intent(ThingyUtils.BUTTON_STATE_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_BUTTON, mButtonState);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
-
-        } else if (characteristic.equals(mTapCharacteristic)) {
-            final int mDirection = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT8, 0);
-            int mTap = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT8, 1);
-
-            final Intent intent = new Intent(ThingyUtils.TAP_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_TAP_COUNT, mTap);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_TAP_DIRECTION, mDirection);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
-
-        } else if (characteristic.equals(mOrientationCharacteristic)) {
-            final int mOrientation = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT8, 0);
+        final NotificationDecoder decoder = mNotificationDecoders.get(characteristic.getUuid());
+        if (decoder != null) {
+            decoder.decode(mBluetoothDevice, characteristic.getValue());
+        }
+    }
 
-            final Intent intent = new Intent(ThingyUtils.ORIENTATION_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA, mOrientation);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+    /**
+     * Registers a decoder for notifications of the characteristic with the given UUID.
+     * This may be a custom characteristic exposed by a modified firmware or one of the Thingy characteristics, in which case the default decoder is replaced.
+     *
+     * @param characteristicUuid characteristic UUID
+     * @param decoder            decoder to be used
+     */
+    /*package access*/
+    final void registerNotificationDecoder(final UUID characteristicUuid, final NotificationDecoder decoder) {
+        synchronized (mNotificationDecoderLock) {
+            final Map<UUID, NotificationDecoder> decoders = new HashMap<>(mNotificationDecoders);
+            decoders.put(characteristicUuid, decoder);
+            mNotificationDecoders = decoders;
+        }
+    }
 
-        } else if (characteristic.equals(mQuaternionCharacteristic)) {
+    /**
+     * Unregisters the decoder for the characteristic with the given UUID. The default decoder is restored for Thingy characteristics.
+     *
+     * @param characteristicUuid characteristic UUID
+     */
+    /*package access*/
+    final void unregisterNotificationDecoder(final UUID characteristicUuid) {
+        synchronized (mNotificationDecoderLock) {
+            final Map<UUID, NotificationDecoder> decoders = new HashMap<>(mNotificationDecoders);
+            final NotificationDecoder defaultDecoder = createDefaultNotificationDecoders().get(characteristicUuid);
+            if (defaultDecoder != null) {
+                decoders.put(characteristicUuid, defaultDecoder);
+            } else {
+                decoders.remove(characteristicUuid);
+            }
+            mNotificationDecoders = decoders;
+        }
+    }
 
-            final float mQuaternionW = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT32, 0)) / (1 << 30);
-            final float mQuaternionX = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT32, 4)) / (1 << 30);
-            final float mQuaternionY = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT32, 8)) / (1 << 30);
-            final float mQuaternionZ = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT32, 12)) / (1 << 30);
+    /**
+     * Creates the decoders for all notifications sent by the Thingy firmware, keyed by the characteristic UUID.
+     */
+    private Map<UUID, NotificationDecoder> createDefaultNotificationDecoders() {
+        final Map<UUID, NotificationDecoder> decoders = new HashMap<>();
+        decoders.put(ThingyUtils.TEMPERATURE_CHARACTERISTIC, mTemperatureDecoder);
+        decoders.put(ThingyUtils.PRESSURE_CHARACTERISTIC, mPressureDecoder);
+        decoders.put(ThingyUtils.HUMIDITY_CHARACTERISTIC, mHumidityDecoder);
+        decoders.put(ThingyUtils.AIR_QUALITY_CHARACTERISTIC, mAirQualityDecoder);
+        decoders.put(ThingyUtils.COLOR_CHARACTERISTIC, mColorDecoder);
+        decoders.put(ThingyUtils.BUTTON_CHARACTERISTIC, mButtonDecoder);
+        decoders.put(ThingyUtils.TAP_CHARACTERISTIC, mTapDecoder);
+        decoders.put(ThingyUtils.ORIENTATION_CHARACTERISTIC, mOrientationDecoder);
+        decoders.put(ThingyUtils.QUATERNION_CHARACTERISTIC, mQuaternionDecoder);
+        decoders.put(ThingyUtils.PEDOMETER_CHARACTERISTIC, mPedometerDecoder);
+        decoders.put(ThingyUtils.RAW_DATA_CHARACTERISTIC, mRawDataDecoder);
+        decoders.put(ThingyUtils.EULER_CHARACTERISTIC, mEulerDecoder);
+        decoders.put(ThingyUtils.ROTATION_MATRIX_CHARACTERISTIC, mRotationMatrixDecoder);
+        decoders.put(ThingyUtils.HEADING_CHARACTERISTIC, mHeadingDecoder);
+        decoders.put(ThingyUtils.GRAVITY_VECTOR_CHARACTERISTIC, mGravityVectorDecoder);
+        decoders.put(ThingyUtils.THINGY_SPEAKER_STATUS_CHARACTERISTIC, mSpeakerStatusDecoder);
+        decoders.put(ThingyUtils.THINGY_MICROPHONE_CHARACTERISTIC, mMicrophoneDecoder);
+        return decoders;
+    }
 
-            final Intent intent = new Intent(ThingyUtils.QUATERNION_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_QUATERNION_W, mQuaternionW);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_QUATERNION_X, mQuaternionX);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_QUATERNION_Y, mQuaternionY);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_QUATERNION_Z, mQuaternionZ);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+    private final NotificationDecoder mTemperatureDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final String mTemperature = ThingyNotifications.formatTemperature(value);
+            mSensorHistory.record(SensorHistory.STREAM_TEMPERATURE, SystemClock.elapsedRealtime(), ThingyNotifications.parseTemperature(value));
 
-        } else if (characteristic.equals(mPedometerCharacteristic)) {
-            final int mStepCount = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT32, 0);
-            final int mDuration = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT32, 4);
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.TEMPERATURE, device);
+            event.stringValue = mTemperature;
+            mEventBus.post(event);
+        }
+    };
 
-            final Intent intent = new Intent(ThingyUtils.PEDOMETER_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_STEP_COUNT, mStepCount);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_DURATION, ThingyUtils.TIME_FORMAT_PEDOMETER.format(mDuration));
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+    private final NotificationDecoder mPressureDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final String mPressure = ThingyNotifications.formatPressure(value);
+            mSensorHistory.record(SensorHistory.STREAM_PRESSURE, SystemClock.elapsedRealtime(), ThingyNotifications.parsePressure(value));
 
-        } else if (characteristic.equals(mRawDataCharacteristic)) {
-            final float mAccelerometerX = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT16, 0)) / (2 << 14);
-            final float mAccelerometerY = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT16, 2)) / (2 << 14);
-            final float mAccelerometerZ = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT16, 4)) / (2 << 14);
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.PRESSURE, device);
+            event.stringValue = mPressure;
+            mEventBus.post(event);
+        }
+    };
 
-            final float mGyroscopeX = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT16, 6)) / (2 << 14);
-            final float mGyroscopeY = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT16, 8)) / (2 << 14);
-            final float mGyroscopeZ = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT16, 10)) / (2 << 14);
+    private final NotificationDecoder mHumidityDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final int mHumidity = ThingyNotifications.parseHumidity(value);
+            mSensorHistory.record(SensorHistory.STREAM_HUMIDITY, SystemClock.elapsedRealtime(), mHumidity);
 
-            final float mCompassZ = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT16, 12)) / (2 << 14);
-            final float mCompassX = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT16, 14)) / (2 << 14);
-            final float mCompassY = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT16, 16)) / (2 << 14);
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.HUMIDITY, device);
+            event.stringValue = String.valueOf(mHumidity);
+            mEventBus.post(event);
+        }
+    };
 
-            final Intent intent = new Intent(ThingyUtils.RAW_DATA_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_ACCELEROMETER_X, mAccelerometerX);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_ACCELEROMETER_Y, mAccelerometerY);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_ACCELEROMETER_Z, mAccelerometerZ);
+    private final NotificationDecoder mAirQualityDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.AIR_QUALITY, device);
+            ThingyNotifications.parseAirQuality(value, event.intValues); //eCO2, TVOC
+            final long timestamp = SystemClock.elapsedRealtime();
+            mSensorHistory.record(SensorHistory.STREAM_ECO2, timestamp, event.intValues[0]);
+            mSensorHistory.record(SensorHistory.STREAM_TVOC, timestamp, event.intValues[1]);
+            mEventBus.post(event);
+        }
+    };
 
-            intent.putExtra(ThingyUtils.EXTRA_DATA_GYROSCOPE_X, mGyroscopeX);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_GYROSCOPE_Y, mGyroscopeY);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_GYROSCOPE_Z, mGyroscopeZ);
+    private final NotificationDecoder mColorDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.COLOR, device);
+            ThingyNotifications.parseColor(value, event.floatValues); //red, green, blue, clear
+            final long timestamp = SystemClock.elapsedRealtime();
+            mSensorHistory.record(SensorHistory.STREAM_COLOR_RED, timestamp, event.floatValues[0]);
+            mSensorHistory.record(SensorHistory.STREAM_COLOR_GREEN, timestamp, event.floatValues[1]);
+            mSensorHistory.record(SensorHistory.STREAM_COLOR_BLUE, timestamp, event.floatValues[2]);
+            mSensorHistory.record(SensorHistory.STREAM_COLOR_CLEAR, timestamp, event.floatValues[3]);
+            mEventBus.post(event);
+        }
+    };
 
-            intent.putExtra(ThingyUtils.EXTRA_DATA_COMPASS_X, mCompassX);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_COMPASS_Y, mCompassY);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_COMPASS_Z, mCompassZ);
+    private final NotificationDecoder mButtonDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            mButtonState = ThingyNotifications.parseButtonState(value);
 
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.BUTTON_STATE, device);
+            event.intValues[0] = mButtonState;
+            mSensorHistory.record(SensorHistory.STREAM_BUTTON_STATE, SystemClock.elapsedRealtime(), mButtonState);
+            mEventBus.post(event);
+        }
+    };
 
-        } else if (characteristic.equals(mEulerCharacteristic)) {
-            final float mRoll = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT32, 0)) / (1 << 16);
-            final float mPitch = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT32, 4)) / (1 << 16);
-            final float mYaw = (float) (characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT32, 8)) / (1 << 16);
+    private final NotificationDecoder mTapDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.TAP, device);
+            ThingyNotifications.parseTap(value, event.intValues); //direction, count
+            final long timestamp = SystemClock.elapsedRealtime();
+            mSensorHistory.record(SensorHistory.STREAM_TAP_DIRECTION, timestamp, event.intValues[0]);
+            mSensorHistory.record(SensorHistory.STREAM_TAP_COUNT, timestamp, event.intValues[1]);
+            mEventBus.post(event);
+        }
+    };
 
-            final Intent intent = new Intent(ThingyUtils.EULER_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_ROLL, mRoll);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_PITCH, mPitch);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_YAW, mYaw);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+    private final NotificationDecoder mOrientationDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.ORIENTATION, device);
+            event.intValues[0] = ThingyNotifications.parseOrientation(value);
+            mSensorHistory.record(SensorHistory.STREAM_ORIENTATION, SystemClock.elapsedRealtime(), event.intValues[0]);
+            mEventBus.post(event);
+        }
+    };
 
-        } else if (characteristic.equals(mRotationMatrixCharacteristic)) {
-            final byte[] attitudeInRotationMatrix = characteristic.getValue();
-            final Intent intent = new Intent(ThingyUtils.ROTATION_MATRIX_NOTIFICATION);
+    private final NotificationDecoder mQuaternionDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.QUATERNION, device);
+            ThingyNotifications.parseQuaternion(value, event.floatValues); //w, x, y, z
+            final long timestamp = SystemClock.elapsedRealtime();
+            mSensorHistory.record(SensorHistory.STREAM_QUATERNION_W, timestamp, event.floatValues[0]);
+            mSensorHistory.record(SensorHistory.STREAM_QUATERNION_X, timestamp, event.floatValues[1]);
+            mSensorHistory.record(SensorHistory.STREAM_QUATERNION_Y, timestamp, event.floatValues[2]);
+            mSensorHistory.record(SensorHistory.STREAM_QUATERNION_Z, timestamp, event.floatValues[3]);
+            mEventBus.post(event);
+        }
+    };
 
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA, attitudeInRotationMatrix);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+    private final NotificationDecoder mPedometerDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.PEDOMETER, device);
+            event.intValues[0] = ThingyNotifications.parseStepCount(value);
+            event.longValue = ThingyNotifications.parsePedometerDuration(value);
+            final long timestamp = SystemClock.elapsedRealtime();
+            mSensorHistory.record(SensorHistory.STREAM_STEP_COUNT, timestamp, event.intValues[0]);
+            mSensorHistory.record(SensorHistory.STREAM_PEDOMETER_DURATION, timestamp, event.longValue);
+            mEventBus.post(event);
+        }
+    };
 
-        } else if (characteristic.equals(mHeadingCharacteristic)) {
+    private final NotificationDecoder mRawDataDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.RAW_DATA, device);
+            final float[] values = event.floatValues;
+            ThingyNotifications.parseRawData(value, values); //accelerometer, gyroscope and compass x, y, z
+            final long timestamp = SystemClock.elapsedRealtime();
+            for (int i = 0; i < 9; i++) {
+                mSensorHistory.record(SensorHistory.STREAM_ACCELEROMETER_X + i, timestamp, values[i]);
+            }
+            mEventBus.post(event);
+        }
+    };
 
-            final float mHeading = ((float) characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_SINT32, 0)) / (1 << 16);
-            final Intent intent = new Intent(ThingyUtils.HEADING_NOTIFICATION);
+    private final NotificationDecoder mEulerDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.EULER, device);
+            ThingyNotifications.parseEuler(value, event.floatValues); //roll, pitch, yaw
+            final long timestamp = SystemClock.elapsedRealtime();
+            mSensorHistory.record(SensorHistory.STREAM_EULER_ROLL, timestamp, event.floatValues[0]);
+            mSensorHistory.record(SensorHistory.STREAM_EULER_PITCH, timestamp, event.floatValues[1]);
+            mSensorHistory.record(SensorHistory.STREAM_EULER_YAW, timestamp, event.floatValues[2]);
+            mEventBus.post(event);
+        }
+    };
 
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA, Float.valueOf(String.format(Locale.US, "%.2f", mHeading)));
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+    private final NotificationDecoder mRotationMatrixDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.ROTATION_MATRIX, device);
+            event.byteValues = value.clone(); //delivered asynchronously, the value array may be reused by the stack
+            mEventBus.post(event);
+        }
+    };
 
-        } else if (characteristic.equals(mGravityVectorCharacteristic)) {
-            final byte[] data = characteristic.getValue();
-            final ByteBuffer mByteBuffer = ByteBuffer.wrap(data);
-            mByteBuffer.order(ByteOrder.LITTLE_ENDIAN); // setting to little endian as 32bit float from the nRF 52 is IEEE 754 floating
-            float mGravityVectorX = mByteBuffer.getFloat(0);
-            float mGravityVectorY = mByteBuffer.getFloat(4);
-            float mGravityVectorZ = mByteBuffer.getFloat(8);
+    private final NotificationDecoder mHeadingDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.HEADING, device);
+            event.floatValues[0] = ThingyNotifications.parseHeading(value); //rounded to 2 decimals
+            mSensorHistory.record(SensorHistory.STREAM_HEADING, SystemClock.elapsedRealtime(), event.floatValues[0]);
+            mEventBus.post(event);
+        }
+    };
 
-            final Intent intent = new Intent(ThingyUtils.GRAVITY_NOTIFICATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_GRAVITY_X, mGravityVectorX);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_GRAVITY_Y, mGravityVectorY);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_GRAVITY_Z, mGravityVectorZ);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+    private final NotificationDecoder mGravityVectorDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            // 32bit float from the nRF 52 is IEEE 754 little endian floating
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.GRAVITY_VECTOR, device);
+            ThingyNotifications.parseGravityVector(value, event.floatValues);
+            final long timestamp = SystemClock.elapsedRealtime();
+            mSensorHistory.record(SensorHistory.STREAM_GRAVITY_X, timestamp, event.floatValues[0]);
+            mSensorHistory.record(SensorHistory.STREAM_GRAVITY_Y, timestamp, event.floatValues[1]);
+            mSensorHistory.record(SensorHistory.STREAM_GRAVITY_Z, timestamp, event.floatValues[2]);
+            mEventBus.post(event);
+        }
+    };
 
-        } else if (characteristic.equals(mSpeakerStatusCharacteristic)) {
-            final int speakerStatus = mSpeakerStatusCharacteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT8, 0);
-            final Intent intent = new Intent(ThingyUtils.SPEAKER_STATUS_NOTITIFCATION);
-            intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-            intent.putExtra(ThingyUtils.EXTRA_DATA_SPEAKER_STATUS_NOTITIFCATION, speakerStatus);
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+    private final NotificationDecoder mSpeakerStatusDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
+            final int speakerStatus = ThingyNotifications.parseSpeakerStatus(value);
+            final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.SPEAKER_STATUS, device);
+            event.intValues[0] = speakerStatus;
+            mEventBus.post(event);
 
             switch (speakerStatus) {
                 case ThingyUtils.SPEAKER_STATUS_FINISHED:
                     if (mPlayPcmRequested) {
-                        mWait = false;
-                        if (mQueue.size() == 0) {
+                        if (isAudioStreamDrained()) {
                             broadcastAudioStreamComplete();
                         }
                     } else if (mPlayVoiceInput) {
-                        mHandler.post(mProcessNextTask);
+                        mGattHandler.post(mPumpAudioTask);
                     }
                     break;
                 case ThingyUtils.SPEAKER_STATUS_BUFFER_WARNING:
                     Log.v(TAG, "Buffer warning received");
+                    //Audio packets wait until the Thingy is ready for more, other requests are still sent
                     mBufferWarningReceived = true;
+                    mQueue.setPaused(GattRequestQueue.PRIORITY_BULK, true);
+                    mAudioMetrics.onBufferWarning(System.nanoTime());
                     break;
                 case ThingyUtils.SPEAKER_STATUS_BUFFER_READY:
                     Log.v(TAG, "Buffer ready received");
-                    mWait = false;
                     mBufferWarningReceived = false;
-                    if (mPlayVoiceInput) {
-                        mHandler.post(mProcessNextTask);
-                    }
+                    mQueue.setPaused(GattRequestQueue.PRIORITY_BULK, false);
+                    mAudioMetrics.onBufferReady(System.nanoTime());
+                    scheduleWatchdog();
+                    mGattHandler.post(mPumpAudioTask);
                     break;
                 case ThingyUtils.SPEAKER_STATUS_PACKET_DISREGARDED:
+                    mAudioMetrics.onPacketDisregarded();
                     break;
                 case ThingyUtils.SPEAKER_STATUS_INVALID_COMMAND:
                     break;
             }
-        } else if (characteristic.equals(mMicrophoneCharacteristic)) {
+        }
+    };
+
+    private final NotificationDecoder mMicrophoneDecoder = new NotificationDecoder() {
+        @Override
+        public void decode(final BluetoothDevice device, final byte[] value) {
             if (mAdpcmDecoder != null) {
                 if (mMtu == ThingyUtils.MAX_MTU_SIZE_THINGY) { //Pre lollipop devices may not have the max mtu size hence the check
-                    final byte[] data = new byte[131];
-                    final byte[] tempData = characteristic.getValue();
-                    System.arraycopy(tempData, 0, data, 0, 131);
-                    mAdpcmDecoder.add(data);
+                    //The whole frame is decoded directly from the notification value
+                    mAdpcmDecoder.add(value, 0, Math.min(value.length, AdpcmCodec.FRAME_SIZE));
                 } else {
-                    final byte[] data = characteristic.getValue();
-                    mAdpcmDecoder.add(data);
+                    mAdpcmDecoder.add(value);
                 }
-
             }
         }
-    }
+    };
 
     @Override
     public final void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
@@ -594,12 +734,13 @@ public class ThingyConnection extends BluetoothGattCallback {
             readSoundConfigurationCharacteristic();
         }
 
-        mHandler.post(mProcessNextTask);
+        completeRequest(characteristic);
     }
 
     @Override
     public final void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
         super.onCharacteristicWrite(gatt, characteristic, status);
+        final Request completed = completeRequest(characteristic);
         if (mMotionConfigurationCharacteristic != null && characteristic.equals(mMotionConfigurationCharacteristic)) {
             add(RequestType.READ_CHARACTERISTIC, characteristic);
         } else if (mSoundConfigurationCharacteristic != null && characteristic.equals(mSoundConfigurationCharacteristic)) {
@@ -608,19 +749,20 @@ public class ThingyConnection extends BluetoothGattCallback {
             mSpeakerMode = speakerMode;
             mMicrophoneMode = microphoneMode;
         } else if (mSpeakerDataCharacteristic != null && characteristic.equals(mSpeakerDataCharacteristic)) {
-            if (mPlayPcmRequested) {
-                if (!mStartPlaying) {
-                    handleAudioRequests();
-                } else {
-                    if (!mBufferWarningReceived) {
-                        mWait = false;
-                    }
+            if ((mPlayPcmRequested || mPlayVoiceInput) && completed != null) {
+                //Each completed packet returns a credit and its buffer, the next packets are produced right away
+                final byte[] packet = completed.data;
+                final long now = System.nanoTime();
+                mFlowController.onPacketCompleted(packet.length, now);
+                mAudioMetrics.onSpeakerPacketCompleted(packet.length, now - completed.startTime);
+                final VoiceUplink uplink = mVoiceUplink;
+                if (uplink != null) {
+                    uplink.onPacketCompleted(packet.length, now);
                 }
-                return;
+                mPacketPool.release(packet);
+                mGattHandler.post(mPumpAudioTask);
             }
         }
-
-        mHandler.post(mProcessNextTask);
     }
 
     @Override
@@ -633,7 +775,7 @@ public class ThingyConnection extends BluetoothGattCallback {
             enableNotifications(gatt, characteristic, value);
         }
 
-        mHandler.post(mProcessNextTask);
+        completeRequest(descriptor);
     }
 
     @Override
@@ -651,9 +793,10 @@ public class ThingyConnection extends BluetoothGattCallback {
             Intent intent = new Intent(ThingyUtils.ACTION_SERVICE_DISCOVERY_COMPLETED);
             intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
             LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+            postConnectionEvent(ThingyEvent.SERVICE_DISCOVERY_COMPLETED, BluetoothGatt.STATE_CONNECTED);
         }
 
-        mHandler.post(mProcessNextTask);
+        completeRequest(descriptor);
     }
 
     @Override
@@ -1642,51 +1785,24 @@ public class ThingyConnection extends BluetoothGattCallback {
     }
 
     /**
-     * Returns the saved temperature data per thingee connection
+     * Returns the sensor history per thingee connection
      *
-     * @return mTemperatureData Map containing timestamps and temeprature as a K,V pair
-     */
-    /*package access*/
-    final Map<String, String> getSavedTemperatureData() {
-        return Collections.unmodifiableMap(new LinkedHashMap<>(mTemperatureData));
-    }
-
-    /**
-     * Returns the saved pressure data per thingee connection
-     *
-     * @return mPressureData Map containing timestamps and pressure as a K,V pair
-     */
-    /*package access*/
-    final Map<String, String> getSavedPressureData() {
-        return Collections.unmodifiableMap(new LinkedHashMap<>(mPressureData));
-    }
-
-    /**
-     * Clears the saved presssure data in the thingee connection
+     * @return mSensorHistory containing the time series of all sensor streams
      */
     /*package access*/
-    final void clearSavedPressureData() {
-        if (mPressureData != null)
-            mPressureData.clear();
+    final SensorHistory getSensorHistory() {
+        return mSensorHistory;
     }
 
     /**
-     * Returns the saved humidity data per thingee connection
+     * Returns the statistics of the gatt request queue of this thingee connection
      *
-     * @return mPressureData Map containing timestamps and pressure as a K,V pair
+     * @param statistics statistics to be refilled, or null
+     * @return queue depths and wait times per request lane
      */
     /*package access*/
-    final Map<String, Integer> getSavedHumidityData() {
-        return Collections.unmodifiableMap(new LinkedHashMap<>(mHumidityData));
-    }
-
-    /**
-     * Clears the saved humidity data in the thingee connection
-     */
-    /*package access*/
-    final void clearSavedHumidityData() {
-        if (mHumidityData != null)
-            mHumidityData.clear();
+    final GattQueueStatistics getRequestQueueStatistics(final GattQueueStatistics statistics) {
+        return mQueue.getStatistics(statistics);
     }
 
     /**
@@ -2168,6 +2284,41 @@ public class ThingyConnection extends BluetoothGattCallback {
         }
     }
 
+    /**
+     * Enable notifications for any characteristic, i.e. a custom characteristic for which a {@link NotificationDecoder} has been registered
+     *
+     * @param serviceUuid        service UUID
+     * @param characteristicUuid characteristic UUID
+     * @param enable             notifications on/off
+     * @return true if the characteristic was found and supports notifications
+     */
+    /*package access*/
+    final boolean enableNotifications(final UUID serviceUuid, final UUID characteristicUuid, final boolean enable) {
+        if (mBluetoothGatt == null) {
+            return false;
+        }
+
+        final BluetoothGattService service = mBluetoothGatt.getService(serviceUuid);
+        if (service == null) {
+            return false;
+        }
+
+        final BluetoothGattCharacteristic characteristic = service.getCharacteristic(characteristicUuid);
+        if (characteristic == null) {
+            return false;
+        }
+
+        final BluetoothGattDescriptor descriptor = characteristic.getDescriptor(ThingyUtils.CLIENT_CHARACTERISTIC_CONFIGURATOIN_DESCRIPTOR);
+        if (descriptor == null) {
+            return false;
+        }
+
+        //The descriptor value of a custom characteristic has not been read during the service discovery, so it is written unconditionally
+        final byte[] data = enable ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE : BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE;
+        add(RequestType.WRITE_DESCRIPTOR, descriptor, data);
+        return true;
+    }
+
     /**
      * Enable notifications for euler
      *
@@ -2522,17 +2673,27 @@ public class ThingyConnection extends BluetoothGattCallback {
      */
     /*package access*/
     final void playPcmSample(final byte[] sample) {
+        playPcmSource(new ByteArrayPacketSource(sample));
+    }
+
+    /**
+     * Play the pcm audio produced by the source on a particular thingy
+     *
+     * @param source the source of 8-bit pcm samples, closed when the stream is completed or stopped
+     * @return true if the stream was started
+     */
+    /*package access*/
+    final boolean playPcmSource(final PacketSource source) {
         if (mSpeakerDataCharacteristic != null) {
-            mPcmSample = sample;
             if (mSpeakerMode != ThingyUtils.PCM_MODE) {
                 add(RequestType.WRITE_CHARACTERISTIC, mSoundConfigurationCharacteristic, new byte[]{ThingyUtils.PCM_MODE, (byte) mMicrophoneMode}, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
-                mPlayPcmRequested = true;
-                streamAudio(sample);
-            } else {
-                mPlayPcmRequested = true;
-                streamAudio(sample);
             }
+            mPlayPcmRequested = true;
+            streamAudio(source);
+            return true;
         }
+        source.close();
+        return false;
     }
 
     /*package access*/ boolean playPcmAudio(final File file) {
@@ -2542,31 +2703,22 @@ public class ThingyConnection extends BluetoothGattCallback {
     private boolean readAudioFile(final File file) {
         InputStream is = null;
         try {
+            final WavPacketSource source;
             if (!file.getPath().startsWith("content")) {
-                is = new FileInputStream(file);
+                source = WavPacketSource.open(file);
             } else {
                 Uri uri = Uri.parse(file.getPath());
-                is = mContext.getContentResolver().openInputStream(uri);
-            }
-
-            is.skip(44);
-            int size = is.available();
-
-            byte[] output = new byte[size / 2];
-            byte[] bytes = new byte[1024];
-            int length, offset = 0;
-            while ((length = is.read(bytes)) > 0) {
-                ByteBuffer bb = ByteBuffer.wrap(bytes);
-                bb.order(ByteOrder.LITTLE_ENDIAN);
-                for (int i = 0; i < length; i += 2) {
-                    output[offset + i / 2] = (byte) (((bb.getShort() * 128.0) / 32768.0) + 128.0);
-                }
-                offset += length / 2;
+                is = new BufferedInputStream(mContext.getContentResolver().openInputStream(uri));
+                source = new WavPacketSource(is);
+                is = null;
             }
 
-            playPcmSample(output);
-            return true;
+            //The samples are read and converted as the packets are sent, the source closes the file
+            final WavReader reader = source.getReader();
+            Log.v(TAG, "Streaming wav file: " + reader.getSampleRate() + " Hz, " + reader.getBitsPerSample() + " bit, " + reader.getChannels() + " channel(s)");
+            return playPcmSource(source);
         } catch (Exception e) {
+            Log.e(TAG, "Unable to stream audio", e);
             ThingyUtils.showToast(mContext, "Unable to stream audio");
             return false;
         } finally {
@@ -2580,105 +2732,147 @@ public class ThingyConnection extends BluetoothGattCallback {
         }
     }
 
-    private void handleAudioRequests() {
-        if (mStartPlaying) {
-            return;
-        }
-        mStartPlaying = true;
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-
-                if (mPlayPcmRequested) {
-                    while (mPacketCounter < mNumOfAudioChunks) {
-                        if (!mWait && !mBufferWarningReceived) {
-                            mWait = true;
-                            mHandler.post(mProcessNextTask);
-                            mPacketCounter++;
-                            if (mPacketCounter == 1) {
-                                try {
-                                    //This sleep is added for Google pixel because the first packet was splitted in to 3 small packets
-                                    //until data length extension request was agreed with the device.
-                                    Thread.sleep(70);
-                                } catch (InterruptedException e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                        } else {
-                            try {
-                                Thread.sleep(10);
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-                }
-            }
-        }).start();
-    }
-
     private void broadcastAudioStreamComplete() {
-        mNumOfAudioChunks = 0;
-        mPacketCounter = 0;
         if (mPlayPcmRequested) {
             sendPcmBroadcast(ThingyUtils.SPEAKER_STATUS_FINISHED);
             mPlayPcmRequested = false;
-            mWait = false;
             mBufferWarningReceived = false;
         }
     }
 
     /**
-     * clear the request queue in case the user switches from pcm mode to frequency/sample mode while the audio track is streamingg
+     * clear the audio packets from the request queue in case the user switches from pcm mode to frequency/sample mode while the audio track is streamingg
      */
     private synchronized final void clearQueue() {
-        mWait = true;
-        if (mPlayPcmRequested) {
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        synchronized (mStreamLock) {
+            if (mStreamSource != null) {
+                mStreamSource.close();
+                mStreamSource = null;
             }
-            if (mQueue.size() > 0) {
-                mQueue.clear();
+            PacketSource source;
+            while ((source = mStreamSources.poll()) != null) {
+                source.close();
             }
-            mPacketCounter = mNumOfAudioChunks;
+        }
+        mFlowController.cancel();
+        mBufferWarningReceived = false;
+        mAudioMetrics.onBufferReady(System.nanoTime());
+        mQueue.clear(GattRequestQueue.PRIORITY_BULK);
+        mQueue.setPaused(GattRequestQueue.PRIORITY_BULK, false);
+        scheduleWatchdog();
+
+        if (mPlayPcmRequested) {
             broadcastAudioStreamComplete();
-        } else if (mPlayVoiceInput) {
-            if (mQueue.size() > 0) {
-                mQueue.clear();
-            }
         }
+    }
 
-        mWait = false;
-        mStartPlaying = false;
+    /**
+     * Appends the source to the audio stream. Packets are read from the source as the credits of the flow controller allow,
+     * see {@link #pumpAudio()}.
+     */
+    private void streamAudio(final PacketSource source) {
+        synchronized (mStreamLock) {
+            if (isAudioStreamDrained()) {
+                mFlowController.start();
+            }
+            mStreamSources.add(source);
+        }
+        mGattHandler.post(mPumpAudioTask);
     }
 
     /**
-     * Fills up the request queue to startHandlingAudioRequestPackets streaming audio packets
+     * Queues the next audio packets while the flow controller has credits left. Called on the gatt thread when a stream starts,
+     * when a packet has been written and when the Thingy speaker buffer is ready again.
+     * Full packets reuse the buffers of the packets already written, so the memory used does not depend on the length of the stream.
      */
-    private void streamAudio(final byte[] sample) {
-        int index = 0;
-        int offset = 0;
-        int length;
-        int mChunkSize;
+    private void pumpAudio() {
+        final int chunkSize;
         if (mMtu > ThingyUtils.MAX_MTU_SIZE_PRE_LOLLIPOP) {
-            mChunkSize = ThingyUtils.MAX_AUDIO_PACKET_SIZE;
+            chunkSize = ThingyUtils.MAX_AUDIO_PACKET_SIZE;
         } else {
-            mChunkSize = ThingyUtils.MAX_MTU_SIZE_PRE_LOLLIPOP;
+            chunkSize = ThingyUtils.MAX_MTU_SIZE_PRE_LOLLIPOP;
         }
+        mPacketPool.setPacketSize(chunkSize);
 
-        mNumOfAudioChunks = (int) Math.ceil((double) sample.length / mChunkSize);
-        while (index < mNumOfAudioChunks) {
-            length = Math.min(mPcmSample.length - offset, mChunkSize);
-            byte[] audio = new byte[length];
-            System.arraycopy(mPcmSample, offset, audio, 0, length);
-            add(RequestType.WRITE_CHARACTERISTIC, mSpeakerDataCharacteristic, audio, BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
-            index++;
-            offset += length;
+        synchronized (mStreamLock) {
+            while (true) {
+                if (mStreamSource == null) {
+                    mStreamSource = mStreamSources.poll();
+                    if (mStreamSource == null) {
+                        return;
+                    }
+                }
+                if (!mFlowController.tryAcquire()) {
+                    return;
+                }
+
+                byte[] audio = mPacketPool.acquire(chunkSize);
+                int length;
+                try {
+                    length = mStreamSource.read(audio, 0, chunkSize);
+                } catch (final IOException e) {
+                    Log.e(TAG, "Unable to read audio stream", e);
+                    length = -1;
+                }
+                if (length == 0) {
+                    //A live source has no full packet yet, it posts the pump task when it has
+                    mFlowController.release();
+                    mPacketPool.release(audio);
+                    return;
+                }
+                if (length < 0) {
+                    //End of the source, continue with the next one
+                    mFlowController.release();
+                    mPacketPool.release(audio);
+                    mStreamSource.close();
+                    mStreamSource = null;
+                    continue;
+                }
+                if (length < chunkSize) {
+                    final byte[] last = new byte[length];
+                    System.arraycopy(audio, 0, last, 0, length);
+                    mPacketPool.release(audio);
+                    audio = last;
+                }
+                add(RequestType.WRITE_CHARACTERISTIC, mSpeakerDataCharacteristic, audio, BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+            }
         }
     }
 
+    /**
+     * Returns true if all audio packets have been produced and written
+     */
+    private boolean isAudioStreamDrained() {
+        synchronized (mStreamLock) {
+            return mStreamSource == null && mStreamSources.isEmpty() && mFlowController.getPacketsInFlight() == 0;
+        }
+    }
+
+    private final Runnable mPumpAudioTask = new Runnable() {
+        @Override
+        public void run() {
+            pumpAudio();
+        }
+    };
+
+    /**
+     * Sets the number of audio packets queued at a time while streaming to the speaker
+     *
+     * @param packets number of packets, at least 1
+     */
+    /*package access*/
+    final void setSpeakerPacketsInFlight(final int packets) {
+        mFlowController.setMaxPacketsInFlight(packets);
+    }
+
+    /**
+     * Returns the sustained throughput of the current, or last, audio stream in bytes per second
+     */
+    /*package access*/
+    final float getSpeakerStreamThroughput() {
+        return mFlowController.getThroughput();
+    }
+
     /**
      * Play the requested pcm sample on a particular thingy
      */
@@ -2696,16 +2890,113 @@ public class ThingyConnection extends BluetoothGattCallback {
     public final void playVoiceInput(final byte[] sample) {
         if (mSpeakerDataCharacteristic != null) {
             mPlayVoiceInput = true;
-            mPcmSample = sample;
             if (mSpeakerMode != ThingyUtils.PCM_MODE) {
                 add(RequestType.WRITE_CHARACTERISTIC, mSoundConfigurationCharacteristic, new byte[]{ThingyUtils.PCM_MODE, (byte) mMicrophoneMode}, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
-                streamAudio(sample);
-            } else {
-                streamAudio(sample);
             }
+            streamAudio(new ByteArrayPacketSource(sample));
+        }
+    }
+
+    /**
+     * Starts streaming live audio to the speaker of a particular thingy. The samples written to the returned uplink are sent
+     * as soon as a whole packet is buffered and the speaker accepts it. While the Thingy reports its buffer as full no packets
+     * are sent and the uplink drops its oldest samples, so the playback stays close to real time.
+     * A voice uplink that is already streaming is stopped.
+     *
+     * @param bufferMillis the duration of audio buffered on the phone before the oldest samples are dropped, at least two speaker packets
+     * @return the uplink to write the 16-bit microphone samples to, at 8000 Hz, or null if the speaker is not available
+     */
+    /*package access*/
+    final VoiceUplink startVoiceUplink(final int bufferMillis) {
+        if (mSpeakerDataCharacteristic == null) {
+            return null;
+        }
+        stopVoiceUplink();
+
+        final int sampleRate = WavPacketSource.SPEAKER_SAMPLE_RATE;
+        //The ring must hold whole packets, a ring smaller than a packet would never have one to send
+        final int capacity = Math.max(2 * ThingyUtils.MAX_AUDIO_PACKET_SIZE, sampleRate * bufferMillis / 1000);
+        final VoiceUplink uplink = new VoiceUplink(sampleRate, capacity, true);
+        uplink.setListener(new VoiceUplink.Listener() {
+            @Override
+            public void onPacketAvailable(final VoiceUplink uplink) {
+                mGattHandler.post(mPumpAudioTask);
+            }
+        });
+        mVoiceUplink = uplink;
+        mPlayVoiceInput = true;
+        if (mSpeakerMode != ThingyUtils.PCM_MODE) {
+            add(RequestType.WRITE_CHARACTERISTIC, mSoundConfigurationCharacteristic, new byte[]{ThingyUtils.PCM_MODE, (byte) mMicrophoneMode}, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+        }
+        streamAudio(uplink);
+        return uplink;
+    }
+
+    /**
+     * Stops the voice uplink. The samples already buffered are still sent.
+     */
+    /*package access*/
+    final void stopVoiceUplink() {
+        final VoiceUplink uplink = mVoiceUplink;
+        if (uplink != null) {
+            uplink.close();
         }
     }
 
+    /**
+     * Returns the statistics of the current, or last, voice uplink
+     *
+     * @param statistics the statistics to be refilled, or null to create new ones
+     * @return the statistics, or null if no voice uplink was started
+     */
+    /*package access*/
+    final VoiceUplinkStatistics getVoiceUplinkStatistics(final VoiceUplinkStatistics statistics) {
+        final VoiceUplink uplink = mVoiceUplink;
+        return uplink != null ? uplink.getStatistics(statistics) : null;
+    }
+
+    /**
+     * Sets the listener receiving the spectrum of the microphone audio of a particular thingy. The spectra are computed over
+     * {@link ThingyUtils#MICROPHONE_FFT_SIZE} samples with 50% overlap, on the thread receiving the notifications.
+     *
+     * @param listener the listener, or null to stop the analysis
+     */
+    /*package access*/
+    final void setMicrophoneSpectrumListener(final SpectrumAnalyzer.Listener listener) {
+        if (listener != null) {
+            final SpectrumAnalyzer analyzer = new SpectrumAnalyzer(ThingyUtils.MICROPHONE_SAMPLE_RATE, ThingyUtils.MICROPHONE_FFT_SIZE,
+                    ThingyUtils.MICROPHONE_FFT_SIZE / 2, ThingyUtils.MICROPHONE_SPECTRUM_BANDS);
+            analyzer.setListener(listener);
+            mMicrophoneAnalyzer = analyzer;
+        } else {
+            mMicrophoneAnalyzer = null;
+        }
+    }
+
+    /**
+     * Returns the latency histograms and counters of the audio streamed to and from a particular thingy
+     *
+     * @param statistics the statistics to be refilled, or null to create new ones
+     * @return the statistics
+     */
+    /*package access*/
+    final AudioLinkStatistics getAudioLinkStatistics(final AudioLinkStatistics statistics) {
+        final ADPCMDecoder decoder = mAdpcmDecoder;
+        if (decoder != null) {
+            mAudioMetrics.setMicrophoneCounters(decoder.getPacketsCount(), decoder.getInvalidPacketsCount(), decoder.getFramesLost());
+        }
+        return mAudioMetrics.getStatistics(statistics, System.nanoTime());
+    }
+
+    /**
+     * Removes the values recorded in the audio link statistics of a particular thingy.
+     * The microphone counters are those of the decoder and restart when the microphone is enabled again.
+     */
+    /*package access*/
+    final void resetAudioLinkStatistics() {
+        mAudioMetrics.reset();
+    }
+
     /**
      * Play the requested pcm sample on a particular thingy
      */
@@ -2770,6 +3061,7 @@ public class ThingyConnection extends BluetoothGattCallback {
                     add(RequestType.WRITE_DESCRIPTOR, microphoneDescriptor, data);
                 }
                 mEnableThingyMicrophone = enable;
+                stopMicrophonePlayer();
             }
         }
     }
@@ -2785,32 +3077,30 @@ public class ThingyConnection extends BluetoothGattCallback {
                 add(RequestType.WRITE_CHARACTERISTIC, mSoundConfigurationCharacteristic, new byte[]{ThingyUtils.ADPCM_MODE, (byte) mSpeakerMode}, BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
             }
 
-            int bufferSize = AudioTrack.getMinBufferSize(16000, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
-            mAudioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, 16000, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferSize, AudioTrack.MODE_STREAM);
-            mAudioTrack.play();
+            //The frames are mixed with the other thingies and played on the audio thread, so a slow audio sink does not delay the bluetooth callbacks
+            stopMicrophonePlayer();
+            final AudioMixer.Source source = MicrophonePlayer.getInstance().addSource(mBluetoothDevice, mMicrophoneJitterTarget, mMicrophonePlayerCallback);
+            source.setGain(mMicrophoneGain);
+            source.setMixed(mMicrophoneMixed);
+            source.setSink(mMicrophoneSink);
+            source.setPlayoutHistogram(mAudioMetrics.getMicrophonePlayoutLatency());
+            mMicrophoneSource = source;
 
             mAdpcmDecoder = new ADPCMDecoder(mContext, false);
+            mAdpcmDecoder.setRecorder(mMicrophoneRecorder);
             mAdpcmDecoder.setListener(new ADPCMDecoder.DecoderListener() {
                 @Override
                 public void onFrameDecoded(byte[] pcm, int frameNumber) {
-                    if (mEnableThingyMicrophone && mAudioTrack != null) {
-                        final int status = mAudioTrack.write(pcm, 0, pcm.length/*, AudioTrack.WRITE_NON_BLOCKING*/);
-
-                        if (status == AudioTrack.ERROR_INVALID_OPERATION || status == AudioTrack.ERROR_BAD_VALUE
-                                || status == AudioTrack.ERROR_DEAD_OBJECT || status == AudioTrack.ERROR) {
-                            ThingyUtils.showToast(mContext, "Error: " + status);
-                            mEnableThingyMicrophone = false;
-                            mAudioTrack.stop();
-                            mAudioTrack.release();
-                            mAudioTrack = null;
-                            mAdpcmDecoder = null;
-                        } else {
-                            sendMicrophoneBroadcast(pcm, status);
+                    if (mEnableThingyMicrophone && mMicrophoneSource == source) {
+                        //The frame is decoded within the notification callback that completed it
+                        source.write(pcm, 0, pcm.length, System.nanoTime());
+                        final SpectrumAnalyzer analyzer = mMicrophoneAnalyzer;
+                        if (analyzer != null) {
+                            analyzer.write(pcm, 0, pcm.length);
                         }
+                        postMicrophoneEvent(pcm, pcm.length);
                     } else {
-                        mAudioTrack.stop();
-                        mAudioTrack.release();
-                        mAudioTrack = null;
+                        MicrophonePlayer.getInstance().removeSource(source);
                         mAdpcmDecoder = null;
                     }
                 }
@@ -2818,13 +3108,133 @@ public class ThingyConnection extends BluetoothGattCallback {
         }
     }
 
-    private void sendMicrophoneBroadcast(final byte[] data, final int status) {
-        final Intent intent = new Intent(ThingyUtils.MICROPHONE_NOTITIFCATION);
-        intent.putExtra(ThingyUtils.EXTRA_DEVICE, mBluetoothDevice);
-        intent.putExtra(ThingyUtils.EXTRA_DATA_PCM, data);
-        intent.putExtra(ThingyUtils.EXTRA_DATA, status);
-        LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+    private final MicrophonePlayer.Callback mMicrophonePlayerCallback = new MicrophonePlayer.Callback() {
+        @Override
+        public void onPlaybackError(final int status) {
+            mEnableThingyMicrophone = false;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ThingyUtils.showToast(mContext, "Error: " + status);
+                }
+            });
+        }
+    };
+
+    private void stopMicrophonePlayer() {
+        final AudioMixer.Source source = mMicrophoneSource;
+        if (source != null) {
+            MicrophonePlayer.getInstance().removeSource(source);
+            mMicrophoneSource = null;
+        }
+    }
+
+    /**
+     * Sets how the microphone audio is played when several thingies stream at the same time
+     *
+     * @param gain  linear gain of the thingy in the mix
+     * @param mixed true to play the audio, false to deliver it to the sink only
+     * @param sink  receives the frames of the thingy aligned with the mix on the audio thread, or null
+     */
+    /*package access*/
+    final void setMicrophoneOutput(final float gain, final boolean mixed, final AudioMixer.FrameSink sink) {
+        mMicrophoneGain = gain;
+        mMicrophoneMixed = mixed;
+        mMicrophoneSink = sink;
+        final AudioMixer.Source source = mMicrophoneSource;
+        if (source != null) {
+            source.setGain(gain);
+            source.setMixed(mixed);
+            source.setSink(sink);
+        }
+    }
 
+    /**
+     * Sets the number of microphone frames buffered before the playback starts, or resumes after an underrun
+     *
+     * @param frames number of 16 ms frames
+     */
+    /*package access*/
+    final void setMicrophoneJitterTarget(final int frames) {
+        final AudioMixer.Source source = mMicrophoneSource;
+        if (source != null) {
+            source.getJitterBuffer().setTargetFrames(frames);
+        }
+        mMicrophoneJitterTarget = frames;
+    }
+
+    /**
+     * Returns the statistics of the microphone playback, or null if the microphone has not been enabled
+     */
+    /*package access*/
+    final JitterBufferStatistics getMicrophonePlaybackStatistics(final JitterBufferStatistics statistics) {
+        final AudioMixer.Source source = mMicrophoneSource;
+        return source != null ? source.getJitterBuffer().getStatistics(statistics) : null;
+    }
+
+    /**
+     * Starts recording the microphone audio. The frames are written on a background thread.
+     *
+     * @param directory             directory of the recording
+     * @param name                  name of the recording, without extension
+     * @param format                AudioRecorder.FORMAT_PCM or AudioRecorder.FORMAT_ADPCM
+     * @param segmentDurationMillis maximum duration of a file in milliseconds, or 0 to record into a single file
+     * @return true if the recording started
+     */
+    /*package access*/
+    final synchronized boolean startMicrophoneRecording(final File directory, final String name, final int format, final long segmentDurationMillis) {
+        if (mMicrophoneRecorder != null) {
+            return false;
+        }
+        final AudioRecorder recorder = new AudioRecorder(directory, name, format, ThingyUtils.MICROPHONE_SAMPLE_RATE);
+        recorder.setSegmentDuration(segmentDurationMillis);
+        try {
+            recorder.start();
+        } catch (final IOException e) {
+            Log.e(TAG, "Unable to start recording", e);
+            return false;
+        }
+        mMicrophoneRecorder = recorder;
+        final ADPCMDecoder decoder = mAdpcmDecoder;
+        if (decoder != null) {
+            decoder.setRecorder(recorder);
+        }
+        return true;
+    }
+
+    /**
+     * Stops recording the microphone audio and waits until the buffered frames are written.
+     *
+     * @return the files of the recording, or null if not recording or the recording failed
+     */
+    /*package access*/
+    final synchronized List<File> stopMicrophoneRecording() {
+        final AudioRecorder recorder = mMicrophoneRecorder;
+        if (recorder == null) {
+            return null;
+        }
+        mMicrophoneRecorder = null;
+        final ADPCMDecoder decoder = mAdpcmDecoder;
+        if (decoder != null) {
+            decoder.setRecorder(null);
+        }
+        try {
+            return recorder.stop();
+        } catch (final IOException e) {
+            Log.e(TAG, "Unable to write recording", e);
+            return null;
+        }
+    }
+
+    private void postMicrophoneEvent(final byte[] data, final int status) {
+        //The decoder reuses its frame buffer, the event gets a pooled copy which is returned to the pool when the event is recycled
+        final byte[] pcm = mMicrophonePool.acquire(data.length);
+        System.arraycopy(data, 0, pcm, 0, data.length);
+        final ThingyEvent event = ThingyEvent.obtain(ThingyEvent.MICROPHONE, mBluetoothDevice);
+        event.byteValues = pcm;
+        event.byteValuesPool = mMicrophonePool;
+        event.intValues[0] = status;
+        mEventBus.post(event);
     }
 
     /**
@@ -2846,18 +3256,6 @@ public class ThingyConnection extends BluetoothGattCallback {
         return false;
     }
 
-    /**
-     * Runnable used to push processing ble requests to the a ui thread.
-     * This is due to samsung galaxy devices and huawei nexus 6P had a synchronizing issue
-     * when process next was called from the same thread as the callbacks which was noticed during audio streaming
-     */
-    private Runnable mProcessNextTask = new Runnable() {
-        @Override
-        public void run() {
-            processNext();
-        }
-    };
-
     /**
      * BluetoothGatt request types.
      */
@@ -2915,28 +3313,169 @@ public class ThingyConnection extends BluetoothGattCallback {
         add(request);
     }
 
-    synchronized private void add(Request request) {
-        mQueue.add(request);
-        if (mQueue.size() == 1) {
-            mQueue.peek().start(mBluetoothGatt);
+    private void add(Request request) {
+        final int priority = getPriority(request);
+        final int policyIndex = priority == GattRequestQueue.PRIORITY_BULK ? ThingyUtils.GATT_REQUEST_WRITE_AUDIO_PACKET : getTimeoutPolicyIndex(request.requestType);
+        final GattTimeoutPolicy policy = mTimeoutPolicies[policyIndex];
+        request.enqueueTime = System.nanoTime();
+        request.timeoutMillis = policy.getTimeoutMillis();
+        mQueue.add(request, priority, policy);
+        scheduleWatchdog();
+    }
+
+    /**
+     * Returns the queue lane of the request. Audio packets written to the speaker are bulk transfers and are preempted
+     * by control writes and reads between packets.
+     */
+    private int getPriority(final Request request) {
+        switch (request.requestType) {
+            case READ_CHARACTERISTIC:
+            case READ_DESCRIPTOR:
+                return GattRequestQueue.PRIORITY_READ;
+            case WRITE_CHARACTERISTIC:
+                if (mSpeakerDataCharacteristic != null && request.characteristic.equals(mSpeakerDataCharacteristic)) {
+                    return GattRequestQueue.PRIORITY_BULK;
+                }
+                return GattRequestQueue.PRIORITY_CONTROL;
+            default:
+                return GattRequestQueue.PRIORITY_CONTROL;
+        }
+    }
+
+    /**
+     * Finds the request the completed gatt operation belongs to and posts its completion, see {@link Request#run()}.
+     * <br>
+     * A request started more than once by the watchdog gets a callback for each start, and a request skipped or cleared may still get
+     * the callbacks of the operations already sent. Such requests are retired with the number of callbacks still expected, and those
+     * callbacks are consumed here instead of completing the request started after them on the same characteristic.
+     * A retired request is forgotten once its timeout has passed again, as its lost callbacks are not coming anymore.
+     *
+     * @param target characteristic or descriptor of the completed operation
+     * @return the completed request, or null if the callback belongs to a request which is no longer executed
+     */
+    private Request completeRequest(final Object target) {
+        synchronized (mCompletionLock) {
+            final long now = System.nanoTime();
+            final Iterator<Request> iterator = mRetiredRequests.iterator();
+            while (iterator.hasNext()) {
+                final Request retired = iterator.next();
+                if (now - retired.retiredUntil >= 0) {
+                    iterator.remove();
+                } else if (retired.matches(target)) {
+                    if (--retired.pendingCallbacks == 0) {
+                        iterator.remove();
+                    }
+                    Log.w(TAG, "Ignoring late completion of a request which is no longer executed");
+                    return null;
+                }
+            }
+        }
+
+        //The queue is not called with the completion lock held, as the queue calls the requests with its own lock held
+        final GattRequest current = mQueue.getCurrent();
+        if (current instanceof Request && ((Request) current).matches(target)) {
+            final Request request = (Request) current;
+            final boolean expected;
+            synchronized (mCompletionLock) {
+                expected = request.pendingCallbacks > 0;
+                if (expected && --request.pendingCallbacks > 0) {
+                    retire(request);
+                }
+            }
+            if (expected && mQueue.disarmTimeout(request)) {
+                mGattHandler.post(request);
+                return request;
+            }
         }
+        Log.w(TAG, "Ignoring completion of a request which is no longer executed");
+        return null;
     }
 
     /**
-     * Process the next request in the queue for a BluetoothGatt function (such as characteristic read).
+     * Keeps the request until the callbacks still expected for it have come or its timeout has passed. Called with the completion lock held.
      */
-    synchronized private void processNext() {
-        // The currently executing request is kept on the head of the queue until this is called.
-        if (mQueue.isEmpty()) {
-            return;
+    private void retire(final Request request) {
+        final long timeoutMillis = request.timeoutMillis > 0 ? request.timeoutMillis : ThingyUtils.DEFAULT_GATT_REQUEST_TIMEOUT;
+        request.retiredUntil = request.startTime + timeoutMillis * 1000000L;
+        if (!mRetiredRequests.contains(request)) {
+            mRetiredRequests.add(request);
+        }
+    }
+
+    /**
+     * Schedules the watchdog for the deadline of the request being executed, if any
+     */
+    private void scheduleWatchdog() {
+        mGattHandler.removeCallbacks(mWatchdogTask);
+        final long deadline = mQueue.getDeadline();
+        if (deadline != 0) {
+            final long delayMillis = (deadline - System.nanoTime()) / 1000000L + 1;
+            mGattHandler.postDelayed(mWatchdogTask, Math.max(0, delayMillis));
         }
-        //in case buffer warning is received during audio streaming the request will not be removed from the queue will be sent again
-        if (!mBufferWarningReceived) {
-            mQueue.remove();
+    }
+
+    /**
+     * Runnable unblocking the head of the request queue when the callback of a gatt operation never came,
+     * by starting the request again or skipping it depending on its timeout policy.
+     */
+    private final Runnable mWatchdogTask = new Runnable() {
+        @Override
+        public void run() {
+            switch (mQueue.checkTimeout(System.nanoTime())) {
+                case GattRequestQueue.TIMEOUT_RETRIED:
+                    Log.w(TAG, "Gatt request timed out, retrying");
+                    break;
+                case GattRequestQueue.TIMEOUT_SKIPPED:
+                    //The skipped request has been notified with onDropped(), see Request
+                    Log.w(TAG, "Gatt request timed out, skipping");
+                    break;
+            }
+            scheduleWatchdog();
+        }
+    };
+
+    /**
+     * Returns the default timeout policies indexed by the ThingyUtils.GATT_REQUEST_* constants
+     */
+    private static GattTimeoutPolicy[] createDefaultTimeoutPolicies() {
+        final GattTimeoutPolicy[] policies = new GattTimeoutPolicy[ThingyUtils.GATT_REQUEST_TYPE_COUNT];
+        policies[ThingyUtils.GATT_REQUEST_READ_CHARACTERISTIC] = new GattTimeoutPolicy(ThingyUtils.DEFAULT_GATT_REQUEST_TIMEOUT, 1);
+        policies[ThingyUtils.GATT_REQUEST_READ_DESCRIPTOR] = new GattTimeoutPolicy(ThingyUtils.DEFAULT_GATT_REQUEST_TIMEOUT, 1);
+        policies[ThingyUtils.GATT_REQUEST_WRITE_CHARACTERISTIC] = new GattTimeoutPolicy(ThingyUtils.DEFAULT_GATT_REQUEST_TIMEOUT, 1);
+        policies[ThingyUtils.GATT_REQUEST_WRITE_DESCRIPTOR] = new GattTimeoutPolicy(ThingyUtils.DEFAULT_GATT_REQUEST_TIMEOUT, 1);
+        //A write without response may have been sent even if its callback never came, resending an old packet would play it twice
+        policies[ThingyUtils.GATT_REQUEST_WRITE_AUDIO_PACKET] = new GattTimeoutPolicy(ThingyUtils.DEFAULT_GATT_REQUEST_TIMEOUT, 0);
+        return policies;
+    }
+
+    private static int getTimeoutPolicyIndex(final RequestType type) {
+        switch (type) {
+            case READ_CHARACTERISTIC:
+                return ThingyUtils.GATT_REQUEST_READ_CHARACTERISTIC;
+            case READ_DESCRIPTOR:
+                return ThingyUtils.GATT_REQUEST_READ_DESCRIPTOR;
+            case WRITE_CHARACTERISTIC:
+                return ThingyUtils.GATT_REQUEST_WRITE_CHARACTERISTIC;
+            default:
+                return ThingyUtils.GATT_REQUEST_WRITE_DESCRIPTOR;
         }
+    }
 
-        if (!mQueue.isEmpty() && !mBufferWarningReceived) {
-            mQueue.peek().start(mBluetoothGatt);
+    /**
+     * Sets the timeout policy for a type of gatt request. Requests already queued keep their policy.
+     *
+     * @param requestType one of the ThingyUtils.GATT_REQUEST_* constants
+     * @param policy      deadline and retries, or GattTimeoutPolicy.NONE to wait forever
+     */
+    /*package access*/
+    final void setRequestTimeoutPolicy(final int requestType, final GattTimeoutPolicy policy) {
+        if (requestType < 0 || requestType >= ThingyUtils.GATT_REQUEST_TYPE_COUNT) {
+            throw new IllegalArgumentException("Invalid request type: " + requestType);
+        }
+        synchronized (mTimeoutPolicyLock) {
+            final GattTimeoutPolicy[] policies = mTimeoutPolicies.clone();
+            policies[requestType] = policy != null ? policy : GattTimeoutPolicy.NONE;
+            mTimeoutPolicies = policies;
         }
     }
 
@@ -2945,12 +3484,18 @@ public class ThingyConnection extends BluetoothGattCallback {
      * <br>
      * This object holds the parameters for calling BluetoothGatt methods (see startHandlingAudioRequestPackets());
      */
-    private final class Request {
+    private final class Request implements GattRequest, Runnable {
         final RequestType requestType;
         BluetoothGattCharacteristic characteristic;
         BluetoothGattDescriptor descriptor;
         byte[] data;
         int writeType;
+        long enqueueTime;
+        long startTime;
+        long timeoutMillis;
+        //Guarded by mCompletionLock
+        int pendingCallbacks;
+        long retiredUntil;
 
         /*package access*/ Request(RequestType requestType, BluetoothGattCharacteristic characteristic, byte[] data, int writeType) {
             this.requestType = requestType;
@@ -2980,31 +3525,85 @@ public class ThingyConnection extends BluetoothGattCallback {
             this.writeType = 0;
         }
 
-        /*package access*/ void start(BluetoothGatt bluetoothGatt) {
+        /*package access*/ boolean matches(final Object target) {
+            return target.equals(characteristic) || target.equals(descriptor);
+        }
+
+        @Override
+        public boolean start() {
+            final BluetoothGatt bluetoothGatt = mBluetoothGatt;
+            startTime = System.nanoTime();
+            //Counted before the operation is sent, as its callback may come before the call returns
+            synchronized (mCompletionLock) {
+                pendingCallbacks++;
+            }
+            final boolean started;
             switch (requestType) {
                 case READ_CHARACTERISTIC:
-                    if (!bluetoothGatt.readCharacteristic(characteristic)) {
-                        throw new IllegalArgumentException("Characteristic is not valid: " + characteristic.getUuid().toString());
-                    }
+                    started = bluetoothGatt.readCharacteristic(characteristic);
                     break;
                 case READ_DESCRIPTOR:
-                    if (!bluetoothGatt.readDescriptor(descriptor)) {
-                        throw new IllegalArgumentException("Descriptor is not valid");
-                    }
+                    started = bluetoothGatt.readDescriptor(descriptor);
                     break;
                 case WRITE_CHARACTERISTIC:
                     characteristic.setValue(data);
                     characteristic.setWriteType(writeType);
-                    if (!bluetoothGatt.writeCharacteristic(characteristic)) {
-                    } else {
-                    }
+                    started = bluetoothGatt.writeCharacteristic(characteristic);
                     break;
-                case WRITE_DESCRIPTOR:
+                default:
                     descriptor.setValue(data);
-                    if (!bluetoothGatt.writeDescriptor(descriptor)) {
-                    }
+                    started = bluetoothGatt.writeDescriptor(descriptor);
                     break;
             }
+            if (!started) {
+                //The stack is busy or the attribute is not valid, the queue retries or skips the request right away
+                Log.w(TAG, "Gatt request rejected: " + requestType);
+                synchronized (mCompletionLock) {
+                    pendingCallbacks--;
+                }
+                return false;
+            }
+            if (mSpeakerDataCharacteristic != null && mSpeakerDataCharacteristic.equals(characteristic)) {
+                mAudioMetrics.onSpeakerPacketStarted(startTime - enqueueTime);
+            }
+            return true;
+        }
+
+        /**
+         * Completes the request on the connection's own gatt thread, so a busy ui thread does not stall the requests.
+         * This is due to samsung galaxy devices and huawei nexus 6P had a synchronizing issue
+         * when process next was called from the same thread as the callbacks which was noticed during audio streaming.
+         * A completion posted before the request was skipped or cleared does nothing, as the request is no longer executed.
+         */
+        @Override
+        public void run() {
+            //in case buffer warning is received during audio streaming the audio packets lane is paused, see mSpeakerStatusDecoder
+            mQueue.complete(this);
+            scheduleWatchdog();
+        }
+
+        @Override
+        public void onDropped(final boolean skipped) {
+            synchronized (mCompletionLock) {
+                if (pendingCallbacks > 0) {
+                    //Callbacks of the operations already sent must not complete the request started after this one
+                    retire(this);
+                }
+            }
+            if (skipped) {
+                //The watchdog is rescheduled for the deadline of the request started next
+                mGattHandler.post(mWatchdogTask);
+            }
+            if (mSpeakerDataCharacteristic == null || !mSpeakerDataCharacteristic.equals(characteristic)) {
+                return;
+            }
+            //An audio packet holds a credit and a pooled buffer until its completion, see onCharacteristicWrite
+            mPacketPool.release(data);
+            if (skipped) {
+                //Credits of cleared packets are reset by clearQueue(), a skipped packet returns its own so the stream goes on
+                mFlowController.release();
+                mGattHandler.post(mPumpAudioTask);
+            }
         }
     }
 }
\ No newline at end of file
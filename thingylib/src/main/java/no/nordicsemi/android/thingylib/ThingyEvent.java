@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib;
+
+import android.bluetooth.BluetoothDevice;
+
+import no.nordicsemi.android.thingylib.core.stream.PacketBufferPool;
+
+/**
+ * A pooled holder for a single decoded Thingy notification.
+ * <br>
+ * Events are obtained with {@link #obtain(int, BluetoothDevice)}, filled in on the bluetooth callback thread, handed to the {@link ThingyEventBus}
+ * and returned to the pool by the bus once every listener has been notified. This avoids creating an Intent and boxing every value for each notification.
+ */
+/*package access*/ final class ThingyEvent {
+
+    //Connection events
+    static final int DEVICE_CONNECTED = 0;
+    static final int DEVICE_DISCONNECTED = 1;
+    static final int SERVICE_DISCOVERY_COMPLETED = 2;
+
+    //Environment service events
+    static final int TEMPERATURE = 3;
+    static final int PRESSURE = 4;
+    static final int HUMIDITY = 5;
+    static final int AIR_QUALITY = 6;
+    static final int COLOR = 7;
+
+    //User interface service events
+    static final int BUTTON_STATE = 8;
+
+    //Motion service events
+    static final int TAP = 9;
+    static final int ORIENTATION = 10;
+    static final int QUATERNION = 11;
+    static final int PEDOMETER = 12;
+    static final int RAW_DATA = 13;
+    static final int EULER = 14;
+    static final int ROTATION_MATRIX = 15;
+    static final int HEADING = 16;
+    static final int GRAVITY_VECTOR = 17;
+
+    //Sound service events
+    static final int SPEAKER_STATUS = 18;
+    static final int MICROPHONE = 19;
+
+    private static final int MAX_POOL_SIZE = 64;
+    private static final Object sPoolSync = new Object();
+    private static ThingyEvent sPool;
+    private static int sPoolSize = 0;
+
+    int type;
+    BluetoothDevice device;
+    final int[] intValues = new int[2];
+    final float[] floatValues = new float[9];
+    long longValue;
+    String stringValue;
+    byte[] byteValues;
+    /** The pool the byte values are returned to when the event is recycled, or null if they are not pooled */
+    PacketBufferPool byteValuesPool;
+
+    private ThingyEvent next;
+
+    private ThingyEvent() {
+    }
+
+    /**
+     * Returns an event from the pool or creates a new one if the pool is empty.
+     *
+     * @param type   event type
+     * @param device bluetooth device the event belongs to
+     */
+    static ThingyEvent obtain(final int type, final BluetoothDevice device) {
+        ThingyEvent event = null;
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                event = sPool;
+                sPool = event.next;
+                event.next = null;
+                sPoolSize--;
+            }
+        }
+        if (event == null) {
+            event = new ThingyEvent();
+        }
+        event.type = type;
+        event.device = device;
+        return event;
+    }
+
+    /**
+     * Clears the event and returns it to the pool. The event must not be used after calling this method.
+     */
+    void recycle() {
+        device = null;
+        stringValue = null;
+        if (byteValuesPool != null) {
+            byteValuesPool.release(byteValues);
+            byteValuesPool = null;
+        }
+        byteValues = null;
+        longValue = 0;
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                next = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+}
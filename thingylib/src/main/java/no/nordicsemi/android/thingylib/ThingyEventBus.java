@@ -0,0 +1,579 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.support.v4.content.LocalBroadcastManager;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import no.nordicsemi.android.thingylib.utils.ThingyUtils;
+
+/**
+ * In-process event bus delivering Thingy notifications to the registered {@link ThingyListener}s.
+ * <br>
+ * Notifications are decoded on the bluetooth callback thread into pooled {@link ThingyEvent} objects and handed to the listeners
+ * using primitive callbacks, without creating an Intent per notification. By default the listeners are called on the main thread, the same thread the
+ * {@link LocalBroadcastManager} based delivery used. Use {@link #setDirectDeliveryEnabled(boolean)} to call the listeners directly on the bluetooth callback thread.
+ * <br>
+ * Applications that still consume the notification Intents may opt in to the legacy broadcasts using {@link #setBroadcastCompatibilityEnabled(Context, boolean)}.
+ * <br>
+ * High rate motion notifications may be coalesced and delivered in one batch per display frame or per interval using {@link #setMotionDeliveryMode(int, long)}.
+ * Each motion stream then keeps either only the latest value or all values received since the previous batch, see {@link #setMotionStreamCoalescing(int, int)}.
+ */
+public class ThingyEventBus {
+    /** Motion notifications are delivered as soon as they are received. */
+    public static final int DELIVERY_IMMEDIATE = 0;
+    /** Motion notifications are delivered in one batch per display frame. */
+    public static final int DELIVERY_PER_FRAME = 1;
+    /** Motion notifications are delivered in one batch per interval. */
+    public static final int DELIVERY_PER_INTERVAL = 2;
+
+    /** Only the latest value of the stream received since the previous batch is delivered. */
+    public static final int COALESCE_LATEST = 0;
+    /** All values of the stream received since the previous batch are delivered. */
+    public static final int COALESCE_BATCH = 1;
+
+    public static final int MOTION_STREAM_QUATERNION = ThingyEvent.QUATERNION;
+    public static final int MOTION_STREAM_RAW_DATA = ThingyEvent.RAW_DATA;
+    public static final int MOTION_STREAM_EULER = ThingyEvent.EULER;
+    public static final int MOTION_STREAM_ROTATION_MATRIX = ThingyEvent.ROTATION_MATRIX;
+    public static final int MOTION_STREAM_HEADING = ThingyEvent.HEADING;
+    public static final int MOTION_STREAM_GRAVITY_VECTOR = ThingyEvent.GRAVITY_VECTOR;
+
+    private static final int MSG_EVENT = 1;
+    private static final int MSG_SCHEDULE_FRAME = 2;
+    private static final int MSG_FLUSH = 3;
+    private static final ThingyListener[] EMPTY_LISTENERS = new ThingyListener[0];
+
+    private static ThingyEventBus mInstance;
+
+    private final Handler mHandler;
+    private volatile ThingyListener[] mGlobalListeners = EMPTY_LISTENERS;
+    private volatile Map<BluetoothDevice, ThingyListener[]> mListeners = new HashMap<>();
+    private volatile boolean mDirectDelivery = false;
+    private volatile Context mBroadcastContext;
+
+    private volatile int mMotionDeliveryMode = DELIVERY_IMMEDIATE;
+    private volatile long mMotionDeliveryInterval;
+    private final int[] mCoalescing = new int[ThingyEvent.MICROPHONE + 1];
+    private final Object mPendingLock = new Object();
+    private ArrayList<ThingyEvent> mPendingEvents = new ArrayList<>();
+    private ArrayList<ThingyEvent> mDeliveredEvents = new ArrayList<>();
+    private boolean mFlushScheduled;
+
+    /**
+     * Returns the event bus shared by all thingy connections.
+     */
+    public static synchronized ThingyEventBus getInstance() {
+        if (mInstance == null)
+            mInstance = new ThingyEventBus();
+        return mInstance;
+    }
+
+    private ThingyEventBus() {
+        mHandler = new Handler(Looper.getMainLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MSG_EVENT:
+                        final ThingyEvent event = (ThingyEvent) msg.obj;
+                        dispatch(event);
+                        event.recycle();
+                        break;
+                    case MSG_SCHEDULE_FRAME:
+                        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+                        break;
+                    case MSG_FLUSH:
+                        flush();
+                        break;
+                }
+            }
+        };
+        for (int i = 0; i < mCoalescing.length; i++) {
+            mCoalescing[i] = COALESCE_LATEST;
+        }
+        //Every gravity vector sample is plotted
+        mCoalescing[ThingyEvent.GRAVITY_VECTOR] = COALESCE_BATCH;
+    }
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(final long frameTimeNanos) {
+            flush();
+        }
+    };
+
+    /**
+     * Enables or disables the legacy notification broadcasts sent through the {@link LocalBroadcastManager}.
+     * Enable this only if the application registers its own receivers for the notification actions defined in {@link ThingyUtils}.
+     *
+     * @param context application context used to send the broadcasts
+     * @param enable  broadcasts on/off
+     */
+    public void setBroadcastCompatibilityEnabled(final Context context, final boolean enable) {
+        mBroadcastContext = enable ? context.getApplicationContext() : null;
+    }
+
+    /**
+     * Returns true if the legacy notification broadcasts are enabled.
+     */
+    public boolean isBroadcastCompatibilityEnabled() {
+        return mBroadcastContext != null;
+    }
+
+    /**
+     * When enabled the listeners are called directly on the bluetooth callback thread instead of the main thread.
+     * Listeners must not touch the UI in this mode.
+     *
+     * @param enable direct delivery on/off
+     */
+    public void setDirectDeliveryEnabled(final boolean enable) {
+        mDirectDelivery = enable;
+    }
+
+    /**
+     * Sets how the motion notifications (quaternion, raw data, euler, rotation matrix, heading and gravity vector) are delivered to the listeners on the main thread.
+     * With {@link #DELIVERY_PER_FRAME} or {@link #DELIVERY_PER_INTERVAL} the notifications of all thingies are coalesced and delivered in one batch,
+     * which saves main thread work when the notifications arrive faster than the screen refreshes.
+     * This has no effect when the direct delivery is enabled.
+     *
+     * @param mode           {@link #DELIVERY_IMMEDIATE}, {@link #DELIVERY_PER_FRAME} or {@link #DELIVERY_PER_INTERVAL}
+     * @param intervalMillis the interval between batches in milliseconds, used with {@link #DELIVERY_PER_INTERVAL}
+     */
+    public void setMotionDeliveryMode(final int mode, final long intervalMillis) {
+        if (mode == DELIVERY_PER_INTERVAL && intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be greater than 0");
+        }
+        mMotionDeliveryInterval = intervalMillis;
+        mMotionDeliveryMode = mode;
+        if (mode == DELIVERY_IMMEDIATE) {
+            //Deliver what has been coalesced so far
+            mHandler.sendEmptyMessage(MSG_FLUSH);
+        }
+    }
+
+    /**
+     * Returns the motion notification delivery mode.
+     */
+    public int getMotionDeliveryMode() {
+        return mMotionDeliveryMode;
+    }
+
+    /**
+     * Sets whether only the latest value or all values of a motion stream received since the previous batch are delivered.
+     * By default only the latest value is delivered, except for the gravity vector which is plotted.
+     *
+     * @param stream     one of the MOTION_STREAM_* constants
+     * @param coalescing {@link #COALESCE_LATEST} or {@link #COALESCE_BATCH}
+     */
+    public void setMotionStreamCoalescing(final int stream, final int coalescing) {
+        if (!isMotionStream(stream)) {
+            throw new IllegalArgumentException("Unknown motion stream: " + stream);
+        }
+        synchronized (mPendingLock) {
+            mCoalescing[stream] = coalescing;
+        }
+    }
+
+    /**
+     * Registers a listener receiving events from all thingies.
+     *
+     * @param listener the listener to register
+     */
+    public synchronized void registerThingyListener(final ThingyListener listener) {
+        mGlobalListeners = add(mGlobalListeners, listener);
+    }
+
+    /**
+     * Registers a listener receiving events from a particular thingy.
+     *
+     * @param device   bluetooth device
+     * @param listener the listener to register
+     */
+    public synchronized void registerThingyListener(final BluetoothDevice device, final ThingyListener listener) {
+        final Map<BluetoothDevice, ThingyListener[]> listeners = new HashMap<>(mListeners);
+        final ThingyListener[] deviceListeners = listeners.get(device);
+        listeners.put(device, add(deviceListeners != null ? deviceListeners : EMPTY_LISTENERS, listener));
+        mListeners = listeners;
+    }
+
+    /**
+     * Unregisters the listener from all thingies.
+     *
+     * @param listener the listener to unregister
+     * @return true if there are no more listeners registered
+     */
+    public synchronized boolean unregisterThingyListener(final ThingyListener listener) {
+        mGlobalListeners = remove(mGlobalListeners, listener);
+
+        final Map<BluetoothDevice, ThingyListener[]> listeners = new HashMap<>();
+        for (final Map.Entry<BluetoothDevice, ThingyListener[]> entry : mListeners.entrySet()) {
+            final ThingyListener[] deviceListeners = remove(entry.getValue(), listener);
+            if (deviceListeners.length > 0) {
+                listeners.put(entry.getKey(), deviceListeners);
+            }
+        }
+        mListeners = listeners;
+
+        return mGlobalListeners.length == 0 && listeners.isEmpty();
+    }
+
+    /**
+     * Posts the event to the listeners. The bus takes the ownership of the event and recycles it after delivery.
+     *
+     * @param event event to be delivered
+     */
+    /*package access*/ void post(final ThingyEvent event) {
+        final Context context = mBroadcastContext;
+        if (context != null && event.type > ThingyEvent.SERVICE_DISCOVERY_COMPLETED) {
+            //Connection events are always broadcast by the ThingyConnection
+            LocalBroadcastManager.getInstance(context).sendBroadcast(createBroadcast(event));
+        }
+
+        if (mDirectDelivery) {
+            dispatch(event);
+            event.recycle();
+        } else if (mMotionDeliveryMode != DELIVERY_IMMEDIATE && isMotionStream(event.type)) {
+            coalesce(event);
+        } else {
+            mHandler.obtainMessage(MSG_EVENT, event).sendToTarget();
+        }
+    }
+
+    private static boolean isMotionStream(final int type) {
+        switch (type) {
+            case ThingyEvent.QUATERNION:
+            case ThingyEvent.RAW_DATA:
+            case ThingyEvent.EULER:
+            case ThingyEvent.ROTATION_MATRIX:
+            case ThingyEvent.HEADING:
+            case ThingyEvent.GRAVITY_VECTOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Adds the event to the pending batch, replacing the pending event of the same stream and device for latest-value streams,
+     * and schedules the batch delivery.
+     */
+    private void coalesce(final ThingyEvent event) {
+        ThingyEvent replaced = null;
+        boolean schedule = false;
+        synchronized (mPendingLock) {
+            final ArrayList<ThingyEvent> pendingEvents = mPendingEvents;
+            int index = -1;
+            if (mCoalescing[event.type] == COALESCE_LATEST) {
+                for (int i = 0; i < pendingEvents.size(); i++) {
+                    final ThingyEvent pendingEvent = pendingEvents.get(i);
+                    if (pendingEvent.type == event.type && pendingEvent.device.equals(event.device)) {
+                        index = i;
+                        break;
+                    }
+                }
+            }
+            if (index >= 0) {
+                replaced = pendingEvents.set(index, event);
+            } else {
+                pendingEvents.add(event);
+            }
+
+            if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                schedule = true;
+            }
+        }
+
+        if (replaced != null) {
+            replaced.recycle();
+        }
+
+        if (schedule) {
+            if (mMotionDeliveryMode == DELIVERY_PER_INTERVAL) {
+                mHandler.sendEmptyMessageDelayed(MSG_FLUSH, mMotionDeliveryInterval);
+            } else {
+                //The Choreographer must be obtained on the main thread
+                mHandler.sendEmptyMessage(MSG_SCHEDULE_FRAME);
+            }
+        }
+    }
+
+    /**
+     * Delivers the pending batch of motion events. Called on the main thread.
+     */
+    private void flush() {
+        final ArrayList<ThingyEvent> events;
+        synchronized (mPendingLock) {
+            //Swap the lists so that new events may be added while the batch is being delivered
+            events = mPendingEvents;
+            mPendingEvents = mDeliveredEvents;
+            mDeliveredEvents = events;
+            mFlushScheduled = false;
+        }
+
+        for (int i = 0; i < events.size(); i++) {
+            final ThingyEvent event = events.get(i);
+            dispatch(event);
+            event.recycle();
+        }
+        events.clear();
+    }
+
+    private void dispatch(final ThingyEvent event) {
+        final ThingyListener[] globalListeners = mGlobalListeners;
+        for (int i = 0; i < globalListeners.length; i++) {
+            deliver(globalListeners[i], event);
+        }
+
+        final ThingyListener[] deviceListeners = mListeners.get(event.device);
+        if (deviceListeners != null) {
+            for (int i = 0; i < deviceListeners.length; i++) {
+                deliver(deviceListeners[i], event);
+            }
+        }
+    }
+
+    private static void deliver(final ThingyListener listener, final ThingyEvent event) {
+        final BluetoothDevice device = event.device;
+        final int[] i = event.intValues;
+        final float[] f = event.floatValues;
+        switch (event.type) {
+            case ThingyEvent.DEVICE_CONNECTED:
+                listener.onDeviceConnected(device, i[0]);
+                break;
+            case ThingyEvent.DEVICE_DISCONNECTED:
+                listener.onDeviceDisconnected(device, i[0]);
+                break;
+            case ThingyEvent.SERVICE_DISCOVERY_COMPLETED:
+                listener.onServiceDiscoveryCompleted(device);
+                break;
+            case ThingyEvent.TEMPERATURE:
+                listener.onTemperatureValueChangedEvent(device, event.stringValue);
+                break;
+            case ThingyEvent.PRESSURE:
+                listener.onPressureValueChangedEvent(device, event.stringValue);
+                break;
+            case ThingyEvent.HUMIDITY:
+                listener.onHumidityValueChangedEvent(device, event.stringValue);
+                break;
+            case ThingyEvent.AIR_QUALITY:
+                listener.onAirQualityValueChangedEvent(device, i[0], i[1]);
+                break;
+            case ThingyEvent.COLOR:
+                listener.onColorIntensityValueChangedEvent(device, f[0], f[1], f[2], f[3]);
+                break;
+            case ThingyEvent.BUTTON_STATE:
+                listener.onButtonStateChangedEvent(device, i[0]);
+                break;
+            case ThingyEvent.TAP:
+                listener.onTapValueChangedEvent(device, i[0], i[1]);
+                break;
+            case ThingyEvent.ORIENTATION:
+                listener.onOrientationValueChangedEvent(device, i[0]);
+                break;
+            case ThingyEvent.QUATERNION:
+                listener.onQuaternionValueChangedEvent(device, f[0], f[1], f[2], f[3]);
+                break;
+            case ThingyEvent.PEDOMETER:
+                listener.onPedometerValueChangedEvent(device, i[0], event.longValue);
+                break;
+            case ThingyEvent.RAW_DATA:
+                listener.onAccelerometerValueChangedEvent(device, f[0], f[1], f[2]);
+                listener.onGyroscopeValueChangedEvent(device, f[3], f[4], f[5]);
+                listener.onCompassValueChangedEvent(device, f[6], f[7], f[8]);
+                break;
+            case ThingyEvent.EULER:
+                listener.onEulerAngleChangedEvent(device, f[0], f[1], f[2]);
+                break;
+            case ThingyEvent.ROTATION_MATRIX:
+                listener.onRotationMatixValueChangedEvent(device, event.byteValues);
+                break;
+            case ThingyEvent.HEADING:
+                listener.onHeadingValueChangedEvent(device, f[0]);
+                break;
+            case ThingyEvent.GRAVITY_VECTOR:
+                listener.onGravityVectorChangedEvent(device, f[0], f[1], f[2]);
+                break;
+            case ThingyEvent.SPEAKER_STATUS:
+                listener.onSpeakerStatusValueChangedEvent(device, i[0]);
+                break;
+            case ThingyEvent.MICROPHONE:
+                listener.onMicrophoneValueChangedEvent(device, event.byteValues);
+                break;
+        }
+    }
+
+    /**
+     * Creates the legacy notification Intent for the event, as it was sent by the ThingyConnection before the event bus was introduced.
+     */
+    private static Intent createBroadcast(final ThingyEvent event) {
+        final int[] i = event.intValues;
+        final float[] f = event.floatValues;
+        final Intent intent;
+        switch (event.type) {
+            case ThingyEvent.TEMPERATURE:
+                intent = new Intent(ThingyUtils.TEMPERATURE_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA, event.stringValue);
+                break;
+            case ThingyEvent.PRESSURE:
+                intent = new Intent(ThingyUtils.PRESSURE_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA, event.stringValue);
+                break;
+            case ThingyEvent.HUMIDITY:
+                intent = new Intent(ThingyUtils.HUMIDITY_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA, event.stringValue);
+                break;
+            case ThingyEvent.AIR_QUALITY:
+                intent = new Intent(ThingyUtils.AIR_QUALITY_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_ECO2, i[0]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_TVOC, i[1]);
+                break;
+            case ThingyEvent.COLOR:
+                intent = new Intent(ThingyUtils.COLOR_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_RED, f[0]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_GREEN, f[1]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_BLUE, f[2]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_CLEAR, f[3]);
+                break;
+            case ThingyEvent.BUTTON_STATE:
+                intent = new Intent(ThingyUtils.BUTTON_STATE_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_BUTTON, i[0]);
+                break;
+            case ThingyEvent.TAP:
+                intent = new Intent(ThingyUtils.TAP_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_TAP_DIRECTION, i[0]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_TAP_COUNT, i[1]);
+                break;
+            case ThingyEvent.ORIENTATION:
+                intent = new Intent(ThingyUtils.ORIENTATION_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA, i[0]);
+                break;
+            case ThingyEvent.QUATERNION:
+                intent = new Intent(ThingyUtils.QUATERNION_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_QUATERNION_W, f[0]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_QUATERNION_X, f[1]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_QUATERNION_Y, f[2]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_QUATERNION_Z, f[3]);
+                break;
+            case ThingyEvent.PEDOMETER:
+                intent = new Intent(ThingyUtils.PEDOMETER_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_STEP_COUNT, i[0]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_DURATION, event.longValue);
+                break;
+            case ThingyEvent.RAW_DATA:
+                intent = new Intent(ThingyUtils.RAW_DATA_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_ACCELEROMETER_X, f[0]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_ACCELEROMETER_Y, f[1]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_ACCELEROMETER_Z, f[2]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_GYROSCOPE_X, f[3]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_GYROSCOPE_Y, f[4]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_GYROSCOPE_Z, f[5]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_COMPASS_X, f[6]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_COMPASS_Y, f[7]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_COMPASS_Z, f[8]);
+                break;
+            case ThingyEvent.EULER:
+                intent = new Intent(ThingyUtils.EULER_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_ROLL, f[0]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_PITCH, f[1]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_YAW, f[2]);
+                break;
+            case ThingyEvent.ROTATION_MATRIX:
+                intent = new Intent(ThingyUtils.ROTATION_MATRIX_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_ROTATION_MATRIX, event.byteValues);
+                break;
+            case ThingyEvent.HEADING:
+                intent = new Intent(ThingyUtils.HEADING_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA, f[0]);
+                break;
+            case ThingyEvent.GRAVITY_VECTOR:
+                intent = new Intent(ThingyUtils.GRAVITY_NOTIFICATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_GRAVITY_X, f[0]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_GRAVITY_Y, f[1]);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_GRAVITY_Z, f[2]);
+                break;
+            case ThingyEvent.SPEAKER_STATUS:
+                intent = new Intent(ThingyUtils.SPEAKER_STATUS_NOTITIFCATION);
+                intent.putExtra(ThingyUtils.EXTRA_DATA_SPEAKER_STATUS_NOTITIFCATION, i[0]);
+                break;
+            case ThingyEvent.MICROPHONE:
+            default:
+                intent = new Intent(ThingyUtils.MICROPHONE_NOTITIFCATION);
+                //Local broadcasts are not parcelled, a pooled buffer must not be shared with the receivers
+                intent.putExtra(ThingyUtils.EXTRA_DATA_PCM, event.byteValuesPool != null ? event.byteValues.clone() : event.byteValues);
+                intent.putExtra(ThingyUtils.EXTRA_DATA, i[0]);
+                break;
+        }
+        intent.putExtra(ThingyUtils.EXTRA_DEVICE, event.device);
+        return intent;
+    }
+
+    private static ThingyListener[] add(final ThingyListener[] listeners, final ThingyListener listener) {
+        for (final ThingyListener l : listeners) {
+            if (l == listener)
+                return listeners;
+        }
+        final ThingyListener[] newListeners = new ThingyListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        newListeners[listeners.length] = listener;
+        return newListeners;
+    }
+
+    private static ThingyListener[] remove(final ThingyListener[] listeners, final ThingyListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                final ThingyListener[] newListeners = new ThingyListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                return newListeners;
+            }
+        }
+        return listeners;
+    }
+}
@@ -88,5 +88,12 @@ public interface ThingyListener  {
 
     void onSpeakerStatusValueChangedEvent(final BluetoothDevice bluetoothDevice, final int status);
 
+    /**
+     * A microphone frame has been decoded.
+     *
+     * @param bluetoothDevice bluetooth device
+     * @param data            16-bit PCM samples at 16 kHz. The buffer is borrowed: it must not be modified and is reused after this call returns,
+     *                        copy it if it has to be kept
+     */
     void onMicrophoneValueChangedEvent(final BluetoothDevice bluetoothDevice, final byte [] data);
 }
@@ -246,8 +246,8 @@ public class ThingyListenerHelper {
                     final float gyroscopeZ = intent.getExtras().getFloat(ThingyUtils.EXTRA_DATA_GYROSCOPE_Z);
 
                     final float compassX = intent.getExtras().getFloat(ThingyUtils.EXTRA_DATA_COMPASS_X);
-                    final float compassY = intent.getExtras().getFloat(ThingyUtils.EXTRA_DATA_GYROSCOPE_Y);
-                    final float compassZ = intent.getExtras().getFloat(ThingyUtils.EXTRA_DATA_GYROSCOPE_Z);
+                    final float compassY = intent.getExtras().getFloat(ThingyUtils.EXTRA_DATA_COMPASS_Y);
+                    final float compassZ = intent.getExtras().getFloat(ThingyUtils.EXTRA_DATA_COMPASS_Z);
 
                     if(globalListener != null) {
                         globalListener.onAccelerometerValueChangedEvent(device, accelerometerX, accelerometerY, accelerometerZ);
@@ -330,48 +330,69 @@ public class ThingyListenerHelper {
     }
 
     /**
-     * Registers the {@link ThingyListener}. Registered listener will receive the progress events from the BaseThingy service.
+     * Registers the {@link ThingyListener}. Registered listener will receive the events from all thingies through the {@link ThingyEventBus}.
      * @param context the application context
      * @param listener the listener to register
      */
     public static void registerThingyListener(final Context context, final ThingyListener listener) {
-        if (mThingyBroadcastReceiver == null) {
-            mThingyBroadcastReceiver = new ThingyBroadcastReceiver();
+        ThingyEventBus.getInstance().registerThingyListener(listener);
+    }
 
-            final IntentFilter intentFilter = new IntentFilter();
-            intentFilter.addAction(ThingyUtils.ACTION_DEVICE_CONNECTED);
-            intentFilter.addAction(ThingyUtils.ACTION_DEVICE_DISCONNECTED);
-            intentFilter.addAction(ThingyUtils.ACTION_SERVICE_DISCOVERY_COMPLETED);
-            intentFilter.addAction(ThingyUtils.EXTRA_DEVICE);
-            intentFilter.addAction(ThingyUtils.TEMPERATURE_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.PRESSURE_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.HUMIDITY_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.AIR_QUALITY_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.COLOR_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.BUTTON_STATE_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.TAP_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.ORIENTATION_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.QUATERNION_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.PEDOMETER_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.RAW_DATA_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.EULER_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.ROTATION_MATRIX_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.HEADING_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.GRAVITY_NOTIFICATION);
-            intentFilter.addAction(ThingyUtils.SPEAKER_STATUS_NOTITIFCATION);
-            intentFilter.addAction(ThingyUtils.MICROPHONE_NOTITIFCATION);
+    /**
+     * Registers the {@link ThingyListener}. Registered listener will receive the events from the given thingy through the {@link ThingyEventBus}.
+     * @param context the application context
+     * @param listener the listener to register
+     * @param device the bluetooth device
+     */
+    public static void registerThingyListener(final Context context, final ThingyListener listener, final BluetoothDevice device) {
+        ThingyEventBus.getInstance().registerThingyListener(device, listener);
+    }
 
-            LocalBroadcastManager.getInstance(context).registerReceiver(mThingyBroadcastReceiver, intentFilter);
+    /**
+     * Unregisters the {@link ThingyListener} registered with either {@link #registerThingyListener(Context, ThingyListener)}
+     * or {@link #registerThingyBroadcastListener(Context, ThingyListener)}.
+     * @param context the application context
+     * @param listener the listener to unregister
+     */
+    public static void unregisterThingyListener(final Context context, final ThingyListener listener) {
+        ThingyEventBus.getInstance().unregisterThingyListener(listener);
+
+        if (mThingyBroadcastReceiver != null) {
+            final boolean empty = mThingyBroadcastReceiver.removeThingyListener(listener);
+
+            if (empty) {
+                LocalBroadcastManager.getInstance(context).unregisterReceiver(mThingyBroadcastReceiver);
+                mThingyBroadcastReceiver =  null;
+                ThingyEventBus.getInstance().setBroadcastCompatibilityEnabled(context, false);
+            }
         }
+    }
+
+    /**
+     * Registers the {@link ThingyListener} using the legacy {@link LocalBroadcastManager} based delivery.
+     * This enables the notification broadcasts in the {@link ThingyEventBus} and should be used only if the broadcasts are required by the application,
+     * as sending an Intent for every notification is considerably more expensive than {@link #registerThingyListener(Context, ThingyListener)}.
+     * @param context the application context
+     * @param listener the listener to register
+     */
+    public static void registerThingyBroadcastListener(final Context context, final ThingyListener listener) {
+        registerThingyBroadcastReceiver(context);
         mThingyBroadcastReceiver.setThingyListener(listener);
     }
 
     /**
-     * Registers the {@link ThingyListener}. Registered listener will receive the progress events from the BaseThingy service.
+     * Registers the {@link ThingyListener} for a particular thingy using the legacy {@link LocalBroadcastManager} based delivery.
+     * @see #registerThingyBroadcastListener(Context, ThingyListener)
      * @param context the application context
      * @param listener the listener to register
+     * @param device the bluetooth device
      */
-    public static void registerThingyListener(final Context context, final ThingyListener listener, final BluetoothDevice device) {
+    public static void registerThingyBroadcastListener(final Context context, final ThingyListener listener, final BluetoothDevice device) {
+        registerThingyBroadcastReceiver(context);
+        mThingyBroadcastReceiver.setThingyListener(device, listener);
+    }
+
+    private static void registerThingyBroadcastReceiver(final Context context) {
         if (mThingyBroadcastReceiver == null) {
             mThingyBroadcastReceiver = new ThingyBroadcastReceiver();
 
@@ -399,18 +420,7 @@ public class ThingyListenerHelper {
             intentFilter.addAction(ThingyUtils.MICROPHONE_NOTITIFCATION);
 
             LocalBroadcastManager.getInstance(context).registerReceiver(mThingyBroadcastReceiver, intentFilter);
-        }
-        mThingyBroadcastReceiver.setThingyListener(device, listener);
-    }
-
-    public static void unregisterThingyListener(final Context context, final ThingyListener listener) {
-        if (mThingyBroadcastReceiver != null) {
-            final boolean empty = mThingyBroadcastReceiver.removeThingyListener(listener);
-
-            if (empty) {
-                LocalBroadcastManager.getInstance(context).unregisterReceiver(mThingyBroadcastReceiver);
-                mThingyBroadcastReceiver =  null;
-            }
+            ThingyEventBus.getInstance().setBroadcastCompatibilityEnabled(context, true);
         }
     }
 }
@@ -50,12 +50,29 @@ import android.os.IBinder;
 import android.util.Log;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import no.nordicsemi.android.dfu.DfuServiceInitiator;
+import no.nordicsemi.android.thingylib.core.cache.SpeakerClipCache;
+import no.nordicsemi.android.thingylib.core.dsp.SpectrumAnalyzer;
+import no.nordicsemi.android.thingylib.core.gatt.GattQueueStatistics;
+import no.nordicsemi.android.thingylib.core.gatt.GattTimeoutPolicy;
+import no.nordicsemi.android.thingylib.core.metrics.AudioLinkStatistics;
+import no.nordicsemi.android.thingylib.core.stream.AudioMixer;
+import no.nordicsemi.android.thingylib.core.stream.JitterBufferStatistics;
+import no.nordicsemi.android.thingylib.core.stream.PacketSource;
+import no.nordicsemi.android.thingylib.core.stream.SharedClip;
+import no.nordicsemi.android.thingylib.core.stream.VoiceUplink;
+import no.nordicsemi.android.thingylib.core.stream.VoiceUplinkStatistics;
+import no.nordicsemi.android.thingylib.decoder.NotificationDecoder;
 import no.nordicsemi.android.thingylib.dfu.DfuService;
+import no.nordicsemi.android.thingylib.history.SensorHistory;
+import no.nordicsemi.android.thingylib.history.TimeSeriesSnapshot;
 import no.nordicsemi.android.thingylib.utils.ThingyUtils;
 import no.nordicsemi.android.thingylib.BaseThingyService.BaseThingyBinder;
 
@@ -65,6 +82,7 @@ public class ThingySdkManager {
     public ThingySdkManager mThingySdkManager;
     private ServiceConnectionListener mServiceConnectionListener;
     private BaseThingyService.BaseThingyBinder mBinder;
+    private SpeakerClipCache mSpeakerClipCache;
 
     /**
      * Creates a static instance of this class that could be used throughout the application lifecycle.
@@ -1286,6 +1304,63 @@ public class ThingySdkManager {
         }
     }
 
+    /**
+     * Registers a decoder for notifications of a particular characteristic of a particular thingy.
+     * Registering a decoder for one of the Thingy characteristics replaces the default decoder.
+     *
+     * @param device             bluetooth device
+     * @param characteristicUuid characteristic UUID
+     * @param decoder            decoder called with the raw value of each notification
+     */
+    public void registerNotificationDecoder(final BluetoothDevice device, final UUID characteristicUuid, final NotificationDecoder decoder) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    thingyConnection.registerNotificationDecoder(characteristicUuid, decoder);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unregisters the decoder of a particular characteristic of a particular thingy. The default decoder is restored for Thingy characteristics.
+     *
+     * @param device             bluetooth device
+     * @param characteristicUuid characteristic UUID
+     */
+    public void unregisterNotificationDecoder(final BluetoothDevice device, final UUID characteristicUuid) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    thingyConnection.unregisterNotificationDecoder(characteristicUuid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Toggle notifications of any characteristic for a particluar thingy, i.e. a custom characteristic with a registered decoder
+     *
+     * @param device             bluetooth device
+     * @param serviceUuid        service UUID
+     * @param characteristicUuid characteristic UUID
+     * @param enable             notification on/off state
+     * @return true if the characteristic was found and supports notifications
+     */
+    public boolean enableNotifications(final BluetoothDevice device, final UUID serviceUuid, final UUID characteristicUuid, final boolean enable) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    return thingyConnection.enableNotifications(serviceUuid, characteristicUuid, enable);
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Toggle Euler notifIcations for a particluar thingy
      *
@@ -1587,7 +1662,23 @@ public class ThingySdkManager {
     }
 
     /**
-     * Plays the selected sound sample for a particluar thingy
+     * Returns the cache of the audio files transcoded into the speaker format, created in the cache directory of the application
+     * when first used. Files played with {@link #playPcmSample(Activity, BluetoothDevice, File)} are added to the cache.
+     *
+     * @param context context
+     */
+    public synchronized SpeakerClipCache getSpeakerClipCache(final Context context) {
+        if (mSpeakerClipCache == null) {
+            final File directory = new File(context.getApplicationContext().getCacheDir(), ThingyUtils.SPEAKER_CLIP_CACHE_DIRECTORY);
+            mSpeakerClipCache = new SpeakerClipCache(directory, ThingyUtils.SPEAKER_CLIP_CACHE_SIZE);
+        }
+        return mSpeakerClipCache;
+    }
+
+    /**
+     * Plays the selected sound sample for a particluar thingy.
+     * A file that has been played before is played from the speaker clip cache, without being converted again.
+     * Otherwise the file is converted as it is streamed, and transcoded into the cache in the background for the next time.
      * @param context activity context
      * @param device bluetooth device
      * @param audioFile to be played
@@ -1598,6 +1689,19 @@ public class ThingySdkManager {
                 final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
                 if (thingyConnection != null) {
                     thingyConnection.setAudioStreamingInProgress(true);
+                    if (!audioFile.getPath().startsWith("content")) {
+                        final SpeakerClipCache cache = getSpeakerClipCache(context);
+                        PacketSource clip = null;
+                        try {
+                            clip = cache.open(audioFile);
+                        } catch (IOException e) {
+                            Log.w(ThingyUtils.TAG, "Unable to open the cached clip", e);
+                        }
+                        if (clip != null) {
+                            return thingyConnection.playPcmSource(clip);
+                        }
+                        cache.prefetch(audioFile, null);
+                    }
                     return thingyConnection.playPcmAudio(audioFile);
                 } else {
                     ThingyUtils.showToast(context, context.getString(R.string.no_thingy_connected));
@@ -1635,6 +1739,34 @@ public class ThingySdkManager {
         }
     }
 
+    /**
+     * Plays one clip on several thingies at the same time, i.e. for an announcement.
+     * The clip is held in memory once and every thingy reads it through its own cursor, paced by its own connection,
+     * so a slow link does not hold back the other thingies. Use {@link #stopPcmSample(BluetoothDevice)} to stop a thingy.
+     *
+     * @param devices bluetooth devices
+     * @param clip    clip of 8-bit samples in the speaker format, see SharedClip.open(File)
+     * @return the cursor reporting the progress of each thingy on which the playback started
+     */
+    public Map<BluetoothDevice, SharedClip.Cursor> playPcmClip(final List<BluetoothDevice> devices, final SharedClip clip) {
+        final Map<BluetoothDevice, SharedClip.Cursor> cursors = new HashMap<>();
+        if (devices != null && mBinder != null) {
+            for (final BluetoothDevice device : devices) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    final SharedClip.Cursor cursor = clip.newCursor();
+                    thingyConnection.setAudioStreamingInProgress(true);
+                    if (thingyConnection.playPcmSource(cursor)) {
+                        cursors.put(device, cursor);
+                    } else {
+                        thingyConnection.setAudioStreamingInProgress(false);
+                    }
+                }
+            }
+        }
+        return cursors;
+    }
+
     /**
      * Plays the selected sound sample for a particluar thingy
      *  @param device bluetooth device
@@ -1651,6 +1783,42 @@ public class ThingySdkManager {
         }
     }
 
+    /**
+     * Sets the number of audio packets queued at a time while streaming pcm audio to the speaker of a particluar thingy.
+     * A new packet is queued each time a packet has been written, more packets in flight may improve the throughput on some phones.
+     *
+     * @param device  bluetooth device
+     * @param packets number of packets, at least 1
+     */
+    public void setSpeakerPacketsInFlight(final BluetoothDevice device, final int packets) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    thingyConnection.setSpeakerPacketsInFlight(packets);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the sustained throughput of the current, or last, pcm audio stream to the speaker of a particluar thingy
+     *
+     * @param device bluetooth device
+     * @return throughput in bytes per second, 0 if not measured yet or the thingy is not connected
+     */
+    public float getSpeakerStreamThroughput(final BluetoothDevice device) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    return thingyConnection.getSpeakerStreamThroughput();
+                }
+            }
+        }
+        return 0;
+    }
+
     /**
      * Plays the selected sound sample for a particluar thingy
      * @param device bluetooth device
@@ -1667,6 +1835,160 @@ public class ThingySdkManager {
         }
     }
 
+    /**
+     * Starts recording the microphone audio of a particluar thingy. The microphone has to be enabled with {@link #enableThingyMicrophone(BluetoothDevice, boolean)}.
+     * The audio is buffered and written to the files on a background thread. Long recordings may be split in segments, and
+     * AudioRecorder.FORMAT_ADPCM stores the frames as received, 4 times smaller, to be converted with AudioRecorder.exportAdpcm(File, File, int).
+     *
+     * @param device                bluetooth device
+     * @param directory             directory of the recording
+     * @param name                  name of the recording, without extension
+     * @param format                AudioRecorder.FORMAT_PCM or AudioRecorder.FORMAT_ADPCM
+     * @param segmentDurationMillis maximum duration of a file in milliseconds, or 0 to record into a single file
+     * @return true if the recording started
+     */
+    public boolean startMicrophoneRecording(final BluetoothDevice device, final File directory, final String name, final int format, final long segmentDurationMillis) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    return thingyConnection.startMicrophoneRecording(directory, name, format, segmentDurationMillis);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops recording the microphone audio of a particluar thingy and waits until the buffered audio is written.
+     *
+     * @param device bluetooth device
+     * @return the files of the recording, or null if the thingy was not recording or the recording failed
+     */
+    public List<File> stopMicrophoneRecording(final BluetoothDevice device) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    return thingyConnection.stopMicrophoneRecording();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the number of decoded microphone frames buffered before the playback starts, or resumes after the buffer ran empty, for a particluar thingy.
+     * A larger target absorbs longer gaps between the notifications at the cost of latency.
+     *
+     * @param device bluetooth device
+     * @param frames number of 16 ms frames, between 1 and 16
+     */
+    public void setMicrophoneJitterTarget(final BluetoothDevice device, final int frames) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    thingyConnection.setMicrophoneJitterTarget(frames);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets how the microphone audio of a particluar thingy is played. The microphones of several thingies may be enabled at the same time,
+     * their frames are aligned and mixed into one output.
+     *
+     * @param device bluetooth device
+     * @param gain   linear gain of the thingy in the mix, 1 by default
+     * @param mixed  true to play the audio of the thingy, false to deliver it to the sink only
+     * @param sink   receives the 16-bit PCM frames of the thingy, aligned with the other thingies, on the audio thread, or null
+     */
+    public void setMicrophoneOutput(final BluetoothDevice device, final float gain, final boolean mixed, final AudioMixer.FrameSink sink) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    thingyConnection.setMicrophoneOutput(gain, mixed, sink);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of the microphone playback of a particluar thingy: the underruns, overruns, concealed frames and the current latency.
+     *
+     * @param device     bluetooth device
+     * @param statistics statistics returned previously to be refilled without allocating, or null
+     * @return the playback statistics or null if the thingy is not connected or the microphone has not been enabled
+     */
+    public JitterBufferStatistics getMicrophonePlaybackStatistics(final BluetoothDevice device, final JitterBufferStatistics statistics) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    return thingyConnection.getMicrophonePlaybackStatistics(statistics);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the listener receiving the spectrum of the microphone audio of a particluar thingy, i.e. to show a spectrogram.
+     * The listener is called on a bluetooth thread with arrays that are reused for the next spectrum.
+     *
+     * @param device   bluetooth device
+     * @param listener the listener, or null to stop the analysis
+     */
+    public void setMicrophoneSpectrumListener(final BluetoothDevice device, final SpectrumAnalyzer.Listener listener) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    thingyConnection.setMicrophoneSpectrumListener(listener);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the latency histograms and counters of the audio streamed to and from a particluar thingy: the time the speaker packets wait
+     * in the queue and take to be written, the buffer warnings of the speaker, the time from a microphone notification to its playout
+     * and the microphone packets lost or discarded.
+     *
+     * @param device     bluetooth device
+     * @param statistics statistics returned previously to be refilled without allocating, or null
+     * @return the audio link statistics or null if the thingy is not connected
+     */
+    public AudioLinkStatistics getAudioLinkStatistics(final BluetoothDevice device, final AudioLinkStatistics statistics) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    return thingyConnection.getAudioLinkStatistics(statistics);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the values recorded in the audio link statistics of a particluar thingy
+     *
+     * @param device bluetooth device
+     */
+    public void resetAudioLinkStatistics(final BluetoothDevice device) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    thingyConnection.resetAudioLinkStatistics();
+                }
+            }
+        }
+    }
+
     /**
      * Plays the selected sound sample for a particluar thingy
      * @param context activity context
@@ -1716,66 +2038,215 @@ public class ThingySdkManager {
     }
 
     /**
-     * Returns the saved time stamp and temperature values (K,V) for a particluar thingy.
-     * These values are used to re-plot the graph in the case of an orientation change or application close and restart.
-     * However if the application was killed by swiping these values will not be saved.
+     * Starts streaming live audio from the phone to the speaker of a particluar thingy.
+     * The 16-bit samples captured at 8000 Hz are written to the returned uplink, see {@link VoiceUplink}.
      *
      * @param device bluetooth device
+     * @return the uplink or null if the thingy is not connected
+     */
+    public VoiceUplink startVoiceUplink(final BluetoothDevice device) {
+        return startVoiceUplink(device, ThingyUtils.DEFAULT_VOICE_UPLINK_BUFFER_MILLIS);
+    }
+
+    /**
+     * Starts streaming live audio from the phone to the speaker of a particluar thingy.
+     * The 16-bit samples captured at 8000 Hz are written to the returned uplink, see {@link VoiceUplink}.
+     *
+     * @param device       bluetooth device
+     * @param bufferMillis the duration of audio buffered on the phone before the oldest samples are dropped,
+     *                     at least two speaker packets (40 ms) are buffered
+     * @return the uplink or null if the thingy is not connected
      */
-    public LinkedHashMap<String, String> getSavedTemperatureData(final BluetoothDevice device) {
-        final LinkedHashMap<String, String> temperatureData = new LinkedHashMap<>();
+    public VoiceUplink startVoiceUplink(final BluetoothDevice device, final int bufferMillis) {
+        if (bufferMillis <= 0) {
+            throw new IllegalArgumentException("Buffer duration must be greater than 0");
+        }
         if (device != null) {
             if (mBinder != null) {
                 final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
                 if (thingyConnection != null) {
-                    temperatureData.putAll(thingyConnection.getSavedTemperatureData());
-                    return temperatureData;
+                    return thingyConnection.startVoiceUplink(bufferMillis);
                 }
             }
         }
-        return temperatureData;
+        return null;
     }
 
     /**
-     * Returns the saved time stamp and pressure values (K,V) for a particluar thingy.
-     * These values are used to re-plot the graph in the case of an orientation change or application close and restart.
-     * However if the application was killed by swiping these values will not be saved.
+     * Stops the voice uplink of a particluar thingy, the audio already captured is still played
      *
      * @param device bluetooth device
      */
-    public LinkedHashMap<String, String> getSavedPressureData(final BluetoothDevice device) {
-        final LinkedHashMap<String, String> pressureData = new LinkedHashMap<>();
+    public void stopVoiceUplink(final BluetoothDevice device) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    thingyConnection.stopVoiceUplink();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of the voice uplink of a particluar thingy: the dropped samples and the capture-to-speaker latency.
+     *
+     * @param device     bluetooth device
+     * @param statistics statistics returned previously to be refilled without allocating, or null
+     * @return the uplink statistics or null if the thingy is not connected or no voice uplink was started
+     */
+    public VoiceUplinkStatistics getVoiceUplinkStatistics(final BluetoothDevice device, final VoiceUplinkStatistics statistics) {
         if (device != null) {
             if (mBinder != null) {
                 final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
                 if (thingyConnection != null) {
-                    pressureData.putAll(thingyConnection.getSavedPressureData());
-                    return pressureData;
+                    return thingyConnection.getVoiceUplinkStatistics(statistics);
                 }
             }
         }
-        return pressureData;
+        return null;
+    }
+
+    /**
+     * Returns the saved time stamps and temperature values for a particluar thingy.
+     * These values are used to re-plot the graph in the case of an orientation change or application close and restart.
+     * However if the application was killed by swiping these values will not be saved.
+     *
+     * @param device bluetooth device
+     */
+    public TimeSeriesSnapshot getSavedTemperatureData(final BluetoothDevice device) {
+        return getSavedSensorData(device, SensorHistory.STREAM_TEMPERATURE, null);
     }
 
     /**
-     * Returns the saved time stamp and pressure values (K,V) for a particluar thingy.
+     * Returns the saved time stamps and pressure values for a particluar thingy.
      * These values are used to re-plot the graph in the case of an orientation change or application close and restart.
      * However if the application was killed by swiping these values will not be saved.
      *
      * @param device bluetooth device
      */
-    public LinkedHashMap<String, Integer> getSavedHumidityData(final BluetoothDevice device) {
-        final LinkedHashMap<String, Integer> humidityData = new LinkedHashMap<>();
+    public TimeSeriesSnapshot getSavedPressureData(final BluetoothDevice device) {
+        return getSavedSensorData(device, SensorHistory.STREAM_PRESSURE, null);
+    }
+
+    /**
+     * Returns the saved time stamps and humidity values for a particluar thingy.
+     * These values are used to re-plot the graph in the case of an orientation change or application close and restart.
+     * However if the application was killed by swiping these values will not be saved.
+     *
+     * @param device bluetooth device
+     */
+    public TimeSeriesSnapshot getSavedHumidityData(final BluetoothDevice device) {
+        return getSavedSensorData(device, SensorHistory.STREAM_HUMIDITY, null);
+    }
+
+    /**
+     * Returns the saved time stamps and values of a sensor stream for a particluar thingy, ordered from the oldest to the most recent.
+     * Time stamps are the elapsed realtime in milliseconds at which the notifications were received.
+     *
+     * @param device   bluetooth device
+     * @param stream   one of the SensorHistory.STREAM_* constants
+     * @param snapshot a snapshot returned previously to be refilled without allocating, or null
+     * @return the snapshot, empty if the thingy is not connected
+     */
+    public TimeSeriesSnapshot getSavedSensorData(final BluetoothDevice device, final int stream, final TimeSeriesSnapshot snapshot) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    return thingyConnection.getSensorHistory().getTimeSeries(stream).snapshot(snapshot);
+                }
+            }
+        }
+        final TimeSeriesSnapshot emptySnapshot = snapshot != null ? snapshot : new TimeSeriesSnapshot();
+        emptySnapshot.clear();
+        return emptySnapshot;
+    }
+
+    /**
+     * Returns the samples of a sensor stream received since the given sequence number for a particluar thingy.
+     * A consumer, i.e. a graph or an exporter, keeps the {@link TimeSeriesSnapshot#getLastSequence()} of the previous call and
+     * gets only the new samples, so catching up after a rotation or tab switch costs the number of new samples, not the whole history.
+     *
+     * @param device   bluetooth device
+     * @param stream   one of the SensorHistory.STREAM_* constants
+     * @param sequence the last sequence number seen, or 0 to get all saved samples
+     * @param snapshot a snapshot returned previously to be refilled without allocating, or null
+     * @return the snapshot with the new samples, empty if the thingy is not connected
+     */
+    public TimeSeriesSnapshot getSensorDataSince(final BluetoothDevice device, final int stream, final long sequence, final TimeSeriesSnapshot snapshot) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    return thingyConnection.getSensorHistory().getTimeSeries(stream).readSince(sequence, snapshot);
+                }
+            }
+        }
+        final TimeSeriesSnapshot emptySnapshot = snapshot != null ? snapshot : new TimeSeriesSnapshot();
+        emptySnapshot.clear();
+        return emptySnapshot;
+    }
+
+    /**
+     * Returns the statistics of the gatt request queue for a particluar thingy.
+     * Requests are executed from three lanes, GattRequestQueue.PRIORITY_CONTROL, PRIORITY_READ and PRIORITY_BULK,
+     * and the statistics contain the number of waiting requests and the time they waited in each lane.
+     *
+     * @param device     bluetooth device
+     * @param statistics statistics returned previously to be refilled without allocating, or null
+     * @return the queue statistics or null if the thingy is not connected
+     */
+    public GattQueueStatistics getRequestQueueStatistics(final BluetoothDevice device, final GattQueueStatistics statistics) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    return thingyConnection.getRequestQueueStatistics(statistics);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the timeout policy of a type of gatt request for a particluar thingy.
+     * A request which does not complete before the deadline is started again up to the number of retries of the policy and then skipped,
+     * so a lost callback no longer blocks the requests queued behind it. Timed out and skipped requests are counted in the
+     * {@link #getRequestQueueStatistics(BluetoothDevice, GattQueueStatistics)}.
+     *
+     * @param device      bluetooth device
+     * @param requestType one of the ThingyUtils.GATT_REQUEST_* constants
+     * @param policy      deadline and retries, or GattTimeoutPolicy.NONE to wait forever
+     */
+    public void setRequestTimeoutPolicy(final BluetoothDevice device, final int requestType, final GattTimeoutPolicy policy) {
+        if (device != null) {
+            if (mBinder != null) {
+                final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
+                if (thingyConnection != null) {
+                    thingyConnection.setRequestTimeoutPolicy(requestType, policy);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the number of samples of a sensor stream saved for a particluar thingy.
+     * By default {@link ThingyUtils#MAX_VISISBLE_GRAPH_ENTRIES} samples are saved for every stream.
+     *
+     * @param device   bluetooth device
+     * @param stream   one of the SensorHistory.STREAM_* constants
+     * @param capacity number of samples
+     */
+    public void setSavedSensorDataCapacity(final BluetoothDevice device, final int stream, final int capacity) {
         if (device != null) {
             if (mBinder != null) {
                 final ThingyConnection thingyConnection = mBinder.getThingyConnection(device);
                 if (thingyConnection != null) {
-                    humidityData.putAll(thingyConnection.getSavedHumidityData());
-                    return humidityData;
+                    thingyConnection.getSensorHistory().setCapacity(stream, capacity);
                 }
             }
         }
-        return humidityData;
     }
 
     /**
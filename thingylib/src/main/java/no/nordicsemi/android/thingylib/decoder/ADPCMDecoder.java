@@ -44,63 +44,43 @@ import android.util.Log;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.List;
+
+import no.nordicsemi.android.thingylib.core.codec.AdpcmCodec;
+import no.nordicsemi.android.thingylib.core.stream.AudioRecorder;
 
 public class ADPCMDecoder {
 	private static final String TAG = "ADPCMDecoder";
-	private static final int FRAME_SIZE = 131;
-
-	/** Intel ADPCM step variation table */
-	private static final int[] INDEX_TABLE = { -1, -1, -1, -1, 2, 4, 6, 8, -1, -1, -1, -1, 2, 4, 6, 8, };
-
-	/** ADPCM step size table */
-	private static final int[] STEP_SIZE_TABLE = { 7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45, 50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209,
-			230, 253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
-			5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767 };
-
-	/** The WAV file header (RIFF header) */
-	private static final byte[] WAV_HEADER = {
-			// RIFF header (46 bytes)
-			0x52, 0x49, 0x46, 0x46, // 'RIFF' 
-			0x2E, 0x00, 0x00, 0x00, // Size of the main block in bytes (will be overwritten) (46 bytes)
-			0x57, 0x41, 0x56, 0x45, // 'WAVE' 
-			0x66, 0x6D, 0x74, 0x20, // 'fmt '
-			0x12, 0x00, 0x00, 0x00, // Size of the FMT block (18 bytes)
-			// -- FMT BLOCK --
-			0x01, 0x00, // Linear PCM/uncompressed
-			0x01, 0x00, // Number of channels 
-			(byte) 0x80, 0x3E, 0x00, 0x00, // Frequency sampling (16 kHz) 
-			0x00, 0x7D, 0x00, 0x00, // Average bytes per second (32 000): Avgbps = Number of channels * Sampling Frequency * (Precision >> 3) 
-			0x02, 0x00, // Block alignment (2): blkalign = Number of channels * (Precision >> 3)
-			0x10, 0x00, // Precision (Number of bits per sample) (16)
-			0x00, 0x00, // Nothing?
-			// -- END OF FMT BLOCK --
-			0x64, 0x61, 0x74, 0x61, // 'DATA'
-			0x00, 0x00, 0x00, 0x00 // Size of content in bytes (will be overwritten) 
-	};
+	private static final int FRAME_SIZE = AdpcmCodec.FRAME_SIZE;
+	private static final int SAMPLE_RATE = AdpcmCodec.SAMPLE_RATE;
+	/** Frames arriving this much later than expected are not counted as lost yet, as the notifications come in bursts */
+	private static final long LOST_FRAME_TOLERANCE = 200; // ms
 
 	private DecoderListener mListener;
-	private byte[] mFrame;
+	private final byte[] mFrame;
+	private final byte[] mPcm;
 	private int mPositionInFrame;
+	private int mPacketsInFrame;
+	private int mPacketLength;
+	private boolean mSynchronizing;
 	private int mDecodedDataSize;
 	private int mReceivedDataSize;
 	private int mFramesCount;
-	private int mFramesLost;
-	private int mPacketsCount;
-	private int mInvalidPacketsCount;
+	private volatile int mFramesLost;
+	private volatile int mPacketsCount;
+	private volatile int mInvalidPacketsCount;
 	private long mStartTime;
 
-	private RandomAccessFile mOutputStream;
-	private File mTempFile;
+	private volatile AudioRecorder mRecorder;
+	private boolean mPersistent;
 
 	public static interface DecoderListener {
 		/**
 		 * A full frame (13 packets) has been decoded.
+		 * The PCM buffer is owned by the decoder and overwritten by the next frame, copy it if it has to be kept after this call.
 		 * 
 		 * @param pcm
-		 *            the decoded frame in PCM format
+		 *            the decoded frame in PCM format, read only
 		 * @param frameNumber
 		 *            the frame index (starting from 0)
 		 */
@@ -109,6 +89,7 @@ public class ADPCMDecoder {
 
 	public ADPCMDecoder(final Context context, final boolean persistent) {
 		mFrame = new byte[FRAME_SIZE];
+		mPcm = new byte[AdpcmCodec.PCM_FRAME_SIZE];
 		mPositionInFrame = 0;
 		mDecodedDataSize = 0;
 		mReceivedDataSize = 0;
@@ -119,17 +100,31 @@ public class ADPCMDecoder {
 		mStartTime = 0L;
 
 		if (persistent) {
+			// The frames are written to the temporary file on the recorder thread
+			final AudioRecorder recorder = new AudioRecorder(context.getCacheDir(), "voice" + System.currentTimeMillis(), AudioRecorder.FORMAT_PCM, SAMPLE_RATE);
 			try {
-				final File tempDir = context.getCacheDir();
-				final File wav = mTempFile = File.createTempFile("voice", ".wav", tempDir);
-				mOutputStream = new RandomAccessFile(wav, "rw");
-				mOutputStream.write(WAV_HEADER);
+				recorder.start();
+				mRecorder = recorder;
+				mPersistent = true;
 			} catch (final IOException e) {
 				Log.e(TAG, "Error while creating temporary file", e);
 			}
 		}
 	}
 
+	/**
+	 * Sets the recorder the frames are written to, replacing the temporary file of a persistent decoder.
+	 * Depending on the recorder format, the frames are recorded as received in ADPCM or after decoding.
+	 * The recorder must have been started and is stopped by its owner.
+	 * 
+	 * @param recorder
+	 *            the recorder or null to stop recording
+	 */
+	public void setRecorder(final AudioRecorder recorder) {
+		mRecorder = recorder;
+		mPersistent = false;
+	}
+
 	/**
 	 * Sets the decoder listener.
 	 * 
@@ -147,64 +142,113 @@ public class ADPCMDecoder {
 	 *            the packet from the Voice Input Module
 	 */
 	public void add(final byte[] packet) {
+		add(packet, 0, packet.length);
+	}
+
+	/**
+	 * Adds the next frame packet. A packet containing a whole frame, sent when the MTU is large enough, is decoded directly from the given array,
+	 * smaller packets are gathered in the frame buffer first. The packet is not kept after this method returns.
+	 * 
+	 * @param packet
+	 *            the array containing the packet from the Voice Input Module
+	 * @param offset
+	 *            the offset of the packet in the array
+	 * @param length
+	 *            the length of the packet
+	 */
+	public void add(final byte[] packet, final int offset, final int length) {
 		if (mStartTime == 0)
 			mStartTime = SystemClock.elapsedRealtime();
 
 		++mPacketsCount;
-		mReceivedDataSize += packet.length;
+		mReceivedDataSize += length;
+
+		if (mPositionInFrame == 0 && length >= FRAME_SIZE) {
+			mSynchronizing = false;
+			onFrameCompleted(packet, offset, 1);
+			return;
+		}
+
+		// After a lost packet the packets are discarded until the last, shorter, packet of a frame
+		if (mSynchronizing) {
+			++mInvalidPacketsCount;
+			if (length < mPacketLength)
+				mSynchronizing = false;
+			return;
+		}
+
+		if (mPositionInFrame == 0)
+			mPacketLength = length;
+		final int remaining = FRAME_SIZE - mPositionInFrame;
+		if (length > remaining || (length < mPacketLength && length != remaining)) {
+			// A packet of this frame was lost, the frame is discarded
+			mInvalidPacketsCount += mPacketsInFrame + 1;
+			mPositionInFrame = 0;
+			mPacketsInFrame = 0;
+			mSynchronizing = length >= mPacketLength;
+			return;
+		}
 
 		// Copy the packet to the frame buffer
-		System.arraycopy(packet, 0, mFrame, mPositionInFrame, packet.length);
-		mPositionInFrame += packet.length;
+		System.arraycopy(packet, offset, mFrame, mPositionInFrame, length);
+		mPositionInFrame += length;
+		++mPacketsInFrame;
 
 		// If frame is completed, decode it and save
 		if (mPositionInFrame == FRAME_SIZE) {
+			final int packets = mPacketsInFrame;
 			mPositionInFrame = 0;
-			++mFramesCount;
-
-			// Decode ADPCM -> PCM
-			final byte[] pcm = decode(mFrame);
-
-			// Write data to the temporary file
-			try {
-				if (mOutputStream != null)
-					mOutputStream.write(pcm);
-				mDecodedDataSize += pcm.length;
-			} catch (final IOException e) {
-				Log.e(TAG, "Error while writing PCM data to file", e);
-			}
+			mPacketsInFrame = 0;
+			onFrameCompleted(mFrame, 0, packets);
+		}
+	}
 
-			// Notify the listener (if any)
-			if (mListener != null)
-				mListener.onFrameDecoded(pcm, mFramesCount - 1);
+	private void onFrameCompleted(final byte[] frame, final int offset, final int packets) {
+		if (!AdpcmCodec.isValidFrame(frame, offset)) {
+			mInvalidPacketsCount += packets;
+			return;
 		}
+		++mFramesCount;
+
+		// The frames the Thingy should have sent by now and that were neither received nor discarded were lost on the link
+		final long duration = SystemClock.elapsedRealtime() - mStartTime - LOST_FRAME_TOLERANCE;
+		final int lost = AdpcmCodec.getExpectedFrameCount(duration) - mFramesCount - getInvalidFramesCount();
+		if (lost > mFramesLost)
+			mFramesLost = lost;
+
+		final AudioRecorder recorder = mRecorder;
+		if (recorder != null && recorder.getFormat() == AudioRecorder.FORMAT_ADPCM)
+			recorder.write(frame, offset, FRAME_SIZE);
+
+		// Decode ADPCM -> PCM
+		final byte[] pcm = mPcm;
+		final int pcmLength = AdpcmCodec.decode(frame, offset, FRAME_SIZE, pcm, 0);
+		mDecodedDataSize += pcmLength;
+
+		// Hand the frame over to the recorder thread
+		if (recorder != null && recorder.getFormat() == AudioRecorder.FORMAT_PCM)
+			recorder.write(pcm, 0, pcmLength);
+
+		// Notify the listener (if any)
+		if (mListener != null)
+			mListener.onFrameDecoded(pcm, mFramesCount - 1);
 	}
 
 	/**
-	 * Saves the PCM voice to the temporary file.
+	 * Saves the PCM voice to the temporary file. Waits until the recorder thread has written the remaining frames.
 	 * 
-	 * @return the WAV file
+	 * @return the WAV file, or null if the decoder is not persistent
 	 */
 	public File save() {
+		if (!mPersistent)
+			return null;
 		try {
-			// Write RIFF size
-			final ByteBuffer riffSize = ByteBuffer.allocate(4);
-			riffSize.order(ByteOrder.LITTLE_ENDIAN);
-			riffSize.putInt(mDecodedDataSize + 46);
-			mOutputStream.seek(4L);
-			mOutputStream.write(riffSize.array());
-
-			// Write data size
-			riffSize.putInt(0, mDecodedDataSize);
-			mOutputStream.seek(42L);
-			mOutputStream.write(riffSize.array());
-
-			mOutputStream.close();
-			mOutputStream = null;
+			final List<File> files = mRecorder.stop();
+			return files.isEmpty() ? null : files.get(0);
 		} catch (final IOException e) {
 			Log.e(TAG, "Error while closing temporary file", e);
+			return null;
 		}
-		return mTempFile;
 	}
 
 	/**
@@ -232,6 +276,15 @@ public class ADPCMDecoder {
 		return mFramesCount;
 	}
 
+	/**
+	 * Returns the number of packets discarded because a packet of their frame was lost or the frame could not be decoded.
+	 * 
+	 * @return the number of invalid packets
+	 */
+	public int getInvalidPacketsCount() {
+		return mInvalidPacketsCount;
+	}
+
 	/**
 	 * Returns the number of invalid frames. Sometimes, due to the Android lag or bug, a packet is skipped and the frame may not be decoded.
 	 * The decoder must discard some packets until a packet with size 19 bytes come (the last one in frame) when it starts decoding a new frame.
@@ -243,18 +296,12 @@ public class ADPCMDecoder {
 	}
 
 	/**
-	 * Returns the estimated number of lost frames. This number is calculated using by knowing the voice duration and expected frames number.
+	 * Returns the estimated number of lost frames. This number is calculated using by knowing the voice duration and expected frames number,
+	 * and updated with each decoded frame.
 	 * 
 	 * @return the number of frames that were skipped by the Voice Input Module due to the slow connection.
 	 */
 	public int getFramesLost() {
-		final float duration = SystemClock.elapsedRealtime() - mStartTime; // transfer duration in milliseconds
-		/*
-		 * The sample frequency is 16kHz = 16000 samples per second. There are 512 samples in each frame (13 packets), so about 31.25 frames are expected every second. 
-		 */
-		final int expectedFrames = (int) (duration * 31.25f / 1000.0f);
-		if (expectedFrames - mFramesCount - mFramesLost > 0)
-			mFramesLost++;
 		return mFramesLost;
 	}
 
@@ -276,93 +323,4 @@ public class ADPCMDecoder {
 		return mReceivedDataSize;
 	}
 
-	/**
-	 * Decodes the ADPCM frame into PCM format
-	 * 
-	 * @param adpcm
-	 *            the input in ADPCM format
-	 * @return the PCM decoded array
-	 */
-	private byte[] decode(final byte[] adpcm) {
-		final byte[] pcm = new byte[512];
-
-		// The first 2 bytes of ADPCM frame are the predicted value
-		int valuePredicted = readShort(adpcm, 0);
-		// The 3rd byte is the index value
-		int index = adpcm[2];
-		if (index < 0)
-			index = 0;
-		if (index > 88)
-			index = 88;
-
-		int diff; /* Current change to valuePredicted */
-		boolean bufferStep = false;
-		int inputBuffer = 0;
-		int delta = 0;
-		int sign = 0;
-		int step = STEP_SIZE_TABLE[index];
-
-		for (int in = 3, out = 0; in < adpcm.length; out += 2) {
-			/* Step 1 - get the delta value */
-			if (bufferStep) {
-				delta = inputBuffer & 0x0F;
-				in++;
-			} else {
-				inputBuffer = adpcm[in];
-				delta = (inputBuffer >> 4) & 0x0F;
-			}
-			bufferStep = !bufferStep;
-
-			/* Step 2 - Find new index value (for later) */
-			index += INDEX_TABLE[delta];
-			if (index < 0)
-				index = 0;
-			if (index > 88)
-				index = 88;
-
-			/* Step 3 - Separate sign and magnitude */
-			sign = delta & 8;
-			delta = delta & 7;
-
-			/* Step 4 - Compute difference and new predicted value */
-			diff = step >> 3;
-			if ((delta & 4) > 0)
-				diff += step;
-			if ((delta & 2) > 0)
-				diff += step >> 1;
-			if ((delta & 1) > 0)
-				diff += step >> 2;
-
-			if (sign > 0)
-				valuePredicted -= diff;
-			else
-				valuePredicted += diff;
-
-			/* Step 5 - clamp output value */
-			if (valuePredicted > 32767)
-				valuePredicted = 32767;
-			else if (valuePredicted < -32768)
-				valuePredicted = -32768;
-
-			/* Step 6 - Update step value */
-			step = STEP_SIZE_TABLE[index];
-
-			/* Step 7 - Output value */
-			writeShort(pcm, out, valuePredicted);
-		}
-		return pcm;
-	}
-
-	private static short readShort(final byte[] data, final int start) {
-		int b1 = data[start] & 0xff;
-		int b2 = data[start + 1] & 0xff;
-
-		return (short) (b1 << 8 | b2 << 0);
-	}
-
-	private static void writeShort(final byte[] data, final int start, final int value) {
-		data[start] = (byte) (value & 0xff);
-		data[start + 1] = (byte) ((value >>> 8) & 0xFF);
-	}
-
 }
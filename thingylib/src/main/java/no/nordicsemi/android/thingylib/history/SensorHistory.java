@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.history;
+
+/**
+ * Keeps a {@link TimeSeries} for every sensor stream of a Thingy. Series are created when the first sample of a stream is recorded.
+ */
+public final class SensorHistory {
+    public static final int STREAM_TEMPERATURE = 0;
+    public static final int STREAM_PRESSURE = 1;
+    public static final int STREAM_HUMIDITY = 2;
+    public static final int STREAM_ECO2 = 3;
+    public static final int STREAM_TVOC = 4;
+    public static final int STREAM_COLOR_RED = 5;
+    public static final int STREAM_COLOR_GREEN = 6;
+    public static final int STREAM_COLOR_BLUE = 7;
+    public static final int STREAM_COLOR_CLEAR = 8;
+    public static final int STREAM_BUTTON_STATE = 9;
+    public static final int STREAM_TAP_DIRECTION = 10;
+    public static final int STREAM_TAP_COUNT = 11;
+    public static final int STREAM_ORIENTATION = 12;
+    public static final int STREAM_QUATERNION_W = 13;
+    public static final int STREAM_QUATERNION_X = 14;
+    public static final int STREAM_QUATERNION_Y = 15;
+    public static final int STREAM_QUATERNION_Z = 16;
+    public static final int STREAM_STEP_COUNT = 17;
+    public static final int STREAM_PEDOMETER_DURATION = 18;
+    public static final int STREAM_ACCELEROMETER_X = 19;
+    public static final int STREAM_ACCELEROMETER_Y = 20;
+    public static final int STREAM_ACCELEROMETER_Z = 21;
+    public static final int STREAM_GYROSCOPE_X = 22;
+    public static final int STREAM_GYROSCOPE_Y = 23;
+    public static final int STREAM_GYROSCOPE_Z = 24;
+    public static final int STREAM_COMPASS_X = 25;
+    public static final int STREAM_COMPASS_Y = 26;
+    public static final int STREAM_COMPASS_Z = 27;
+    public static final int STREAM_EULER_ROLL = 28;
+    public static final int STREAM_EULER_PITCH = 29;
+    public static final int STREAM_EULER_YAW = 30;
+    public static final int STREAM_HEADING = 31;
+    public static final int STREAM_GRAVITY_X = 32;
+    public static final int STREAM_GRAVITY_Y = 33;
+    public static final int STREAM_GRAVITY_Z = 34;
+
+    public static final int STREAM_COUNT = 35;
+
+    private final TimeSeries[] mSeries = new TimeSeries[STREAM_COUNT];
+    private final int[] mCapacities = new int[STREAM_COUNT];
+
+    /**
+     * Creates the history
+     *
+     * @param defaultCapacity number of samples stored per stream unless changed using {@link #setCapacity(int, int)}
+     */
+    public SensorHistory(final int defaultCapacity) {
+        if (defaultCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        for (int i = 0; i < STREAM_COUNT; i++) {
+            mCapacities[i] = defaultCapacity;
+        }
+    }
+
+    /**
+     * Records a sample of a stream
+     *
+     * @param stream    one of the STREAM_* constants
+     * @param timestamp sample timestamp
+     * @param value     sample value
+     */
+    public void record(final int stream, final long timestamp, final float value) {
+        getTimeSeries(stream).add(timestamp, value);
+    }
+
+    /**
+     * Returns the time series of a stream
+     *
+     * @param stream one of the STREAM_* constants
+     */
+    public TimeSeries getTimeSeries(final int stream) {
+        checkStream(stream);
+        synchronized (mSeries) {
+            TimeSeries series = mSeries[stream];
+            if (series == null) {
+                series = mSeries[stream] = new TimeSeries(mCapacities[stream]);
+            }
+            return series;
+        }
+    }
+
+    /**
+     * Changes the number of samples stored for a stream
+     *
+     * @param stream   one of the STREAM_* constants
+     * @param capacity number of samples
+     */
+    public void setCapacity(final int stream, final int capacity) {
+        checkStream(stream);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        synchronized (mSeries) {
+            mCapacities[stream] = capacity;
+            if (mSeries[stream] != null) {
+                mSeries[stream].setCapacity(capacity);
+            }
+        }
+    }
+
+    /**
+     * Removes all samples of a stream
+     *
+     * @param stream one of the STREAM_* constants
+     */
+    public void clear(final int stream) {
+        checkStream(stream);
+        synchronized (mSeries) {
+            if (mSeries[stream] != null) {
+                mSeries[stream].clear();
+            }
+        }
+    }
+
+    private static void checkStream(final int stream) {
+        if (stream < 0 || stream >= STREAM_COUNT) {
+            throw new IllegalArgumentException("Unknown stream: " + stream);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.history;
+
+/**
+ * A fixed capacity ring buffer of samples, each consisting of a long timestamp and a float value.
+ * <br>
+ * When the buffer is full, adding a sample overwrites the oldest one. Samples are kept in primitive arrays so
+ * recording a sample does not allocate any objects. The arrays are allocated lazily when the first sample is added.
+ * All methods are thread safe: samples are added from the bluetooth callback thread and read from the UI thread.
+ * <br>
+ * Every sample gets a sequence number, starting from 1 and incremented for every sample added. A consumer may keep the
+ * last sequence number it has seen and use {@link #readSince(long, TimeSeriesSnapshot)} to get only the samples added since.
+ */
+public final class TimeSeries {
+    private long[] mTimestamps;
+    private float[] mValues;
+    private int mCapacity;
+    private int mHead; //index of the next sample to be written
+    private int mSize;
+    private long mSequence; //sequence number of the most recent sample
+
+    public TimeSeries(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        mCapacity = capacity;
+    }
+
+    /**
+     * Adds a sample, overwriting the oldest one if the buffer is full
+     *
+     * @param timestamp sample timestamp
+     * @param value     sample value
+     */
+    public synchronized void add(final long timestamp, final float value) {
+        if (mTimestamps == null) {
+            mTimestamps = new long[mCapacity];
+            mValues = new float[mCapacity];
+        }
+        mTimestamps[mHead] = timestamp;
+        mValues[mHead] = value;
+        mHead = (mHead + 1) % mCapacity;
+        if (mSize < mCapacity) {
+            mSize++;
+        }
+        mSequence++;
+    }
+
+    /**
+     * Returns the number of samples currently stored
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the sequence number of the most recent sample, or 0 if no sample has been added
+     */
+    public synchronized long getLatestSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Returns the maximum number of samples stored
+     */
+    public synchronized int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Changes the maximum number of samples stored. The most recent samples are kept if the capacity is reduced.
+     *
+     * @param capacity new capacity
+     */
+    public synchronized void setCapacity(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        if (capacity == mCapacity) {
+            return;
+        }
+
+        if (mTimestamps != null) {
+            final long[] timestamps = new long[capacity];
+            final float[] values = new float[capacity];
+            final int size = Math.min(mSize, capacity);
+            copyLatest(size, timestamps, values, 0);
+            mTimestamps = timestamps;
+            mValues = values;
+            mSize = size;
+            mHead = size % capacity;
+        }
+        mCapacity = capacity;
+    }
+
+    /**
+     * Removes all samples. Sequence numbers are not reset, so cursors held by consumers remain valid.
+     */
+    public synchronized void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    /**
+     * Copies the stored samples, oldest first, into a snapshot.
+     *
+     * @param snapshot a snapshot to be reused or null to create a new one. The snapshot arrays are reallocated only if they are too small.
+     * @return the snapshot containing the samples
+     */
+    public TimeSeriesSnapshot snapshot(final TimeSeriesSnapshot snapshot) {
+        return readSince(0, snapshot);
+    }
+
+    /**
+     * Copies the samples with a sequence number greater than the given one, oldest first, into a snapshot.
+     * Samples which have already been overwritten are skipped, in which case the sequence number of the first sample in the
+     * snapshot is greater than sequence + 1. A sequence number greater than the latest one, i.e. a cursor obtained from
+     * a different series, is treated as 0 and all samples are returned.
+     *
+     * @param sequence the last sequence number seen by the consumer, {@link TimeSeriesSnapshot#getLastSequence()}, or 0 to get all samples
+     * @param snapshot a snapshot to be reused or null to create a new one. The snapshot arrays are reallocated only if they are too small.
+     * @return the snapshot containing the new samples
+     */
+    public synchronized TimeSeriesSnapshot readSince(final long sequence, final TimeSeriesSnapshot snapshot) {
+        final TimeSeriesSnapshot result = snapshot != null ? snapshot : new TimeSeriesSnapshot();
+        final long newSamples = sequence > 0 && sequence <= mSequence ? mSequence - sequence : mSequence;
+        final int count = (int) Math.min(newSamples, mSize);
+        result.ensureCapacity(count);
+        copyLatest(count, result.mTimestamps, result.mValues, 0);
+        result.mSize = count;
+        result.mLastSequence = mSequence;
+        return result;
+    }
+
+    /**
+     * Copies the given number of most recent samples, oldest first, into the given arrays
+     */
+    private void copyLatest(final int count, final long[] timestamps, final float[] values, final int offset) {
+        if (count == 0) {
+            return;
+        }
+        final int start = (mHead - count + mCapacity) % mCapacity;
+        final int firstPart = Math.min(count, mCapacity - start);
+        System.arraycopy(mTimestamps, start, timestamps, offset, firstPart);
+        System.arraycopy(mValues, start, values, offset, firstPart);
+        if (firstPart < count) {
+            System.arraycopy(mTimestamps, 0, timestamps, offset + firstPart, count - firstPart);
+            System.arraycopy(mValues, 0, values, offset + firstPart, count - firstPart);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.history;
+
+/**
+ * A copy of the samples stored in a {@link TimeSeries} at a given time, or of the samples added since a given sequence number,
+ * ordered from the oldest to the most recent.
+ * <br>
+ * A snapshot may be passed back to {@link TimeSeries#snapshot(TimeSeriesSnapshot)} to be refilled without allocating new arrays.
+ * Timestamps recorded by the ThingyConnection are the elapsed realtime in milliseconds at which the notification was received.
+ */
+public final class TimeSeriesSnapshot {
+    private static final long[] EMPTY_TIMESTAMPS = new long[0];
+    private static final float[] EMPTY_VALUES = new float[0];
+
+    /*package access*/ long[] mTimestamps = EMPTY_TIMESTAMPS;
+    /*package access*/ float[] mValues = EMPTY_VALUES;
+    /*package access*/ int mSize;
+    /*package access*/ long mLastSequence;
+
+    /**
+     * Returns the number of samples in the snapshot
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the sequence number of the most recent sample in the series when the snapshot was taken.
+     * This is the cursor to be passed to {@link TimeSeries#readSince(long, TimeSeriesSnapshot)} to get the following samples.
+     */
+    public long getLastSequence() {
+        return mLastSequence;
+    }
+
+    /**
+     * Returns the sequence number of the sample at the given index, where 0 is the oldest sample
+     */
+    public long getSequence(final int index) {
+        checkIndex(index);
+        return mLastSequence - mSize + 1 + index;
+    }
+
+    /**
+     * Returns the timestamp of the sample at the given index, where 0 is the oldest sample
+     */
+    public long getTimestamp(final int index) {
+        checkIndex(index);
+        return mTimestamps[index];
+    }
+
+    /**
+     * Returns the value of the sample at the given index, where 0 is the oldest sample
+     */
+    public float getValue(final int index) {
+        checkIndex(index);
+        return mValues[index];
+    }
+
+    /**
+     * Removes all samples from the snapshot, keeping the arrays for reuse
+     */
+    public void clear() {
+        mSize = 0;
+        mLastSequence = 0;
+    }
+
+    /*package access*/ void ensureCapacity(final int capacity) {
+        if (mTimestamps.length < capacity) {
+            mTimestamps = new long[capacity];
+            mValues = new float[capacity];
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+        }
+    }
+}
@@ -39,7 +39,6 @@
 package no.nordicsemi.android.thingylib.utils;
 
 import android.app.Activity;
-import android.bluetooth.BluetoothGattCharacteristic;
 import android.content.Context;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
@@ -48,20 +47,15 @@ import android.os.Build;
 import android.os.ParcelUuid;
 import android.util.Base64;
 import android.util.Log;
-import android.util.SparseArray;
-import android.webkit.URLUtil;
 import android.widget.Toast;
 
-import java.nio.BufferUnderflowException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
-import java.util.LinkedHashMap;
-import java.util.Locale;
-import java.util.Set;
 import java.util.UUID;
 
+import no.nordicsemi.android.thingylib.core.codec.EddystoneUriCodec;
+import no.nordicsemi.android.thingylib.core.protocol.ByteUtils;
+
 public class ThingyUtils {
 
     public static final String TAG                                                              = "THINGY:52";
@@ -348,44 +342,22 @@ public class ThingyUtils {
     public static final int SPEAKER_STATUS_PACKET_DISREGARDED                                   = 0x10;
     public static final int SPEAKER_STATUS_INVALID_COMMAND                                      = 0x11;
 
+    //Gatt request types, used to configure the request timeouts
+    public static final int GATT_REQUEST_READ_CHARACTERISTIC                                    = 0;
+    public static final int GATT_REQUEST_READ_DESCRIPTOR                                        = 1;
+    public static final int GATT_REQUEST_WRITE_CHARACTERISTIC                                   = 2;
+    public static final int GATT_REQUEST_WRITE_DESCRIPTOR                                       = 3;
+    public static final int GATT_REQUEST_WRITE_AUDIO_PACKET                                     = 4; //speaker packets, skipped without retries by default
+    public static final int GATT_REQUEST_TYPE_COUNT                                             = 5;
+    public static final long DEFAULT_GATT_REQUEST_TIMEOUT                                       = 2000; //ms
+    public static final int DEFAULT_MICROPHONE_JITTER_FRAMES                                    = 4; //16 ms frames
+    public static final int MICROPHONE_SAMPLE_RATE                                              = 16000; //Hz
+    public static final int DEFAULT_VOICE_UPLINK_BUFFER_MILLIS                                  = 200; //ms
+    public static final int MICROPHONE_FFT_SIZE                                                 = 512; //32 ms frames, 31.25 Hz bins
+    public static final int MICROPHONE_SPECTRUM_BANDS                                           = 16;
+    public static final String SPEAKER_CLIP_CACHE_DIRECTORY                                     = "speaker_clips";
+    public static final long SPEAKER_CLIP_CACHE_SIZE                                            = 16 * 1024 * 1024; //bytes, about 35 minutes at 8 kHz
 
-    /**
-     * URI Scheme maps a byte code into the scheme and an optional scheme specific prefix.
-     */
-    private static final SparseArray<String> URI_SCHEMES = new SparseArray<String>() {
-        {
-            put((byte) 0, "http://www.");
-            put((byte) 1, "https://www.");
-            put((byte) 2, "http://");
-            put((byte) 3, "https://");
-            put((byte) 4, "urn:uuid:"); // RFC 2141 and RFC 4122};
-        }
-    };
-
-    /**
-     * Expansion strings for "http" and "https" schemes. These contain strings appearing anywhere in a
-     * URL. Restricted to Generic TLDs.
-     * <p/>
-     * Note: this is a scheme specific encoding.
-     */
-    private static final SparseArray<String> URL_CODES = new SparseArray<String>() {
-        {
-            put((byte) 0, ".com/");
-            put((byte) 1, ".org/");
-            put((byte) 2, ".edu/");
-            put((byte) 3, ".net/");
-            put((byte) 4, ".info/");
-            put((byte) 5, ".biz/");
-            put((byte) 6, ".gov/");
-            put((byte) 7, ".com");
-            put((byte) 8, ".org");
-            put((byte) 9, ".edu");
-            put((byte) 10, ".net");
-            put((byte) 11, ".info");
-            put((byte) 12, ".biz");
-            put((byte) 13, ".gov");
-        }
-    };
 
     public static IntentFilter createSpeakerStatusChangeReceiver(final String address) {
         final IntentFilter intentFilter = new IntentFilter();
@@ -405,72 +377,7 @@ public class ThingyUtils {
     }
 
     public static int setValue(final byte[] dest, int offset, int value, int formatType) {
-        int len = offset + getTypeLen(formatType);
-        if (len > dest.length)
-            return offset;
-
-        switch (formatType) {
-            case BluetoothGattCharacteristic.FORMAT_SINT8:
-                value = intToSignedBits(value, 8);
-                // Fall-through intended
-            case BluetoothGattCharacteristic.FORMAT_UINT8:
-                dest[offset] = (byte) (value & 0xFF);
-                break;
-
-            case BluetoothGattCharacteristic.FORMAT_SINT16:
-                value = intToSignedBits(value, 16);
-                // Fall-through intended
-            case BluetoothGattCharacteristic.FORMAT_UINT16:
-                dest[offset++] = (byte) (value & 0xFF);
-                dest[offset] = (byte) ((value >> 8) & 0xFF);
-                break;
-
-            case FORMAT_SINT24:
-                value = intToSignedBits(value, 24);
-                // Fall-through intended
-            case FORMAT_UINT24:
-                dest[offset++] = (byte) (value & 0xFF);
-                dest[offset++] = (byte) ((value >> 8) & 0xFF);
-                dest[offset] = (byte) ((value >> 16) & 0xFF);
-                break;
-
-            case FORMAT_UINT16_BIG_INDIAN:
-                dest[offset++] = (byte) ((value >> 8) & 0xFF);
-                dest[offset] = (byte) (value & 0xFF);
-                break;
-
-            case BluetoothGattCharacteristic.FORMAT_SINT32:
-                value = intToSignedBits(value, 32);
-                // Fall-through intended
-            case BluetoothGattCharacteristic.FORMAT_UINT32:
-                dest[offset++] = (byte) (value & 0xFF);
-                dest[offset++] = (byte) ((value >> 8) & 0xFF);
-                dest[offset++] = (byte) ((value >> 16) & 0xFF);
-                dest[offset] = (byte) ((value >> 24) & 0xFF);
-                break;
-
-            case FORMAT_UINT32_BIG_INDIAN:
-                dest[offset++] = (byte) ((value >> 24) & 0xFF);
-                dest[offset++] = (byte) ((value >> 16) & 0xFF);
-                dest[offset++] = (byte) ((value >> 8) & 0xFF);
-                dest[offset] = (byte) (value & 0xFF);
-                break;
-
-            default:
-                return offset;
-        }
-        return len;
-    }
-
-    private static int getTypeLen(int formatType) {
-        return formatType & 0xF;
-    }
-
-    private static int intToSignedBits(int i, int size) {
-        if (i < 0) {
-            i = (1 << size - 1) + (i & ((1 << size - 1) - 1));
-        }
-        return i;
+        return ByteUtils.setValue(dest, offset, value, formatType);
     }
 
     public static void showToast(Activity activity, String message) {
@@ -482,39 +389,11 @@ public class ThingyUtils {
     }
 
     public static String decodeUri(final byte[] serviceData, final int start, final int length) {
-        if (start < 0 || serviceData.length < start + length)
-            return null;
-
-        final StringBuilder uriBuilder = new StringBuilder();
-        int offset = 0;
-        if (offset < length) {
-            byte b = serviceData[start + offset++];
-            String scheme = URI_SCHEMES.get(b);
-            if (scheme != null) {
-                uriBuilder.append(scheme);
-                if (URLUtil.isNetworkUrl(scheme)) {
-                    return decodeUrl(serviceData, start + offset, length - 1, uriBuilder);
-                } else if ("urn:uuid:".equals(scheme)) {
-                    return decodeUrnUuid(serviceData, start + offset, uriBuilder);
-                }
-            }
-            Log.w(TAG, "decodeUri unknown Uri scheme code=" + b);
-        }
-        return null;
-    }
-
-    private static String decodeUrl(final byte[] serviceData, final int start, final int length, final StringBuilder urlBuilder) {
-        int offset = 0;
-        while (offset < length) {
-            byte b = serviceData[start + offset++];
-            String code = URL_CODES.get(b);
-            if (code != null) {
-                urlBuilder.append(code);
-            } else {
-                urlBuilder.append((char) b);
-            }
+        final String uri = EddystoneUriCodec.decodeUri(serviceData, start, length);
+        if (uri == null) {
+            Log.w(TAG, "decodeUri invalid Uri");
         }
-        return urlBuilder.toString();
+        return uri;
     }
 
     /**
@@ -524,118 +403,60 @@ public class ThingyUtils {
      * @return the Uri string with expansion codes.
      */
     public static byte[] encodeUri(String uri) {
-        if (uri.length() == 0) {
-            return new byte[0];
-        }
-        ByteBuffer bb = ByteBuffer.allocate(uri.length());
-        // UUIDs are ordered as byte array, which means most significant first
-        bb.order(ByteOrder.BIG_ENDIAN);
-        int position = 0;
-
-        // Add the byte code for the scheme or return null if none
-        Byte schemeCode = encodeUriScheme(uri);
-        if (schemeCode == null) {
-            return null;
-        }
-        String scheme = URI_SCHEMES.get(schemeCode);
-        bb.put(schemeCode);
-        position += scheme.length();
-
-        if (URLUtil.isNetworkUrl(scheme)) {
-            return encodeUrl(uri, position, bb);
-        } else if ("urn:uuid:".equals(scheme)) {
-            return encodeUrnUuid(uri, position, bb);
+        final byte[] encodedUri = EddystoneUriCodec.encodeUri(uri);
+        if (encodedUri == null) {
+            Log.w(TAG, "encodeUri invalid Uri - " + uri);
         }
-        return null;
+        return encodedUri;
     }
 
-    private static Byte encodeUriScheme(String uri) {
-        String lowerCaseUri = uri.toLowerCase(Locale.ENGLISH);
-        for (int i = 0; i < URI_SCHEMES.size(); i++) {
-            // get the key and value.
-            int key = URI_SCHEMES.keyAt(i);
-            String value = URI_SCHEMES.valueAt(i);
-            if (lowerCaseUri.startsWith(value)) {
-                return (byte) key;
-            }
-        }
-        return null;
+    /**
+     * Reads an unsigned 8-bit value at the given offset.
+     */
+    public static int readUint8(final byte[] data, final int offset) {
+        return ByteUtils.readUint8(data, offset);
     }
 
-    private static byte[] encodeUrl(String url, int position, ByteBuffer bb) {
-        while (position < url.length()) {
-            byte expansion = findLongestExpansion(url, position);
-            if (expansion >= 0) {
-                bb.put(expansion);
-                position += URL_CODES.get(expansion).length();
-            } else {
-                bb.put((byte) url.charAt(position++));
-            }
-        }
-        return byteBufferToArray(bb);
+    /**
+     * Reads a signed 8-bit value at the given offset.
+     */
+    public static int readSint8(final byte[] data, final int offset) {
+        return ByteUtils.readSint8(data, offset);
     }
 
-    private static byte[] byteBufferToArray(ByteBuffer bb) {
-        byte[] bytes = new byte[bb.position()];
-        bb.rewind();
-        bb.get(bytes, 0, bytes.length);
-        return bytes;
+    /**
+     * Reads a little-endian unsigned 16-bit value at the given offset.
+     */
+    public static int readUint16(final byte[] data, final int offset) {
+        return ByteUtils.readUint16(data, offset);
     }
 
     /**
-     * Finds the longest expansion from the uri at the current position.
-     *
-     * @param uriString the Uri
-     * @param pos start position
-     * @return an index in URI_MAP or 0 if none.
+     * Reads a little-endian signed 16-bit value at the given offset.
      */
-    private static byte findLongestExpansion(String uriString, int pos) {
-        byte expansion = -1;
-        int expansionLength = 0;
-        for (int i = 0; i < URL_CODES.size(); i++) {
-            // get the key and value.
-            int key = URL_CODES.keyAt(i);
-            String value = URL_CODES.valueAt(i);
-            if (value.length() > expansionLength && uriString.startsWith(value, pos)) {
-                expansion = (byte) key;
-                expansionLength = value.length();
-            }
-        }
-        return expansion;
+    public static int readSint16(final byte[] data, final int offset) {
+        return ByteUtils.readSint16(data, offset);
     }
 
-    private static byte[] encodeUrnUuid(String urn, int position, ByteBuffer bb) {
-        String uuidString = urn.substring(position, urn.length());
-        UUID uuid;
-        try {
-            uuid = UUID.fromString(uuidString);
-        } catch (IllegalArgumentException e) {
-            Log.w(TAG, "encodeUrnUuid invalid urn:uuid format - " + urn);
-            return null;
-        }
-        // UUIDs are ordered as byte array, which means most significant first
-        bb.order(ByteOrder.BIG_ENDIAN);
-        bb.putLong(uuid.getMostSignificantBits());
-        bb.putLong(uuid.getLeastSignificantBits());
-        return byteBufferToArray(bb);
+    /**
+     * Reads a little-endian signed 32-bit value at the given offset.
+     */
+    public static int readSint32(final byte[] data, final int offset) {
+        return ByteUtils.readSint32(data, offset);
     }
 
-    private static String decodeUrnUuid(final byte[] serviceData, final int offset, final StringBuilder urnBuilder) {
-        ByteBuffer bb = ByteBuffer.wrap(serviceData);
-        // UUIDs are ordered as byte array, which means most significant first
-        bb.order(ByteOrder.BIG_ENDIAN);
-        long mostSignificantBytes, leastSignificantBytes;
-        try {
-            bb.position(offset);
-            mostSignificantBytes = bb.getLong();
-            leastSignificantBytes = bb.getLong();
-        } catch (BufferUnderflowException e) {
-            Log.w(TAG, "decodeUrnUuid BufferUnderflowException!");
-            return null;
-        }
-        UUID uuid = new UUID(mostSignificantBytes, leastSignificantBytes);
-        urnBuilder.append(uuid.toString());
-        return urnBuilder.toString();
+    /**
+     * Reads a little-endian unsigned 32-bit value at the given offset.
+     */
+    public static long readUint32(final byte[] data, final int offset) {
+        return ByteUtils.readUint32(data, offset);
+    }
+
+    /**
+     * Reads a little-endian IEEE 754 32-bit float at the given offset.
+     */
+    public static float readFloat32(final byte[] data, final int offset) {
+        return ByteUtils.readFloat32(data, offset);
     }
 
     /**
@@ -697,16 +518,4 @@ public class ThingyUtils {
         }
         return false;
     }
-
-    public static void removeOldDataForGraphs(final LinkedHashMap linkedHashMap) {
-        if(linkedHashMap.size() > MAX_VISISBLE_GRAPH_ENTRIES) {
-            Set keys = linkedHashMap.keySet();
-            for(Object key : keys) {
-                linkedHashMap.remove(key);
-                if(linkedHashMap.size()  == MAX_VISISBLE_GRAPH_ENTRIES){
-                    break;
-                }
-            }
-        }
-    }
 }
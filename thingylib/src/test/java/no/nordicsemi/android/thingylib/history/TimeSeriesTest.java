@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2010 - 2017, Nordic Semiconductor ASA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form, except as embedded into a Nordic
+ *    Semiconductor ASA integrated circuit in a product or a software update for
+ *    such product, must reproduce the above copyright notice, this list of
+ *    conditions and the following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. Neither the name of Nordic Semiconductor ASA nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * 4. This software, with or without modification, must only be used with a
+ *    Nordic Semiconductor ASA integrated circuit.
+ *
+ * 5. Any software provided in binary form under this license must not be reverse
+ *    engineered, decompiled, modified and/or disassembled.
+ *
+ * THIS SOFTWARE IS PROVIDED BY NORDIC SEMICONDUCTOR ASA "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY, NONINFRINGEMENT, AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL NORDIC SEMICONDUCTOR ASA OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.thingylib.history;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimeSeriesTest {
+
+    @Test
+    public void readSince_wrapsAroundTheRing() throws Exception {
+        final TimeSeries series = new TimeSeries(4);
+        for (int i = 1; i <= 6; i++) {
+            series.add(i * 10, i);
+        }
+        assertEquals(4, series.size());
+        assertEquals(6, series.getLatestSequence());
+
+        final TimeSeriesSnapshot snapshot = series.snapshot(null);
+        assertEquals(4, snapshot.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 3, snapshot.getValue(i), 0.0f);
+            assertEquals((i + 3) * 10, snapshot.getTimestamp(i));
+            assertEquals(i + 3, snapshot.getSequence(i));
+        }
+        assertEquals(6, snapshot.getLastSequence());
+    }
+
+    @Test
+    public void readSince_returnsOnlyNewSamples() throws Exception {
+        final TimeSeries series = new TimeSeries(8);
+        series.add(10, 1);
+        series.add(20, 2);
+        TimeSeriesSnapshot snapshot = series.readSince(0, null);
+        assertEquals(2, snapshot.size());
+        final long cursor = snapshot.getLastSequence();
+
+        series.add(30, 3);
+        snapshot = series.readSince(cursor, snapshot);
+        assertEquals(1, snapshot.size());
+        assertEquals(3, snapshot.getValue(0), 0.0f);
+        assertEquals(3, snapshot.getSequence(0));
+
+        // Nothing new since the last read
+        snapshot = series.readSince(snapshot.getLastSequence(), snapshot);
+        assertEquals(0, snapshot.size());
+        assertEquals(3, snapshot.getLastSequence());
+    }
+
+    @Test
+    public void readSince_skipsOverwrittenSamples() throws Exception {
+        final TimeSeries series = new TimeSeries(3);
+        series.add(10, 1);
+        final long cursor = series.readSince(0, null).getLastSequence();
+        for (int i = 2; i <= 6; i++) {
+            series.add(i * 10, i);
+        }
+        // Samples 2 and 3 were overwritten before they were read, the gap shows in the sequence numbers
+        final TimeSeriesSnapshot snapshot = series.readSince(cursor, null);
+        assertEquals(3, snapshot.size());
+        assertEquals(4, snapshot.getSequence(0));
+        assertEquals(4, snapshot.getValue(0), 0.0f);
+        assertEquals(6, snapshot.getSequence(2));
+    }
+
+    @Test
+    public void readSince_treatsCursorBeyondLatestAsZero() throws Exception {
+        final TimeSeries series = new TimeSeries(4);
+        series.add(10, 1);
+        series.add(20, 2);
+        final TimeSeriesSnapshot snapshot = series.readSince(100, null);
+        assertEquals(2, snapshot.size());
+        assertEquals(1, snapshot.getSequence(0));
+    }
+
+    @Test
+    public void clear_keepsSequenceNumbers() throws Exception {
+        final TimeSeries series = new TimeSeries(4);
+        series.add(10, 1);
+        series.add(20, 2);
+        final long cursor = series.getLatestSequence();
+        series.clear();
+        assertEquals(0, series.size());
+        assertEquals(2, series.getLatestSequence());
+        assertEquals(0, series.readSince(cursor, null).size());
+
+        series.add(30, 3);
+        final TimeSeriesSnapshot snapshot = series.readSince(cursor, null);
+        assertEquals(1, snapshot.size());
+        assertEquals(3, snapshot.getSequence(0));
+        assertEquals(3, snapshot.getValue(0), 0.0f);
+    }
+
+    @Test
+    public void setCapacity_keepsMostRecentSamples() throws Exception {
+        final TimeSeries series = new TimeSeries(5);
+        for (int i = 1; i <= 7; i++) {
+            series.add(i * 10, i);
+        }
+        series.setCapacity(3);
+        assertEquals(3, series.getCapacity());
+        assertEquals(3, series.size());
+        TimeSeriesSnapshot snapshot = series.snapshot(null);
+        assertEquals(5, snapshot.getValue(0), 0.0f);
+        assertEquals(7, snapshot.getValue(2), 0.0f);
+        assertEquals(5, snapshot.getSequence(0));
+
+        // The ring continues from the shrunk buffer
+        series.add(80, 8);
+        snapshot = series.snapshot(snapshot);
+        assertEquals(3, snapshot.size());
+        assertEquals(6, snapshot.getValue(0), 0.0f);
+        assertEquals(8, snapshot.getValue(2), 0.0f);
+        assertEquals(8, snapshot.getLastSequence());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void snapshot_checksIndex() throws Exception {
+        final TimeSeries series = new TimeSeries(2);
+        series.add(10, 1);
+        series.snapshot(null).getSequence(1);
+    }
+}